@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * File systems which list many directories in one call implement this
+ * interface.  The listing of a path is returned as one or more
+ * {@link PartialListing}s; the partial listings of a path are consecutive
+ * and come in the order of the paths.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public interface BatchListingOperations {
+  /**
+   * List the given paths.  A path that is a file is listed as itself.
+   * An error listing a path, e.g. a {@link java.io.FileNotFoundException},
+   * is thrown by {@link PartialListing#get()} of that path and does not
+   * stop the listing of the other paths.
+   *
+   * @param paths the paths to list.
+   * @return an iterator over the partial listings of the paths.
+   * @throws IOException if the listing could not be started.
+   */
+  public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+      List<Path> paths) throws IOException;
+
+  /**
+   * List the given paths with the block locations of their files.
+   * @see #batchedListStatusIterator(List)
+   */
+  public RemoteIterator<PartialListing<LocatedFileStatus>>
+      batchedListLocatedStatusIterator(List<Path> paths) throws IOException;
+}
@@ -76,6 +76,13 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   
   public static final int IPC_MAXIMUM_DATA_LENGTH_DEFAULT = 64 * 1024 * 1024;
 
+  /** Largest response, in bytes, an ipc client accepts; 0 means no limit. */
+  public static final String IPC_MAXIMUM_RESPONSE_LENGTH =
+      "ipc.maximum.response.length";
+  /** Default value for IPC_MAXIMUM_RESPONSE_LENGTH */
+  public static final int IPC_MAXIMUM_RESPONSE_LENGTH_DEFAULT =
+      128 * 1024 * 1024;
+
   /** How many calls per handler are allowed in the queue. */
   public static final String  IPC_SERVER_HANDLER_QUEUE_SIZE_KEY =
     "ipc.server.handler.queue.size";
@@ -90,6 +97,15 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_CALLQUEUE_NAMESPACE = "ipc";
   public static final String IPC_CALLQUEUE_IMPL_KEY = "callqueue.impl";
   public static final String IPC_CALLQUEUE_IDENTITY_PROVIDER_KEY = "identity-provider.impl";
+  /**
+   * Whether a full call queue rejects calls with a RetriableException, for
+   * the clients to back off and retry, rather than blocking the reader.
+   * Only clients whose retry policy retries a RetriableException, such as
+   * the failover proxies of HA clients, do back off; with the default
+   * policy of other clients the call fails with a RemoteException.
+   */
+  public static final String IPC_BACKOFF_ENABLE = "backoff.enable";
+  public static final boolean IPC_BACKOFF_ENABLE_DEFAULT = false;
 
   /** This is for specifying the implementation for the mappings from
    * hostnames to the racks they belong to
@@ -273,6 +289,26 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
     "ipc.client.connect.max.retries.on.sasl";
   public static final int    IPC_CLIENT_CONNECT_MAX_RETRIES_ON_SASL_DEFAULT = 5;
 
+  /** Max number of outstanding asynchronous calls of an ipc client. */
+  public static final String IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
+      "ipc.client.async.calls.max";
+  /** Default value for IPC_CLIENT_ASYNC_CALLS_MAX_KEY */
+  public static final int    IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+
+  /**
+   * Whether an ipc client multiplexes its connections over a few selector
+   * threads instead of running a thread per connection.
+   */
+  public static final String IPC_CLIENT_MULTIPLEXED_ENABLED_KEY =
+      "ipc.client.multiplexed.enabled";
+  /** Default value for IPC_CLIENT_MULTIPLEXED_ENABLED_KEY */
+  public static final boolean IPC_CLIENT_MULTIPLEXED_ENABLED_DEFAULT = false;
+  /** Number of selector threads of a multiplexed ipc client */
+  public static final String IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY =
+      "ipc.client.multiplexed.io.threads";
+  /** Default value for IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY */
+  public static final int IPC_CLIENT_MULTIPLEXED_IO_THREADS_DEFAULT = 2;
+
   /** How often the server scans for idle connections */
   public static final String IPC_CLIENT_CONNECTION_IDLESCANINTERVAL_KEY =
       "ipc.client.connection.idle-scan-interval.ms";
@@ -21,6 +21,8 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -35,7 +37,7 @@
 public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
-      HasEnhancedByteBufferAccess, CanUnbuffer {
+      HasEnhancedByteBufferAccess, CanUnbuffer, VectoredReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -146,6 +148,21 @@ public int read(ByteBuffer buf) throws IOException {
     throw new UnsupportedOperationException("Byte-buffer read unsupported by input stream");
   }
 
+  /**
+   * Read the given ranges of the stream.  If the wrapped stream does not
+   * implement {@link VectoredReadable}, the ranges are read one after
+   * another with positional reads before this method returns.
+   */
+  @Override
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges)
+      throws IOException {
+    if (in instanceof VectoredReadable) {
+      return ((VectoredReadable)in).readVectored(ranges);
+    }
+    return VectoredReadUtils.readRangesSequentially(
+        (PositionedReadable)in, ranges);
+  }
+
   @Override
   public FileDescriptor getFileDescriptor() throws IOException {
     if (in instanceof HasFileDescriptor) {
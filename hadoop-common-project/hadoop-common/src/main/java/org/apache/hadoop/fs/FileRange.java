@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A range of a file to read with {@link VectoredReadable#readVectored}.
+ * The range starts at the given offset of the file and is as long as the
+ * remaining bytes of its buffer.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class FileRange {
+  private final long offset;
+  private final ByteBuffer buffer;
+
+  /**
+   * @param offset the offset of the range in the file.
+   * @param buffer the buffer which receives the bytes between its position
+   *               and its limit.
+   */
+  public FileRange(long offset, ByteBuffer buffer) {
+    Preconditions.checkArgument(offset >= 0, "Negative offset %s", offset);
+    Preconditions.checkNotNull(buffer, "Null buffer");
+    this.offset = offset;
+    this.buffer = buffer;
+  }
+
+  /** @return the offset of the range in the file. */
+  public long getOffset() {
+    return offset;
+  }
+
+  /** @return the number of bytes of the range. */
+  public int getLength() {
+    return buffer.remaining();
+  }
+
+  /** @return the buffer which receives the bytes of the range. */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public String toString() {
+    return "range(" + offset + ", " + getLength() + ")";
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.RemoteException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A part of the listing of a path returned by
+ * {@link BatchListingOperations}: either some of the entries of the path or
+ * the error listing it.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class PartialListing<T extends FileStatus> {
+  private final Path listedPath;
+  private final List<T> partialListing;
+  private final RemoteException exception;
+
+  public PartialListing(Path listedPath, List<T> partialListing) {
+    this(listedPath, Preconditions.checkNotNull(partialListing), null);
+  }
+
+  public PartialListing(Path listedPath, RemoteException exception) {
+    this(listedPath, null, Preconditions.checkNotNull(exception));
+  }
+
+  private PartialListing(Path listedPath, List<T> partialListing,
+      RemoteException exception) {
+    this.listedPath = listedPath;
+    this.partialListing = partialListing;
+    this.exception = exception;
+  }
+
+  /**
+   * @return the path as it was passed to the listing call.
+   */
+  public Path getListedPath() {
+    return listedPath;
+  }
+
+  /**
+   * @return the entries of this part of the listing.
+   * @throws IOException the error listing the path, if any.
+   */
+  public List<T> get() throws IOException {
+    if (exception != null) {
+      throw exception.unwrapRemoteException();
+    }
+    return partialListing;
+  }
+
+  @Override
+  public String toString() {
+    return "PartialListing[path=" + listedPath + ", "
+        + (exception != null ? "exception=" + exception
+            : "entries=" + partialListing.size()) + "]";
+  }
+}
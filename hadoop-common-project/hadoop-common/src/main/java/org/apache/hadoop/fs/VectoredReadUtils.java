@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Helpers for the implementations of {@link VectoredReadable}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public final class VectoredReadUtils {
+  /** The size of the copies of the reads into direct buffers. */
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private static final Comparator<FileRange> BY_OFFSET =
+      new Comparator<FileRange>() {
+        @Override
+        public int compare(FileRange a, FileRange b) {
+          return a.getOffset() < b.getOffset() ? -1
+              : a.getOffset() == b.getOffset() ? 0 : 1;
+        }
+      };
+
+  /**
+   * A range of a file which covers one or more of the ranges to read.
+   */
+  public static class CombinedFileRange {
+    private final long offset;
+    private long end;
+    private final List<FileRange> ranges = new ArrayList<FileRange>();
+
+    CombinedFileRange(FileRange range) {
+      this.offset = range.getOffset();
+      this.end = range.getOffset() + range.getLength();
+      this.ranges.add(range);
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return (int) (end - offset);
+    }
+
+    /** @return the ranges covered by this range, by offset. */
+    public List<FileRange> getRanges() {
+      return ranges;
+    }
+
+    /**
+     * Add the range if the gap to it is at most maxGap bytes, and the
+     * combined range stays at most maxLength bytes long.
+     * @return true if the range is added.
+     */
+    boolean merge(FileRange range, int maxGap, int maxLength) {
+      final long rangeEnd = range.getOffset() + range.getLength();
+      final long newEnd = Math.max(end, rangeEnd);
+      if (range.getOffset() - end > maxGap || newEnd - offset > maxLength) {
+        return false;
+      }
+      end = newEnd;
+      ranges.add(range);
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "combined(" + offset + ", " + getLength() + ", "
+          + ranges.size() + " ranges)";
+    }
+  }
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Check that the ranges can be read.
+   * @throws IllegalArgumentException if a range is null.
+   */
+  public static void validateRanges(List<FileRange> ranges) {
+    Preconditions.checkNotNull(ranges, "Null ranges");
+    for (FileRange range : ranges) {
+      Preconditions.checkArgument(range != null, "Null range");
+    }
+  }
+
+  /**
+   * Combine the ranges which are at most maxGap bytes apart into ranges of
+   * at most maxLength bytes.  A range longer than maxLength is not split.
+   * @return the combined ranges, by offset.
+   */
+  public static List<CombinedFileRange> mergeRanges(List<FileRange> ranges,
+      int maxGap, int maxLength) {
+    final List<FileRange> sorted = new ArrayList<FileRange>(ranges);
+    Collections.sort(sorted, BY_OFFSET);
+    final List<CombinedFileRange> combined =
+        new ArrayList<CombinedFileRange>();
+    CombinedFileRange current = null;
+    for (FileRange range : sorted) {
+      if (current == null || !current.merge(range, maxGap, maxLength)) {
+        current = new CombinedFileRange(range);
+        combined.add(current);
+      }
+    }
+    return combined;
+  }
+
+  /**
+   * Copy the bytes of the range from the bytes read for a combined range.
+   * The position and the limit of the buffer of the range are unchanged.
+   * @param data the bytes read.
+   * @param dataOffset the offset of the first byte read in the file.
+   * @param range the range to copy.
+   */
+  public static void copyToRange(byte[] data, long dataOffset,
+      FileRange range) {
+    final ByteBuffer dst = range.getBuffer().duplicate();
+    dst.put(data, (int) (range.getOffset() - dataOffset), range.getLength());
+  }
+
+  /**
+   * Read the bytes between the position and the limit of the buffer from
+   * the given position of the stream.  The position and the limit of the
+   * buffer are unchanged.
+   * @throws EOFException if the end of the stream is reached first.
+   */
+  public static void readFully(PositionedReadable stream, long position,
+      ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      stream.readFully(position, buffer.array(),
+          buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      return;
+    }
+    final ByteBuffer dst = buffer.duplicate();
+    final byte[] tmp = new byte[Math.min(COPY_BUFFER_SIZE, dst.remaining())];
+    while (dst.hasRemaining()) {
+      final int n = Math.min(tmp.length, dst.remaining());
+      stream.readFully(position, tmp, 0, n);
+      dst.put(tmp, 0, n);
+      position += n;
+    }
+  }
+
+  /**
+   * Read the ranges one after another with positional reads.  This is the
+   * fallback for the streams which do not implement
+   * {@link VectoredReadable}.
+   * @return the completed futures of the ranges.
+   */
+  public static List<Future<ByteBuffer>> readRangesSequentially(
+      PositionedReadable stream, List<FileRange> ranges) {
+    validateRanges(ranges);
+    final List<Future<ByteBuffer>> results =
+        new ArrayList<Future<ByteBuffer>>(ranges.size());
+    for (FileRange range : ranges) {
+      final SettableFuture<ByteBuffer> result = SettableFuture.create();
+      try {
+        readFully(stream, range.getOffset(), range.getBuffer());
+        result.set(range.getBuffer());
+      } catch (IOException e) {
+        result.setException(e);
+      } catch (RuntimeException e) {
+        result.setException(e);
+      }
+      results.add(result);
+    }
+    return results;
+  }
+}
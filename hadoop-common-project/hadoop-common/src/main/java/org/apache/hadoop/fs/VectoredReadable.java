@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Streams which read many ranges of a file at once implement this
+ * interface.  {@link FSDataInputStream} implements it for every stream, and
+ * falls back to a positional read of each range when the stream it wraps
+ * does not.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Read the given ranges of the file into their buffers.  The ranges may
+   * be in any order and may overlap.  Implementations may combine nearby
+   * ranges and read them in parallel.
+   * <p/>
+   * The future of each range completes with the buffer of the range once
+   * the bytes between its position and its limit are read.  The position
+   * and the limit of the buffer are unchanged.  A range past the end of the
+   * file fails with an {@link java.io.EOFException}.  This does not change
+   * the current offset of the stream, and is thread-safe.  The buffers must
+   * not be used until their futures complete.
+   *
+   * @param ranges the ranges to read.
+   * @return the futures of the ranges, in the order of the ranges.
+   * @throws IOException if the reads could not be started.
+   */
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges)
+      throws IOException;
+}
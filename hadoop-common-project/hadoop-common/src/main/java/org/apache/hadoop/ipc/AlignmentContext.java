@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Carries a server state id in the RPC headers, so that a client can tell a
+ * server which state it has already observed and a server can tell whether
+ * it has caught up with that state.  The state id must be monotonically
+ * increasing across all the servers a client talks to, e.g. the transaction
+ * id of a replicated namespace.
+ * <p>
+ * The server side methods are called by {@link Server} and the client side
+ * methods by {@link Client}, for calls made through a proxy which was
+ * created with an alignment context.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface AlignmentContext {
+
+  /**
+   * Server side: set the current state id of the server in the header of a
+   * response.
+   */
+  void updateResponseState(RpcResponseHeaderProto.Builder header);
+
+  /**
+   * Client side: record the state id of the server in the header of a
+   * response.
+   */
+  void receiveResponseState(RpcResponseHeaderProto header);
+
+  /**
+   * Client side: set the highest state id seen by the client in the header
+   * of a request.
+   */
+  void updateRequestState(RpcRequestHeaderProto.Builder header);
+
+  /**
+   * Server side: read the state id of a client from the header of a request.
+   * @return the state id seen by the client, which is available to the
+   *         server through {@link Server#getClientStateId()}.
+   */
+  long receiveRequestState(RpcRequestHeaderProto header);
+
+  /**
+   * @return the highest state id seen: the last one received on the client
+   *         side, or the current one on the server side.
+   */
+  long getLastSeenStateId();
+}
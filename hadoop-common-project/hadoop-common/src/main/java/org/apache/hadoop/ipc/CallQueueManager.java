@@ -27,6 +27,9 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
 /**
  * Abstracts queue operations for different blocking queues.
  */
@@ -44,13 +47,24 @@ static <E> Class<? extends BlockingQueue<E>> convertQueueClass(
   private final AtomicReference<BlockingQueue<E>> putRef;
   private final AtomicReference<BlockingQueue<E>> takeRef;
 
+  private volatile boolean clientBackOffEnabled;
+
   public CallQueueManager(Class<? extends BlockingQueue<E>> backingClass,
       int maxQueueSize, String namespace, Configuration conf) {
     BlockingQueue<E> bq = createCallQueueInstance(backingClass,
       maxQueueSize, namespace, conf);
     this.putRef = new AtomicReference<BlockingQueue<E>>(bq);
     this.takeRef = new AtomicReference<BlockingQueue<E>>(bq);
-    LOG.info("Using callQueue " + backingClass);
+    this.clientBackOffEnabled = parseClientBackOffEnabled(namespace, conf);
+    LOG.info("Using callQueue " + backingClass + ", client backoff " +
+      (clientBackOffEnabled ? "enabled" : "disabled"));
+  }
+
+  private static boolean parseClientBackOffEnabled(String ns,
+      Configuration conf) {
+    return conf != null && conf.getBoolean(
+      ns + "." + CommonConfigurationKeys.IPC_BACKOFF_ENABLE,
+      CommonConfigurationKeys.IPC_BACKOFF_ENABLE_DEFAULT);
   }
 
   private <T extends BlockingQueue<E>> T createCallQueueInstance(
@@ -98,6 +112,26 @@ public void put(E e) throws InterruptedException {
     putRef.get().put(e);
   }
 
+  /**
+   * Insert e into the backing queue like {@link #put(Object)}, unless client
+   * backoff is enabled: then never block, and reject e if the queue has no
+   * room for it. A FairCallQueue with backoff enabled rejects the callers of
+   * the lowest priority first.
+   * @return false if e was rejected and its client should back off
+   */
+  public boolean putOrBackOff(E e) throws InterruptedException {
+    if (!clientBackOffEnabled) {
+      put(e);
+      return true;
+    }
+    return putRef.get().offer(e);
+  }
+
+  @VisibleForTesting
+  boolean isClientBackOffEnabled() {
+    return clientBackOffEnabled;
+  }
+
   /**
    * Retrieve an E from the backing queue or block until we can.
    * Guaranteed to return an element from the current queue.
@@ -116,6 +150,19 @@ public int size() {
     return takeRef.get().size();
   }
 
+  /**
+   * Report how long a call taken from this queue took to process, so that
+   * a FairCallQueue can charge its caller. All times are in nanoseconds.
+   */
+  public void addResponseTime(E e, long processingTime, long lockSharedTime,
+      long lockExclusiveTime) {
+    BlockingQueue<E> q = takeRef.get();
+    if (q instanceof FairCallQueue && e instanceof Schedulable) {
+      ((FairCallQueue<?>) q).addResponseTime((Schedulable) e, processingTime,
+        lockSharedTime, lockExclusiveTime);
+    }
+  }
+
   /**
    * Replaces active queue with the newly requested one and transfers
    * all calls to the newQ before returning.
@@ -125,6 +172,7 @@ public synchronized void swapQueue(
       String ns, Configuration conf) {
     BlockingQueue<E> newQ = createCallQueueInstance(queueClassToUse, maxSize,
       ns, conf);
+    clientBackOffEnabled = parseClientBackOffEnabled(ns, conf);
 
     // Our current queue becomes the old queue
     BlockingQueue<E> oldQ = putRef.get();
@@ -22,6 +22,7 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -36,18 +37,26 @@
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -93,6 +102,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
@@ -122,6 +133,42 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
     retryCount.set(rc);
   }
 
+  private static final ThreadLocal<Boolean> asynchronousMode =
+      new ThreadLocal<Boolean>();
+  private static final ThreadLocal<ListenableFuture<Writable>>
+      asyncRpcResponse = new ThreadLocal<ListenableFuture<Writable>>();
+
+  /**
+   * Set whether the calls made by the current thread are asynchronous.  In
+   * asynchronous mode {@link #call} returns null as soon as the request has
+   * been sent; the response is then available from
+   * {@link #getAsyncRpcResponse()}.
+   */
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  public static void setAsynchronousMode(boolean async) {
+    asynchronousMode.set(async);
+  }
+
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  public static boolean isAsynchronousMode() {
+    final Boolean async = asynchronousMode.get();
+    return async != null && async;
+  }
+
+  /**
+   * Return the future of the last asynchronous call made by the current
+   * thread and forget it, or null if there is none.
+   */
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  public static ListenableFuture<Writable> getAsyncRpcResponse() {
+    final ListenableFuture<Writable> response = asyncRpcResponse.get();
+    asyncRpcResponse.set(null);
+    return response;
+  }
+
   private Hashtable<ConnectionId, Connection> connections =
     new Hashtable<ConnectionId, Connection>();
 
@@ -133,9 +180,16 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
   private int refCount = 1;
 
   private final int connectionTimeout;
+  /** Longest response accepted, 0 for no limit. */
+  private final int maxResponseLength;
 
   private final boolean fallbackAllowed;
   private final byte[] clientId;
+  /** Bounds the number of outstanding asynchronous calls. */
+  private final Semaphore asyncCallPermits;
+  /** Selector threads of a multiplexed client; null otherwise. */
+  private final ConnectionSelector[] connectionSelectors;
+  private final AtomicInteger nextConnectionSelector = new AtomicInteger();
   
   final static int CONNECTION_CONTEXT_CALL_ID = -3;
   
@@ -316,6 +370,11 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    AlignmentContext alignmentContext; // carries the state id, may be null
+    // set for asynchronous calls only
+    private SettableFuture<Writable> asyncResponse;
+    private Semaphore asyncPermits;
+    private InetSocketAddress asyncAddress;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -342,6 +401,29 @@ private Call(RPC.RpcKind rpcKind, Writable param) {
     protected synchronized void callComplete() {
       this.done = true;
       notify();                                 // notify caller
+      if (asyncResponse != null) {
+        releaseAsyncPermit();
+        if (error != null) {
+          asyncResponse.setException(wrapCallError(error, asyncAddress));
+        } else {
+          asyncResponse.set(rpcResponse);
+        }
+      }
+    }
+
+    /** Make this an asynchronous call holding one of the given permits. */
+    synchronized void setAsync(Semaphore permits, InetSocketAddress address) {
+      this.asyncResponse = SettableFuture.create();
+      this.asyncPermits = permits;
+      this.asyncAddress = address;
+    }
+
+    /** Give back the permit of an asynchronous call; idempotent. */
+    synchronized void releaseAsyncPermit() {
+      if (asyncPermits != null) {
+        asyncPermits.release();
+        asyncPermits = null;
+      }
     }
 
     /** Set the exception when there is an error.
@@ -402,6 +484,15 @@ private class Connection extends Thread {
     
     private final Object sendRpcRequestLock = new Object();
 
+    // set when the I/O of this connection is done by a ConnectionSelector
+    // rather than by this thread
+    private volatile ConnectionSelector selector;
+    private SocketChannel channel;
+    private final Queue<ByteBuffer> pendingRequests =
+        new ConcurrentLinkedQueue<ByteBuffer>();
+    private final ByteBuffer responseLengthBuf = ByteBuffer.allocate(4);
+    private ByteBuffer responseBuf;
+
     public Connection(ConnectionId remoteId, int serviceClass) throws IOException {
       this.remoteId = remoteId;
       this.server = remoteId.getAddress();
@@ -710,7 +801,8 @@ private synchronized void setupIOstreams(
         Random rand = null;
         while (true) {
           setupConnection();
-          InputStream inStream = NetUtils.getInputStream(socket);
+          final InputStream rawInStream = NetUtils.getInputStream(socket);
+          InputStream inStream = rawInStream;
           OutputStream outStream = NetUtils.getOutputStream(socket);
           writeConnectionHeader(outStream);
           if (authProtocol == AuthProtocol.SASL) {
@@ -761,6 +853,9 @@ public AuthMethod run()
             }
           }
         
+          // SASL wrapped streams can only be read by a thread of their own
+          final boolean multiplexed = connectionSelectors != null
+              && inStream == rawInStream && socket.getChannel() != null;
           if (doPing) {
             inStream = new PingInputStream(inStream);
           }
@@ -781,6 +876,17 @@ public AuthMethod run()
             Trace.addTimelineAnnotation("IPC client connected to " + server);
           }
 
+          if (multiplexed) {
+            // hand the connection over to a selector thread
+            out.flush();
+            channel = socket.getChannel();
+            selector = connectionSelectors[Math.abs(
+                nextConnectionSelector.getAndIncrement()
+                % connectionSelectors.length)];
+            selector.addConnection(this);
+            return;
+          }
+
           // start the receiver thread after the socket connection has been set
           // up
           start();
@@ -1015,13 +1121,48 @@ public void sendRpcRequest(final Call call)
       // 1) RpcRequestHeader  - is serialized Delimited hence contains length
       // 2) RpcRequest
       //
-      // Items '1' and '2' are prepared here. 
-      final DataOutputBuffer d = new DataOutputBuffer();
+      // All three items are prepared here, into a single buffer.
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
-      header.writeDelimitedTo(d);
-      call.rpcRequest.write(d);
+          clientId, call.alignmentContext);
+      final ByteBuffer request;
+      if (call.rpcRequest instanceof ProtobufRpcEngine.RpcWrapper) {
+        // The length is known up front, so serialize straight into an
+        // exactly sized buffer rather than a growing DataOutputBuffer.
+        final ProtobufRpcEngine.RpcWrapper wrapper =
+            (ProtobufRpcEngine.RpcWrapper) call.rpcRequest;
+        final int headerLen = header.getSerializedSize();
+        final int totalLength = CodedOutputStream.computeRawVarint32Size(
+            headerLen) + headerLen + wrapper.getLength();
+        final byte[] data = new byte[4 + totalLength];
+        request = ByteBuffer.wrap(data);
+        request.putInt(0, totalLength);
+        final CodedOutputStream cos =
+            CodedOutputStream.newInstance(data, 4, totalLength);
+        cos.writeRawVarint32(headerLen);
+        header.writeTo(cos);
+        wrapper.writeTo(cos);
+        cos.checkNoSpaceLeft();
+      } else {
+        final DataOutputBuffer d = new DataOutputBuffer();
+        d.writeInt(0); // Total Length, filled in below
+        header.writeDelimitedTo(d);
+        call.rpcRequest.write(d);
+        request = ByteBuffer.wrap(d.getData(), 0, d.getLength());
+        request.putInt(0, d.getLength() - 4);
+      }
+
+      if (selector != null) {
+        // Queue the call for the selector thread, which writes it out. Like
+        // the sendParamsExecutor this keeps the socket safe from thread
+        // interruptions in the calling code.
+        if (LOG.isDebugEnabled())
+          LOG.debug(getName() + " queueing #" + call.id);
+        touch();
+        pendingRequests.add(request);
+        selector.requestWrite(this);
+        return;
+      }
 
       synchronized (sendRpcRequestLock) {
         Future<?> senderFuture = sendParamsExecutor.submit(new Runnable() {
@@ -1036,10 +1177,8 @@ public void run() {
                 if (LOG.isDebugEnabled())
                   LOG.debug(getName() + " sending #" + call.id);
          
-                byte[] data = d.getData();
-                int totalLength = d.getLength();
-                out.writeInt(totalLength); // Total Length
-                out.write(data, 0, totalLength);// RpcRequestHeader + RpcRequest
+                // Total Length + RpcRequestHeader + RpcRequest
+                out.write(request.array(), 0, request.limit());
                 out.flush();
               }
             } catch (IOException e) {
@@ -1047,10 +1186,6 @@ public void run() {
               // unrecoverable state (eg half a call left on the wire).
               // So, close the connection, killing any outstanding calls
               markClosed(e);
-            } finally {
-              //the buffer is just an in-memory buffer, but it is still polite to
-              // close early
-              IOUtils.closeStream(d);
             }
           }
         });
@@ -1082,66 +1217,181 @@ private void receiveRpcResponse() {
       
       try {
         int totalLen = in.readInt();
-        RpcResponseHeaderProto header = 
-            RpcResponseHeaderProto.parseDelimitedFrom(in);
-        checkResponse(header);
+        checkResponseLength(totalLen);
+        processRpcResponse(totalLen, in, null);
+      } catch (IOException e) {
+        markClosed(e);
+      }
+    }
 
-        int headerLen = header.getSerializedSize();
-        headerLen += CodedOutputStream.computeRawVarint32Size(headerLen);
+    /** Reject a response length which is negative or above the limit. */
+    private void checkResponseLength(int totalLen) throws IOException {
+      if (totalLen < 0) {
+        throw new RpcClientException(
+            "Invalid RPC response length " + totalLen);
+      }
+      if (maxResponseLength > 0 && totalLen > maxResponseLength) {
+        throw new RpcClientException("RPC response length " + totalLen
+            + " exceeds the maximum of " + maxResponseLength + " set by "
+            + CommonConfigurationKeys.IPC_MAXIMUM_RESPONSE_LENGTH);
+      }
+    }
 
-        int callId = header.getCallId();
-        if (LOG.isDebugEnabled())
-          LOG.debug(getName() + " got value #" + callId);
+    /* Process a response of totalLen bytes, the length having already been
+     * read from responseIn. If the whole response is already in memory it
+     * is passed as response, which protobuf values then reference in place.
+     */
+    private void processRpcResponse(int totalLen, DataInputStream responseIn,
+        byte[] response) throws IOException {
+      RpcResponseHeaderProto header = 
+          RpcResponseHeaderProto.parseDelimitedFrom(responseIn);
+      checkResponse(header);
 
-        Call call = calls.get(callId);
-        RpcStatusProto status = header.getStatus();
-        if (status == RpcStatusProto.SUCCESS) {
-          Writable value = ReflectionUtils.newInstance(valueClass, conf);
-          value.readFields(in);                 // read value
-          calls.remove(callId);
-          call.setRpcResponse(value);
-          
-          // verify that length was correct
-          // only for ProtobufEngine where len can be verified easily
-          if (call.getRpcResponse() instanceof ProtobufRpcEngine.RpcWrapper) {
-            ProtobufRpcEngine.RpcWrapper resWrapper = 
-                (ProtobufRpcEngine.RpcWrapper) call.getRpcResponse();
-            if (totalLen != headerLen + resWrapper.getLength()) { 
-              throw new RpcClientException(
-                  "RPC response length mismatch on rpc success");
-            }
-          }
-        } else { // Rpc Request failed
-          // Verify that length was correct
-          if (totalLen != headerLen) {
+      int headerLen = header.getSerializedSize();
+      headerLen += CodedOutputStream.computeRawVarint32Size(headerLen);
+
+      int callId = header.getCallId();
+      if (LOG.isDebugEnabled())
+        LOG.debug(getName() + " got value #" + callId);
+
+      Call call = calls.get(callId);
+      if (call != null && call.alignmentContext != null) {
+        call.alignmentContext.receiveResponseState(header);
+      }
+      RpcStatusProto status = header.getStatus();
+      if (status == RpcStatusProto.SUCCESS) {
+        Writable value = ReflectionUtils.newInstance(valueClass, conf);
+        if (response != null && value instanceof ProtobufRpcEngine.RpcWrapper) {
+          ((ProtobufRpcEngine.RpcWrapper) value).readFields(ByteBuffer.wrap(
+              response, totalLen - responseIn.available(),
+              responseIn.available()));
+        } else {
+          value.readFields(responseIn);         // read value
+        }
+        calls.remove(callId);
+        call.setRpcResponse(value);
+        
+        // verify that length was correct
+        // only for ProtobufEngine where len can be verified easily
+        if (call.getRpcResponse() instanceof ProtobufRpcEngine.RpcWrapper) {
+          ProtobufRpcEngine.RpcWrapper resWrapper = 
+              (ProtobufRpcEngine.RpcWrapper) call.getRpcResponse();
+          if (totalLen != headerLen + resWrapper.getLength()) { 
             throw new RpcClientException(
-                "RPC response length mismatch on rpc error");
+                "RPC response length mismatch on rpc success");
           }
-          
-          final String exceptionClassName = header.hasExceptionClassName() ?
-                header.getExceptionClassName() : 
-                  "ServerDidNotSetExceptionClassName";
-          final String errorMsg = header.hasErrorMsg() ? 
-                header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
-          final RpcErrorCodeProto erCode = 
-                    (header.hasErrorDetail() ? header.getErrorDetail() : null);
-          if (erCode == null) {
-             LOG.warn("Detailed error code not set by server on rpc error");
+        }
+      } else { // Rpc Request failed
+        // Verify that length was correct
+        if (totalLen != headerLen) {
+          throw new RpcClientException(
+              "RPC response length mismatch on rpc error");
+        }
+        
+        final String exceptionClassName = header.hasExceptionClassName() ?
+              header.getExceptionClassName() : 
+                "ServerDidNotSetExceptionClassName";
+        final String errorMsg = header.hasErrorMsg() ? 
+              header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
+        final RpcErrorCodeProto erCode = 
+                  (header.hasErrorDetail() ? header.getErrorDetail() : null);
+        if (erCode == null) {
+           LOG.warn("Detailed error code not set by server on rpc error");
+        }
+        RemoteException re = 
+            ( (erCode == null) ? 
+                new RemoteException(exceptionClassName, errorMsg) :
+            new RemoteException(exceptionClassName, errorMsg, erCode));
+        if (status == RpcStatusProto.ERROR) {
+          calls.remove(callId);
+          call.setException(re);
+        } else if (status == RpcStatusProto.FATAL) {
+          // Close the connection
+          markClosed(re);
+        }
+      }
+    }
+
+    /** Read as many responses as have arrived; called by the selector. */
+    private void doRead() throws IOException {
+      touch();
+      while (!shouldCloseConnection.get()) {
+        if (responseBuf == null) {
+          if (channel.read(responseLengthBuf) < 0) {
+            throw new EOFException("Connection closed by " + server);
           }
-          RemoteException re = 
-              ( (erCode == null) ? 
-                  new RemoteException(exceptionClassName, errorMsg) :
-              new RemoteException(exceptionClassName, errorMsg, erCode));
-          if (status == RpcStatusProto.ERROR) {
-            calls.remove(callId);
-            call.setException(re);
-          } else if (status == RpcStatusProto.FATAL) {
-            // Close the connection
-            markClosed(re);
+          if (responseLengthBuf.hasRemaining()) {
+            return;
           }
+          responseLengthBuf.flip();
+          final int totalLen = responseLengthBuf.getInt();
+          responseLengthBuf.clear();
+          checkResponseLength(totalLen);
+          responseBuf = ByteBuffer.allocate(totalLen);
+        }
+        if (channel.read(responseBuf) < 0) {
+          throw new EOFException("Connection closed by " + server);
+        }
+        if (responseBuf.hasRemaining()) {
+          return;
+        }
+        final ByteBuffer response = responseBuf;
+        responseBuf = null;
+        processRpcResponse(response.capacity(), new DataInputStream(
+            new ByteArrayInputStream(response.array())), response.array());
+      }
+    }
+
+    /**
+     * Write out as much of the queued requests as the socket takes; called
+     * by the selector.
+     * @return true if all the queued requests have been written
+     */
+    private boolean doWrite() throws IOException {
+      ByteBuffer request;
+      while ((request = pendingRequests.peek()) != null) {
+        channel.write(request);
+        if (request.hasRemaining()) {
+          return false;
+        }
+        pendingRequests.poll();
+      }
+      return true;
+    }
+
+    /* The multiplexed counterpart of waitForWork and PingInputStream, called
+     * periodically by the selector: close the connection if it has been idle
+     * for too long or the client is stopped, and ping the server or time out
+     * if a response is overdue.
+     */
+    private synchronized void checkIdle(long now) {
+      if (shouldCloseConnection.get()) {
+        return;
+      }
+      if (!running.get()) {
+        markClosed(calls.isEmpty() ? null : (IOException)new IOException()
+            .initCause(new InterruptedException()));
+        return;
+      }
+      final long idleTime = now - lastActivity.get();
+      if (calls.isEmpty()) {
+        if (idleTime >= maxIdleTime) {
+          markClosed(null);
+        }
+      } else if (idleTime >= pingInterval) {
+        if (doPing && rpcTimeout <= 0) {
+          lastActivity.set(now);
+          final ByteBuffer ping = ByteBuffer.allocate(4 + pingRequest.size());
+          ping.putInt(pingRequest.size());
+          ping.put(pingRequest.toByteArray());
+          ping.flip();
+          pendingRequests.add(ping);
+          selector.requestWrite(this);
+        } else {
+          markClosed(new SocketTimeoutException(pingInterval
+              + " millis timeout while waiting for a response from "
+              + server));
         }
-      } catch (IOException e) {
-        markClosed(e);
       }
     }
     
@@ -1149,6 +1399,9 @@ private synchronized void markClosed(IOException e) {
       if (shouldCloseConnection.compareAndSet(false, true)) {
         closeException = e;
         notifyAll();
+        if (selector != null) {
+          selector.closeConnection(this);
+        }
       }
     }
     
@@ -1208,6 +1461,139 @@ private void cleanupCalls() {
     }
   }
 
+  /**
+   * Thread that does the I/O of many connections of a multiplexed client over
+   * one selector, so that neither a thread per connection nor a thread to
+   * send the parameters is needed.  Callers queue their requests on the
+   * connection and this thread writes them out; responses are read as they
+   * arrive and handed to the waiting calls.  The listeners of asynchronous
+   * calls are run on this thread too, so they should be quick.
+   */
+  private class ConnectionSelector extends Thread {
+    /** How often the connections are checked for idleness and timeouts. */
+    private static final long SCAN_INTERVAL_MS = 100;
+
+    private final Selector selector;
+    // Updating the selector while it is in use is not thread-safe, so the
+    // other threads queue their updates and wake the selector up.
+    private final Queue<Connection> pendingConnections =
+        new ConcurrentLinkedQueue<Connection>();
+    private final Queue<Connection> pendingWrites =
+        new ConcurrentLinkedQueue<Connection>();
+    private final Queue<Connection> pendingCloses =
+        new ConcurrentLinkedQueue<Connection>();
+    // the connections registered with the selector, only used by this thread
+    private final Set<Connection> registered = new HashSet<Connection>();
+
+    ConnectionSelector(int index) throws IOException {
+      super("IPC Client (" + socketFactory.hashCode() + ") selector #"
+          + index);
+      this.selector = Selector.open();
+      this.setDaemon(true);
+    }
+
+    /** Take over the I/O of a connection whose streams are set up. */
+    void addConnection(Connection conn) {
+      pendingConnections.add(conn);
+      selector.wakeup();
+    }
+
+    /** Write out the requests queued on a connection. */
+    void requestWrite(Connection conn) {
+      pendingWrites.add(conn);
+      selector.wakeup();
+    }
+
+    /** Close a connection which has been marked closed. */
+    void closeConnection(Connection conn) {
+      pendingCloses.add(conn);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(getName() + ": starting");
+      }
+      try {
+        doRunLoop();
+      } catch (Throwable t) {
+        LOG.warn("Unexpected error in " + getName(), t);
+        for (Connection conn : registered) {
+          conn.markClosed(new IOException("Error in " + getName(), t));
+          conn.close();
+        }
+      } finally {
+        IOUtils.cleanup(LOG, selector);
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(getName() + ": stopped");
+      }
+    }
+
+    private void doRunLoop() throws IOException {
+      long lastScan = Time.monotonicNow();
+      while (running.get() || !registered.isEmpty()
+          || !pendingConnections.isEmpty()) {
+        Connection conn;
+        while ((conn = pendingConnections.poll()) != null) {
+          // Calls may have been queued before the connection got here; their
+          // requestWrite found no key and was dropped, so register for writes
+          // right away. Anything queued later finds the key.
+          final int ops = conn.pendingRequests.isEmpty()
+              ? SelectionKey.OP_READ
+              : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+          try {
+            conn.channel.register(selector, ops, conn);
+            registered.add(conn);
+          } catch (IOException e) {
+            conn.markClosed(e);
+          }
+        }
+        while ((conn = pendingWrites.poll()) != null) {
+          SelectionKey key = conn.channel.keyFor(selector);
+          if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          }
+        }
+
+        selector.select(SCAN_INTERVAL_MS);
+        Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+        while (iter.hasNext()) {
+          SelectionKey key = iter.next();
+          iter.remove();
+          conn = (Connection)key.attachment();
+          try {
+            if (key.isValid() && key.isReadable()) {
+              conn.doRead();
+            }
+            if (key.isValid() && key.isWritable() && conn.doWrite()) {
+              key.interestOps(SelectionKey.OP_READ);
+            }
+          } catch (IOException e) {
+            conn.markClosed(e);
+          } catch (RuntimeException e) {
+            LOG.warn("Unexpected error on connection " + conn, e);
+            conn.markClosed(new IOException("Error reading responses", e));
+          }
+        }
+
+        final long now = Time.monotonicNow();
+        if (!running.get() || now - lastScan >= SCAN_INTERVAL_MS) {
+          lastScan = now;
+          final long wallNow = Time.now();
+          for (Connection c : registered) {
+            c.checkIdle(wallNow);
+          }
+        }
+        while ((conn = pendingCloses.poll()) != null) {
+          registered.remove(conn);
+          conn.close();
+        }
+      }
+    }
+  }
+
   /** Construct an IPC client whose values are of the given {@link Writable}
    * class. */
   public Client(Class<? extends Writable> valueClass, Configuration conf, 
@@ -1219,8 +1605,48 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
         CommonConfigurationKeys.IPC_CLIENT_CONNECT_TIMEOUT_DEFAULT);
     this.fallbackAllowed = conf.getBoolean(CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY,
         CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT);
+    this.maxResponseLength = conf.getInt(
+        CommonConfigurationKeys.IPC_MAXIMUM_RESPONSE_LENGTH,
+        CommonConfigurationKeys.IPC_MAXIMUM_RESPONSE_LENGTH_DEFAULT);
     this.clientId = ClientId.getClientId();
     this.sendParamsExecutor = clientExcecutorFactory.refAndGetInstance();
+    this.asyncCallPermits = new Semaphore(conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT));
+    this.connectionSelectors = createConnectionSelectors(conf);
+  }
+
+  /** Start the selector threads if the connections are multiplexed. */
+  private ConnectionSelector[] createConnectionSelectors(Configuration conf) {
+    if (!conf.getBoolean(
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_ENABLED_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_ENABLED_DEFAULT)) {
+      return null;
+    }
+    final int ioThreads = conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_DEFAULT);
+    Preconditions.checkArgument(ioThreads > 0,
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY
+        + " must be positive");
+    final ConnectionSelector[] selectors = new ConnectionSelector[ioThreads];
+    try {
+      for (int i = 0; i < ioThreads; i++) {
+        selectors[i] = new ConnectionSelector(i);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to open a selector, using a thread per connection", e);
+      for (ConnectionSelector s : selectors) {
+        if (s != null) {
+          IOUtils.cleanup(LOG, s.selector);
+        }
+      }
+      return null;
+    }
+    for (ConnectionSelector s : selectors) {
+      s.start();
+    }
+    return selectors;
   }
 
   /**
@@ -1257,6 +1683,11 @@ public void stop() {
         conn.interrupt();
       }
     }
+    if (connectionSelectors != null) {
+      for (ConnectionSelector s : connectionSelectors) {
+        s.selector.wakeup();
+      }
+    }
     
     // wait until all connections are closed
     while (!connections.isEmpty()) {
@@ -1447,17 +1878,65 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
   public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId, int serviceClass,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return call(rpcKind, rpcRequest, remoteId, serviceClass,
+        fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, returning the rpc response.
+   *
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @param serviceClass - service class for RPC
+   * @param fallbackToSimpleAuth - set to true or false during this method to
+   *   indicate if a secure client falls back to simple auth
+   * @param alignmentContext - state id to send with the request and to update
+   *   from the response, may be null
+   * @returns the rpc response, or null in asynchronous mode
+   * Throws exceptions if there are network problems or if the remote code
+   * threw an exception.
+   */
+  public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
+      ConnectionId remoteId, int serviceClass,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
-    Connection connection = getConnection(remoteId, call, serviceClass,
-      fallbackToSimpleAuth);
+    call.alignmentContext = alignmentContext;
+    final boolean async = isAsynchronousMode();
+    if (async) {
+      try {
+        asyncCallPermits.acquire();   // wait for an outstanding call to end
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting to make an"
+            + " asynchronous call to " + remoteId.getAddress());
+      }
+      call.setAsync(asyncCallPermits, remoteId.getAddress());
+    }
+    final Connection connection;
+    boolean sent = false;
     try {
+      connection = getConnection(remoteId, call, serviceClass,
+          fallbackToSimpleAuth);
       connection.sendRpcRequest(call);                 // send the rpc request
+      sent = true;
     } catch (RejectedExecutionException e) {
       throw new IOException("connection has been closed", e);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       LOG.warn("interrupted waiting to send rpc request to server", e);
       throw new IOException(e);
+    } finally {
+      if (!sent) {
+        call.releaseAsyncPermit();
+      }
+    }
+
+    if (async) {
+      asyncRpcResponse.set(call.asyncResponse);
+      return null;
     }
 
     synchronized (call) {
@@ -1471,23 +1950,34 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       }
 
       if (call.error != null) {
-        if (call.error instanceof RemoteException) {
-          call.error.fillInStackTrace();
-          throw call.error;
-        } else { // local exception
-          InetSocketAddress address = connection.getRemoteAddress();
-          throw NetUtils.wrapException(address.getHostName(),
-                  address.getPort(),
-                  NetUtils.getHostname(),
-                  0,
-                  call.error);
-        }
+        throw wrapCallError(call.error, connection.getRemoteAddress());
       } else {
         return call.getRpcResponse();
       }
     }
   }
 
+  /** The exception to hand to the caller of a failed call. */
+  private static IOException wrapCallError(IOException error,
+      InetSocketAddress address) {
+    if (error instanceof RemoteException) {
+      error.fillInStackTrace();
+      return error;
+    } else { // local exception
+      return NetUtils.wrapException(address.getHostName(),
+              address.getPort(),
+              NetUtils.getHostname(),
+              0,
+              error);
+    }
+  }
+
+  /** The number of asynchronous calls that may still be made. */
+  @VisibleForTesting
+  int getAvailableAsyncCallPermits() {
+    return asyncCallPermits.availablePermits();
+  }
+
   // for unit testing only
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
@@ -44,6 +44,11 @@
  * decays the counts at a fixed time interval. The scheduler is optimized
  * for large periods (on the order of seconds), as it offloads work to the
  * decay sweep.
+ *
+ * The cost of each processed call, its handler time weighted by the locks
+ * it held, is decayed alongside. In cost-based mode identities are
+ * prioritized by their share of the cost rather than of the call count, so
+ * that a few expensive calls weigh as much as many cheap ones.
  */
 public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean {
   /**
@@ -77,6 +82,36 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   public static final String IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY =
     "faircallqueue.decay-scheduler.thresholds";
 
+  /**
+   * Whether to prioritize by the cost of the calls of each identity, rather
+   * than by their number.
+   */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY =
+    "faircallqueue.decay-scheduler.cost-based";
+  public static final boolean IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT =
+    false;
+
+  /**
+   * The cost of a call is the sum of the time it spent on a handler holding
+   * no lock, holding a lock shared, and holding a lock exclusively, each
+   * multiplied by these weights. Time spent holding a lock is reported by
+   * the server through {@link Server#addLockHoldTime(boolean, long)}.
+   */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_LOCKFREE_WEIGHT_KEY =
+    "faircallqueue.decay-scheduler.cost.lockfree-weight";
+  public static final long
+    IPC_CALLQUEUE_DECAYSCHEDULER_LOCKFREE_WEIGHT_DEFAULT = 1;
+  public static final String
+    IPC_CALLQUEUE_DECAYSCHEDULER_LOCKSHARED_WEIGHT_KEY =
+    "faircallqueue.decay-scheduler.cost.lockshared-weight";
+  public static final long
+    IPC_CALLQUEUE_DECAYSCHEDULER_LOCKSHARED_WEIGHT_DEFAULT = 10;
+  public static final String
+    IPC_CALLQUEUE_DECAYSCHEDULER_LOCKEXCLUSIVE_WEIGHT_KEY =
+    "faircallqueue.decay-scheduler.cost.lockexclusive-weight";
+  public static final long
+    IPC_CALLQUEUE_DECAYSCHEDULER_LOCKEXCLUSIVE_WEIGHT_DEFAULT = 100;
+
   // Specifies the identity to use when the IdentityProvider cannot handle
   // a schedulable.
   public static final String DECAYSCHEDULER_UNKNOWN_IDENTITY =
@@ -91,6 +126,14 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   // Should be the sum of all AtomicLongs in callCounts
   private final AtomicLong totalCalls = new AtomicLong();
 
+  // Track the cost of the processed calls for each schedulable identity, in
+  // weighted nanoseconds
+  private final ConcurrentHashMap<Object, AtomicLong> callCosts =
+    new ConcurrentHashMap<Object, AtomicLong>();
+
+  // Should be the sum of all AtomicLongs in callCosts
+  private final AtomicLong totalCosts = new AtomicLong();
+
   // Pre-computed scheduling decisions during the decay sweep are
   // atomically swapped in as a read-only map
   private final AtomicReference<Map<Object, Integer>> scheduleCacheRef =
@@ -102,6 +145,10 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   private final int numQueues; // affects scheduling decisions, from 0 to numQueues - 1
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
+  private final boolean costBased; // schedule by callCosts, not callCounts
+  private final long lockFreeWeight;
+  private final long lockSharedWeight;
+  private final long lockExclusiveWeight;
 
   /**
    * This TimerTask will call decayCurrentCounts until
@@ -147,6 +194,18 @@ public DecayRpcScheduler(int numQueues, String ns, Configuration conf) {
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numQueues);
+    this.costBased = conf.getBoolean(ns + "." +
+        IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY,
+      IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT);
+    this.lockFreeWeight = parseCostWeight(ns, conf,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKFREE_WEIGHT_KEY,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKFREE_WEIGHT_DEFAULT);
+    this.lockSharedWeight = parseCostWeight(ns, conf,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKSHARED_WEIGHT_KEY,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKSHARED_WEIGHT_DEFAULT);
+    this.lockExclusiveWeight = parseCostWeight(ns, conf,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKEXCLUSIVE_WEIGHT_KEY,
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCKEXCLUSIVE_WEIGHT_DEFAULT);
 
     // Setup delay timer
     Timer timer = new Timer();
@@ -199,6 +258,17 @@ private static long parseDecayPeriodMillis(String ns, Configuration conf) {
     return period;
   }
 
+  private static long parseCostWeight(String ns, Configuration conf,
+      String key, long defaultWeight) {
+    long weight = conf.getLong(ns + "." + key, defaultWeight);
+
+    if (weight < 0) {
+      throw new IllegalArgumentException(key + " must be >= 0");
+    }
+
+    return weight;
+  }
+
   private static double[] parseThresholds(String ns, Configuration conf,
       int numQueues) {
     int[] percentages = conf.getInts(ns + "." +
@@ -244,9 +314,22 @@ private static double[] getDefaultThresholds(int numQueues) {
    * counts current.
    */
   private void decayCurrentCounts() {
+    // Update the totals so that we remain in sync
+    totalCalls.set(decay(callCounts));
+    totalCosts.set(decay(callCosts));
+
+    // Now refresh the cache of scheduling decisions
+    recomputeScheduleCache();
+  }
+
+  /**
+   * Decay each value of the map, removing those which reach zero.
+   * @return the sum of the decayed values
+   */
+  private long decay(ConcurrentHashMap<Object, AtomicLong> counts) {
     long total = 0;
     Iterator<Map.Entry<Object, AtomicLong>> it =
-      callCounts.entrySet().iterator();
+      counts.entrySet().iterator();
 
     while (it.hasNext()) {
       Map.Entry<Object, AtomicLong> entry = it.next();
@@ -266,25 +349,24 @@ private void decayCurrentCounts() {
       }
     }
 
-    // Update the total so that we remain in sync
-    totalCalls.set(total);
-
-    // Now refresh the cache of scheduling decisions
-    recomputeScheduleCache();
+    return total;
   }
 
   /**
-   * Update the scheduleCache to match current conditions in callCounts.
+   * Update the scheduleCache to match current conditions in callCounts, or
+   * callCosts if cost-based.
    */
   private void recomputeScheduleCache() {
     Map<Object, Integer> nextCache = new HashMap<Object, Integer>();
+    Map<Object, AtomicLong> usage = costBased ? callCosts : callCounts;
+    long totalUsage = costBased ? totalCosts.get() : totalCalls.get();
 
-    for (Map.Entry<Object, AtomicLong> entry : callCounts.entrySet()) {
+    for (Map.Entry<Object, AtomicLong> entry : usage.entrySet()) {
       Object id = entry.getKey();
       AtomicLong value = entry.getValue();
 
       long snapshot = value.get();
-      int computedLevel = computePriorityLevel(snapshot);
+      int computedLevel = computePriorityLevel(snapshot, totalUsage);
 
       nextCache.put(id, computedLevel);
     }
@@ -299,39 +381,47 @@ private void recomputeScheduleCache() {
    * @return the value before incrementation
    */
   private long getAndIncrement(Object identity) throws InterruptedException {
+    return getAndAdd(callCounts, totalCalls, identity, 1);
+  }
+
+  /**
+   * Add to the count of an identity, and to the total, atomically.
+   * @return the value before the addition
+   */
+  private static long getAndAdd(ConcurrentHashMap<Object, AtomicLong> counts,
+      AtomicLong total, Object identity, long delta) {
     // We will increment the count, or create it if no such count exists
-    AtomicLong count = this.callCounts.get(identity);
+    AtomicLong count = counts.get(identity);
     if (count == null) {
       // Create the count since no such count exists.
       count = new AtomicLong(0);
 
       // Put it in, or get the AtomicInteger that was put in by another thread
-      AtomicLong otherCount = callCounts.putIfAbsent(identity, count);
+      AtomicLong otherCount = counts.putIfAbsent(identity, count);
       if (otherCount != null) {
         count = otherCount;
       }
     }
 
     // Update the total
-    totalCalls.getAndIncrement();
+    total.getAndAdd(delta);
 
     // At this point value is guaranteed to be not null. It may however have
-    // been clobbered from callCounts. Nonetheless, we return what
+    // been clobbered from counts. Nonetheless, we return what
     // we have.
-    return count.getAndIncrement();
+    return count.getAndAdd(delta);
   }
 
   /**
-   * Given the number of occurrences, compute a scheduling decision.
-   * @param occurrences how many occurrences
+   * Given the usage of an identity, compute a scheduling decision.
+   * @param usage how many occurrences, or how much cost
+   * @param totalUsage the usage of all identities
    * @return scheduling decision from 0 to numQueues - 1
    */
-  private int computePriorityLevel(long occurrences) {
-    long totalCallSnapshot = totalCalls.get();
-
+  private int computePriorityLevel(long usage, long totalUsage) {
     double proportion = 0;
-    if (totalCallSnapshot > 0) {
-      proportion = (double) occurrences / totalCallSnapshot;
+    if (totalUsage > 0) {
+      proportion = (double) usage / totalUsage;
     }
 
     // Start with low priority queues, since they will be most common
@@ -365,7 +455,12 @@ private int cachedOrComputedPriorityLevel(Object identity) {
       }
 
       // Cache was no good, compute it
-      return computePriorityLevel(occurrences);
+      if (costBased) {
+        AtomicLong cost = callCosts.get(identity);
+        return computePriorityLevel(cost == null ? 0 : cost.get(),
+          totalCosts.get());
+      }
+      return computePriorityLevel(occurrences, totalCalls.get());
     } catch (InterruptedException ie) {
       LOG.warn("Caught InterruptedException, returning low priority queue");
       return numQueues - 1;
@@ -379,14 +474,30 @@ private int cachedOrComputedPriorityLevel(Object identity) {
    */
   @Override
   public int getPriorityLevel(Schedulable obj) {
-    // First get the identity
+    return cachedOrComputedPriorityLevel(makeIdentity(obj));
+  }
+
+  /**
+   * Charge the identity of a processed call with its cost.
+   */
+  @Override
+  public void addResponseTime(Schedulable obj, long processingTime,
+      long lockSharedTime, long lockExclusiveTime) {
+    long lockFreeTime =
+      Math.max(0, processingTime - lockSharedTime - lockExclusiveTime);
+    long cost = lockFreeTime * lockFreeWeight +
+      lockSharedTime * lockSharedWeight +
+      lockExclusiveTime * lockExclusiveWeight;
+    getAndAdd(callCosts, totalCosts, makeIdentity(obj), cost);
+  }
+
+  private String makeIdentity(Schedulable obj) {
     String identity = this.identityProvider.makeIdentity(obj);
     if (identity == null) {
       // Identity provider did not handle this
       identity = DECAYSCHEDULER_UNKNOWN_IDENTITY;
     }
-
-    return cachedOrComputedPriorityLevel(identity);
+    return identity;
   }
 
   // For testing
@@ -418,6 +529,20 @@ public long getTotalCallSnapshot() {
     return totalCalls.get();
   }
 
+  @VisibleForTesting
+  public Map<Object, Long> getCallCostSnapshot() {
+    HashMap<Object, Long> snapshot = new HashMap<Object, Long>();
+
+    for (Map.Entry<Object, AtomicLong> entry : callCosts.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  @VisibleForTesting
+  public boolean isCostBased() { return costBased; }
+
   /**
    * MetricsProxy is a singleton because we may init multiple schedulers and we
    * want to clean up resources when a new scheduler replaces the old one.
@@ -487,6 +612,26 @@ public long getTotalCallVolume() {
         return scheduler.getTotalCallVolume();
       }
     }
+
+    @Override
+    public String getCallCostSummary() {
+      DecayRpcScheduler scheduler = delegate.get();
+      if (scheduler == null) {
+        return "No Active Scheduler";
+      } else {
+        return scheduler.getCallCostSummary();
+      }
+    }
+
+    @Override
+    public long getTotalCallCost() {
+      DecayRpcScheduler scheduler = delegate.get();
+      if (scheduler == null) {
+        return -1;
+      } else {
+        return scheduler.getTotalCallCost();
+      }
+    }
   }
 
   public int getUniqueIdentityCount() {
@@ -497,6 +642,10 @@ public long getTotalCallVolume() {
     return totalCalls.get();
   }
 
+  public long getTotalCallCost() {
+    return totalCosts.get();
+  }
+
   public String getSchedulingDecisionSummary() {
     Map<Object, Integer> decisions = scheduleCacheRef.get();
     if (decisions == null) {
@@ -519,4 +668,13 @@ public String getCallVolumeSummary() {
       return "Error: " + e.getMessage();
     }
   }
+
+  public String getCallCostSummary() {
+    try {
+      ObjectMapper om = new ObjectMapper();
+      return om.writeValueAsString(callCosts);
+    } catch (Exception e) {
+      return "Error: " + e.getMessage();
+    }
+  }
 }
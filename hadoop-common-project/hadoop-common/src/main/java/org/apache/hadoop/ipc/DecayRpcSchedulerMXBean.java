@@ -27,4 +27,7 @@ public interface DecayRpcSchedulerMXBean {
   String getCallVolumeSummary();
   int getUniqueIdentityCount();
   long getTotalCallVolume();
+  // Decayed cost of the processed calls, in weighted nanoseconds
+  String getCallCostSummary();
+  long getTotalCallCost();
 }
\ No newline at end of file
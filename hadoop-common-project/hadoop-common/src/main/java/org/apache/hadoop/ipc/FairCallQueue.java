@@ -37,6 +37,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.metrics2.util.MBeans;
 
 /**
@@ -72,8 +73,12 @@ private void signalNotEmpty() {
   /* Multiplexer picks which queue to draw from */
   private RpcMultiplexer multiplexer;
 
+  /* With client backoff, offer overflows like put rather than failing */
+  private final boolean clientBackOffEnabled;
+
   /* Statistic tracking */
   private final ArrayList<AtomicLong> overflowedCalls;
+  private final ArrayList<AtomicLong> rejectedCalls;
 
   /**
    * Create a FairCallQueue.
@@ -89,12 +94,18 @@ public FairCallQueue(int capacity, String ns, Configuration conf) {
 
     this.queues = new ArrayList<BlockingQueue<E>>(numQueues);
     this.overflowedCalls = new ArrayList<AtomicLong>(numQueues);
+    this.rejectedCalls = new ArrayList<AtomicLong>(numQueues);
 
     for(int i=0; i < numQueues; i++) {
       this.queues.add(new LinkedBlockingQueue<E>(capacity));
       this.overflowedCalls.add(new AtomicLong(0));
+      this.rejectedCalls.add(new AtomicLong(0));
     }
 
+    this.clientBackOffEnabled = conf.getBoolean(
+      ns + "." + CommonConfigurationKeys.IPC_BACKOFF_ENABLE,
+      CommonConfigurationKeys.IPC_BACKOFF_ENABLE_DEFAULT);
+
     this.scheduler = new DecayRpcScheduler(numQueues, ns, conf);
     this.multiplexer = new WeightedRoundRobinMultiplexer(numQueues, ns, conf);
 
@@ -140,6 +151,16 @@ private BlockingQueue<E> getFirstNonEmptyQueue(int startIdx) {
     return null;
   }
 
+  /**
+   * Feed back the cost of a processed call to the scheduler.
+   * @see RpcScheduler#addResponseTime(Schedulable, long, long, long)
+   */
+  public void addResponseTime(Schedulable obj, long processingTime,
+      long lockSharedTime, long lockExclusiveTime) {
+    scheduler.addResponseTime(obj, processingTime, lockSharedTime,
+      lockExclusiveTime);
+  }
+
   /* AbstractQueue and BlockingQueue methods */
 
   /**
@@ -150,7 +171,8 @@ private BlockingQueue<E> getFirstNonEmptyQueue(int startIdx) {
    *
    * But differ in how they handle overflow:
    * - Put will move on to the next queue until it lands on the last queue
-   * - Offer does not attempt other queues on overflow
+   * - Offer does not attempt other queues on overflow, unless client backoff
+   *   is enabled: then it moves on like put, and fails on the last queue
    */
   @Override
   public void put(E e) throws InterruptedException {
@@ -197,6 +219,9 @@ public boolean offer(E e, long timeout, TimeUnit unit)
   @Override
   public boolean offer(E e) {
     int priorityLevel = scheduler.getPriorityLevel(e);
+    if (clientBackOffEnabled) {
+      return offerOrReject(e, priorityLevel);
+    }
     BlockingQueue<E> q = this.queues.get(priorityLevel);
     boolean ret = q.offer(e);
 
@@ -205,6 +230,26 @@ public boolean offer(E e) {
     return ret;
   }
 
+  /**
+   * Offer e to the queue of its priority level and, on overflow, to the next
+   * ones like put does, but reject it rather than block if the last queue is
+   * full too. The calls of the heaviest users, which only have the last
+   * queue, are therefore the first to be rejected.
+   */
+  private boolean offerOrReject(E e, int priorityLevel) {
+    final int numLevels = this.queues.size();
+    for (int level = priorityLevel; level < numLevels; level++) {
+      if (this.queues.get(level).offer(e)) {
+        signalNotEmpty();
+        return true;
+      }
+      this.overflowedCalls.get(level).getAndIncrement();
+    }
+
+    this.rejectedCalls.get(priorityLevel).getAndIncrement();
+    return false;
+  }
+
   @Override
   public E take() throws InterruptedException {
     int startIdx = this.multiplexer.getAndAdvanceCurrentIndex();
@@ -412,6 +457,16 @@ public long[] getOverflowedCalls() {
       return obj.getOverflowedCalls();
     }
 
+    @Override
+    public long[] getRejectedCalls() {
+      FairCallQueue obj = this.delegate.get();
+      if (obj == null) {
+        return new long[]{};
+      }
+
+      return obj.getRejectedCalls();
+    }
+
     @Override public int getRevision() {
       return revisionNumber;
     }
@@ -436,6 +491,15 @@ public long[] getOverflowedCalls() {
     return calls;
   }
 
+  public long[] getRejectedCalls() {
+    int numQueues = queues.size();
+    long[] calls = new long[numQueues];
+    for (int i=0; i < numQueues; i++) {
+      calls[i] = rejectedCalls.get(i).get();
+    }
+    return calls;
+  }
+
   // For testing
   @VisibleForTesting
   public void setScheduler(RpcScheduler newScheduler) {
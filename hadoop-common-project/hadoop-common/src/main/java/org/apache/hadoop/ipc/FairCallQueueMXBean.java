@@ -23,5 +23,7 @@ public interface FairCallQueueMXBean {
   // level.
   int[] getQueueSizes();
   long[] getOverflowedCalls();
+  // Calls rejected for client backoff, by the priority they were given
+  long[] getRejectedCalls();
   int getRevision();
 }
\ No newline at end of file
@@ -20,11 +20,13 @@
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -53,7 +55,12 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors.MethodDescriptor;
 import com.google.protobuf.GeneratedMessage;
@@ -76,6 +83,23 @@ public class ProtobufRpcEngine implements RpcEngine {
 
   private static final ClientCache CLIENTS = new ClientCache();
 
+  private static final ThreadLocal<ListenableFuture<Message>>
+      ASYNC_RETURN_MESSAGE = new ThreadLocal<ListenableFuture<Message>>();
+
+  /**
+   * Return the future response of the last call made by the current thread
+   * in {@link Client#setAsynchronousMode asynchronous mode} and forget it,
+   * or null if there is none.  The proxy method itself returns null for
+   * such calls.
+   */
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  public static ListenableFuture<Message> getAsyncReturnMessage() {
+    final ListenableFuture<Message> message = ASYNC_RETURN_MESSAGE.get();
+    ASYNC_RETURN_MESSAGE.set(null);
+    return message;
+  }
+
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout) throws IOException {
@@ -98,9 +122,28 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Construct a client-side proxy object whose calls carry the state id of
+   * the given alignment context, if not null.
+   * @see RPC#getProtocolProxy(Class, long, InetSocketAddress,
+   *   UserGroupInformation, Configuration, SocketFactory, int, RetryPolicy,
+   *   AtomicBoolean, AlignmentContext)
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+      InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
+      SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
 
     final Invoker invoker = new Invoker(protocol, addr, ticket, conf, factory,
-        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth,
+        alignmentContext);
     return new ProtocolProxy<T>(protocol, (T) Proxy.newProxyInstance(
         protocol.getClassLoader(), new Class[]{protocol}, invoker), false);
   }
@@ -125,15 +168,18 @@ private static class Invoker implements RpcInvocationHandler {
     private final long clientProtocolVersion;
     private final String protocolName;
     private AtomicBoolean fallbackToSimpleAuth;
+    private AlignmentContext alignmentContext;
 
     private Invoker(Class<?> protocol, InetSocketAddress addr,
         UserGroupInformation ticket, Configuration conf, SocketFactory factory,
         int rpcTimeout, RetryPolicy connectionRetryPolicy,
-        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+        AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+        throws IOException {
       this(protocol, Client.ConnectionId.getConnectionId(
           addr, protocol, ticket, rpcTimeout, connectionRetryPolicy, conf),
           conf, factory);
       this.fallbackToSimpleAuth = fallbackToSimpleAuth;
+      this.alignmentContext = alignmentContext;
     }
     
     /**
@@ -228,7 +274,8 @@ public Object invoke(Object proxy, Method method, Object[] args)
       try {
         val = (RpcResponseWrapper) client.call(RPC.RpcKind.RPC_PROTOCOL_BUFFER,
             new RpcRequestWrapper(rpcRequestHeader, theRequest), remoteId,
-            fallbackToSimpleAuth);
+            RPC.RPC_SERVICE_CLASS_DEFAULT, fallbackToSimpleAuth,
+            alignmentContext);
 
       } catch (Throwable e) {
         if (LOG.isTraceEnabled()) {
@@ -245,21 +292,36 @@ public Object invoke(Object proxy, Method method, Object[] args)
         if (traceScope != null) traceScope.close();
       }
 
-      if (LOG.isDebugEnabled()) {
-        long callTime = Time.now() - startTime;
-        LOG.debug("Call: " + method.getName() + " took " + callTime + "ms");
-      }
-      
       Message prototype = null;
       try {
         prototype = getReturnProtoType(method);
       } catch (Exception e) {
         throw new ServiceException(e);
       }
+
+      if (Client.isAsynchronousMode()) {
+        final Message responsePrototype = prototype;
+        ASYNC_RETURN_MESSAGE.set(Futures.transform(
+            Client.getAsyncRpcResponse(),
+            new AsyncFunction<Writable, Message>() {
+              @Override
+              public ListenableFuture<Message> apply(Writable response)
+                  throws Exception {
+                return Futures.immediateFuture(
+                    ((RpcResponseWrapper) response).getMessage(
+                        responsePrototype));
+              }
+            }));
+        return null;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        long callTime = Time.now() - startTime;
+        LOG.debug("Call: " + method.getName() + " took " + callTime + "ms");
+      }
       Message returnMessage;
       try {
-        returnMessage = prototype.newBuilderForType()
-            .mergeFrom(val.theResponseRead).build();
+        returnMessage = val.getMessage(prototype);
 
         if (LOG.isTraceEnabled()) {
           LOG.trace(Thread.currentThread().getId() + ": Response <- " +
@@ -302,7 +364,63 @@ public ConnectionId getConnectionId() {
 
   interface RpcWrapper extends Writable {
     int getLength();
+
+    /**
+     * Serialize to a CodedOutputStream; exactly {@link #getLength()} bytes
+     * are written.
+     */
+    void writeTo(CodedOutputStream out) throws IOException;
+
+    /**
+     * Read the wrapper from the remaining bytes of a heap buffer. The message
+     * bytes are referenced in place rather than copied, so the buffer must
+     * not be reused by the caller afterwards.
+     */
+    void readFields(ByteBuffer buf) throws IOException;
+  }
+
+  /**
+   * Wrap the varint-delimited field at the current position of the coded
+   * stream, which reads the remaining bytes of buf, without copying it.
+   */
+  private static ByteBuffer sliceDelimited(ByteBuffer buf,
+      CodedInputStream in) throws IOException {
+    final int length = in.readRawVarint32();
+    final int offset = buf.position() + in.getTotalBytesRead();
+    if (length < 0 || offset + length > buf.limit()) {
+      throw new EOFException("Truncated protobuf message of length " + length);
+    }
+    in.skipRawBytes(length);
+    final ByteBuffer dup = buf.duplicate();
+    dup.limit(offset + length).position(offset);
+    return dup.slice();
+  }
+
+  private static CodedInputStream newCodedInput(ByteBuffer buf) {
+    return CodedInputStream.newInstance(buf.array(),
+        buf.arrayOffset() + buf.position(), buf.remaining());
+  }
+
+  /** Parse a message held in a heap buffer without copying it first. */
+  private static Message parseMessage(Message prototype, ByteBuffer buf)
+      throws IOException {
+    return prototype.newBuilderForType().mergeFrom(buf.array(),
+        buf.arrayOffset() + buf.position(), buf.remaining()).build();
+  }
+
+  private static byte[] toByteArray(ByteBuffer buf) {
+    if (buf == null) {
+      return null;
+    }
+    if (buf.arrayOffset() == 0 && buf.position() == 0 &&
+        buf.remaining() == buf.array().length) {
+      return buf.array();
+    }
+    final byte[] bytes = new byte[buf.remaining()];
+    buf.duplicate().get(bytes);
+    return bytes;
   }
+
   /**
    * Wrapper for Protocol Buffer Requests
    * 
@@ -314,7 +432,7 @@ interface RpcWrapper extends Writable {
     implements RpcWrapper {
     T requestHeader;
     Message theRequest; // for clientSide, the request is here
-    byte[] theRequestRead; // for server side, the request is here
+    ByteBuffer theRequestRead; // for server side, the request is here
 
     public RpcMessageWithHeader() {
     }
@@ -332,16 +450,34 @@ public void write(DataOutput out) throws IOException {
       theRequest.writeDelimitedTo(os);
     }
 
+    @Override
+    public void writeTo(CodedOutputStream out) throws IOException {
+      out.writeRawVarint32(requestHeader.getSerializedSize());
+      requestHeader.writeTo(out);
+      out.writeRawVarint32(theRequest.getSerializedSize());
+      theRequest.writeTo(out);
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
-      requestHeader = parseHeaderFrom(readVarintBytes(in));
-      theRequestRead = readMessageRequest(in);
+      requestHeader = parseHeaderFrom(
+          CodedInputStream.newInstance(readVarintBytes(in)));
+      theRequestRead = hasMessageBody() ?
+          ByteBuffer.wrap(readVarintBytes(in)) : null;
     }
 
-    abstract T parseHeaderFrom(byte[] bytes) throws IOException;
+    @Override
+    public void readFields(ByteBuffer buf) throws IOException {
+      final CodedInputStream in = newCodedInput(buf);
+      requestHeader = parseHeaderFrom(newCodedInput(sliceDelimited(buf, in)));
+      theRequestRead = hasMessageBody() ? sliceDelimited(buf, in) : null;
+    }
+
+    abstract T parseHeaderFrom(CodedInputStream in) throws IOException;
 
-    byte[] readMessageRequest(DataInput in) throws IOException {
-      return readVarintBytes(in);
+    /** @return whether a message follows the header */
+    boolean hasMessageBody() {
+      return true;
     }
 
     private static byte[] readVarintBytes(DataInput in) throws IOException {
@@ -356,7 +492,11 @@ public T getMessageHeader() {
     }
 
     public byte[] getMessageBytes() {
-      return theRequestRead;
+      return toByteArray(theRequestRead);
+    }
+
+    Message getMessage(Message prototype) throws IOException {
+      return parseMessage(prototype, theRequestRead);
     }
     
     @Override
@@ -366,7 +506,7 @@ public int getLength() {
       if (theRequest != null) {
         reqLen = theRequest.getSerializedSize();
       } else if (theRequestRead != null ) {
-        reqLen = theRequestRead.length;
+        reqLen = theRequestRead.remaining();
       } else {
         throw new IllegalArgumentException(
             "getLength on uninitialized RpcWrapper");      
@@ -387,8 +527,9 @@ public RpcRequestWrapper(
     }
     
     @Override
-    RequestHeaderProto parseHeaderFrom(byte[] bytes) throws IOException {
-      return RequestHeaderProto.parseFrom(bytes);
+    RequestHeaderProto parseHeaderFrom(CodedInputStream in)
+        throws IOException {
+      return RequestHeaderProto.parseFrom(in);
     }
     
     @Override
@@ -409,8 +550,9 @@ public RpcRequestMessageWrapper(
     }
     
     @Override
-    RpcRequestHeaderProto parseHeaderFrom(byte[] bytes) throws IOException {
-      return RpcRequestHeaderProto.parseFrom(bytes);
+    RpcRequestHeaderProto parseHeaderFrom(CodedInputStream in)
+        throws IOException {
+      return RpcRequestHeaderProto.parseFrom(in);
     }
   }
 
@@ -425,20 +567,21 @@ public RpcResponseMessageWrapper(
     }
     
     @Override
-    byte[] readMessageRequest(DataInput in) throws IOException {
+    boolean hasMessageBody() {
       // error message contain no message body
       switch (requestHeader.getStatus()) {
         case ERROR:
         case FATAL:
-          return null;
+          return false;
         default:
-          return super.readMessageRequest(in);
+          return true;
       }
     }
     
     @Override
-    RpcResponseHeaderProto parseHeaderFrom(byte[] bytes) throws IOException {
-      return RpcResponseHeaderProto.parseFrom(bytes);
+    RpcResponseHeaderProto parseHeaderFrom(CodedInputStream in)
+        throws IOException {
+      return RpcResponseHeaderProto.parseFrom(in);
     }
   }
 
@@ -452,7 +595,7 @@ RpcResponseHeaderProto parseHeaderFrom(byte[] bytes) throws IOException {
   @InterfaceAudience.LimitedPrivate({"RPC"}) // temporarily exposed 
   public static class RpcResponseWrapper implements RpcWrapper {
     Message theResponse; // for senderSide, the response is here
-    byte[] theResponseRead; // for receiver side, the response is here
+    ByteBuffer theResponseRead; // for receiver side, the response is here
 
     public RpcResponseWrapper() {
     }
@@ -467,11 +610,27 @@ public void write(DataOutput out) throws IOException {
       theResponse.writeDelimitedTo(os);   
     }
 
+    @Override
+    public void writeTo(CodedOutputStream out) throws IOException {
+      out.writeRawVarint32(theResponse.getSerializedSize());
+      theResponse.writeTo(out);
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
       int length = ProtoUtil.readRawVarint32(in);
-      theResponseRead = new byte[length];
-      in.readFully(theResponseRead);
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      theResponseRead = ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public void readFields(ByteBuffer buf) throws IOException {
+      theResponseRead = sliceDelimited(buf, newCodedInput(buf));
+    }
+
+    Message getMessage(Message prototype) throws IOException {
+      return parseMessage(prototype, theResponseRead);
     }
     
     @Override
@@ -480,7 +639,7 @@ public int getLength() {
       if (theResponse != null) {
         resLen = theResponse.getSerializedSize();
       } else if (theResponseRead != null ) {
-        resLen = theResponseRead.length;
+        resLen = theResponseRead.remaining();
       } else {
         throw new IllegalArgumentException(
             "getLength on uninitialized RpcWrapper");      
@@ -538,6 +697,38 @@ numReaders, queueSizePerHandler, conf, classNameBase(protocolImpl
       registerProtocolAndImpl(RPC.RpcKind.RPC_PROTOCOL_BUFFER, protocolClass,
           protocolImpl);
     }
+
+    /**
+     * Defer the response of the protobuf call which the current handler is
+     * processing, so that the handler can go back to the pool while the call
+     * waits, e.g. for a sync or a downstream RPC; see
+     * {@link org.apache.hadoop.ipc.Server.Call#deferResponse()}. The blocking
+     * method may then return null, and the response is sent later through
+     * the returned callback.
+     * @return the callback which completes the call
+     */
+    @InterfaceStability.Unstable
+    public static ProtobufRpcEngineCallback registerForDeferredResponse() {
+      final Call call = getCurCall().get();
+      Preconditions.checkState(call != null,
+          "No call is being processed by this thread");
+      call.deferResponse();
+      return new ProtobufRpcEngineCallback() {
+        @Override
+        public void setResponse(Message message) {
+          call.setDeferredResponse(new RpcResponseWrapper(message));
+        }
+
+        @Override
+        public void error(Throwable t) {
+          // unwrap like the invoker does for the blocking method
+          if (t instanceof ServiceException && t.getCause() != null) {
+            t = t.getCause();
+          }
+          call.setDeferredError(t);
+        }
+      };
+    }
     
     /**
      * Protobuf invoker for {@link RpcInvoker}
@@ -604,8 +795,7 @@ public Writable call(RPC.Server server, String protocol,
           throw new RpcNoSuchMethodException(msg);
         }
         Message prototype = service.getRequestPrototype(methodDescriptor);
-        Message param = prototype.newBuilderForType()
-            .mergeFrom(request.theRequestRead).build();
+        Message param = request.getMessage(prototype);
         
         Message result;
         long startTime = Time.now();
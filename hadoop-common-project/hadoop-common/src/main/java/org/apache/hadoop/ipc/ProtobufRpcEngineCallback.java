@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.protobuf.Message;
+
+/**
+ * Completes a protobuf call whose response was deferred by
+ * {@link ProtobufRpcEngine.Server#registerForDeferredResponse()}. Exactly one
+ * of the methods must be called, from any thread, once the result of the
+ * call is known.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "YARN"})
+@InterfaceStability.Unstable
+public interface ProtobufRpcEngineCallback {
+
+  /** Send the response of the call. */
+  void setResponse(Message message);
+
+  /** Fail the call with the given error. */
+  void error(Throwable t);
+}
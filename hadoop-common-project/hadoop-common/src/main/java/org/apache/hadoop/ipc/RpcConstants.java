@@ -36,6 +36,9 @@ private RpcConstants() {
   public static final byte[] DUMMY_CLIENT_ID = new byte[0];
   
   public static final int INVALID_RETRY_COUNT = -1;
+
+  /** The state id of a client which did not send one. */
+  public static final long INVALID_STATE_ID = Long.MIN_VALUE;
   
   /**
    * The first four bytes of Hadoop RPC connections
@@ -26,4 +26,12 @@ public interface RpcScheduler {
    * Returns priority level greater than zero as a hint for scheduling.
    */
   int getPriorityLevel(Schedulable obj);
+
+  /**
+   * Reports how long a handler took to process a call, and for how much of
+   * that time it held a lock shared or exclusively, all in nanoseconds. The
+   * scheduler may use this to charge the caller by cost.
+   */
+  void addResponseTime(Schedulable obj, long processingTime,
+      long lockSharedTime, long lockExclusiveTime);
 }
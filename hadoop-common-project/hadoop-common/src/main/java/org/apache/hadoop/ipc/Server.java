@@ -122,6 +122,7 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
@@ -327,6 +328,16 @@ public static byte[] getClientId() {
     Call call = CurCall.get();
     return call != null ? call.clientId : RpcConstants.DUMMY_CLIENT_ID;
   }
+
+  /**
+   * @return the state id the client of the current RPC request has seen, or
+   *         {@link RpcConstants#INVALID_STATE_ID} if the client did not send
+   *         one or the server has no {@link AlignmentContext}.
+   */
+  public static long getClientStateId() {
+    Call call = CurCall.get();
+    return call != null ? call.clientStateId : RpcConstants.INVALID_STATE_ID;
+  }
   
   /** Returns remote address as a string when invoked inside an RPC.
    *  Returns null in case of an error.
@@ -352,6 +363,25 @@ public static boolean isRpcInvocation() {
     return CurCall.get() != null;
   }
 
+  /**
+   * Charge the current RPC call with time spent holding a lock which blocks
+   * other calls, such as the NameNode's namesystem lock, so that a
+   * cost-based {@link RpcScheduler} can weigh it. Does nothing when not
+   * invoked inside an RPC.
+   * @param exclusive whether the lock was held exclusively
+   * @param nanos how long the lock was held
+   */
+  public static void addLockHoldTime(boolean exclusive, long nanos) {
+    Call call = CurCall.get();
+    if (call != null) {
+      if (exclusive) {
+        call.lockExclusiveTime += nanos;
+      } else {
+        call.lockSharedTime += nanos;
+      }
+    }
+  }
+
   private String bindAddress; 
   private int port;                               // port we listen on
   private int handlerCount;                       // number of handler threads
@@ -375,6 +405,7 @@ public static boolean isRpcInvocation() {
 
   volatile private boolean running = true;         // true while server runs
   private CallQueueManager<Call> callQueue;
+  private volatile AlignmentContext alignmentContext;
 
   // maintains the set of client connections and handles idle timeouts
   private ConnectionManager connectionManager;
@@ -510,6 +541,12 @@ public static class Call implements Schedulable {
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
     private final Span traceSpan; // the tracing span on the server side
+    private long clientStateId = RpcConstants.INVALID_STATE_ID;
+    private long processingStartTime;     // when a handler took the call
+    private long lockSharedTime;          // nanos spent holding a lock shared
+    private long lockExclusiveTime;       // and exclusively, while processing
+    private boolean deferredResponse;     // the response is sent later
+    private boolean deferredResponseSent;
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -545,6 +582,61 @@ public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
 
+    /**
+     * Detach this call from the handler which is processing it. Once the
+     * protocol implementation returns, the handler goes back to the pool
+     * without responding, and the response is sent later, from any thread,
+     * by {@link #setDeferredResponse(Writable)} or
+     * {@link #setDeferredError(Throwable)}. Must be called by the handler,
+     * e.g. on the call returned by {@link Server#getCurCall()}.
+     */
+    @InterfaceStability.Unstable
+    public synchronized void deferResponse() {
+      this.deferredResponse = true;
+    }
+
+    synchronized boolean isResponseDeferred() {
+      return deferredResponse;
+    }
+
+    /** Send the response of a deferred call. */
+    @InterfaceStability.Unstable
+    public void setDeferredResponse(Writable response) {
+      sendDeferredResponse(response, null);
+    }
+
+    /** Send the failure of a deferred call. */
+    @InterfaceStability.Unstable
+    public void setDeferredError(Throwable t) {
+      sendDeferredResponse(null, t == null ? new IOException("User code"
+          + " failed the deferred call without an exception") : t);
+    }
+
+    /**
+     * Claim the sending of the response of a deferred call.
+     * @return false if the response has already been sent
+     */
+    synchronized boolean markDeferredResponseSent() {
+      if (deferredResponseSent) {
+        return false;
+      }
+      deferredResponseSent = true;
+      return true;
+    }
+
+    private void sendDeferredResponse(Writable response, Throwable t) {
+      Preconditions.checkState(isResponseDeferred(),
+          "The response of %s is not deferred", this);
+      Preconditions.checkState(markDeferredResponseSent(),
+          "The response of %s has already been sent", this);
+      try {
+        connection.getServer().sendResponse(this, response, t,
+            new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE));
+      } catch (IOException e) {
+        LOG.info("Failed to send the deferred response of " + this, e);
+      }
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1223,6 +1315,11 @@ private void decRpcCount() {
     private void incRpcCount() {
       rpcCount.incrementAndGet();
     }
+
+    /** The server which accepted this connection. */
+    Server getServer() {
+      return Server.this;
+    }
     
     private UserGroupInformation getAuthorizedUgi(String authorizedId)
         throws InvalidToken, AccessControlException {
@@ -1780,7 +1877,7 @@ private void processOneRpc(byte[] buf)
               RpcErrorCodeProto.FATAL_INVALID_RPC_HEADER,
               "Connection context not established");
         } else {
-          processRpcRequest(header, dis);
+          processRpcRequest(header, dis, buf);
         }
       } catch (WrappedRpcServerException wrse) { // inform client of error
         Throwable ioe = wrse.getCause();
@@ -1827,14 +1924,17 @@ private void checkRpcHeaders(RpcRequestHeaderProto header)
      * have been already read
      * @param header - RPC request header
      * @param dis - stream to request payload
+     * @param buf - the buffer dis reads from; protobuf requests keep a
+     *   reference to their payload in it instead of copying it out
      * @throws WrappedRpcServerException - due to fatal rpc layer issues such
      *   as invalid header or deserialization error. In this case a RPC fatal
      *   status response will later be sent back to client.
+     * @throws IOException - failed to tell the client to back off
      * @throws InterruptedException
      */
     private void processRpcRequest(RpcRequestHeaderProto header,
-        DataInputStream dis) throws WrappedRpcServerException,
-        InterruptedException {
+        DataInputStream dis, byte[] buf) throws WrappedRpcServerException,
+        IOException, InterruptedException {
       Class<? extends Writable> rpcRequestClass = 
           getRpcRequestWrapper(header.getRpcKind());
       if (rpcRequestClass == null) {
@@ -1848,7 +1948,13 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Writable rpcRequest;
       try { //Read the rpc request
         rpcRequest = ReflectionUtils.newInstance(rpcRequestClass, conf);
-        rpcRequest.readFields(dis);
+        if (rpcRequest instanceof ProtobufRpcEngine.RpcWrapper) {
+          final int offset = buf.length - dis.available();
+          ((ProtobufRpcEngine.RpcWrapper) rpcRequest).readFields(
+              ByteBuffer.wrap(buf, offset, buf.length - offset));
+        } else {
+          rpcRequest.readFields(dis);
+        }
       } catch (Throwable t) { // includes runtime exception from newInstance
         LOG.warn("Unable to read call parameters for client " +
                  getHostAddress() + "on connection protocol " +
@@ -1869,11 +1975,40 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceSpan);
+      if (alignmentContext != null && header.hasStateId()) {
+        call.clientStateId = alignmentContext.receiveRequestState(header);
+      }
 
-      callQueue.put(call);              // queue the call; maybe blocked here
+      // queue the call; maybe blocked here, unless client backoff is enabled
+      if (!callQueue.putOrBackOff(call)) {
+        backOff(call);
+        return;
+      }
       incRpcCount();  // Increment the rpc count
     }
 
+    /**
+     * Fail a call which the call queue has no room for with a
+     * RetriableException, rather than block this reader and all the other
+     * connections it serves. Clients whose retry policy handles
+     * RetriableException, such as the failover proxies, back off and retry.
+     */
+    private void backOff(Call call) throws IOException {
+      rpcMetrics.incrClientBackoff();
+      incRpcCount();  // the responder decrements it once the call is answered
+      if (call.traceSpan != null) {
+        call.traceSpan.stop();
+      }
+      final RetriableException e =
+          new RetriableException("Server is too busy.");
+      synchronized (responseQueue) {
+        setupResponse(new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE), call,
+            RpcStatusProto.ERROR, RpcErrorCodeProto.ERROR_RPC_SERVER, null,
+            e.getClass().getName(), e.getMessage());
+        responder.doRespond(call);
+      }
+    }
+
 
     /**
      * Establish RPC connection setup by negotiating SASL if required, then
@@ -2022,13 +2157,12 @@ public void run() {
             LOG.info(Thread.currentThread().getName() + ": skipped " + call);
             continue;
           }
-          String errorClass = null;
-          String error = null;
-          RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
-          RpcErrorCodeProto detailedErr = null;
           Writable value = null;
+          Throwable error = null;
 
           CurCall.set(call);
+          call.processingStartTime = Time.now();
+          final long startNanos = System.nanoTime();
           if (call.traceSpan != null) {
             traceScope = Trace.continueSpan(call.traceSpan);
           }
@@ -2054,55 +2188,18 @@ public Writable run() throws Exception {
                   );
             }
           } catch (Throwable e) {
-            if (e instanceof UndeclaredThrowableException) {
-              e = e.getCause();
-            }
-            String logMsg = Thread.currentThread().getName() + ", call " + call;
-            if (exceptionsHandler.isTerse(e.getClass())) {
-              // Don't log the whole stack trace. Way too noisy!
-              LOG.info(logMsg + ": " + e);
-            } else if (e instanceof RuntimeException || e instanceof Error) {
-              // These exception types indicate something is probably wrong
-              // on the server side, as opposed to just a normal exceptional
-              // result.
-              LOG.warn(logMsg, e);
-            } else {
-              LOG.info(logMsg, e);
-            }
-            if (e instanceof RpcServerException) {
-              RpcServerException rse = ((RpcServerException)e); 
-              returnStatus = rse.getRpcStatusProto();
-              detailedErr = rse.getRpcErrorCodeProto();
-            } else {
-              returnStatus = RpcStatusProto.ERROR;
-              detailedErr = RpcErrorCodeProto.ERROR_APPLICATION;
-            }
-            errorClass = e.getClass().getName();
-            error = StringUtils.stringifyException(e);
-            // Remove redundant error class name from the beginning of the stack trace
-            String exceptionHdr = errorClass + ": ";
-            if (error.startsWith(exceptionHdr)) {
-              error = error.substring(exceptionHdr.length());
-            }
+            error = e;
           }
           CurCall.set(null);
-          synchronized (call.connection.responseQueue) {
-            // setupResponse() needs to be sync'ed together with 
-            // responder.doResponse() since setupResponse may use
-            // SASL to encrypt response data and SASL enforces
-            // its own message ordering.
-            setupResponse(buf, call, returnStatus, detailedErr, 
-                value, errorClass, error);
-            
-            // Discard the large buf and reset it back to smaller size 
-            // to free up heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
-            }
-            responder.doRespond(call);
+          callQueue.addResponseTime(call, System.nanoTime() - startNanos,
+              call.lockSharedTime, call.lockExclusiveTime);
+          if (call.isResponseDeferred()
+              && (error == null || !call.markDeferredResponseSent())) {
+            // the protocol implementation sends the response later, or the
+            // call failed after its response was already sent
+            continue;
           }
+          buf = sendResponse(call, value, error, buf);
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
             LOG.info(Thread.currentThread().getName() + " unexpectedly interrupted", e);
@@ -2285,6 +2382,80 @@ private void closeConnection(Connection connection) {
     connectionManager.close(connection);
   }
   
+  /**
+   * Respond to a call with its return value or with the error it failed with,
+   * and hand the response to the responder. Called by the handlers, and by
+   * whichever thread completes a deferred call.
+   * 
+   * @param call {@link Call} to respond to
+   * @param value return value for the IPC Call, if the call was successful
+   * @param e the error, if the call failed
+   * @param buf buffer to serialize the response into
+   * @return the buffer to use for the next response
+   * @throws IOException
+   */
+  private ByteArrayOutputStream sendResponse(Call call, Writable value,
+      Throwable e, ByteArrayOutputStream buf) throws IOException {
+    String errorClass = null;
+    String error = null;
+    RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
+    RpcErrorCodeProto detailedErr = null;
+    if (e != null) {
+      if (e instanceof UndeclaredThrowableException) {
+        e = e.getCause();
+      }
+      String logMsg = Thread.currentThread().getName() + ", call " + call;
+      if (exceptionsHandler.isTerse(e.getClass())) {
+        // Don't log the whole stack trace. Way too noisy!
+        LOG.info(logMsg + ": " + e);
+      } else if (e instanceof RuntimeException || e instanceof Error) {
+        // These exception types indicate something is probably wrong
+        // on the server side, as opposed to just a normal exceptional
+        // result.
+        LOG.warn(logMsg, e);
+      } else {
+        LOG.info(logMsg, e);
+      }
+      if (e instanceof RpcServerException) {
+        RpcServerException rse = ((RpcServerException)e); 
+        returnStatus = rse.getRpcStatusProto();
+        detailedErr = rse.getRpcErrorCodeProto();
+      } else {
+        returnStatus = RpcStatusProto.ERROR;
+        detailedErr = RpcErrorCodeProto.ERROR_APPLICATION;
+      }
+      errorClass = e.getClass().getName();
+      error = StringUtils.stringifyException(e);
+      // Remove redundant error class name from the beginning of the stack trace
+      String exceptionHdr = errorClass + ": ";
+      if (error.startsWith(exceptionHdr)) {
+        error = error.substring(exceptionHdr.length());
+      }
+    }
+    synchronized (call.connection.responseQueue) {
+      // setupResponse() needs to be sync'ed together with 
+      // responder.doResponse() since setupResponse may use
+      // SASL to encrypt response data and SASL enforces
+      // its own message ordering.
+      setupResponse(buf, call, returnStatus, detailedErr, 
+          value, errorClass, error);
+      
+      // Discard the large buf and reset it back to smaller size 
+      // to free up heap
+      if (buf.size() > maxRespSize) {
+        LOG.warn("Large response size " + buf.size() + " for call "
+            + call.toString());
+        buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+      }
+      responder.doRespond(call);
+    }
+    if (call.isResponseDeferred()) {
+      rpcMetrics.addDeferredRpcProcessingTime(
+          (int) (Time.now() - call.processingStartTime));
+    }
+    return buf;
+  }
+
   /**
    * Setup response for the IPC Call.
    * 
@@ -2309,6 +2480,9 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2316,7 +2490,24 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
       int fullLength  = CodedOutputStream.computeRawVarint32Size(headerLen) +
           headerLen;
       try {
-        if (rv instanceof ProtobufRpcEngine.RpcWrapper) {
+        if (rv instanceof ProtobufRpcEngine.RpcWrapper &&
+            !call.connection.useWrap) {
+          // serialize straight into an exactly sized buffer, avoiding the
+          // growth and final copy of responseBuf
+          ProtobufRpcEngine.RpcWrapper resWrapper =
+              (ProtobufRpcEngine.RpcWrapper) rv;
+          fullLength += resWrapper.getLength();
+          final byte[] response = new byte[4 + fullLength];
+          ByteBuffer.wrap(response).putInt(fullLength);
+          final CodedOutputStream cos =
+              CodedOutputStream.newInstance(response, 4, fullLength);
+          cos.writeRawVarint32(headerLen);
+          header.writeTo(cos);
+          resWrapper.writeTo(cos);
+          cos.checkNoSpaceLeft();
+          call.setResponse(ByteBuffer.wrap(response));
+          return;
+        } else if (rv instanceof ProtobufRpcEngine.RpcWrapper) {
           ProtobufRpcEngine.RpcWrapper resWrapper = 
               (ProtobufRpcEngine.RpcWrapper) rv;
           fullLength += resWrapper.getLength();
@@ -2430,6 +2621,14 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Sets the context which exchanges the server state id with the clients.
+   * Must be called before the server is started.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
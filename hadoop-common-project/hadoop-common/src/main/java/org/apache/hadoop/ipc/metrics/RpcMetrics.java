@@ -87,6 +87,8 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableQuantiles[] rpcQueueTimeMillisQuantiles;
   @Metric("Processsing time") MutableRate rpcProcessingTime;
   MutableQuantiles[] rpcProcessingTimeMillisQuantiles;
+  @Metric("Processing time of deferred calls, until their response")
+  MutableRate deferredRpcProcessingTime;
   @Metric("Number of authentication failures")
   MutableCounterLong rpcAuthenticationFailures;
   @Metric("Number of authentication successes")
@@ -95,6 +97,8 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableCounterLong rpcAuthorizationFailures;
   @Metric("Number of authorization sucesses")
   MutableCounterLong rpcAuthorizationSuccesses;
+  @Metric("Number of calls rejected for the client to back off")
+  MutableCounterLong rpcClientBackoff;
 
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
@@ -141,6 +145,14 @@ public void incrAuthorizationFailures() {
     rpcAuthorizationFailures.incr();
   }
 
+  /**
+   * One call was rejected because the call queue was full
+   */
+  //@Override
+  public void incrClientBackoff() {
+    rpcClientBackoff.incr();
+  }
+
   /**
    * Shutdown the instrumentation for the process
    */
@@ -192,4 +204,14 @@ public void addRpcProcessingTime(int processingTime) {
       }
     }
   }
+
+  /**
+   * Add the processing time of a call whose response was deferred, from
+   * when a handler took it until its response was sent
+   * @param processingTime the processing time
+   */
+  //@Override
+  public void addDeferredRpcProcessingTime(int processingTime) {
+    deferredRpcProcessingTime.add(processingTime);
+  }
 }
@@ -21,7 +21,10 @@
 import java.util.List;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -382,10 +385,210 @@ int getNumOfLeaves() {
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock();
 
+  /**
+   * The largest number of leaf parents for which {@link Snapshot} keeps a
+   * table of the distances between all of them.
+   */
+  static final int MAX_PARENTS_FOR_DISTANCE_TABLE = 1024;
+
+  /**
+   * An immutable view of the leaves of the tree, which lets the frequent
+   * queries of block placement and replica sorting run without taking
+   * {@link #netlock}.
+   * <p>
+   * The leaves are kept in the order of {@link InnerNode#getLeaf(int, Node)},
+   * so the leaves of any subtree are a contiguous range of {@link #leaves}.
+   * The nodes of the tree are not immutable, so the snapshot is built from
+   * scratch under the read lock after the tree has changed; it is dropped by
+   * every {@link #add(Node)} and {@link #remove(Node)}.
+   */
+  private static final class Snapshot {
+    /** A node and the range of the leaves of its subtree. */
+    private static final class Range {
+      private final Node node;
+      private final int start;
+      private final int end;
+
+      Range(Node node, int start, int end) {
+        this.node = node;
+        this.start = start;
+        this.end = end;
+      }
+
+      int size() {
+        return end - start;
+      }
+
+      boolean isWithin(Range r) {
+        return start >= r.start && end <= r.end;
+      }
+    }
+
+    private final Node[] leaves;
+    private int numOfLeaves = 0;
+    private final Map<Node, Integer> leafIndex =
+        new IdentityHashMap<Node, Integer>();
+    /** The ranges, by the normalized path of the nodes. */
+    private final Map<String, Range> ranges = new HashMap<String, Range>();
+    /** The index of the parent of each leaf in {@link #parents}. */
+    private final int[] leafParent;
+    /** The distinct parents of the leaves. */
+    private final List<InnerNode> parents = new ArrayList<InnerNode>();
+    /** The ancestors of each parent, from the parent up to the root. */
+    private final Node[][] ancestors;
+    /**
+     * The distances between the parents if there are not too many of them,
+     * or null.
+     */
+    private final byte[] distances;
+    private final int numOfRacks;
+
+    Snapshot(InnerNode root, int numOfRacks) {
+      this.numOfRacks = numOfRacks;
+      leaves = new Node[root.getNumOfLeaves()];
+      leafParent = new int[leaves.length];
+      add(root);
+      Preconditions.checkState(numOfLeaves == leaves.length,
+          "Found %s leaves, expected %s", numOfLeaves, leaves.length);
+      ancestors = new Node[parents.size()][];
+      for (int i = 0; i < ancestors.length; i++) {
+        final List<Node> path = new ArrayList<Node>();
+        for (Node n = parents.get(i); n != null; n = n.getParent()) {
+          path.add(n);
+        }
+        ancestors[i] = path.toArray(new Node[path.size()]);
+      }
+      final int numOfParents = parents.size();
+      if (numOfParents <= MAX_PARENTS_FOR_DISTANCE_TABLE) {
+        distances = new byte[numOfParents * numOfParents];
+        for (int i = 0; i < numOfParents; i++) {
+          for (int j = 0; j < i; j++) {
+            final byte d = (byte) computeParentDistance(i, j);
+            distances[i * numOfParents + j] = d;
+            distances[j * numOfParents + i] = d;
+          }
+        }
+      } else {
+        distances = null;
+      }
+    }
+
+    private void add(InnerNode node) {
+      final int start = numOfLeaves;
+      int parent = -1;
+      for (Node child : node.getChildren()) {
+        if (child instanceof InnerNode) {
+          add((InnerNode) child);
+          continue;
+        }
+        if (parent == -1) {
+          parent = parents.size();
+          parents.add(node);
+        }
+        ranges.put(NodeBase.normalize(NodeBase.getPath(child)),
+            new Range(child, numOfLeaves, numOfLeaves + 1));
+        leafIndex.put(child, numOfLeaves);
+        leafParent[numOfLeaves] = parent;
+        leaves[numOfLeaves++] = child;
+      }
+      // the path of an inner node wins over a leaf with an empty name
+      ranges.put(NodeBase.normalize(NodeBase.getPath(node)),
+          new Range(node, start, numOfLeaves));
+    }
+
+    /**
+     * @return twice the number of levels from the parents up to their
+     *         closest common ancestor.
+     */
+    private int computeParentDistance(int p1, int p2) {
+      final Node[] a1 = ancestors[p1];
+      final Node[] a2 = ancestors[p2];
+      int i = 0;
+      while (i < a1.length && i < a2.length && a1[i] != a2[i]) {
+        i++;
+      }
+      return 2 * i;
+    }
+
+    private int getParentDistance(int p1, int p2) {
+      if (p1 == p2) {
+        return 0;
+      }
+      return distances != null ? distances[p1 * parents.size() + p2]
+          : computeParentDistance(p1, p2);
+    }
+
+    /** @return the index of a leaf of the snapshot, or null. */
+    Integer indexOf(Node node) {
+      return leafIndex.get(node);
+    }
+
+    /** @return the distance between two distinct leaves. */
+    int getDistance(int i1, int i2) {
+      return getParentDistance(leafParent[i1], leafParent[i2]) + 2;
+    }
+
+    InnerNode getParent(int i) {
+      return parents.get(leafParent[i]);
+    }
+
+    boolean isSameParent(int i1, int i2) {
+      return leafParent[i1] == leafParent[i2];
+    }
+
+    /** @return the range of the node at the path, or null. */
+    Range getRange(String path) {
+      return ranges.get(NodeBase.normalize(path));
+    }
+
+    Node getLeaf(int i) {
+      return leaves[i];
+    }
+
+    int getNumOfLeaves() {
+      return leaves.length;
+    }
+  }
+
+  /** The snapshot of the current tree, or null if it has not been built. */
+  private volatile Snapshot snapshot;
+  private final Object snapshotLock = new Object();
+
   public NetworkTopology() {
     clusterMap = new InnerNode(InnerNode.ROOT);
   }
 
+  /**
+   * Drop the snapshot of the tree.  To be called by every method which
+   * changes the tree, right before it releases the write lock.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /** @return the snapshot of the tree, building it if necessary. */
+  private Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s != null) {
+      return s;
+    }
+    netlock.readLock().lock();
+    try {
+      // only one reader builds the snapshot; the writers are held off by
+      // the read lock until it is published
+      synchronized (snapshotLock) {
+        s = snapshot;
+        if (s == null) {
+          s = new Snapshot(clusterMap, numOfRacks);
+          snapshot = s;
+        }
+        return s;
+      }
+    } finally {
+      netlock.readLock().unlock();
+    }
+  }
+
   /** Add a leaf node
    * Update node counter & rack counter if necessary
    * @param node node to be added; can be null
@@ -430,6 +633,7 @@ public void add(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -498,6 +702,7 @@ public void remove(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -509,6 +714,9 @@ public void remove(Node node) {
    */
   public boolean contains(Node node) {
     if (node == null) return false;
+    if (getSnapshot().indexOf(node) != null) {
+      return true;
+    }
     netlock.readLock().lock();
     try {
       Node parent = node.getParent();
@@ -558,6 +766,11 @@ public String getRack(String loc) {
   
   /** @return the total number of racks */
   public int getNumOfRacks() {
+    // do not build a snapshot for this, it is called on every registration
+    final Snapshot s = snapshot;
+    if (s != null) {
+      return s.numOfRacks;
+    }
     netlock.readLock().lock();
     try {
       return numOfRacks;
@@ -568,6 +781,10 @@ public int getNumOfRacks() {
 
   /** @return the total number of leaf nodes */
   public int getNumOfLeaves() {
+    final Snapshot s = snapshot;
+    if (s != null) {
+      return s.getNumOfLeaves();
+    }
     netlock.readLock().lock();
     try {
       return clusterMap.getNumOfLeaves();
@@ -589,6 +806,12 @@ public int getDistance(Node node1, Node node2) {
     if (node1 == node2) {
       return 0;
     }
+    final Snapshot s = getSnapshot();
+    final Integer i1 = s.indexOf(node1);
+    final Integer i2 = s.indexOf(node2);
+    if (i1 != null && i2 != null) {
+      return s.getDistance(i1, i2);
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -634,7 +857,16 @@ public boolean isOnSameRack( Node node1,  Node node2) {
     if (node1 == null || node2 == null) {
       return false;
     }
-      
+    final Snapshot s = getSnapshot();
+    final Integer i1 = s.indexOf(node1);
+    final Integer i2 = s.indexOf(node2);
+    if (i1 != null && i2 != null) {
+      return s.isSameParent(i1, i2);
+    } else if (i2 != null) {
+      // the reader of sortByDistance is often not a datanode
+      return node1.getParent() == s.getParent(i2);
+    }
+
     netlock.readLock().lock();
     try {
       return isSameParents(node1, node2);
@@ -688,19 +920,51 @@ void setRandomSeed(long seed) {
    * @return the chosen node
    */
   public Node chooseRandom(String scope) {
+    String excludedScope = null;
+    if (scope.startsWith("~")) {
+      excludedScope = scope.substring(1);
+      scope = NodeBase.ROOT;
+      if (scope.startsWith(excludedScope)) {
+        return null;
+      }
+      if (!excludedScope.startsWith(scope)) {
+        excludedScope = null;
+      }
+    }
+    final Snapshot s = getSnapshot();
+    final Snapshot.Range range = s.getRange(scope);
+    final Snapshot.Range excludedRange =
+        excludedScope == null ? null : s.getRange(excludedScope);
+    if (range != null && (excludedScope == null
+        || (excludedRange != null && excludedRange.isWithin(range)))) {
+      if (!(range.node instanceof InnerNode)) {
+        return range.node;
+      }
+      int numOfDatanodes = range.size();
+      if (excludedRange != null) {
+        numOfDatanodes -= excludedRange.size();
+      }
+      if (numOfDatanodes == 0) {
+        throw new InvalidTopologyException(
+            "Failed to find datanode (scope=\"" + String.valueOf(scope) +
+            "\" excludedScope=\"" + String.valueOf(excludedScope) + "\").");
+      }
+      int leafIndex = range.start + r.nextInt(numOfDatanodes);
+      if (excludedRange != null && leafIndex >= excludedRange.start) {
+        leafIndex += excludedRange.size();
+      }
+      return s.getLeaf(leafIndex);
+    }
+
     netlock.readLock().lock();
     try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1));
-      } else {
-        return chooseRandom(scope, null);
-      }
+      return chooseRandom(scope, excludedScope);
     } finally {
       netlock.readLock().unlock();
     }
   }
 
-  private Node chooseRandom(String scope, String excludedScope){
+  private Node chooseRandom(String scope, String excludedScope) {
     if (excludedScope != null) {
       if (scope.startsWith(excludedScope)) {
         return null;
@@ -769,6 +1033,33 @@ public int countNumOfAvailableNodes(String scope,
     scope = NodeBase.normalize(scope);
     int excludedCountInScope = 0; // the number of nodes in both scope & excludedNodes
     int excludedCountOffScope = 0; // the number of nodes outside scope & excludedNodes
+
+    final Snapshot s = getSnapshot();
+    final Snapshot.Range range = s.getRange(scope);
+    if (range != null) {
+      boolean found = true;
+      for (Node node : excludedNodes) {
+        final Snapshot.Range nodeRange = s.getRange(NodeBase.getPath(node));
+        if (nodeRange == null || nodeRange.node instanceof InnerNode) {
+          found = false;
+          break;
+        } else if (nodeRange.isWithin(range)) {
+          excludedCountInScope++;
+        } else {
+          excludedCountOffScope++;
+        }
+      }
+      if (found) {
+        if (isExcluded) {
+          return s.getNumOfLeaves() - range.size() - excludedCountOffScope;
+        } else {
+          return range.size() - excludedCountInScope;
+        }
+      }
+      excludedCountInScope = 0;
+      excludedCountOffScope = 0;
+    }
+
     netlock.readLock().lock();
     try {
       for (Node node : excludedNodes) {
@@ -212,6 +212,7 @@ public void add(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -244,6 +245,7 @@ public void remove(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -215,6 +215,13 @@ public boolean compare( byte buf[], int offset ) {
      return type.size == 0;
    }
    
+  /**
+   * Staging buffers for heap checksums that are verified or computed
+   * natively against direct data.
+   */
+  private static final DirectBufferPool directSumsPool =
+      new DirectBufferPool();
+
   private final Type type;
   private final Checksum summer;
   private final int bytesPerChecksum;
@@ -277,6 +284,8 @@ public void update( int b ) {
    * 
    * The 'mark' of the ByteBuffer parameters may be modified by this function,.
    * but the position is maintained.
+   * Direct and heap buffers may be mixed; the data itself is never copied
+   * when native checksums are available.
    *  
    * @param data the DirectByteBuffer pointing to the data to verify.
    * @param checksums the DirectByteBuffer pointing to a series of stored
@@ -297,9 +306,32 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
           fileName, basePos);
       return;
     }
-    if (NativeCrc32.isAvailable()) {
-      NativeCrc32.verifyChunkedSums(bytesPerChecksum, type.id, checksums, data,
-          fileName, basePos);
+    if (data.hasArray()) {
+      // Only the (small) checksum buffer is direct; copy it out so the data
+      // can still be verified in bulk without being copied.
+      byte[] sums = new byte[checksums.remaining()];
+      checksums.duplicate().get(sums);
+      verifyChunkedSums(
+          data.array(), data.arrayOffset() + data.position(), data.remaining(),
+          sums, 0, fileName, basePos);
+      return;
+    }
+    if (NativeCrc32.isAvailable() && data.isDirect()) {
+      if (checksums.isDirect()) {
+        NativeCrc32.verifyChunkedSums(bytesPerChecksum, type.id, checksums,
+            data, fileName, basePos);
+        return;
+      }
+      // The native code needs both buffers to be direct.
+      ByteBuffer directSums = directSumsPool.getBuffer(checksums.remaining());
+      try {
+        directSums.put(checksums.duplicate());
+        directSums.flip();
+        NativeCrc32.verifyChunkedSums(bytesPerChecksum, type.id, directSums,
+            data, fileName, basePos);
+      } finally {
+        directSumsPool.returnBuffer(directSums);
+      }
       return;
     }
     
@@ -378,7 +410,7 @@ private void verifyChunkedSums(
    * Calculate checksums for the given data.
    * 
    * The 'mark' of the ByteBuffer parameters may be modified by this function,
-   * but the position is maintained.
+   * but the position is maintained. Direct and heap buffers may be mixed.
    * 
    * @param data the DirectByteBuffer pointing to the data to checksum.
    * @param checksums the DirectByteBuffer into which checksums will be
@@ -386,7 +418,7 @@ private void verifyChunkedSums(
    *                  buffer to put the checksums.
    */
   public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
-    if (type.size == 0) return;
+    if (type.size == 0 || data.remaining() == 0) return;
     
     if (data.hasArray() && checksums.hasArray()) {
       calculateChunkedSums(data.array(), data.arrayOffset() + data.position(), data.remaining(),
@@ -394,9 +426,30 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
       return;
     }
 
-    if (NativeCrc32.isAvailable()) {
-      NativeCrc32.calculateChunkedSums(bytesPerChecksum, type.id,
-          checksums, data);
+    if (data.hasArray()) {
+      byte[] sums = new byte[getChecksumSize(data.remaining())];
+      calculateChunkedSums(data.array(), data.arrayOffset() + data.position(),
+          data.remaining(), sums, 0);
+      checksums.duplicate().put(sums);
+      return;
+    }
+
+    if (NativeCrc32.isAvailable() && data.isDirect()) {
+      if (checksums.isDirect()) {
+        NativeCrc32.calculateChunkedSums(bytesPerChecksum, type.id,
+            checksums, data);
+        return;
+      }
+      // The native code needs both buffers to be direct.
+      ByteBuffer directSums =
+          directSumsPool.getBuffer(getChecksumSize(data.remaining()));
+      try {
+        NativeCrc32.calculateChunkedSums(bytesPerChecksum, type.id,
+            directSums, data);
+        checksums.duplicate().put(directSums);
+      } finally {
+        directSumsPool.returnBuffer(directSums);
+      }
       return;
     }
     
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the vectored reads of the local file systems, which fall back to
+ * positional reads.
+ */
+public class TestVectoredRead {
+  private static final String TEST_ROOT_DIR =
+      System.getProperty("test.build.data", "build/test/data")
+      + "/work-dir/vectoredread";
+  private static final int FILE_LEN = 100000;
+
+  private final Path file = new Path(TEST_ROOT_DIR, "test-file");
+  private byte[] data;
+  private LocalFileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    fs.delete(new Path(TEST_ROOT_DIR), true);
+    data = new byte[FILE_LEN];
+    new Random(0xFEED).nextBytes(data);
+    final FSDataOutputStream out = fs.create(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+  }
+
+  @After
+  public void teardown() throws IOException {
+    fs.delete(new Path(TEST_ROOT_DIR), true);
+  }
+
+  private static List<FileRange> createRanges(boolean direct, int... args) {
+    final List<FileRange> ranges = new ArrayList<FileRange>();
+    for (int i = 0; i < args.length; i += 2) {
+      ranges.add(new FileRange(args[i], direct
+          ? ByteBuffer.allocateDirect(args[i + 1])
+          : ByteBuffer.allocate(args[i + 1])));
+    }
+    return ranges;
+  }
+
+  private void checkRanges(List<FileRange> ranges,
+      List<Future<ByteBuffer>> results) throws Exception {
+    assertEquals(ranges.size(), results.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      final FileRange range = ranges.get(i);
+      final ByteBuffer buf = results.get(i).get();
+      assertSame(range.getBuffer(), buf);
+      assertEquals(0, buf.position());
+      final byte[] actual = new byte[buf.remaining()];
+      buf.duplicate().get(actual);
+      final int offset = (int) range.getOffset();
+      assertArrayEquals(
+          Arrays.copyOfRange(data, offset, offset + actual.length), actual);
+    }
+  }
+
+  private void testReadVectored(FileSystem fs) throws Exception {
+    final FSDataInputStream in = fs.open(file);
+    try {
+      for (boolean direct : new boolean[] {false, true}) {
+        // unsorted, overlapping and longer than the copy buffer
+        final List<FileRange> ranges = createRanges(direct,
+            5000, 100, 0, 10, 5050, 1000, 20000, 70000, FILE_LEN - 1, 1);
+        checkRanges(ranges, in.readVectored(ranges));
+      }
+      assertEquals(0, in.getPos());
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testLocalFileSystem() throws Exception {
+    testReadVectored(fs);
+  }
+
+  @Test(timeout = 10000)
+  public void testRawLocalFileSystem() throws Exception {
+    testReadVectored(fs.getRaw());
+  }
+
+  @Test(timeout = 10000)
+  public void testReadPastEndOfFile() throws Exception {
+    final FSDataInputStream in = fs.open(file);
+    try {
+      final List<FileRange> ranges =
+          createRanges(false, 0, 100, FILE_LEN - 10, 20);
+      final List<Future<ByteBuffer>> results = in.readVectored(ranges);
+      assertSame(ranges.get(0).getBuffer(), results.get(0).get());
+      try {
+        results.get(1).get();
+        fail("Read past the end of the file");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testMergeRanges() {
+    final List<FileRange> ranges = createRanges(false,
+        1000, 100, 0, 100, 150, 100, 1050, 10, 5000, 100, 5200, 2000);
+    final List<CombinedFileRange> combined =
+        VectoredReadUtils.mergeRanges(ranges, 100, 1000);
+    assertEquals(4, combined.size());
+    // the gap of 50 bytes is merged
+    assertEquals(0, combined.get(0).getOffset());
+    assertEquals(250, combined.get(0).getLength());
+    assertEquals(2, combined.get(0).getRanges().size());
+    // the overlapping range is merged
+    assertEquals(1000, combined.get(1).getOffset());
+    assertEquals(100, combined.get(1).getLength());
+    assertEquals(2, combined.get(1).getRanges().size());
+    assertEquals(5000, combined.get(2).getOffset());
+    // a merged range would be longer than 1000 bytes
+    assertEquals(5200, combined.get(3).getOffset());
+    assertEquals(2000, combined.get(3).getLength());
+    assertEquals(1, combined.get(3).getRanges().size());
+  }
+}
@@ -22,6 +22,8 @@
 import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli.CommandLine;
@@ -48,6 +50,7 @@
 import org.apache.hadoop.util.ToolRunner;
 
 import com.google.common.base.Joiner;
+import com.google.common.primitives.Longs;
 import com.google.protobuf.BlockingService;
 
 /**
@@ -65,6 +68,10 @@ private static class MyOptions {
     private int serverThreads = 0;
     private int serverReaderThreads = 1;
     private int clientThreads = 0;
+    private int clientConnections = 0;
+    private boolean clientMultiplexed = false;
+    private int clientIoThreads =
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_DEFAULT;
     private String host = "0.0.0.0";
     private int port = 0;
     public int secondsToRun = 15;
@@ -112,6 +119,23 @@ private Options buildOptions() {
         .withArgName("numthreads")
         .withDescription("number of client threads to run (or 0 to not run client)")
         .create("c"));
+      opts.addOption(
+        OptionBuilder.withLongOpt("clientConnections").hasArg(true)
+        .withArgName("connections")
+        .withDescription("number of connections, each for a different user,"
+            + " which the client threads call round robin (default: one per"
+            + " client thread). Needs as many open files, e.g. 10000.")
+        .create("x"));
+      opts.addOption(
+        OptionBuilder.withLongOpt("clientMultiplexed").hasArg(false)
+        .withDescription("multiplex the client connections over selector"
+            + " threads instead of running a thread per connection")
+        .create("a"));
+      opts.addOption(
+        OptionBuilder.withLongOpt("clientIoThreads").hasArg(true)
+        .withArgName("threads")
+        .withDescription("number of selector threads of a multiplexed client")
+        .create("i"));
 
       opts.addOption(
         OptionBuilder.withLongOpt("messageSize").hasArg(true)
@@ -170,6 +194,15 @@ private void processOptions(CommandLine line, Options opts)
       if (line.hasOption('c')) {
         clientThreads = Integer.parseInt(line.getOptionValue('c'));
       }
+      if (line.hasOption('x')) {
+        clientConnections = Integer.parseInt(line.getOptionValue('x'));
+      }
+      if (line.hasOption('a')) {
+        clientMultiplexed = true;
+      }
+      if (line.hasOption('i')) {
+        clientIoThreads = Integer.parseInt(line.getOptionValue('i'));
+      }
       if (line.hasOption('t')) {
         secondsToRun = Integer.parseInt(line.getOptionValue('t'));
       }
@@ -200,6 +233,10 @@ private void processOptions(CommandLine line, Options opts)
       }
     }
     
+    public int getClientConnections() {
+      return clientConnections > 0 ? clientConnections : clientThreads;
+    }
+
     public int getPort() {
       if (port == 0) {
         port = NetUtils.getFreeSocketPort();
@@ -214,7 +251,10 @@ public int getPort() {
     public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
-          + clientThreads + "\nhost=" + host + "\nport=" + getPort()
+          + clientThreads + "\nclientConnections=" + getClientConnections()
+          + "\nclientMultiplexed=" + clientMultiplexed
+          + "\nclientIoThreads=" + clientIoThreads
+          + "\nhost=" + host + "\nport=" + getPort()
           + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
     }
   }
@@ -259,6 +299,37 @@ private long getTotalCpuTime(Iterable<? extends Thread> threads) {
     }
     return total;
   }
+
+  /**
+   * @return the bytes allocated so far by the given threads, or -1 if the
+   *         JVM does not account allocations per thread
+   */
+  private long getTotalAllocatedBytes(long[] tids) {
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) threadBean;
+    if (!bean.isThreadAllocatedMemorySupported() ||
+        !bean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    for (long bytes : bean.getThreadAllocatedBytes(tids)) {
+      if (bytes > 0) { // dead threads report -1
+        total += bytes;
+      }
+    }
+    return total;
+  }
+
+  private long getTotalAllocatedBytes(Iterable<? extends Thread> threads) {
+    List<Long> tids = new ArrayList<Long>();
+    for (Thread t : threads) {
+      tids.add(t.getId());
+    }
+    return getTotalAllocatedBytes(Longs.toArray(tids));
+  }
   
   @Override
   public int run(String[] args) throws Exception {
@@ -272,10 +343,14 @@ public int run(String[] args) throws Exception {
 
     Server server = startServer(opts);
     try {
-      
+      int threadsBeforeClient = threadBean.getThreadCount();
       TestContext ctx = setupClientTestContext(opts);
       if (ctx != null) {
         long totalCalls = 0;
+        threadBean.resetPeakThreadCount();
+        // allocations of threads which exit during the run are not counted
+        long allocatedBefore =
+            getTotalAllocatedBytes(threadBean.getAllThreadIds());
         ctx.startThreads();
         long veryStart = System.nanoTime();
 
@@ -298,6 +373,9 @@ public int run(String[] args) throws Exception {
           double callsPerSec =
             (totalCalls * 1000000000)/(veryEnd - veryStart);
           long cpuNanosClient = getTotalCpuTime(ctx.getTestThreads());
+          long allocatedClient = getTotalAllocatedBytes(ctx.getTestThreads());
+          long allocatedAll =
+              getTotalAllocatedBytes(threadBean.getAllThreadIds());
           long cpuNanosServer = -1;
           if (server != null) {
             cpuNanosServer = getTotalCpuTime(server.getHandlers());; 
@@ -311,6 +389,20 @@ public int run(String[] args) throws Exception {
             System.out.println("CPU time per call on server: " +
                 (cpuNanosServer / totalCalls) + " ns");
           }
+          if (allocatedBefore >= 0) {
+            System.out.println("Bytes allocated per call by the callers: " +
+                (allocatedClient / totalCalls));
+            // includes connection, selector and, if running, server threads
+            System.out.println("Bytes allocated per call by all threads: " +
+                ((allocatedAll - allocatedBefore) / totalCalls));
+          }
+          // besides the caller threads, for the client connections
+          System.out.println("Live threads of the client: " +
+              (threadBean.getThreadCount() - threadsBeforeClient
+                  - opts.clientThreads));
+          System.out.println("Peak threads of the client: " +
+              (threadBean.getPeakThreadCount() - threadsBeforeClient
+                  - opts.clientThreads));
         } else {
           System.out.println("No calls!");
         }
@@ -337,9 +429,14 @@ private TestContext setupClientTestContext(final MyOptions opts)
       return null;
     }
 
-    // Set up a separate proxy for each client thread,
-    // rather than making them share TCP pipes.
-    int numProxies = opts.clientThreads;
+    conf.setBoolean(CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_ENABLED_KEY,
+        opts.clientMultiplexed);
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY,
+        opts.clientIoThreads);
+
+    // Set up a separate proxy, and so a separate TCP pipe, per connection.
+    // By default there is one per client thread.
+    final int numProxies = opts.getClientConnections();
     final RpcServiceWrapper proxies[] = new RpcServiceWrapper[numProxies];
     for (int i = 0; i < numProxies; i++) {
       proxies[i] =
@@ -362,12 +459,16 @@ public RpcServiceWrapper run() throws Exception {
     // Create the clients in a test context
     TestContext ctx = new TestContext();
     for (int i = 0; i < opts.clientThreads; i++) {
-      final RpcServiceWrapper proxy = proxies[i % numProxies];
+      final int firstProxy = i % numProxies;
       
       ctx.addThread(new MultithreadedTestUtil.RepeatingTestThread(ctx) {
+        // each thread calls its share of the proxies round robin
+        private int nextProxy = firstProxy;
+
         @Override
         public void doAnAction() throws Exception {
-          proxy.doEcho(echoMessage);
+          proxies[nextProxy].doEcho(echoMessage);
+          nextProxy = (nextProxy + opts.clientThreads) % numProxies;
           callCount.incrementAndGet();
         }
       });
@@ -19,12 +19,16 @@
 package org.apache.hadoop.ipc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.junit.Test;
 
 public class TestCallQueueManager {
@@ -148,6 +152,32 @@ public void testCallQueueCapacity() throws InterruptedException {
     assertCanPut(manager, 10, 20); // Will stop at 10 due to capacity
   }
 
+  @Test
+  public void testCallQueueBackOff() throws InterruptedException {
+    Configuration conf = new Configuration();
+    manager = new CallQueueManager<FakeCall>(queueClass, 2, "ns", conf);
+    assertFalse(manager.isClientBackOffEnabled());
+
+    conf.setBoolean("ns." + CommonConfigurationKeys.IPC_BACKOFF_ENABLE, true);
+    manager = new CallQueueManager<FakeCall>(queueClass, 2, "ns", conf);
+    assertTrue(manager.isClientBackOffEnabled());
+
+    // A full queue rejects calls rather than blocking
+    assertTrue(manager.putOrBackOff(new FakeCall(0)));
+    assertTrue(manager.putOrBackOff(new FakeCall(1)));
+    assertFalse(manager.putOrBackOff(new FakeCall(2)));
+    assertEquals(2, manager.size());
+
+    assertEquals(0, manager.take().tag);
+    assertTrue(manager.putOrBackOff(new FakeCall(3)));
+    assertEquals(1, manager.take().tag);
+    assertEquals(3, manager.take().tag);
+
+    // Backoff follows the configuration of a swapped in queue
+    manager.swapQueue(queueClass, 2, "ns", new Configuration());
+    assertFalse(manager.isClientBackOffEnabled());
+  }
+
   @Test
   public void testEmptyConsume() throws InterruptedException {
     manager = new CallQueueManager<FakeCall>(queueClass, 10, "", null);
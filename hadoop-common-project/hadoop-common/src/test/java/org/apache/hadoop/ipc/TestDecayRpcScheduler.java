@@ -203,6 +203,61 @@ public void testPriority() {
     assertEquals(2, scheduler.getPriorityLevel(mockCall("A")));
   }
 
+  @Test
+  public void testAccumulateCost() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    scheduler = new DecayRpcScheduler(1, "ns", conf);
+
+    assertEquals(0, scheduler.getCallCostSnapshot().size()); // empty first
+
+    // 10 lock free, 20 shared and 30 exclusive, with the default weights
+    scheduler.addResponseTime(mockCall("A"), 60, 20, 30);
+    assertEquals(10 * 1 + 20 * 10 + 30 * 100,
+        scheduler.getCallCostSnapshot().get("A").longValue());
+
+    scheduler.addResponseTime(mockCall("B"), 5, 0, 0);
+    scheduler.addResponseTime(mockCall("A"), 7, 0, 0);
+    assertEquals(3217, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(5, scheduler.getCallCostSnapshot().get("B").longValue());
+    assertEquals(3222, scheduler.getTotalCallCost());
+
+    // Costs are not counted as calls
+    assertEquals(0, scheduler.getTotalCallSnapshot());
+
+    scheduler.forceDecay();
+    assertEquals(1608, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(1610, scheduler.getTotalCallCost());
+  }
+
+  @Test
+  public void testCostBasedPriority() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY,
+      "50");
+    conf.setBoolean("ns." +
+        DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY, true);
+    scheduler = new DecayRpcScheduler(2, "ns", conf);
+    assertTrue(scheduler.isCostBased());
+
+    for (int i = 0; i < 10; i++) {
+      scheduler.getPriorityLevel(mockCall("A"));
+      scheduler.addResponseTime(mockCall("A"), 100, 0, 0);
+    }
+    scheduler.getPriorityLevel(mockCall("B"));
+    scheduler.addResponseTime(mockCall("B"), 100, 0, 100);
+
+    // A made most of the calls, but B's call held a lock exclusively
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("B")));
+
+    // Same from the cache of scheduling decisions
+    scheduler.forceDecay();
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("B")));
+  }
+
   @Test(timeout=2000)
   public void testPeriodic() throws InterruptedException {
     Configuration conf = new Configuration();
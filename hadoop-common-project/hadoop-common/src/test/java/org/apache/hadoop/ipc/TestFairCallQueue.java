@@ -35,6 +35,7 @@
 
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.mockito.Matchers;
 
 import static org.apache.hadoop.ipc.FairCallQueue.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY;
@@ -116,6 +117,30 @@ public void testOfferSucceedsWhenScheduledLowPriority() {
     assertEquals(6, fcq.size());
   }
 
+  public void testOfferOverflowsWithBackOff() {
+    Configuration conf = new Configuration();
+    conf.setInt("ns." + IPC_CALLQUEUE_PRIORITY_LEVELS_KEY, 2);
+    conf.setBoolean("ns." + CommonConfigurationKeys.IPC_BACKOFF_ENABLE, true);
+    fcq = new FairCallQueue<Schedulable>(5, "ns", conf);
+
+    // Scheduler will schedule into queue 0 x 10, then queue 1 twice
+    RpcScheduler sched = mock(RpcScheduler.class);
+    when(sched.getPriorityLevel(Matchers.<Schedulable>any()))
+        .thenReturn(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1);
+    fcq.setScheduler(sched);
+
+    // The top queue overflows into the bottom one
+    for (int i = 0; i < 10; i++) { assertTrue(fcq.offer(mockCall("c"))); }
+    assertEquals(10, fcq.size());
+
+    // Then both are full, and calls are rejected, not blocked
+    assertFalse(fcq.offer(mockCall("c")));
+    assertFalse(fcq.offer(mockCall("c")));
+    assertEquals(10, fcq.size());
+    assertEquals(0, fcq.getRejectedCalls()[0]);
+    assertEquals(2, fcq.getRejectedCalls()[1]);
+  }
+
   public void testPeekNullWhenEmpty() {
     assertNull(fcq.peek());
   }
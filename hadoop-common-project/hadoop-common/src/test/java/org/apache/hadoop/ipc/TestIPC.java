@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.ipc;
 
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -47,6 +49,9 @@
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -70,6 +75,8 @@
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.net.ConnectTimeoutException;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.log4j.Level;
 import org.junit.Assert;
@@ -80,6 +87,7 @@
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import com.google.common.base.Supplier;
 import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 
@@ -260,6 +268,176 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 	
+  @Test(timeout=60000)
+  public void testAsyncCalls() throws Exception {
+    Server server = new TestServer(3, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      List<Future<Writable>> responses = new ArrayList<Future<Writable>>();
+      Client.setAsynchronousMode(true);
+      try {
+        for (int i = 0; i < 50; i++) {
+          assertEquals(null, client.call(new LongWritable(i), addr));
+          responses.add(Client.getAsyncRpcResponse());
+        }
+      } finally {
+        Client.setAsynchronousMode(false);
+      }
+      for (int i = 0; i < responses.size(); i++) {
+        assertEquals(new LongWritable(i), responses.get(i).get());
+      }
+      assertEquals(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT,
+          client.getAvailableAsyncCallPermits());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testAsyncCallsBounded() throws Exception {
+    final int maxAsyncCalls = 3;
+    Configuration asyncConf = new Configuration(conf);
+    asyncConf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        maxAsyncCalls);
+    final TestServer server = new TestServer(1, false);
+    final CountDownLatch callLatch = new CountDownLatch(1);
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          callLatch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, asyncConf);
+    try {
+      final List<Future<Writable>> responses =
+          Collections.synchronizedList(new ArrayList<Future<Writable>>());
+      Thread caller = new Thread() {
+        @Override
+        public void run() {
+          Client.setAsynchronousMode(true);
+          try {
+            for (int i = 0; i < 2 * maxAsyncCalls; i++) {
+              client.call(new LongWritable(i), addr);
+              responses.add(Client.getAsyncRpcResponse());
+            }
+          } catch (IOException e) {
+            LOG.error("async call failed", e);
+          }
+        }
+      };
+      caller.start();
+
+      // the server holds every call, so the caller runs out of permits
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return responses.size() == maxAsyncCalls;
+        }
+      }, 10, 10000);
+      caller.join(500);
+      assertTrue(caller.isAlive());
+      assertEquals(maxAsyncCalls, responses.size());
+      assertEquals(0, client.getAvailableAsyncCallPermits());
+
+      callLatch.countDown();
+      caller.join();
+      assertEquals(2 * maxAsyncCalls, responses.size());
+      for (int i = 0; i < responses.size(); i++) {
+        assertEquals(new LongWritable(i),
+            responses.get(i).get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(maxAsyncCalls, client.getAvailableAsyncCallPermits());
+    } finally {
+      callLatch.countDown();
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * Check that a call which defers its response releases the handler, and
+   * that the response or error is sent once the call is completed.
+   */
+  @Test(timeout=60000)
+  public void testDeferredResponse() throws Exception {
+    final int numCalls = 10;
+    final TestServer server = new TestServer(1, false);
+    final List<Server.Call> deferredCalls =
+        Collections.synchronizedList(new ArrayList<Server.Call>());
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        Server.Call call = Server.getCurCall().get();
+        call.deferResponse();
+        deferredCalls.add(call);
+      }
+    };
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+    try {
+      List<Future<Writable>> responses = new ArrayList<Future<Writable>>();
+      Client.setAsynchronousMode(true);
+      try {
+        for (int i = 0; i < numCalls; i++) {
+          client.call(new LongWritable(i), addr);
+          responses.add(Client.getAsyncRpcResponse());
+        }
+      } finally {
+        Client.setAsynchronousMode(false);
+      }
+
+      // the single handler takes every call without responding
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return deferredCalls.size() == numCalls;
+        }
+      }, 10, 10000);
+      for (Future<Writable> response : responses) {
+        assertFalse(response.isDone());
+      }
+
+      deferredCalls.get(0).setDeferredError(new IOException("deferred"));
+      for (int i = 1; i < numCalls; i++) {
+        deferredCalls.get(i).setDeferredResponse(new LongWritable(-1));
+      }
+      try {
+        deferredCalls.get(1).setDeferredResponse(new LongWritable(-2));
+        fail("A call should only be completed once");
+      } catch (IllegalStateException e) {
+        LOG.info("Got expected exception", e);
+      }
+
+      try {
+        responses.get(0).get(10, TimeUnit.SECONDS);
+        fail("The first call should have failed");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RemoteException);
+        assertEquals(IOException.class.getName(),
+            ((RemoteException)e.getCause()).getClassName());
+      }
+      for (int i = 1; i < numCalls; i++) {
+        assertEquals(new LongWritable(-1),
+            responses.get(i).get(10, TimeUnit.SECONDS));
+      }
+      assertCounter("DeferredRpcProcessingTimeNumOps", (long)numCalls,
+          getMetrics(server.getRpcMetrics().name()));
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testStandAloneClient() throws IOException {
     Client client = new Client(LongWritable.class, conf);
@@ -584,6 +762,92 @@ public void testIpcTimeout() throws IOException {
     client.stop();
   }
 
+  /**
+   * Check that a multiplexed client serves calls, pings and rpc timeouts
+   * over many connections without a thread per connection.
+   */
+  @Test(timeout=60000)
+  public void testMultiplexedConnections() throws Exception {
+    conf.setBoolean(
+        CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_ENABLED_KEY, true);
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_IO_THREADS_KEY,
+        1);
+    internalTestSerial(3, false, 2, 5, 100);
+    internalTestSerial(3, true, 2, 5, 10);
+
+    Server server = new TestServer(5, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      final int numConnections = 20;
+      for (int i = 0; i < numConnections; i++) {
+        // a connection per user
+        UserGroupInformation ugi =
+            UserGroupInformation.createRemoteUser("user" + i);
+        LongWritable param = new LongWritable(RANDOM.nextLong());
+        assertEquals(param, client.call(param, addr, null, ugi, 0, conf));
+      }
+      assertEquals(numConnections, client.getConnectionIds().size());
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        assertFalse(t.getName() + " is a connection thread",
+            t.getName().startsWith("IPC Client (")
+            && t.getName().contains(") connection to "));
+      }
+    } finally {
+      client.stop();
+      server.stop();
+    }
+
+    server = new TestServer(1, true);
+    addr = NetUtils.getConnectAddress(server);
+    server.start();
+    client = new Client(LongWritable.class, conf);
+    try {
+      // set timeout to be less than MIN_SLEEP_TIME
+      client.call(new LongWritable(RANDOM.nextLong()),
+          addr, null, null, MIN_SLEEP_TIME/2, conf);
+      fail("Expected an exception to have been thrown");
+    } catch (SocketTimeoutException e) {
+      LOG.info("Get a SocketTimeoutException ", e);
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * Check that a response longer than the configured maximum fails the call,
+   * whether the connection has a thread of its own or is multiplexed.
+   */
+  @Test(timeout=60000)
+  public void testMaxResponseLength() throws IOException {
+    conf.setInt(CommonConfigurationKeys.IPC_MAXIMUM_RESPONSE_LENGTH, 4);
+    Server server = new TestServer(1, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    try {
+      for (boolean multiplexed : new boolean[] { false, true }) {
+        conf.setBoolean(
+            CommonConfigurationKeys.IPC_CLIENT_MULTIPLEXED_ENABLED_KEY,
+            multiplexed);
+        Client client = new Client(LongWritable.class, conf);
+        try {
+          client.call(new LongWritable(RANDOM.nextLong()),
+              addr, null, null, 0, conf);
+          fail("Expected the response to be rejected");
+        } catch (IOException e) {
+          assertTrue(StringUtils.stringifyException(e).contains(
+              CommonConfigurationKeys.IPC_MAXIMUM_RESPONSE_LENGTH));
+        } finally {
+          client.stop();
+        }
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testIpcConnectTimeout() throws IOException {
     // start server
@@ -774,6 +1038,95 @@ public void run() {
     server.stop();
   }
 
+  /**
+   * Check that a call rejected for backoff fails with a RetriableException,
+   * and that its connection is still closed once it is idle.
+   */
+  @Test(timeout=30000)
+  public void testBackOffConnectionClosedWhenIdle() throws Exception {
+    final Configuration conf = new Configuration();
+    // the test server listens on an ephemeral port, so its queue is "ipc.0"
+    conf.setBoolean("ipc.0." + CommonConfigurationKeys.IPC_BACKOFF_ENABLE,
+        true);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
+        500);
+    conf.setInt(CommonConfigurationKeysPublic.IPC_CLIENT_IDLETHRESHOLD_KEY, 0);
+    conf.setInt(
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_IDLESCANINTERVAL_KEY,
+        100);
+    // 1 handler and 1 call queue slot
+    final TestServerQueue server = new TestServerQueue(2, 1, 1, 1, conf);
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+
+    final Configuration clientConf = new Configuration();
+    clientConf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
+        60000);
+    final Client[] clients = new Client[3];
+    Thread[] threads = new Thread[2];
+    try {
+      // the first call blocks the handler and the second fills the queue
+      for (int i = 0; i < threads.length; i++) {
+        final Client client = new Client(LongWritable.class, clientConf);
+        clients[i] = client;
+        threads[i] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              client.call(new LongWritable(1), addr);
+            } catch (IOException e) {
+              LOG.error(e);
+            }
+          }
+        };
+        threads[i].start();
+        if (i == 0) {
+          server.firstCallLatch.await();
+        }
+      }
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return server.getCallQueueLen() == 1;
+        }
+      }, 10, 10000);
+
+      // so the third call is rejected
+      clients[2] = new Client(LongWritable.class, clientConf);
+      try {
+        clients[2].call(new LongWritable(2), addr);
+        fail("The call should have been rejected");
+      } catch (RemoteException e) {
+        assertEquals(RetriableException.class.getName(), e.getClassName());
+      }
+      assertCounter("RpcClientBackoff", 1L,
+          getMetrics(server.getRpcMetrics().name()));
+
+      server.callBlockLatch.countDown();
+      for (Thread t : threads) {
+        t.join();
+      }
+
+      // every connection, including the rejected one, is closed once idle
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return server.getNumOpenConnections() == 0;
+        }
+      }, 100, 10000);
+    } finally {
+      server.callBlockLatch.countDown();
+      for (Client client : clients) {
+        if (client != null) {
+          client.stop();
+        }
+      }
+      server.stop();
+    }
+  }
+
   @Test(timeout=30000)
   public void testConnectionIdleTimeouts() throws Exception {
     ((Log4JLogger)Server.LOG).getLogger().setLevel(Level.DEBUG);
@@ -20,13 +20,18 @@
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoResponseProto;
@@ -36,12 +41,15 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -68,6 +76,8 @@ public interface TestRpcService2 extends
   }
 
   public static class PBServerImpl implements TestRpcService {
+    /** The state id of the client of the last ping. */
+    static volatile long pingClientStateId;
 
     @Override
     public EmptyResponseProto ping(RpcController unused,
@@ -76,6 +86,7 @@ public EmptyResponseProto ping(RpcController unused,
       byte[] clientId = Server.getClientId();
       Assert.assertNotNull(Server.getClientId());
       Assert.assertEquals(16, clientId.length);
+      pingClientStateId = Server.getClientStateId();
       return EmptyResponseProto.newBuilder().build();
     }
 
@@ -257,4 +268,118 @@ public void testExtraLongRpc() throws Exception {
       // expected
     }
   }
+
+  @Test (timeout=5000)
+  public void testRpcWrapperReadInPlace() throws Exception {
+    RpcRequestHeaderProto header = RpcRequestHeaderProto.newBuilder()
+        .setCallId(7).setClientId(ByteString.copyFromUtf8("client"))
+        .build();
+    EchoRequestProto echoRequest = EchoRequestProto.newBuilder()
+        .setMessage(StringUtils.repeat("X", 1024)).build();
+    ProtobufRpcEngine.RpcRequestMessageWrapper written =
+        new ProtobufRpcEngine.RpcRequestMessageWrapper(header, echoRequest);
+
+    // serialize after some unrelated leading bytes, as a server sees the
+    // request after its header
+    final int offset = 13;
+    byte[] buf = new byte[offset + written.getLength()];
+    CodedOutputStream out =
+        CodedOutputStream.newInstance(buf, offset, written.getLength());
+    written.writeTo(out);
+    out.checkNoSpaceLeft();
+
+    ProtobufRpcEngine.RpcRequestMessageWrapper read =
+        new ProtobufRpcEngine.RpcRequestMessageWrapper();
+    read.readFields(ByteBuffer.wrap(buf, offset, buf.length - offset));
+    Assert.assertEquals(header, read.getMessageHeader());
+    Assert.assertEquals(written.getLength(), read.getLength());
+    Assert.assertEquals(echoRequest,
+        EchoRequestProto.parseFrom(read.getMessageBytes()));
+    Assert.assertEquals(echoRequest,
+        read.getMessage(EchoRequestProto.getDefaultInstance()));
+
+    // a truncated request is rejected
+    try {
+      read.readFields(ByteBuffer.wrap(buf, offset, buf.length - offset - 1));
+      Assert.fail("expected truncated request to fail");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  /**
+   * A state id which is sent by the server in every response and recorded
+   * by the client, like a transaction id.
+   */
+  private static class TestAlignmentContext implements AlignmentContext {
+    private final AtomicLong stateId;
+
+    TestAlignmentContext(long stateId) {
+      this.stateId = new AtomicLong(stateId);
+    }
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+      stateId.set(header.getStateId());
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      return header.getStateId();
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId.get();
+    }
+  }
+
+  @Test (timeout=5000)
+  public void testAlignmentContext() throws Exception {
+    EmptyRequestProto emptyRequest = EmptyRequestProto.newBuilder().build();
+    // without a context on either side, no state id is exchanged
+    getClient().ping(null, emptyRequest);
+    Assert.assertEquals(RpcConstants.INVALID_STATE_ID,
+        PBServerImpl.pingClientStateId);
+
+    TestAlignmentContext serverContext = new TestAlignmentContext(10);
+    server.setAlignmentContext(serverContext);
+    TestAlignmentContext clientContext = new TestAlignmentContext(5);
+    TestRpcService client = RPC.getProtocolProxy(TestRpcService.class, 0,
+        addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, null, clientContext)
+        .getProxy();
+    try {
+      client.ping(null, emptyRequest);
+      Assert.assertEquals(5, PBServerImpl.pingClientStateId);
+      Assert.assertEquals(10, clientContext.getLastSeenStateId());
+
+      serverContext.stateId.set(20);
+      client.ping(null, emptyRequest);
+      Assert.assertEquals(10, PBServerImpl.pingClientStateId);
+      Assert.assertEquals(20, clientContext.getLastSeenStateId());
+
+      // the state id is carried by failed calls too
+      serverContext.stateId.set(30);
+      try {
+        client.error(null, emptyRequest);
+        Assert.fail("Expected exception is not thrown");
+      } catch (ServiceException se) {
+        // expected
+      }
+      Assert.assertEquals(30, clientContext.getLastSeenStateId());
+    } finally {
+      RPC.stopProxy(client);
+    }
+  }
 }
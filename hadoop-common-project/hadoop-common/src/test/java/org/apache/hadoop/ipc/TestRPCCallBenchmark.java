@@ -50,4 +50,20 @@ public void testBenchmarkWithProto() throws Exception {
       "--engine", "protobuf"});
     assertEquals(0, rc);
   }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithMultiplexedClient() throws Exception {
+    int rc = ToolRunner.run(new RPCCallBenchmark(),
+        new String[] {
+      "--clientThreads", "10",
+      "--clientConnections", "100",
+      "--clientMultiplexed",
+      "--clientIoThreads", "2",
+      "--serverThreads", "30",
+      "--time", "5",
+      "--serverReaderThreads", "4",
+      "--messageSize", "1024",
+      "--engine", "protobuf"});
+    assertEquals(0, rc);
+  }
 }
@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Measures the throughput of the {@link NetworkTopology} queries used by
+ * block placement and replica sorting, with many concurrent callers.
+ *
+ * Synopsis: NetworkTopologyBenchmark [-nodes numNodes]
+ *     [-nodesPerRack numNodesPerRack] [-threads numThreads]
+ *     [-ops numOpsPerThread] [-churn]
+ *
+ * The benchmark builds a two level topology of numNodes leaves and runs
+ * each query from numThreads threads.  With -churn, another thread keeps
+ * removing and adding back a node while the queries run, the way datanode
+ * re-registrations do on a large cluster.
+ */
+public class NetworkTopologyBenchmark extends Configured implements Tool {
+  static final String USAGE = "Usage: NetworkTopologyBenchmark"
+      + " [-nodes numNodes] [-nodesPerRack numNodesPerRack]"
+      + " [-threads numThreads] [-ops numOpsPerThread] [-churn]";
+
+  /** A query run by the benchmark threads. */
+  private static abstract class Op {
+    final String name;
+
+    Op(String name) {
+      this.name = name;
+    }
+
+    /** @return a value which depends on the result of the query. */
+    abstract long run(Random random);
+  }
+
+  static NetworkTopology createTopology(int numNodes, int nodesPerRack,
+      List<Node> nodes) {
+    final NetworkTopology topology = new NetworkTopology();
+    for (int i = 0; i < numNodes; i++) {
+      final Node node = new NodeBase("host" + i + ":50010",
+          "/rack" + (i / nodesPerRack));
+      topology.add(node);
+      nodes.add(node);
+    }
+    return topology;
+  }
+
+  /**
+   * Run every query numOpsPerThread times from each of numThreads threads.
+   * @return the number of operations per second, by query.
+   */
+  static Map<String, Long> run(final NetworkTopology topology,
+      final List<Node> nodes, int numThreads, final int numOpsPerThread,
+      boolean churn) throws InterruptedException {
+    final int numRacks = topology.getNumOfRacks();
+    final List<Op> ops = new ArrayList<Op>();
+    ops.add(new Op("getDistance") {
+      @Override
+      long run(Random random) {
+        return topology.getDistance(nodes.get(random.nextInt(nodes.size())),
+            nodes.get(random.nextInt(nodes.size())));
+      }
+    });
+    ops.add(new Op("sortByDistance") {
+      @Override
+      long run(Random random) {
+        final Node[] replicas = new Node[3];
+        for (int i = 0; i < replicas.length; i++) {
+          replicas[i] = nodes.get(random.nextInt(nodes.size()));
+        }
+        // the readers of sortByDistance are not always in the topology
+        final Node reader = random.nextBoolean()
+            ? nodes.get(random.nextInt(nodes.size()))
+            : new NodeBase("client", "/rack" + random.nextInt(numRacks));
+        topology.sortByDistance(reader, replicas, replicas.length);
+        return replicas[0].hashCode();
+      }
+    });
+    ops.add(new Op("chooseRandom") {
+      @Override
+      long run(Random random) {
+        final String rack = "/rack" + random.nextInt(numRacks);
+        final Node node = topology.chooseRandom(
+            random.nextBoolean() ? rack : "~" + rack);
+        return node == null ? 0 : node.hashCode();
+      }
+    });
+    ops.add(new Op("countNumOfAvailableNodes") {
+      @Override
+      long run(Random random) {
+        final List<Node> excluded = new ArrayList<Node>(3);
+        for (int i = 0; i < 3; i++) {
+          excluded.add(nodes.get(random.nextInt(nodes.size())));
+        }
+        return topology.countNumOfAvailableNodes(
+            "~/rack" + random.nextInt(numRacks), excluded);
+      }
+    });
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final Thread churner = new Thread("churn") {
+      @Override
+      public void run() {
+        final Random random = new Random();
+        while (running.get()) {
+          final Node node = nodes.get(random.nextInt(nodes.size()));
+          topology.remove(node);
+          topology.add(node);
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+    if (churn) {
+      churner.start();
+    }
+
+    final Map<String, Long> results = new LinkedHashMap<String, Long>();
+    final AtomicLong sink = new AtomicLong();
+    try {
+      for (final Op op : ops) {
+        final Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+          final long seed = t;
+          threads[t] = new Thread(op.name + "-" + t) {
+            @Override
+            public void run() {
+              final Random random = new Random(seed);
+              long sum = 0;
+              for (int i = 0; i < numOpsPerThread; i++) {
+                sum += op.run(random);
+              }
+              sink.addAndGet(sum);
+            }
+          };
+        }
+        final long start = Time.monotonicNow();
+        for (Thread t : threads) {
+          t.start();
+        }
+        for (Thread t : threads) {
+          t.join();
+        }
+        final long elapsed = Math.max(1, Time.monotonicNow() - start);
+        results.put(op.name,
+            (long) numThreads * numOpsPerThread * 1000 / elapsed);
+      }
+    } finally {
+      running.set(false);
+      if (churn) {
+        churner.join();
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    int numNodes = 5000;
+    int nodesPerRack = 40;
+    int numThreads = 16;
+    int numOpsPerThread = 100000;
+    boolean churn = false;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-churn")) {
+        churn = true;
+        continue;
+      }
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      if (args[i].equals("-nodes")) {
+        numNodes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-nodesPerRack")) {
+        nodesPerRack = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-ops")) {
+        numOpsPerThread = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    if (numNodes < 1 || nodesPerRack < 1 || numThreads < 1
+        || numOpsPerThread < 0) {
+      System.err.println(USAGE);
+      return -1;
+    }
+
+    final List<Node> nodes = new ArrayList<Node>(numNodes);
+    final NetworkTopology topology =
+        createTopology(numNodes, nodesPerRack, nodes);
+    System.out.println("Nodes: " + numNodes + ", racks: "
+        + topology.getNumOfRacks() + ", threads: " + numThreads
+        + ", ops/thread: " + numOpsPerThread + ", churn: " + churn);
+    for (Map.Entry<String, Long> e : run(topology, nodes, numThreads,
+        numOpsPerThread, churn).entrySet()) {
+      System.out.println(e.getKey() + ": " + e.getValue() + " ops/s");
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new Configuration(),
+        new NetworkTopologyBenchmark(), args));
+  }
+}
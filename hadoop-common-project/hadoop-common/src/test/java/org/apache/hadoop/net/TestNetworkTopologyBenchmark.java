@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+
+public class TestNetworkTopologyBenchmark {
+
+  /**
+   * The queries of the benchmark run while the topology keeps changing.
+   */
+  @Test(timeout = 120000)
+  public void testBenchmarkWithChurn() throws Exception {
+    final List<Node> nodes = new ArrayList<Node>();
+    final NetworkTopology topology =
+        NetworkTopologyBenchmark.createTopology(5000, 40, nodes);
+    assertEquals(125, topology.getNumOfRacks());
+    final Map<String, Long> results =
+        NetworkTopologyBenchmark.run(topology, nodes, 4, 2000, true);
+    assertEquals(4, results.size());
+    for (long opsPerSecond : results.values()) {
+      assertTrue(opsPerSecond > 0);
+    }
+    assertEquals(5000, topology.getNumOfLeaves());
+  }
+
+  @Test(timeout = 60000)
+  public void testRunTool() throws Exception {
+    assertEquals(0, ToolRunner.run(new Configuration(),
+        new NetworkTopologyBenchmark(), new String[] {
+            "-nodes", "100", "-nodesPerRack", "10", "-threads", "2",
+            "-ops", "100"}));
+    assertEquals(-1, ToolRunner.run(new Configuration(),
+        new NetworkTopologyBenchmark(), new String[] {"-nodes"}));
+  }
+}
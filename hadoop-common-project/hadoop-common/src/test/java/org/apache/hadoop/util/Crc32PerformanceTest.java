@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.hadoop.fs.ChecksumException;
+
+/**
+ * Performance tests to compare the chunked checksum implementations used by
+ * the DataNode and the DFS client, per bytes-per-checksum. For every chunk
+ * size each implementation is warmed up, then timed over several trials of
+ * verifying the same data, in the style of a JMH throughput benchmark.
+ * This can be run from the command line with:
+ *
+ *   java -cp path/to/test/classes:path/to/common/classes \
+ *      org.apache.hadoop.util.Crc32PerformanceTest \
+ *      [dataLengthMB] [warmups] [trials] [direct|heap]
+ *
+ * The DataChecksum rows go through the native CRC code when libhadoop is
+ * loaded. The output is in JIRA table format, and the unit is MB/sec.
+ */
+public class Crc32PerformanceTest {
+  static final int MB = 1024 * 1024;
+  static final int MIN_BYTES_PER_CRC = 32;
+  static final int MAX_BYTES_PER_CRC = 16 * 1024;
+
+  /** One way of verifying a buffer of chunked checksums. */
+  static abstract class Crc32 {
+    final String name;
+    final DataChecksum.Type type;
+
+    Crc32(String name, DataChecksum.Type type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    abstract void verifyChunked(ByteBuffer data, ByteBuffer sums,
+        int bytesPerCrc) throws ChecksumException;
+  }
+
+  /** Verifies chunk by chunk through a {@link Checksum}. */
+  static class ChecksumCrc32 extends Crc32 {
+    private final Checksum summer;
+
+    ChecksumCrc32(Checksum summer, DataChecksum.Type type) {
+      super(summer.getClass().getSimpleName(), type);
+      this.summer = summer;
+    }
+
+    @Override
+    void verifyChunked(ByteBuffer data, ByteBuffer sums, int bytesPerCrc)
+        throws ChecksumException {
+      final byte[] buf;
+      final int base;
+      if (data.hasArray()) {
+        buf = data.array();
+        base = data.arrayOffset() + data.position();
+      } else {
+        buf = new byte[bytesPerCrc];
+        base = 0;
+      }
+      final ByteBuffer d = data.duplicate();
+      for (int off = 0, i = 0; off < data.remaining(); off += bytesPerCrc) {
+        final int n = Math.min(bytesPerCrc, data.remaining() - off);
+        summer.reset();
+        if (data.hasArray()) {
+          summer.update(buf, base + off, n);
+        } else {
+          d.get(buf, 0, n);
+          summer.update(buf, 0, n);
+        }
+        final int stored = sums.getInt(sums.position() + 4 * i++);
+        if ((int)summer.getValue() != stored) {
+          throw new ChecksumException(name + " mismatch at " + off, off);
+        }
+      }
+    }
+  }
+
+  /** Verifies all chunks in one bulk call. */
+  static class DataChecksumCrc32 extends Crc32 {
+    DataChecksumCrc32(DataChecksum.Type type) {
+      super("DataChecksum(" + type + ")", type);
+    }
+
+    @Override
+    void verifyChunked(ByteBuffer data, ByteBuffer sums, int bytesPerCrc)
+        throws ChecksumException {
+      DataChecksum.newDataChecksum(type, bytesPerCrc)
+          .verifyChunkedSums(data, sums, "benchmark", 0);
+    }
+  }
+
+  private final int dataLengthMB;
+  private final int warmups;
+  private final int trials;
+  private final boolean direct;
+  private final List<Crc32> crcs = new ArrayList<Crc32>();
+
+  Crc32PerformanceTest(int dataLengthMB, int warmups, int trials,
+      boolean direct) {
+    this.dataLengthMB = dataLengthMB;
+    this.warmups = warmups;
+    this.trials = trials;
+    this.direct = direct;
+
+    crcs.add(new ChecksumCrc32(new CRC32(), DataChecksum.Type.CRC32));
+    crcs.add(new ChecksumCrc32(new PureJavaCrc32(), DataChecksum.Type.CRC32));
+    crcs.add(new DataChecksumCrc32(DataChecksum.Type.CRC32));
+    crcs.add(new ChecksumCrc32(new PureJavaCrc32C(), DataChecksum.Type.CRC32C));
+    crcs.add(new DataChecksumCrc32(DataChecksum.Type.CRC32C));
+  }
+
+  private ByteBuffer allocate(int length) {
+    return direct ? ByteBuffer.allocateDirect(length)
+        : ByteBuffer.allocate(length);
+  }
+
+  private ByteBuffer allocateRandom(int length) {
+    final ByteBuffer data = allocate(length);
+    final byte[] bytes = new byte[length];
+    new Random().nextBytes(bytes);
+    data.put(bytes);
+    data.flip();
+    return data;
+  }
+
+  /**
+   * Check, without timing them, that every implementation accepts the bulk
+   * checksums of dataLength random bytes and rejects them once a byte is
+   * changed, for every chunk size of the benchmark.
+   */
+  void verify(int dataLength) throws ChecksumException {
+    final ByteBuffer data = allocateRandom(dataLength);
+    for (int bpc = MIN_BYTES_PER_CRC; bpc <= MAX_BYTES_PER_CRC; bpc <<= 1) {
+      for (Crc32 c : crcs) {
+        final DataChecksum checksum = DataChecksum.newDataChecksum(c.type, bpc);
+        final ByteBuffer sums = allocate(checksum.getChecksumSize(dataLength));
+        checksum.calculateChunkedSums(data, sums);
+        c.verifyChunked(data, sums, bpc);
+
+        final int pos = dataLength - 1;
+        data.put(pos, (byte) (data.get(pos) + 1));
+        try {
+          c.verifyChunked(data, sums, bpc);
+          throw new AssertionError(c.name + " missed a corrupt byte, bpc="
+              + bpc);
+        } catch (ChecksumException e) {
+          // expected
+        } finally {
+          data.put(pos, (byte) (data.get(pos) - 1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Run the benchmark.
+   * @return the throughput in MB/sec, indexed by chunk size then by
+   *         implementation
+   */
+  double[][] run(PrintStream out) throws ChecksumException {
+    final int dataLength = dataLengthMB * MB;
+    final ByteBuffer data = allocateRandom(dataLength);
+
+    out.printf("Native checksums: %s; %s buffers; data=%dMB\n",
+        NativeCrc32.isAvailable(), direct ? "direct" : "heap", dataLengthMB);
+    out.print("|| bpc ||");
+    for (Crc32 c : crcs) {
+      out.printf(" %s ||", c.name);
+    }
+    out.println();
+
+    final List<double[]> results = new ArrayList<double[]>();
+    for (int bpc = MIN_BYTES_PER_CRC; bpc <= MAX_BYTES_PER_CRC; bpc <<= 1) {
+      final double[] mbps = new double[crcs.size()];
+      out.printf("| %5d |", bpc);
+      for (int i = 0; i < crcs.size(); i++) {
+        final Crc32 c = crcs.get(i);
+        final DataChecksum checksum = DataChecksum.newDataChecksum(c.type, bpc);
+        final ByteBuffer sums = allocate(checksum.getChecksumSize(dataLength));
+        checksum.calculateChunkedSums(data, sums);
+
+        for (int w = 0; w < warmups; w++) {
+          c.verifyChunked(data, sums, bpc);
+        }
+        final long start = System.nanoTime();
+        for (int t = 0; t < trials; t++) {
+          c.verifyChunked(data, sums, bpc);
+        }
+        final double secs = (System.nanoTime() - start) / 1e9;
+        mbps[i] = (double)dataLengthMB * trials / secs;
+        out.printf(" %9.1f |", mbps[i]);
+      }
+      out.println();
+      results.add(mbps);
+    }
+    return results.toArray(new double[results.size()][]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int dataLengthMB = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    final int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    final int trials = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    final boolean direct = args.length > 3 ? "direct".equals(args[3]) : true;
+    new Crc32PerformanceTest(dataLengthMB, warmups, trials, direct)
+        .run(System.out);
+  }
+}
@@ -55,12 +55,30 @@ public void testBulkOps() throws Exception {
     }
   }
 
+  @Test
+  public void testBulkOpsMixedBuffers() throws Exception {
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      DataChecksum checksum = DataChecksum.newDataChecksum(
+          type, BYTES_PER_CHUNK);
+      for (boolean directData : new boolean[]{false, true}) {
+        new Harness(checksum, 1023, directData, !directData).testCorrectness();
+        new Harness(checksum, 1024, directData, !directData).testCorrectness();
+        new Harness(checksum, 1025, directData, !directData).testCorrectness();
+      }
+    }
+  }
+
   private static class Harness {
     final DataChecksum checksum;
     final int dataLength, sumsLength, numSums;
     ByteBuffer dataBuf, checksumBuf;
 
     Harness(DataChecksum checksum, int dataLength, boolean useDirect) {
+      this(checksum, dataLength, useDirect, useDirect);
+    }
+
+    Harness(DataChecksum checksum, int dataLength, boolean directData,
+        boolean directSums) {
       this.checksum = checksum;
       this.dataLength = dataLength;
 
@@ -79,8 +97,10 @@ private static class Harness {
         checksums, SUMS_OFFSET_IN_BUFFER, sumsLength);
 
       // Swap out for direct buffers if requested.
-      if (useDirect) {
+      if (directData) {
         dataBuf = directify(dataBuf);
+      }
+      if (directSums) {
         checksumBuf = directify(checksumBuf);
       }
     }
@@ -161,6 +181,19 @@ public void commonUsagePerfTest() throws Exception {
     }
   }
 
+  /**
+   * Cross-check the implementations compared by {@link Crc32PerformanceTest}
+   * against the bulk checksums.  The benchmark itself is only run from the
+   * command line.
+   */
+  @Test
+  public void testCrc32PerformanceTestImplementations() throws Exception {
+    for (boolean direct : new boolean[]{false, true}) {
+      // not a multiple of the chunk sizes, so the last chunk is partial
+      new Crc32PerformanceTest(0, 0, 0, direct).verify(64 * 1024 + 3);
+    }
+  }
+
   @Test
   public void testEquality() {
     assertEquals(
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem.Statistics;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolTranslatorPB;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.RemoteException;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/****************************************************************
+ * Asynchronous metadata operations of a {@link DistributedFileSystem}.
+ * Each method sends its request to the NameNode and returns a future of
+ * the result without waiting for the response, so that a single thread
+ * can have many operations outstanding on the one ipc connection.
+ * <p/>
+ * At most {@link CommonConfigurationKeys#IPC_CLIENT_ASYNC_CALLS_MAX_KEY}
+ * operations are outstanding per ipc client; a method called beyond that
+ * waits until an earlier operation completes.
+ * <p/>
+ * Unlike their {@link DistributedFileSystem} counterparts, these operations
+ * do not resolve symlinks, and a failed operation is not retried nor
+ * failed over to another NameNode.
+ * <p/>
+ * If the NameNode proxy cannot make asynchronous calls, the operations
+ * wait for the NameNode and return a completed future.
+ *****************************************************************/
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class AsyncDistributedFileSystem {
+  private final DistributedFileSystem fs;
+  private final Statistics statistics;
+
+  AsyncDistributedFileSystem(DistributedFileSystem fs, Statistics statistics) {
+    this.fs = fs;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Rename src to dst asynchronously.
+   * @see DistributedFileSystem#rename(Path, Path, Options.Rename...)
+   */
+  public Future<Void> rename(Path src, Path dst, Options.Rename... options)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    final boolean async = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      fs.dfs.rename(getPathName(src), getPathName(dst), options);
+      return new UnwrappingFuture<Void>(getAsyncReturnValue((Void) null));
+    } finally {
+      Client.setAsynchronousMode(async);
+    }
+  }
+
+  /**
+   * Set the permission of a path asynchronously.
+   * @see DistributedFileSystem#setPermission(Path, FsPermission)
+   */
+  public Future<Void> setPermission(Path p, FsPermission permission)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    final boolean async = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      fs.dfs.setPermission(getPathName(p), permission);
+      return new UnwrappingFuture<Void>(getAsyncReturnValue((Void) null));
+    } finally {
+      Client.setAsynchronousMode(async);
+    }
+  }
+
+  /**
+   * Set the owner of a path asynchronously.
+   * @see DistributedFileSystem#setOwner(Path, String, String)
+   */
+  public Future<Void> setOwner(Path p, String username, String groupname)
+      throws IOException {
+    if (username == null && groupname == null) {
+      throw new IOException("username == null && groupname == null");
+    }
+    statistics.incrementWriteOps(1);
+    final boolean async = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      fs.dfs.setOwner(getPathName(p), username, groupname);
+      return new UnwrappingFuture<Void>(getAsyncReturnValue((Void) null));
+    } finally {
+      Client.setAsynchronousMode(async);
+    }
+  }
+
+  /**
+   * Create a directory and its missing parents asynchronously.
+   * @see DistributedFileSystem#mkdirs(Path, FsPermission)
+   */
+  public Future<Boolean> mkdirs(Path p, FsPermission permission)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    final boolean async = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      final boolean created = fs.dfs.mkdirs(getPathName(p), permission, true);
+      return new UnwrappingFuture<Boolean>(getAsyncReturnValue(created));
+    } finally {
+      Client.setAsynchronousMode(async);
+    }
+  }
+
+  /**
+   * Get the status of a path asynchronously.  The future fails with a
+   * {@link FileNotFoundException} if the path does not exist.
+   * @see DistributedFileSystem#getFileStatus(Path)
+   */
+  public Future<FileStatus> getFileStatus(Path p) throws IOException {
+    statistics.incrementReadOps(1);
+    final Path absF = fs.makeQualified(p);
+    final boolean async = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      final ListenableFuture<HdfsFileStatus> info = getAsyncReturnValue(
+          fs.dfs.getFileInfo(getPathName(absF)));
+      return new UnwrappingFuture<FileStatus>(Futures.transform(info,
+          new AsyncFunction<HdfsFileStatus, FileStatus>() {
+            @Override
+            public ListenableFuture<FileStatus> apply(HdfsFileStatus fi) {
+              if (fi == null) {
+                return Futures.immediateFailedFuture(
+                    new FileNotFoundException("File does not exist: " + absF));
+              }
+              return Futures.immediateFuture(
+                  fi.makeQualified(fs.getUri(), absF));
+            }
+          }));
+    } finally {
+      Client.setAsynchronousMode(async);
+    }
+  }
+
+  private String getPathName(Path p) {
+    return fs.getPathName(fs.makeQualified(p));
+  }
+
+  /**
+   * @return the future result of the call just made, or, if the NameNode
+   *         proxy cannot make asynchronous calls and has therefore completed
+   *         the call already, a future of the result it returned
+   */
+  private static <T> ListenableFuture<T> getAsyncReturnValue(T syncResult) {
+    final ListenableFuture<T> value =
+        ClientNamenodeProtocolTranslatorPB.getAsyncReturnValue();
+    return value != null ? value : Futures.immediateFuture(syncResult);
+  }
+
+  /**
+   * Unwraps the {@link RemoteException} a call fails with, in the way the
+   * synchronous {@link DFSClient} operations do.
+   */
+  private static class UnwrappingFuture<T> implements Future<T> {
+    private final Future<T> future;
+
+    UnwrappingFuture(Future<T> future) {
+      this.future = future;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+        throw unwrap(e);
+      }
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      try {
+        return future.get(timeout, unit);
+      } catch (ExecutionException e) {
+        throw unwrap(e);
+      }
+    }
+
+    private static ExecutionException unwrap(ExecutionException e) {
+      if (e.getCause() instanceof RemoteException) {
+        return new ExecutionException(
+            ((RemoteException) e.getCause()).unwrapRemoteException());
+      }
+      return e;
+    }
+  }
+}
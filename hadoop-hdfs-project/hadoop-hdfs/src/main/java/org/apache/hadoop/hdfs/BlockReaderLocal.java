@@ -19,6 +19,7 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.EnumSet;
 
@@ -71,11 +72,13 @@ public static class Builder {
     private long dataPos;
     private ExtendedBlock block;
     private StorageType storageType;
+    private boolean mmapReadEnabled;
 
     public Builder(Conf conf) {
       this.maxReadahead = Integer.MAX_VALUE;
       this.verifyChecksum = !conf.skipShortCircuitChecksums;
       this.bufferSize = conf.shortCircuitBufferSize;
+      this.mmapReadEnabled = conf.shortCircuitMmapReadEnabled;
     }
 
     public Builder setVerifyChecksum(boolean verifyChecksum) {
@@ -116,6 +119,11 @@ public Builder setStorageType(StorageType storageType) {
       return this;
     }
 
+    public Builder setMmapReadEnabled(boolean mmapReadEnabled) {
+      this.mmapReadEnabled = mmapReadEnabled;
+      return this;
+    }
+
     public BlockReaderLocal build() {
       Preconditions.checkNotNull(replica);
       return new BlockReaderLocal(this);
@@ -224,6 +232,23 @@ public BlockReaderLocal build() {
    */
   private StorageType storageType;
 
+  /**
+   * If true, reads which can skip checksums are served from an mmap of the
+   * block file rather than read from the data FileChannel.
+   */
+  private final boolean mmapReadEnabled;
+
+  /**
+   * The mmap which reads are served from, or null if we have not needed it
+   * yet or could not get it.
+   */
+  private ClientMmap readMmap;
+
+  /**
+   * True if we could not get an mmap covering the whole block file.
+   */
+  private boolean readMmapFailed = false;
+
   private BlockReaderLocal(Builder builder) {
     this.replica = builder.replica;
     this.dataIn = replica.getDataStream().getChannel();
@@ -253,6 +278,7 @@ private BlockReaderLocal(Builder builder) {
     }
     this.maxReadaheadLength = maxReadaheadChunks * bytesPerChecksum;
     this.storageType = builder.storageType;
+    this.mmapReadEnabled = builder.mmapReadEnabled;
   }
 
   private synchronized void createDataBufIfNeeded() {
@@ -410,7 +436,10 @@ public synchronized int read(ByteBuffer buf) throws IOException {
       }
       int nRead;
       try {
-        if (canSkipChecksum && zeroReadaheadRequested) {
+        MappedByteBuffer map = canSkipChecksum ? getReadMmap() : null;
+        if (map != null) {
+          nRead = readFromMmap(map, buf);
+        } else if (canSkipChecksum && zeroReadaheadRequested) {
           nRead = readWithoutBounceBuffer(buf);
         } else {
           nRead = readWithBounceBuffer(buf, canSkipChecksum);
@@ -430,6 +459,66 @@ public synchronized int read(ByteBuffer buf) throws IOException {
     }
   }
 
+  /**
+   * Get the mmap to serve reads from, mapping the block file the first
+   * time.  The mmap is not anchored: the callers must only read from it
+   * when they can skip checksums.
+   *
+   * @return  null if reads are not served from an mmap.
+   */
+  private synchronized MappedByteBuffer getReadMmap() {
+    if (!mmapReadEnabled || readMmapFailed) {
+      return null;
+    }
+    if (readMmap == null) {
+      readMmap = replica.getOrCreateClientMmap(false);
+      if (readMmap == null) {
+        readMmapFailed = true;
+        return null;
+      }
+      try {
+        // Blocks larger than 2 GB cannot be mapped in a single region.
+        if (readMmap.getMappedByteBuffer().capacity() < dataIn.size()) {
+          readMmapFailed = true;
+        }
+      } catch (IOException e) {
+        LOG.warn("can't get the size of " + filename, e);
+        readMmapFailed = true;
+      }
+      if (readMmapFailed) {
+        readMmap.close();
+        readMmap = null;
+        return null;
+      }
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("serving reads of " + block + " of " + filename +
+            " from an mmap");
+      }
+    }
+    return readMmap.getMappedByteBuffer();
+  }
+
+  /**
+   * Copy data straight from the mmap of the block file.  Any buffered data
+   * is discarded and read again from the mmap.
+   */
+  private synchronized int readFromMmap(MappedByteBuffer map,
+      ByteBuffer buf) {
+    freeDataBufIfExists();
+    freeChecksumBufIfExists();
+    if (dataPos >= map.capacity()) {
+      return -1;
+    }
+    int nRead = (int)Math.min(buf.remaining(), map.capacity() - dataPos);
+    ByteBuffer data = map.duplicate();
+    data.position((int)dataPos);
+    data.limit((int)dataPos + nRead);
+    buf.put(data);
+    dataPos += nRead;
+    replica.addMmapReadBytes(nRead);
+    return nRead;
+  }
+
   private synchronized int readWithoutBounceBuffer(ByteBuffer buf)
       throws IOException {
     freeDataBufIfExists();
@@ -563,7 +652,10 @@ public synchronized int read(byte[] arr, int off, int len)
         LOG.trace(traceString + ": starting");
       }
       try {
-        if (canSkipChecksum && zeroReadaheadRequested) {
+        MappedByteBuffer map = canSkipChecksum ? getReadMmap() : null;
+        if (map != null) {
+          nRead = readFromMmap(map, ByteBuffer.wrap(arr, off, len));
+        } else if (canSkipChecksum && zeroReadaheadRequested) {
           nRead = readWithoutBounceBuffer(arr, off, len);
         } else {
           nRead = readWithBounceBuffer(arr, off, len, canSkipChecksum);
@@ -641,6 +733,10 @@ public synchronized void close() throws IOException {
     if (LOG.isTraceEnabled()) {
       LOG.trace("close(filename=" + filename + ", block=" + block + ")");
     }
+    if (readMmap != null) {
+      readMmap.close();
+      readMmap = null;
+    }
     replica.unref();
     freeDataBufIfExists();
     freeChecksumBufIfExists();
@@ -718,6 +814,11 @@ boolean getVerifyChecksum() {
   int getMaxReadaheadLength() {
     return this.maxReadaheadLength;
   }
+
+  @VisibleForTesting
+  synchronized boolean isReadingFromMmap() {
+    return readMmap != null;
+  }
   
   /**
    * Make the replica anchorable.  Normally this can only be done by the
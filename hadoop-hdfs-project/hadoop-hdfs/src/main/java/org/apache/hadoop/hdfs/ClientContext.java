@@ -27,6 +27,8 @@
 import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
@@ -76,6 +78,11 @@ public class ClientContext {
    * Caches key Providers for the DFSClient
    */
   private final KeyProviderCache keyProviderCache;
+
+  /**
+   * Caches the block locations of closed files, or null if disabled.
+   */
+  private final LocatedBlocksCache locatedBlocksCache;
   /**
    * True if we should use the legacy BlockReaderLocal.
    */
@@ -93,6 +100,9 @@ public class ClientContext {
   /** Creating byte[] for {@link DFSOutputStream}. */
   private final ByteArrayManager byteArrayManager;  
 
+  /** Pools direct buffers for {@link DFSOutputStream} packets. */
+  private final ByteBufferPool writeBufferPool = new ElasticByteBufferPool();
+
   /**
    * Whether or not we complained about a DFSClient fetching a CacheContext that
    * didn't match its config values yet.
@@ -113,6 +123,9 @@ private ClientContext(String name, Conf conf) {
     this.peerCache =
           new PeerCache(conf.socketCacheCapacity, conf.socketCacheExpiry);
     this.keyProviderCache = new KeyProviderCache(conf.keyProviderCacheExpiryMs);
+    this.locatedBlocksCache = conf.locatedBlocksCacheSize > 0 ?
+        new LocatedBlocksCache(conf.locatedBlocksCacheSize,
+            conf.locatedBlocksCacheExpiryMs) : null;
     this.useLegacyBlockReaderLocal = conf.useLegacyBlockReaderLocal;
     this.domainSocketFactory = new DomainSocketFactory(conf);
 
@@ -146,7 +159,11 @@ public static String confAsString(Conf conf) {
       append(", shortCircuitSharedMemoryWatcherInterruptCheckMs = ").
       append(conf.shortCircuitSharedMemoryWatcherInterruptCheckMs).
       append(", keyProviderCacheExpiryMs = ").
-      append(conf.keyProviderCacheExpiryMs);
+      append(conf.keyProviderCacheExpiryMs).
+      append(", locatedBlocksCacheSize = ").
+      append(conf.locatedBlocksCacheSize).
+      append(", locatedBlocksCacheExpiryMs = ").
+      append(conf.locatedBlocksCacheExpiryMs);
 
     return builder.toString();
   }
@@ -207,6 +224,11 @@ public KeyProviderCache getKeyProviderCache() {
     return keyProviderCache;
   }
 
+  /** @return the located blocks cache, or null if it is disabled */
+  public LocatedBlocksCache getLocatedBlocksCache() {
+    return locatedBlocksCache;
+  }
+
   public boolean getUseLegacyBlockReaderLocal() {
     return useLegacyBlockReaderLocal;
   }
@@ -226,4 +248,8 @@ public DomainSocketFactory getDomainSocketFactory() {
   public ByteArrayManager getByteArrayManager() {
     return byteArrayManager;
   }
+
+  public ByteBufferPool getWriteBufferPool() {
+    return writeBufferPool;
+  }
 }
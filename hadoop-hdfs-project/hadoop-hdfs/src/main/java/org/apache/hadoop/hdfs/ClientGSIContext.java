@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * The client side {@link AlignmentContext} of the NameNode global state id,
+ * i.e. the id of the last transaction the client has seen the effects of.
+ * It is shared by the proxies to all the NameNodes of a nameservice, so that
+ * a standby NameNode only serves a read once it has applied every
+ * transaction the client has seen on the active NameNode.
+ * <p>
+ * The state id only moves forward, whichever NameNode answers and in
+ * whichever order responses arrive, and is safe to update from many calls
+ * at once.  It is 0 until the first response has carried a state id; such a
+ * client should not read from a standby, see
+ * {@link org.apache.hadoop.hdfs.server.namenode.ha.StandbyReadProxyProvider}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ClientGSIContext implements AlignmentContext {
+  private final AtomicLong lastSeenStateId = new AtomicLong(0);
+
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    // clients do not send responses
+  }
+
+  /**
+   * Advance the last seen state id to the one of the response, which may be
+   * older if it comes from a standby NameNode.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    if (!header.hasStateId()) {
+      return;
+    }
+    final long stateId = header.getStateId();
+    long last = lastSeenStateId.get();
+    while (stateId > last && !lastSeenStateId.compareAndSet(last, stateId)) {
+      last = lastSeenStateId.get();
+    }
+  }
+
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    header.setStateId(lastSeenStateId.get());
+  }
+
+  /**
+   * Clients do not serve requests, so there is no client state id to read.
+   * @return 0, the state id of a client which has not seen any transaction
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    return 0;
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return lastSeenStateId.get();
+  }
+}
@@ -121,6 +121,7 @@
 import org.apache.hadoop.fs.FsStatus;
 import org.apache.hadoop.fs.HdfsBlockLocation;
 import org.apache.hadoop.fs.InvalidPathException;
+import org.apache.hadoop.fs.InvalidRequestException;
 import org.apache.hadoop.fs.MD5MD5CRC32CastagnoliFileChecksum;
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
 import org.apache.hadoop.fs.MD5MD5CRC32GzipFileChecksum;
@@ -143,6 +144,7 @@
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.protocol.AclException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -276,9 +278,13 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private final CachingStrategy defaultWriteCachingStrategy;
   private final ClientContext clientContext;
   private volatile long hedgedReadThresholdMillis;
+  private final boolean hedgedReadAdaptive;
+  private final double hedgedReadAdaptivePercentile;
+  private final int hedgedReadAdaptiveMinSamples;
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private static ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
   private final Sampler<?> traceSampler;
 
   /**
@@ -298,6 +304,7 @@ public static class Conf {
     final int writePacketSize;
     final int writeMaxPackets;
     final ByteArrayManager.Conf writeByteArrayManagerConf;
+    final boolean writeDirectBufferPoolEnabled;
     final int socketTimeout;
     final int socketCacheCapacity;
     final long socketCacheExpiry;
@@ -333,12 +340,19 @@ public static class Conf {
     final int shortCircuitSharedMemoryWatcherInterruptCheckMs;
     
     final boolean shortCircuitMmapEnabled;
+    final boolean shortCircuitMmapReadEnabled;
     final int shortCircuitMmapCacheSize;
     final long shortCircuitMmapCacheExpiryMs;
     final long shortCircuitMmapCacheRetryTimeout;
     final long shortCircuitCacheStaleThresholdMs;
 
     final long keyProviderCacheExpiryMs;
+    final int locatedBlocksCacheSize;
+    final long locatedBlocksCacheExpiryMs;
+
+    final int vectoredReadMergeGap;
+    final int vectoredReadMaxMergedSize;
+    final int batchedListingLimit;
     public BlockReaderFactory.FailureInjector brfFailureInjector =
       new BlockReaderFactory.FailureInjector();
 
@@ -394,6 +408,9 @@ public Conf(Configuration conf) {
         writeByteArrayManagerConf = new ByteArrayManager.Conf(
             countThreshold, countLimit, countResetTimePeriodMs); 
       }
+      writeDirectBufferPoolEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_KEY,
+          DFSConfigKeys.DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_DEFAULT);
       
       
       defaultBlockSize = conf.getLongBytes(DFS_BLOCK_SIZE_KEY,
@@ -483,6 +500,9 @@ public Conf(Configuration conf) {
       shortCircuitMmapEnabled = conf.getBoolean(
           DFSConfigKeys.DFS_CLIENT_MMAP_ENABLED,
           DFSConfigKeys.DFS_CLIENT_MMAP_ENABLED_DEFAULT);
+      shortCircuitMmapReadEnabled = shortCircuitMmapEnabled &&
+          conf.getBoolean(DFSConfigKeys.DFS_CLIENT_MMAP_READ_ENABLED,
+              DFSConfigKeys.DFS_CLIENT_MMAP_READ_ENABLED_DEFAULT);
       shortCircuitMmapCacheSize = conf.getInt(
           DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE,
           DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT);
@@ -509,6 +529,22 @@ public Conf(Configuration conf) {
       keyProviderCacheExpiryMs = conf.getLong(
           DFSConfigKeys.DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_MS,
           DFSConfigKeys.DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT);
+      locatedBlocksCacheSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT);
+      locatedBlocksCacheExpiryMs = conf.getLong(
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY,
+          DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT);
+
+      vectoredReadMergeGap = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MERGE_GAP_KEY,
+          DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MERGE_GAP_DEFAULT);
+      vectoredReadMaxMergedSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MAX_MERGED_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT);
+      batchedListingLimit = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY,
+          DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_DEFAULT);
     }
 
     public boolean isUseLegacyBlockReaderLocal() {
@@ -706,12 +742,30 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     this.hedgedReadThresholdMillis = conf.getLong(
         DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS,
         DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS);
+    this.hedgedReadAdaptive = conf.getBoolean(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED,
+        DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED);
+    this.hedgedReadAdaptivePercentile = conf.getDouble(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE,
+        DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE);
+    Preconditions.checkArgument(hedgedReadAdaptivePercentile > 0
+        && hedgedReadAdaptivePercentile <= 100, "%s = %s is not in (0, 100]",
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE,
+        hedgedReadAdaptivePercentile);
+    this.hedgedReadAdaptiveMinSamples = conf.getInt(
+        DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_MIN_SAMPLES,
+        DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_MIN_SAMPLES);
     int numThreads = conf.getInt(
         DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE,
         DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE);
     if (numThreads > 0) {
-      this.initThreadsNumForHedgedReads(numThreads);
+      initThreadsNumForHedgedReads(numThreads, conf.getLong(
+          DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_WINDOW_MS,
+          DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_WINDOW_MS));
     }
+    this.initThreadsNumForVectoredReads(conf.getInt(
+        DFSConfigKeys.DFS_CLIENT_VECTORED_READ_THREADPOOL_SIZE_KEY,
+        DFSConfigKeys.DFS_CLIENT_VECTORED_READ_THREADPOOL_SIZE_DEFAULT));
     this.saslClient = new SaslDataTransferClient(
       conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
       TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -1216,6 +1270,47 @@ public LocatedBlocks getLocatedBlocks(String src, long start, long length)
     }
   }
 
+  /**
+   * Get the located blocks to open src with.  They come from the located
+   * blocks cache of the client context if it is enabled and has them.
+   */
+  LocatedBlocks getLocatedBlocksForOpen(String src) throws IOException {
+    final LocatedBlocksCache cache = clientContext.getLocatedBlocksCache();
+    if (cache == null) {
+      return getLocatedBlocks(src, 0);
+    }
+    final String user = ugi.getUserName();
+    LocatedBlocks blocks = cache.get(authority, user, src);
+    if (blocks == null) {
+      blocks = getLocatedBlocks(src, 0);
+      if (blocks != null) {
+        cache.put(authority, user, src, blocks);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Drop the cached located blocks of src, after it was changed or one of
+   * its datanodes failed.  Namespace operations drop them both before and
+   * after their RPC, so that an open racing with the RPC cannot leave the
+   * old locations in the cache.
+   */
+  void invalidateLocatedBlocks(String src) {
+    final LocatedBlocksCache cache = clientContext.getLocatedBlocksCache();
+    if (cache != null) {
+      cache.invalidate(authority, src);
+    }
+  }
+
+  /** Drop the cached located blocks of src and of every file under it. */
+  private void invalidateLocatedBlocksTree(String src) {
+    final LocatedBlocksCache cache = clientContext.getLocatedBlocksCache();
+    if (cache != null) {
+      cache.invalidateTree(authority, src);
+    }
+  }
+
   /**
    * @see ClientProtocol#getBlockLocations(String, long, long)
    */
@@ -1804,6 +1899,7 @@ private DFSOutputStream callAppend(String src, int buffersize,
       EnumSet<CreateFlag> flag, Progressable progress, String[] favoredNodes)
       throws IOException {
     CreateFlag.validateForAppend(flag);
+    invalidateLocatedBlocks(src);
     try {
       LastBlockWithStatus blkWithStatus = namenode.append(src, clientName,
           new EnumSetWritable<>(flag, CreateFlag.class));
@@ -1825,6 +1921,8 @@ private DFSOutputStream callAppend(String src, int buffersize,
                                      UnsupportedOperationException.class,
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
+    } finally {
+      invalidateLocatedBlocks(src);
     }
   }
   
@@ -1947,6 +2045,8 @@ public BlockStoragePolicy[] getStoragePolicies() throws IOException {
   public boolean rename(String src, String dst) throws IOException {
     checkOpen();
     TraceScope scope = getSrcDstTraceScope("rename", src, dst);
+    invalidateLocatedBlocksTree(src);
+    invalidateLocatedBlocksTree(dst);
     try {
       return namenode.rename(src, dst);
     } catch(RemoteException re) {
@@ -1956,6 +2056,8 @@ public boolean rename(String src, String dst) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateLocatedBlocksTree(src);
+      invalidateLocatedBlocksTree(dst);
       scope.close();
     }
   }
@@ -1967,6 +2069,10 @@ public boolean rename(String src, String dst) throws IOException {
   public void concat(String trg, String [] srcs) throws IOException {
     checkOpen();
     TraceScope scope = Trace.startSpan("concat", traceSampler);
+    invalidateLocatedBlocks(trg);
+    for (String src : srcs) {
+      invalidateLocatedBlocks(src);
+    }
     try {
       namenode.concat(trg, srcs);
     } catch(RemoteException re) {
@@ -1974,6 +2080,10 @@ public void concat(String trg, String [] srcs) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateLocatedBlocks(trg);
+      for (String src : srcs) {
+        invalidateLocatedBlocks(src);
+      }
       scope.close();
     }
   }
@@ -1985,6 +2095,8 @@ public void rename(String src, String dst, Options.Rename... options)
       throws IOException {
     checkOpen();
     TraceScope scope = getSrcDstTraceScope("rename2", src, dst);
+    invalidateLocatedBlocksTree(src);
+    invalidateLocatedBlocksTree(dst);
     try {
       namenode.rename2(src, dst, options);
     } catch(RemoteException re) {
@@ -1998,6 +2110,8 @@ public void rename(String src, String dst, Options.Rename... options)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateLocatedBlocksTree(src);
+      invalidateLocatedBlocksTree(dst);
       scope.close();
     }
   }
@@ -2012,11 +2126,14 @@ public boolean truncate(String src, long newLength) throws IOException {
       throw new HadoopIllegalArgumentException(
           "Cannot truncate to a negative file size: " + newLength + ".");
     }
+    invalidateLocatedBlocks(src);
     try {
       return namenode.truncate(src, newLength, clientName);
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateLocatedBlocks(src);
     }
   }
 
@@ -2040,6 +2157,11 @@ public boolean delete(String src) throws IOException {
   public boolean delete(String src, boolean recursive) throws IOException {
     checkOpen();
     TraceScope scope = getPathTraceScope("delete", src);
+    if (recursive) {
+      invalidateLocatedBlocksTree(src);
+    } else {
+      invalidateLocatedBlocks(src);
+    }
     try {
       return namenode.delete(src, recursive);
     } catch(RemoteException re) {
@@ -2049,6 +2171,11 @@ public boolean delete(String src, boolean recursive) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      if (recursive) {
+        invalidateLocatedBlocksTree(src);
+      } else {
+        invalidateLocatedBlocks(src);
+      }
       scope.close();
     }
   }
@@ -2093,6 +2220,27 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
     }
   }
 
+  /**
+   * Get a page of the listings of many paths; use HdfsFileStatus.EMPTY_NAME
+   * as startAfter for the first page.  At most
+   * {@link DFSConfigKeys#DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY} paths may
+   * be listed at once.
+   *
+   * @see ClientProtocol#getBatchedListing(String[], byte[], boolean)
+   */
+  public BatchedDirectoryListing batchedListPaths(String[] srcs,
+      byte[] startAfter, boolean needLocation) throws IOException {
+    checkOpen();
+    TraceScope scope = Trace.startSpan("batchedListPaths", traceSampler);
+    try {
+      return namenode.getBatchedListing(srcs, startAfter, needLocation);
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(InvalidRequestException.class);
+    } finally {
+      scope.close();
+    }
+  }
+
   /**
    * Get the file info for a specific file or directory.
    * @param src The string representation of the path to the file
@@ -3451,12 +3599,17 @@ public Peer newConnectedPeer(InetSocketAddress addr,
 
   /**
    * Create hedged reads thread pool, HEDGED_READ_THREAD_POOL, if
-   * it does not already exist.
+   * it does not already exist.  Like the pool, the per datanode latencies
+   * in HEDGED_READ_METRIC are shared by every client of the process, so
+   * their window is set here, once, by the first client to use hedged reads.
    * @param num Number of threads for hedged reads thread pool.
    * If zero, skip hedged reads thread pool creation.
+   * @param latencyWindowMs The window of the per datanode latencies.
    */
-  private synchronized void initThreadsNumForHedgedReads(int num) {
+  private static synchronized void initThreadsNumForHedgedReads(int num,
+      long latencyWindowMs) {
     if (num <= 0 || HEDGED_READ_THREAD_POOL != null) return;
+    HEDGED_READ_METRIC.setLatencyWindowMs(latencyWindowMs);
     HEDGED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
         TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
         new Daemon.DaemonFactory() {
@@ -3487,10 +3640,65 @@ public void rejectedExecution(Runnable runnable,
     }
   }
 
+  /**
+   * Create the thread pool of the vectored reads, VECTORED_READ_THREAD_POOL,
+   * if it does not already exist.
+   * @param num Number of threads for the vectored reads thread pool.
+   * If zero, the ranges of vectored reads are read by the calling thread.
+   */
+  private static synchronized void initThreadsNumForVectoredReads(int num) {
+    if (num <= 0 || VECTORED_READ_THREAD_POOL != null) return;
+    VECTORED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex =
+            new AtomicInteger(0);
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("vectoredRead-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        },
+        // read in the current thread when all the threads are busy
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    VECTORED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Using vectored reads; pool threads=" + num);
+    }
+  }
+
+  /**
+   * @return the thread pool of the vectored reads, or null if the ranges
+   *         are read by the calling thread.
+   */
+  ThreadPoolExecutor getVectoredReadThreadPool() {
+    return VECTORED_READ_THREAD_POOL;
+  }
+
   long getHedgedReadTimeout() {
     return this.hedgedReadThresholdMillis;
   }
 
+  /**
+   * @return how long to wait for a read from node before starting a hedged
+   *         read: the configured percentile of the recent read latencies of
+   *         the node if adaptive hedged reads are enabled and it has enough
+   *         samples, the fixed threshold otherwise.
+   */
+  long getHedgedReadTimeout(DatanodeInfo node) {
+    if (hedgedReadAdaptive) {
+      final DFSHedgedReadMetrics.NodeMetrics metrics =
+          HEDGED_READ_METRIC.getNodeMetrics(node.getXferAddr());
+      if (metrics != null
+          && metrics.getLatencySamples() >= hedgedReadAdaptiveMinSamples) {
+        return Math.max(1,
+            metrics.getLatencyPercentile(hedgedReadAdaptivePercentile));
+      }
+    }
+    return this.hedgedReadThresholdMillis;
+  }
+
   @VisibleForTesting
   void setHedgedReadTimeout(long timeoutMillis) {
     this.hedgedReadThresholdMillis = timeoutMillis;
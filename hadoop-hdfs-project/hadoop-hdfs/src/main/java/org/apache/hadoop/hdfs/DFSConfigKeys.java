@@ -72,6 +72,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.client.write.byte-array-manager.count-reset-time-period-ms";
   public static final long    DFS_CLIENT_WRITE_BYTE_ARRAY_MANAGER_COUNT_RESET_TIME_PERIOD_MS_DEFAULT
       = 10L * 1000;
+  public static final String  DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_KEY
+      = "dfs.client.write.direct-buffer-pool.enabled";
+  public static final boolean DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_DEFAULT
+      = false;
 
   public static final String  DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_KEY = "dfs.client.block.write.replace-datanode-on-failure.enable";
   public static final boolean DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_DEFAULT = true;
@@ -170,6 +174,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // This setting is for testing/internal use only.
   public static final String  DFS_DATANODE_DUPLICATE_REPLICA_DELETION = "dfs.datanode.duplicate.replica.deletion";
   public static final boolean DFS_DATANODE_DUPLICATE_REPLICA_DELETION_DEFAULT = true;
+  public static final String  DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_KEY = "dfs.datanode.replica.cache.expiry.time";
+  public static final long    DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_DEFAULT = 0;
 
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
@@ -279,9 +285,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String  DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH = "dfs.namenode.edits.noeditlogchannelflush";
   public static final boolean DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING = "dfs.namenode.edits.asynclogging";
+  public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = false;
   
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
+  public static final String  DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY = "dfs.batched.ls.limit";
+  public static final int     DFS_NAMENODE_BATCHED_LISTING_LIMIT_DEFAULT = 100;
   public static final String  DFS_CONTENT_SUMMARY_LIMIT_KEY = "dfs.content-summary.limit";
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
@@ -324,6 +334,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // Whether to enable datanode's stale state detection and usage for writes
   public static final String DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY = "dfs.namenode.avoid.write.stale.datanode";
   public static final boolean DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_DEFAULT = false;
+  // Whether to move the datanodes reported slow behind the others for reads
+  public static final String DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_READ_KEY = "dfs.namenode.avoid.read.slow.datanode";
+  public static final boolean DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_READ_DEFAULT = false;
+  // Whether to avoid the datanodes reported slow for writes
+  public static final String DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_KEY = "dfs.namenode.avoid.write.slow.datanode";
+  public static final boolean DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_DEFAULT = false;
   // The default value of the time interval for marking datanodes as stale
   public static final String DFS_NAMENODE_STALE_DATANODE_INTERVAL_KEY = "dfs.namenode.stale.datanode.interval";
   public static final long DFS_NAMENODE_STALE_DATANODE_INTERVAL_DEFAULT = 30 * 1000; // 30s
@@ -406,6 +422,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  // Threshold for how long namenode locks must be held for the
+  // event to be logged
+  public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY = "dfs.namenode.write-lock-reporting-threshold-ms";
+  public static final long    DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 1000L;
+  public static final String  DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY = "dfs.namenode.read-lock-reporting-threshold-ms";
+  public static final long    DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 5000L;
+  // Minimum time between two logged long lock holds of the same kind
+  public static final String  DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY = "dfs.lock.suppress.warning.interval";
+  public static final long    DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT = 10000L; // 10s
 
   // Much code in hdfs is not yet updated to use these keys.
   public static final String  DFS_CLIENT_BLOCK_WRITE_LOCATEFOLLOWINGBLOCK_RETRIES_KEY = "dfs.client.block.write.locateFollowingBlock.retries";
@@ -454,6 +479,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_HTTP_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_DATANODE_HTTP_DEFAULT_PORT;
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY = "dfs.datanode.max.transfer.threads";
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_XCEIVER_POOL_SIZE_KEY = "dfs.datanode.xceiver.pool.size";
+  public static final int     DFS_DATANODE_XCEIVER_POOL_SIZE_DEFAULT = 0;
+  public static final String  DFS_DATANODE_XCEIVER_POOL_MAX_READ_LENGTH_KEY = "dfs.datanode.xceiver.pool.max.read.length";
+  public static final long    DFS_DATANODE_XCEIVER_POOL_MAX_READ_LENGTH_DEFAULT = 1024 * 1024;
+  public static final String  DFS_DATANODE_XCEIVER_POOL_REQUEST_TIMEOUT_KEY = "dfs.datanode.xceiver.pool.request.timeout.ms";
+  public static final int     DFS_DATANODE_XCEIVER_POOL_REQUEST_TIMEOUT_DEFAULT = 5000;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -515,6 +546,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
   public static final String  DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY = "dfs.blockreport.split.threshold";
   public static final long    DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT = 1000 * 1000;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY = "dfs.namenode.blockreport.batch.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_DEFAULT = 5000;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_KEY = "dfs.namenode.blockreport.max.concurrent";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_DEFAULT = 0;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -544,6 +579,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT  = 60 * 60 * 1000;
   public static final String DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS = "dfs.client.mmap.retry.timeout.ms";
   public static final long DFS_CLIENT_MMAP_RETRY_TIMEOUT_MS_DEFAULT = 5 * 60 * 1000;
+  public static final String DFS_CLIENT_MMAP_CACHE_MAX_BYTES = "dfs.client.mmap.cache.max.bytes";
+  public static final long DFS_CLIENT_MMAP_CACHE_MAX_BYTES_DEFAULT = 4L * 1024 * 1024 * 1024;
+  public static final String DFS_CLIENT_MMAP_READ_ENABLED = "dfs.client.mmap.read.enabled";
+  public static final boolean DFS_CLIENT_MMAP_READ_ENABLED_DEFAULT = false;
   public static final String DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS = "dfs.client.short.circuit.replica.stale.threshold.ms";
   public static final long DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT = 30 * 60 * 1000;
 
@@ -559,6 +598,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
 
+  // parallel loading of fsimage sub-sections. Images written with them can
+  // not be loaded by older releases, see hdfs-default.xml.
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final long DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT = 1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   // Image transfer timeout
   public static final String DFS_IMAGE_TRANSFER_TIMEOUT_KEY = "dfs.image.transfer.timeout";
   public static final int DFS_IMAGE_TRANSFER_TIMEOUT_DEFAULT = 60 * 1000;
@@ -641,6 +695,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String  DFS_HA_STANDBY_CONSISTENT_READS_KEY = "dfs.ha.standby.consistent-reads";
+  public static final boolean DFS_HA_STANDBY_CONSISTENT_READS_DEFAULT = false;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
@@ -755,6 +811,41 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE =
       "dfs.client.hedged.read.threadpool.size";
   public static final int     DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE = 0;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED =
+      "dfs.client.hedged.read.adaptive.enabled";
+  public static final boolean DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED =
+      false;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE =
+      "dfs.client.hedged.read.adaptive.percentile";
+  public static final double DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_PERCENTILE =
+      95;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_MIN_SAMPLES =
+      "dfs.client.hedged.read.adaptive.min.samples";
+  public static final int DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_MIN_SAMPLES =
+      20;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_WINDOW_MS =
+      "dfs.client.hedged.read.adaptive.window.ms";
+  public static final long DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_WINDOW_MS =
+      60000;
+
+  // vectored read properties
+  public static final String  DFS_CLIENT_VECTORED_READ_THREADPOOL_SIZE_KEY =
+      "dfs.client.vectored.read.threadpool.size";
+  public static final int     DFS_CLIENT_VECTORED_READ_THREADPOOL_SIZE_DEFAULT = 16;
+  public static final String  DFS_CLIENT_VECTORED_READ_MERGE_GAP_KEY =
+      "dfs.client.vectored.read.merge.gap";
+  public static final int     DFS_CLIENT_VECTORED_READ_MERGE_GAP_DEFAULT = 64 * 1024;
+  public static final String  DFS_CLIENT_VECTORED_READ_MAX_MERGED_SIZE_KEY =
+      "dfs.client.vectored.read.max.merged.size";
+  public static final int     DFS_CLIENT_VECTORED_READ_MAX_MERGED_SIZE_DEFAULT = 8 * 1024 * 1024;
+
+  // located blocks cache properties
+  public static final String  DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY =
+      "dfs.client.located.blocks.cache.size";
+  public static final int     DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT = 0;
+  public static final String  DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY =
+      "dfs.client.located.blocks.cache.expiry.ms";
+  public static final long    DFS_CLIENT_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT = 60000;
 
   // Slow io warning log threshold settings for dfsclient and datanode.
   public static final String DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_KEY =
@@ -764,6 +855,27 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
     "dfs.datanode.slow.io.warning.threshold.ms";
   public static final long DFS_DATANODE_SLOW_IO_WARNING_THRESHOLD_DEFAULT = 300;
 
+  // Detection of the downstream peers and volumes which are slow compared
+  // to the others, reported to the namenode with the heartbeats.
+  public static final String DFS_DATANODE_SLOW_NODE_DETECTION_ENABLED_KEY =
+    "dfs.datanode.slow.node.detection.enabled";
+  public static final boolean DFS_DATANODE_SLOW_NODE_DETECTION_ENABLED_DEFAULT = false;
+  public static final String DFS_DATANODE_SLOW_NODE_WINDOW_MS_KEY =
+    "dfs.datanode.slow.node.window.ms";
+  public static final long DFS_DATANODE_SLOW_NODE_WINDOW_MS_DEFAULT = 5 * 60 * 1000;
+  public static final String DFS_DATANODE_SLOW_NODE_PERCENTILE_KEY =
+    "dfs.datanode.slow.node.percentile";
+  public static final double DFS_DATANODE_SLOW_NODE_PERCENTILE_DEFAULT = 95;
+  public static final String DFS_DATANODE_SLOW_NODE_MIN_SAMPLES_KEY =
+    "dfs.datanode.slow.node.min.samples";
+  public static final int DFS_DATANODE_SLOW_NODE_MIN_SAMPLES_DEFAULT = 100;
+  public static final String DFS_DATANODE_SLOW_PEER_LOW_THRESHOLD_MS_KEY =
+    "dfs.datanode.slow.peer.low.threshold.ms";
+  public static final long DFS_DATANODE_SLOW_PEER_LOW_THRESHOLD_MS_DEFAULT = 5;
+  public static final String DFS_DATANODE_SLOW_DISK_LOW_THRESHOLD_MS_KEY =
+    "dfs.datanode.slow.disk.low.threshold.ms";
+  public static final long DFS_DATANODE_SLOW_DISK_LOW_THRESHOLD_MS_DEFAULT = 20;
+
   public static final String DFS_NAMENODE_INOTIFY_MAX_EVENTS_PER_RPC_KEY =
       "dfs.namenode.inotify.max.events.per.rpc";
   public static final int DFS_NAMENODE_INOTIFY_MAX_EVENTS_PER_RPC_DEFAULT =
@@ -17,18 +17,124 @@
  */
 package org.apache.hadoop.hdfs;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.hadoop.hdfs.util.RollingLatencyHistogram;
+
 /**
  * The client-side metrics for hedged read feature.
  * This class has a number of metrics variables that are publicly accessible,
  * we can grab them from client side, like HBase.
+ *
+ * Besides the totals, it keeps the read latencies and the hedged read
+ * counts of every datanode, keyed by its transfer address.  The latencies
+ * also drive the adaptive hedged read threshold.
  */
 public class DFSHedgedReadMetrics {
   public final AtomicLong hedgedReadOps = new AtomicLong();
   public final AtomicLong hedgedReadOpsWin = new AtomicLong();
   public final AtomicLong hedgedReadOpsInCurThread = new AtomicLong();
 
+  /** The hedged read metrics of one datanode. */
+  public static class NodeMetrics {
+    private final RollingLatencyHistogram latencies;
+    private final AtomicLong readOps = new AtomicLong();
+    private final AtomicLong hedgedReadOps = new AtomicLong();
+    private final AtomicLong hedgedReadWins = new AtomicLong();
+
+    NodeMetrics(long latencyWindowMs) {
+      this.latencies = new RollingLatencyHistogram(latencyWindowMs);
+    }
+
+    /** @return the number of reads completed by the datanode. */
+    public long getReadOps() {
+      return readOps.get();
+    }
+
+    /** @return the number of hedged reads started because it was slow. */
+    public long getHedgedReadOps() {
+      return hedgedReadOps.get();
+    }
+
+    /** @return the number of hedged reads to the datanode which won. */
+    public long getHedgedReadWins() {
+      return hedgedReadWins.get();
+    }
+
+    /** @return the number of latency samples in the rolling window. */
+    public long getLatencySamples() {
+      return latencies.getCount();
+    }
+
+    /**
+     * @return the given percentile of the recent read latencies in
+     *         milliseconds, or -1 if there are none.
+     */
+    public long getLatencyPercentile(double percentile) {
+      return latencies.getPercentile(percentile);
+    }
+  }
+
+  /**
+   * The window of the per datanode latencies.  The metrics are shared by
+   * every client of the process, the window is set once, before the first
+   * hedged read.
+   */
+  private volatile long latencyWindowMs =
+      DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_ADAPTIVE_WINDOW_MS;
+  private final ConcurrentMap<String, NodeMetrics> nodeMetrics =
+      new ConcurrentHashMap<String, NodeMetrics>();
+
+  void setLatencyWindowMs(long windowMs) {
+    this.latencyWindowMs = windowMs;
+  }
+
+  private NodeMetrics getOrCreateNodeMetrics(String node) {
+    NodeMetrics metrics = nodeMetrics.get(node);
+    if (metrics == null) {
+      metrics = new NodeMetrics(latencyWindowMs);
+      final NodeMetrics existing = nodeMetrics.putIfAbsent(node, metrics);
+      if (existing != null) {
+        metrics = existing;
+      }
+    }
+    return metrics;
+  }
+
+  /** Record a read from the datanode at node which took latencyMs. */
+  void addNodeReadLatency(String node, long latencyMs) {
+    final NodeMetrics metrics = getOrCreateNodeMetrics(node);
+    metrics.readOps.incrementAndGet();
+    metrics.latencies.add(latencyMs);
+  }
+
+  /** Record a hedged read started because node was slow. */
+  void incNodeHedgedReadOps(String node) {
+    getOrCreateNodeMetrics(node).hedgedReadOps.incrementAndGet();
+  }
+
+  /** Record a hedged read to node which won. */
+  void incNodeHedgedReadWins(String node) {
+    getOrCreateNodeMetrics(node).hedgedReadWins.incrementAndGet();
+  }
+
+  /**
+   * @return the metrics of the datanode with the given transfer address,
+   *         or null if nothing was read from it.
+   */
+  public NodeMetrics getNodeMetrics(String node) {
+    return nodeMetrics.get(node);
+  }
+
+  /** @return the metrics of every datanode, keyed by transfer address. */
+  public Map<String, NodeMetrics> getAllNodeMetrics() {
+    return Collections.unmodifiableMap(nodeMetrics);
+  }
+
   public void incHedgedReadOps() {
     hedgedReadOps.incrementAndGet();
   }
@@ -28,6 +28,7 @@
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,6 +42,7 @@
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -53,10 +55,14 @@
 import org.apache.hadoop.fs.CanUnbuffer;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.apache.hadoop.fs.VectoredReadable;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -78,11 +84,13 @@
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.IdentityHashStore;
 import org.apache.hadoop.util.StopWatch;
+import org.apache.hadoop.util.Time;
 import org.apache.htrace.Span;
 import org.apache.htrace.Trace;
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
 
 /****************************************************************
  * DFSInputStream provides bytes from a named file.  It handles 
@@ -91,7 +99,7 @@
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
 implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
-    HasEnhancedByteBufferAccess, CanUnbuffer {
+    HasEnhancedByteBufferAccess, CanUnbuffer, VectoredReadable {
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
@@ -251,6 +259,7 @@ void clear() {
 
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
+    dfsClient.invalidateLocatedBlocks(src);
   }
   
   DFSInputStream(DFSClient dfsClient, String src, boolean verifyChecksum
@@ -261,15 +270,25 @@ void addToDeadNodes(DatanodeInfo dnInfo) {
     synchronized (infoLock) {
       this.cachingStrategy = dfsClient.getDefaultReadCachingStrategy();
     }
-    openInfo();
+    openInfo(false);
   }
 
   /**
    * Grab the open-file info from namenode
    */
   void openInfo() throws IOException, UnresolvedLinkException {
+    openInfo(true);
+  }
+
+  /**
+   * Grab the open-file info from namenode
+   * @param refreshLocatedBlocks whether to bypass the located blocks cache
+   */
+  private void openInfo(boolean refreshLocatedBlocks) throws IOException,
+      UnresolvedLinkException {
     synchronized(infoLock) {
-      lastBlockBeingWrittenLength = fetchLocatedBlocksAndGetLastBlockLength();
+      lastBlockBeingWrittenLength =
+          fetchLocatedBlocksAndGetLastBlockLength(refreshLocatedBlocks);
       int retriesForLastBlockLength = dfsClient.getConf().retryTimesForGetLastBlockLength;
       while (retriesForLastBlockLength > 0) {
         // Getting last block length as -1 is a special case. When cluster
@@ -281,7 +300,8 @@ void openInfo() throws IOException, UnresolvedLinkException {
               + "Datanodes might not have reported blocks completely."
               + " Will retry for " + retriesForLastBlockLength + " times");
           waitFor(dfsClient.getConf().retryIntervalForGetLastBlockLength);
-          lastBlockBeingWrittenLength = fetchLocatedBlocksAndGetLastBlockLength();
+          lastBlockBeingWrittenLength =
+              fetchLocatedBlocksAndGetLastBlockLength(true);
         } else {
           break;
         }
@@ -302,8 +322,12 @@ private void waitFor(int waitTime) throws IOException {
     }
   }
 
-  private long fetchLocatedBlocksAndGetLastBlockLength() throws IOException {
-    final LocatedBlocks newInfo = dfsClient.getLocatedBlocks(src, 0);
+  private long fetchLocatedBlocksAndGetLastBlockLength(boolean refresh)
+      throws IOException {
+    if (refresh) {
+      dfsClient.invalidateLocatedBlocks(src);
+    }
+    final LocatedBlocks newInfo = dfsClient.getLocatedBlocksForOpen(src);
     if (DFSClient.LOG.isDebugEnabled()) {
       DFSClient.LOG.debug("newInfo = " + newInfo);
     }
@@ -512,6 +536,8 @@ else if (offset >= locatedBlocks.getFileLength()) {
   /** Fetch a block from namenode and cache it */
   private void fetchBlockAt(long offset) throws IOException {
     synchronized(infoLock) {
+      // the cached locations of the file failed us, do not hand them out
+      dfsClient.invalidateLocatedBlocks(src);
       int targetBlockIdx = locatedBlocks.findBlock(offset);
       if (targetBlockIdx < 0) { // block is not cached
         targetBlockIdx = LocatedBlocks.getInsertIndex(targetBlockIdx);
@@ -969,9 +995,14 @@ private void addIntoCorruptedBlockMap(ExtendedBlock blk, DatanodeInfo node,
 
   private DNAddrPair chooseDataNode(LocatedBlock block,
       Collection<DatanodeInfo> ignoredNodes) throws IOException {
+    return chooseDataNode(block, ignoredNodes, 0);
+  }
+
+  private DNAddrPair chooseDataNode(LocatedBlock block,
+      Collection<DatanodeInfo> ignoredNodes, int replica) throws IOException {
     while (true) {
       try {
-        return getBestNodeDNAddrPair(block, ignoredNodes);
+        return getBestNodeDNAddrPair(block, ignoredNodes, replica);
       } catch (IOException ie) {
         String errMsg = getBestNodeDNAddrPairErrorString(block.getLocations(),
           deadNodes, ignoredNodes);
@@ -1026,21 +1057,39 @@ private DNAddrPair chooseDataNode(LocatedBlock block,
    */
   private DNAddrPair getBestNodeDNAddrPair(LocatedBlock block,
       Collection<DatanodeInfo> ignoredNodes) throws IOException {
+    return getBestNodeDNAddrPair(block, ignoredNodes, 0);
+  }
+
+  /**
+   * Get a node from which to stream the data.
+   * @param block LocatedBlock, containing nodes in priority order.
+   * @param ignoredNodes Do not choose nodes in this array (may be null)
+   * @param replica Skip this many of the usable nodes, wrapping around when
+   *                there are fewer of them. 0 chooses the best node.
+   * @return The DNAddrPair of the chosen node.
+   * @throws IOException
+   */
+  private DNAddrPair getBestNodeDNAddrPair(LocatedBlock block,
+      Collection<DatanodeInfo> ignoredNodes, int replica) throws IOException {
     DatanodeInfo[] nodes = block.getLocations();
     StorageType[] storageTypes = block.getStorageTypes();
     DatanodeInfo chosenNode = null;
     StorageType storageType = null;
     if (nodes != null) {
+      List<Integer> usable = new ArrayList<Integer>(nodes.length);
       for (int i = 0; i < nodes.length; i++) {
         if (!deadNodes.containsKey(nodes[i])
             && (ignoredNodes == null || !ignoredNodes.contains(nodes[i]))) {
-          chosenNode = nodes[i];
-          // Storage types are ordered to correspond with nodes, so use the same
-          // index to get storage type.
-          if (storageTypes != null && i < storageTypes.length) {
-            storageType = storageTypes[i];
-          }
-          break;
+          usable.add(i);
+        }
+      }
+      if (!usable.isEmpty()) {
+        int i = usable.get(replica % usable.size());
+        chosenNode = nodes[i];
+        // Storage types are ordered to correspond with nodes, so use the same
+        // index to get storage type.
+        if (storageTypes != null && i < storageTypes.length) {
+          storageType = storageTypes[i];
         }
       }
     }
@@ -1087,9 +1136,21 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
       byte[] buf, int offset,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
       throws IOException {
+    fetchBlockByteRange(block, start, end, buf, offset, corruptedBlockMap, 0);
+  }
+
+  /**
+   * Like {@link #fetchBlockByteRange(LocatedBlock, long, long, byte[], int,
+   * Map)}, but starts with the given replica of the block, see
+   * {@link #getBestNodeDNAddrPair(LocatedBlock, Collection, int)}.
+   */
+  private void fetchBlockByteRange(LocatedBlock block, long start, long end,
+      byte[] buf, int offset,
+      Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap, int replica)
+      throws IOException {
     block = getBlockAt(block.getStartOffset());
     while (true) {
-      DNAddrPair addressPair = chooseDataNode(block, null);
+      DNAddrPair addressPair = chooseDataNode(block, null, replica);
       try {
         actualGetFromOneDataNode(addressPair, block, start, end, buf, offset,
             corruptedBlockMap);
@@ -1115,8 +1176,13 @@ public ByteBuffer call() throws Exception {
         TraceScope scope =
             Trace.startSpan("hedgedRead" + hedgedReadId, parentSpan);
         try {
+          final long startTime = Time.monotonicNow();
           actualGetFromOneDataNode(datanode, block, start, end, buf, offset,
               corruptedBlockMap);
+          // reads which lost the race also complete, and record the latency
+          // the datanode really had
+          dfsClient.getHedgedReadMetrics().addNodeReadLatency(
+              datanode.info.getXferAddr(), Time.monotonicNow() - startTime);
           return bb;
         } finally {
           scope.close();
@@ -1225,7 +1291,9 @@ private void actualGetFromOneDataNode(final DNAddrPair datanode,
    * Like {@link #fetchBlockByteRange(LocatedBlock, long, long, byte[],
    * int, Map)} except we start up a second, parallel, 'hedged' read
    * if the first read is taking longer than configured amount of
-   * time.  We then wait on which ever read returns first.
+   * time, or than the recent latency percentile of its datanode when
+   * adaptive hedged reads are enabled.  We then wait on which ever read
+   * returns first.
    */
   private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
       long end, byte[] buf, int offset,
@@ -1236,6 +1304,9 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         new ExecutorCompletionService<ByteBuffer>(
         dfsClient.getHedgedReadsThreadPool());
     ArrayList<DatanodeInfo> ignored = new ArrayList<DatanodeInfo>();
+    // the datanode each buffer is read from, to credit the winner
+    Map<ByteBuffer, DatanodeInfo> bufferNodes =
+        new IdentityHashMap<ByteBuffer, DatanodeInfo>();
     ByteBuffer bb = null;
     int len = (int) (end - start + 1);
     int hedgedReadId = 0;
@@ -1250,27 +1321,32 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         // the NN to reget block locations. Only go here on first read.
         chosenNode = chooseDataNode(block, ignored);
         bb = ByteBuffer.wrap(buf, offset, len);
+        bufferNodes.put(bb, chosenNode.info);
         Callable<ByteBuffer> getFromDataNodeCallable = getFromOneDataNode(
             chosenNode, block, start, end, bb, corruptedBlockMap,
             hedgedReadId++);
         Future<ByteBuffer> firstRequest = hedgedService
             .submit(getFromDataNodeCallable);
         futures.add(firstRequest);
+        final long hedgedReadTimeout =
+            dfsClient.getHedgedReadTimeout(chosenNode.info);
         try {
           Future<ByteBuffer> future = hedgedService.poll(
-              dfsClient.getHedgedReadTimeout(), TimeUnit.MILLISECONDS);
+              hedgedReadTimeout, TimeUnit.MILLISECONDS);
           if (future != null) {
             future.get();
             return;
           }
           if (DFSClient.LOG.isDebugEnabled()) {
-            DFSClient.LOG.debug("Waited " + dfsClient.getHedgedReadTimeout()
+            DFSClient.LOG.debug("Waited " + hedgedReadTimeout
                 + "ms to read from " + chosenNode.info
                 + "; spawning hedged read");
           }
           // Ignore this node on next go around.
           ignored.add(chosenNode.info);
           dfsClient.getHedgedReadMetrics().incHedgedReadOps();
+          dfsClient.getHedgedReadMetrics().incNodeHedgedReadOps(
+              chosenNode.info.getXferAddr());
           continue; // no need to refresh block locations
         } catch (InterruptedException e) {
           // Ignore
@@ -1288,6 +1364,7 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
             chosenNode = chooseDataNode(block, ignored);
           }
           bb = ByteBuffer.allocate(len);
+          bufferNodes.put(bb, chosenNode.info);
           Callable<ByteBuffer> getFromDataNodeCallable = getFromOneDataNode(
               chosenNode, block, start, end, bb, corruptedBlockMap,
               hedgedReadId++);
@@ -1308,6 +1385,11 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
           cancelAll(futures);
           if (result.array() != buf) { // compare the array pointers
             dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+            final DatanodeInfo winner = bufferNodes.get(result);
+            if (winner != null) {
+              dfsClient.getHedgedReadMetrics().incNodeHedgedReadWins(
+                  winner.getXferAddr());
+            }
             System.arraycopy(result.array(), result.position(), buf, offset,
                 len);
           } else {
@@ -1415,8 +1497,129 @@ public int read(long position, byte[] buffer, int offset, int length)
     }
   }
 
+  /**
+   * Read the given ranges of the file.  The ranges which are at most
+   * {@link DFSConfigKeys#DFS_CLIENT_VECTORED_READ_MERGE_GAP_KEY} bytes apart
+   * are combined into one positional read, and the combined ranges are read
+   * in parallel by the vectored read thread pool of the client.  Unless hedged
+   * reads are enabled, the combined ranges of a block rotate through its
+   * replicas, so that one DataNode does not serve all of them.
+   */
+  @Override
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges)
+      throws IOException {
+    VectoredReadUtils.validateRanges(ranges);
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final Map<FileRange, SettableFuture<ByteBuffer>> futures =
+        new IdentityHashMap<FileRange, SettableFuture<ByteBuffer>>();
+    final List<Future<ByteBuffer>> results =
+        new ArrayList<Future<ByteBuffer>>(ranges.size());
+    for (FileRange range : ranges) {
+      SettableFuture<ByteBuffer> future = futures.get(range);
+      if (future == null) {
+        future = SettableFuture.create();
+        futures.put(range, future);
+      }
+      results.add(future);
+    }
+
+    final List<CombinedFileRange> combined = VectoredReadUtils.mergeRanges(
+        ranges, dfsClient.getConf().vectoredReadMergeGap,
+        dfsClient.getConf().vectoredReadMaxMergedSize);
+    if (DFSClient.LOG.isDebugEnabled()) {
+      DFSClient.LOG.debug("Reading " + ranges.size() + " ranges of " + src
+          + " with " + combined.size() + " reads");
+    }
+    final ThreadPoolExecutor pool = dfsClient.getVectoredReadThreadPool();
+    for (int i = 0; i < combined.size(); i++) {
+      final CombinedFileRange c = combined.get(i);
+      final int replica = i;
+      if (pool == null || combined.size() == 1) {
+        readCombinedRange(c, futures, replica);
+      } else {
+        pool.execute(new Runnable() {
+          @Override
+          public void run() {
+            readCombinedRange(c, futures, replica);
+          }
+        });
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Read a combined range with one positional read and complete the futures
+   * of the ranges it covers.
+   * @param replica the replica of the blocks to read from first
+   */
+  private void readCombinedRange(CombinedFileRange c,
+      Map<FileRange, SettableFuture<ByteBuffer>> futures, int replica) {
+    TraceScope scope =
+        dfsClient.getPathTraceScope("DFSInputStream#readVectored", src);
+    try {
+      if (c.getRanges().size() == 1 && c.getRanges().get(0).getBuffer()
+          .hasArray()) {
+        // read into the buffer of the range without a copy
+        final FileRange range = c.getRanges().get(0);
+        final ByteBuffer bb = range.getBuffer();
+        preadFully(range.getOffset(), bb.array(),
+            bb.arrayOffset() + bb.position(), bb.remaining(), replica);
+        futures.get(range).set(bb);
+        return;
+      }
+      // do not fail the ranges before the end of the file
+      final int length = (int) Math.max(0, Math.min(c.getLength(),
+          getFileLength() - c.getOffset()));
+      final byte[] data = new byte[length];
+      preadFully(c.getOffset(), data, 0, length, replica);
+      for (FileRange range : c.getRanges()) {
+        if (range.getOffset() + range.getLength() > c.getOffset() + length) {
+          futures.get(range).setException(new EOFException(
+              "End of file reached before reading " + range));
+        } else {
+          VectoredReadUtils.copyToRange(data, c.getOffset(), range);
+          futures.get(range).set(range.getBuffer());
+        }
+      }
+    } catch (Throwable t) {
+      // complete the futures even on errors, the callers would wait forever
+      for (FileRange range : c.getRanges()) {
+        futures.get(range).setException(t);
+      }
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Like {@link #readFully(long, byte[], int, int)}, but reads from the given
+   * replica of the blocks first.
+   * @throws EOFException if the end of the file is reached first.
+   */
+  private void preadFully(long position, byte[] buffer, int offset,
+      int length, int replica) throws IOException {
+    int nread = 0;
+    while (nread < length) {
+      int nbytes = pread(position + nread, buffer, offset + nread,
+          length - nread, replica);
+      if (nbytes < 0) {
+        throw new EOFException("End of file reached before reading fully.");
+      }
+      nread += nbytes;
+    }
+  }
+
   private int pread(long position, byte[] buffer, int offset, int length)
       throws IOException {
+    return pread(position, buffer, offset, length, 0);
+  }
+
+  private int pread(long position, byte[] buffer, int offset, int length,
+      int replica) throws IOException {
     // sanity checks
     dfsClient.checkOpen();
     if (closed.get()) {
@@ -1447,7 +1650,7 @@ private int pread(long position, byte[] buffer, int offset, int length)
               - 1, buffer, offset, corruptedBlockMap);
         } else {
           fetchBlockByteRange(blk, targetStart, targetStart + bytesToRead - 1,
-              buffer, offset, corruptedBlockMap);
+              buffer, offset, corruptedBlockMap, replica);
         }
       } finally {
         // Check and report if any block replicas are corrupted.
@@ -31,6 +31,7 @@
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
@@ -84,6 +85,7 @@
 import org.apache.hadoop.hdfs.server.namenode.RetryStartFileException;
 import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RemoteException;
@@ -149,6 +151,8 @@ public class DFSOutputStream extends FSOutputSummer
 
   private final DFSClient dfsClient;
   private final ByteArrayManager byteArrayManager;
+  /** Pool of direct packet buffers, or null if heap buffers are used. */
+  private final ByteBufferPool writeBufferPool;
   private Socket s;
   // closed is accessed by different threads under different locks.
   private volatile boolean closed = false;
@@ -187,12 +191,20 @@ public class DFSOutputStream extends FSOutputSummer
   private static final BlockStoragePolicySuite blockStoragePolicySuite =
       BlockStoragePolicySuite.createDefaultSuite();
 
-  /** Use {@link ByteArrayManager} to create buffer for non-heartbeat packets.*/
+  /**
+   * Use {@link ByteArrayManager}, or the direct buffer pool if it is enabled,
+   * to create buffer for non-heartbeat packets.
+   */
   private DFSPacket createPacket(int packetSize, int chunksPerPkt, long offsetInBlock,
       long seqno, boolean lastPacketInBlock) throws InterruptedIOException {
     final byte[] buf;
     final int bufferSize = PacketHeader.PKT_MAX_HEADER_LEN + packetSize;
 
+    if (writeBufferPool != null) {
+      return new DFSPacket(writeBufferPool.getBuffer(true, bufferSize),
+          writeBufferPool, chunksPerPkt, offsetInBlock, seqno,
+          getChecksumSize(), lastPacketInBlock);
+    }
     try {
       buf = byteArrayManager.newByteArray(bufferSize);
     } catch (InterruptedException ie) {
@@ -229,6 +241,8 @@ class DataStreamer extends Daemon {
     private volatile ExtendedBlock block; // its length is number of bytes acked
     private Token<BlockTokenIdentifier> accessToken;
     private DataOutputStream blockStream;
+    // channel under blockStream for writing direct packets, if available
+    private WritableByteChannel blockChannel;
     private DataInputStream blockReplyStream;
     private ResponseProcessor response = null;
     private volatile DatanodeInfo[] nodes = null; // list of targets for current block
@@ -505,7 +519,7 @@ public void run() {
           // write out data to remote datanode
           TraceScope writeScope = Trace.startSpan("writeTo", span);
           try {
-            one.writeTo(blockStream);
+            one.writeTo(blockStream, blockChannel);
             blockStream.flush();   
           } catch (IOException e) {
             // HDFS-3398 treat primary DN is down since client is unable to 
@@ -624,6 +638,7 @@ private void closeStream() {
           setLastException(e);
         } finally {
           blockStream = null;
+          blockChannel = null;
         }
       }
       if (blockReplyStream != null) {
@@ -1364,6 +1379,8 @@ private boolean createBlockOutputStream(DatanodeInfo[] nodes,
 
           assert null == blockStream : "Previous blockStream unclosed";
           blockStream = out;
+          blockChannel = unbufOut instanceof WritableByteChannel ?
+              (WritableByteChannel) unbufOut : null;
           result =  true; // success
           restartingNodeIndex.set(-1);
           hasError = false;
@@ -1616,6 +1633,8 @@ private DFSOutputStream(DFSClient dfsClient, String src, Progressable progress,
     this.dfsclientSlowLogThresholdMs =
       dfsClient.getConf().dfsclientSlowIoWarningThresholdMs;
     this.byteArrayManager = dfsClient.getClientContext().getByteArrayManager();
+    this.writeBufferPool = dfsClient.getConf().writeDirectBufferPoolEnabled ?
+        dfsClient.getClientContext().getWriteBufferPool() : null;
   }
 
   /** Construct a new output stream for creating a file. */
@@ -1639,6 +1658,7 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
       DataChecksum checksum, String[] favoredNodes) throws IOException {
     TraceScope scope =
         dfsClient.getPathTraceScope("newStreamForCreate", src);
+    dfsClient.invalidateLocatedBlocks(src);
     try {
       HdfsFileStatus stat = null;
 
@@ -1685,6 +1705,7 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
       out.start();
       return out;
     } finally {
+      dfsClient.invalidateLocatedBlocks(src);
       scope.close();
     }
   }
@@ -20,12 +20,15 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
 import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.htrace.Span;
 
 /****************************************************************
@@ -43,6 +46,9 @@ class DFSPacket {
   private int numChunks; // number of chunks currently in packet
   private final int maxChunks; // max chunks in packet
   private byte[] buf;
+  // direct buffer used instead of buf when the packet comes from a pool
+  private ByteBuffer directBuf;
+  private final ByteBufferPool bufferPool;
   private final boolean lastPacketInBlock; // is this the last packet in block?
 
   /**
@@ -79,12 +85,40 @@ class DFSPacket {
    */
   DFSPacket(byte[] buf, int chunksPerPkt, long offsetInBlock, long seqno,
                    int checksumSize, boolean lastPacketInBlock) {
+    this(buf, null, null, chunksPerPkt, offsetInBlock, seqno, checksumSize,
+        lastPacketInBlock);
+  }
+
+  /**
+   * Create a new packet backed by a direct buffer taken from a pool.
+   * The buffer is returned to the pool by {@link #releaseBuffer}.
+   *
+   * @param directBuf the direct buffer storing data and checksums
+   * @param bufferPool the pool the buffer was taken from
+   * @param chunksPerPkt maximum number of chunks per packet.
+   * @param offsetInBlock offset in bytes into the HDFS block.
+   * @param seqno the sequence number of this packet
+   * @param checksumSize the size of checksum
+   * @param lastPacketInBlock if this is the last packet
+   */
+  DFSPacket(ByteBuffer directBuf, ByteBufferPool bufferPool,
+      int chunksPerPkt, long offsetInBlock, long seqno, int checksumSize,
+      boolean lastPacketInBlock) {
+    this(null, directBuf, bufferPool, chunksPerPkt, offsetInBlock, seqno,
+        checksumSize, lastPacketInBlock);
+  }
+
+  private DFSPacket(byte[] buf, ByteBuffer directBuf,
+      ByteBufferPool bufferPool, int chunksPerPkt, long offsetInBlock,
+      long seqno, int checksumSize, boolean lastPacketInBlock) {
     this.lastPacketInBlock = lastPacketInBlock;
     this.numChunks = 0;
     this.offsetInBlock = offsetInBlock;
     this.seqno = seqno;
 
     this.buf = buf;
+    this.directBuf = directBuf;
+    this.bufferPool = bufferPool;
 
     checksumStart = PacketHeader.PKT_MAX_HEADER_LEN;
     checksumPos = checksumStart;
@@ -104,10 +138,10 @@ class DFSPacket {
   synchronized void writeData(byte[] inarray, int off, int len)
       throws ClosedChannelException {
     checkBuffer();
-    if (dataPos + len > buf.length) {
+    if (dataPos + len > capacity()) {
       throw new BufferOverflowException();
     }
-    System.arraycopy(inarray, off, buf, dataPos, len);
+    put(dataPos, inarray, off, len);
     dataPos += len;
   }
 
@@ -128,7 +162,7 @@ synchronized void writeChecksum(byte[] inarray, int off, int len)
     if (checksumPos + len > dataStart) {
       throw new BufferOverflowException();
     }
-    System.arraycopy(inarray, off, buf, checksumPos, len);
+    put(checksumPos, inarray, off, len);
     checksumPos += len;
   }
 
@@ -139,6 +173,21 @@ synchronized void writeChecksum(byte[] inarray, int off, int len)
    * @throws IOException
    */
   synchronized void writeTo(DataOutputStream stm) throws IOException {
+    writeTo(stm, null);
+  }
+
+  /**
+   * Write the full packet, including the header. A packet backed by a
+   * direct buffer is written straight to the given channel, which avoids
+   * copying it into a temporary direct buffer in the socket layer. The
+   * stream is flushed first so that its buffered bytes go out before the
+   * packet.
+   *
+   * @param stm the stream to write to
+   * @param channel the channel underlying stm, or null if there is none
+   */
+  synchronized void writeTo(DataOutputStream stm,
+      WritableByteChannel channel) throws IOException {
     checkBuffer();
 
     final int dataLen = dataPos - dataStart;
@@ -151,8 +200,14 @@ synchronized void writeTo(DataOutputStream stm) throws IOException {
     if (checksumPos != dataStart) {
       // Move the checksum to cover the gap. This can happen for the last
       // packet or during an hflush/hsync call.
-      System.arraycopy(buf, checksumStart, buf,
-          dataStart - checksumLen , checksumLen);
+      if (directBuf == null) {
+        System.arraycopy(buf, checksumStart, buf,
+            dataStart - checksumLen , checksumLen);
+      } else {
+        byte[] sums = new byte[checksumLen];
+        get(checksumStart, sums, 0, checksumLen);
+        put(dataStart - checksumLen, sums, 0, checksumLen);
+      }
       checksumPos = dataStart;
       checksumStart = checksumPos - checksumLen;
     }
@@ -164,37 +219,97 @@ synchronized void writeTo(DataOutputStream stm) throws IOException {
 
     // Copy the header data into the buffer immediately preceding the checksum
     // data.
-    System.arraycopy(header.getBytes(), 0, buf, headerStart,
-        header.getSerializedSize());
+    put(headerStart, header.getBytes(), 0, header.getSerializedSize());
 
+    final int packetLen = header.getSerializedSize() + checksumLen + dataLen;
     // corrupt the data for testing.
     if (DFSClientFaultInjector.get().corruptPacket()) {
-      buf[headerStart+header.getSerializedSize() + checksumLen + dataLen-1] ^= 0xff;
+      flipByte(headerStart + packetLen - 1);
     }
 
     // Write the now contiguous full packet to the output stream.
-    stm.write(buf, headerStart, header.getSerializedSize() + checksumLen + dataLen);
+    if (directBuf == null) {
+      stm.write(buf, headerStart, packetLen);
+    } else {
+      directBuf.clear();
+      directBuf.position(headerStart);
+      directBuf.limit(headerStart + packetLen);
+      if (channel != null) {
+        stm.flush();
+        while (directBuf.hasRemaining()) {
+          channel.write(directBuf);
+        }
+      } else {
+        byte[] chunk = new byte[Math.min(packetLen, 8192)];
+        while (directBuf.hasRemaining()) {
+          int n = Math.min(chunk.length, directBuf.remaining());
+          directBuf.get(chunk, 0, n);
+          stm.write(chunk, 0, n);
+        }
+      }
+    }
 
     // undo corruption.
     if (DFSClientFaultInjector.get().uncorruptPacket()) {
-      buf[headerStart+header.getSerializedSize() + checksumLen + dataLen-1] ^= 0xff;
+      flipByte(headerStart + packetLen - 1);
+    }
+  }
+
+  private int capacity() {
+    return directBuf != null ? directBuf.capacity() : buf.length;
+  }
+
+  private void put(int pos, byte[] src, int off, int len) {
+    if (directBuf == null) {
+      System.arraycopy(src, off, buf, pos, len);
+    } else {
+      directBuf.clear();
+      directBuf.position(pos);
+      directBuf.put(src, off, len);
+    }
+  }
+
+  private void get(int pos, byte[] dst, int off, int len) {
+    directBuf.clear();
+    directBuf.position(pos);
+    directBuf.get(dst, off, len);
+  }
+
+  private void flipByte(int pos) {
+    if (directBuf == null) {
+      buf[pos] ^= 0xff;
+    } else {
+      directBuf.put(pos, (byte) (directBuf.get(pos) ^ 0xff));
     }
   }
 
   private synchronized void checkBuffer() throws ClosedChannelException {
-    if (buf == null) {
+    if (buf == null && directBuf == null) {
       throw new ClosedChannelException();
     }
   }
 
   /**
-   * Release the buffer in this packet to ByteArrayManager.
+   * Release the buffer in this packet to ByteArrayManager, or to its
+   * buffer pool if the packet is backed by a direct buffer.
    *
    * @param bam
    */
   synchronized void releaseBuffer(ByteArrayManager bam) {
-    bam.release(buf);
-    buf = null;
+    if (directBuf != null) {
+      bufferPool.putBuffer(directBuf);
+      directBuf = null;
+    } else {
+      bam.release(buf);
+      buf = null;
+    }
+  }
+
+  /**
+   * @return true if this packet is backed by a pooled direct buffer
+   */
+  boolean isDirect() {
+    return bufferPool != null;
   }
 
   /**
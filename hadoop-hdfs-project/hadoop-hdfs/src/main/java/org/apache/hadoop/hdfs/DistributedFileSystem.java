@@ -23,6 +23,7 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BatchListingOperations;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.BlockStorageLocation;
 import org.apache.hadoop.fs.CacheFlag;
@@ -50,6 +52,7 @@
 import org.apache.hadoop.fs.XAttrSetFlag;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.ParentNotDirectoryException;
+import org.apache.hadoop.fs.PartialListing;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RemoteIterator;
@@ -63,6 +66,7 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.client.HdfsAdmin;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -77,6 +81,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
@@ -103,7 +108,8 @@
  *****************************************************************/
 @InterfaceAudience.LimitedPrivate({ "MapReduce", "HBase" })
 @InterfaceStability.Unstable
-public class DistributedFileSystem extends FileSystem {
+public class DistributedFileSystem extends FileSystem
+    implements BatchListingOperations {
   private Path workingDir;
   private URI uri;
   private String homeDirPrefix =
@@ -190,7 +196,7 @@ public Path getHomeDirectory() {
    * @return path component of {file}
    * @throws IllegalArgumentException if URI does not belong to this DFS
    */
-  private String getPathName(Path file) {
+  String getPathName(Path file) {
     checkPath(file);
     String result = file.toUri().getPath();
     if (!DFSUtil.isValidName(result)) {
@@ -1005,6 +1011,108 @@ public T next() throws IOException {
     }
   }
   
+  /**
+   * List the given paths in as few calls to the NameNode as possible.
+   * Symlinks are not resolved.
+   */
+  @Override
+  public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+      List<Path> paths) throws IOException {
+    return new BatchedListingIterator<FileStatus>(paths, false);
+  }
+
+  /**
+   * List the given paths with block locations in as few calls to the
+   * NameNode as possible.  Symlinks are not resolved.
+   */
+  @Override
+  public RemoteIterator<PartialListing<LocatedFileStatus>>
+      batchedListLocatedStatusIterator(List<Path> paths) throws IOException {
+    return new BatchedListingIterator<LocatedFileStatus>(paths, true);
+  }
+
+  /**
+   * Lists the paths with getBatchedListing calls of at most
+   * {@link DFSConfigKeys#DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY} paths,
+   * fetching a page of partial listings at a time.
+   *
+   * @param <T> the type of the file status
+   */
+  private class BatchedListingIterator<T extends FileStatus>
+      implements RemoteIterator<PartialListing<T>> {
+    private final List<Path> paths;
+    private final List<Path> absPaths;
+    private final String[] srcs;
+    private final boolean needLocation;
+    private final int batchSize;
+    private int batchStart = 0; // index of the first path of the batch
+    private String[] batch;
+    private BatchedDirectoryListing page;
+    private int i;
+
+    private BatchedListingIterator(List<Path> paths, boolean needLocation) {
+      this.paths = new ArrayList<Path>(paths);
+      this.absPaths = new ArrayList<Path>(paths.size());
+      this.srcs = new String[paths.size()];
+      for (int j = 0; j < srcs.length; j++) {
+        absPaths.add(fixRelativePart(this.paths.get(j)));
+        srcs[j] = getPathName(absPaths.get(j));
+      }
+      this.needLocation = needLocation;
+      this.batchSize = dfs.getConf().batchedListingLimit;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (page == null || i >= page.getListings().length) {
+        if (page != null && page.hasMore()) {
+          page = dfs.batchedListPaths(batch, page.getStartAfter(),
+              needLocation);
+        } else {
+          if (page != null) {
+            batchStart += batch.length;
+          }
+          if (batchStart >= srcs.length) {
+            return false;
+          }
+          batch = Arrays.copyOfRange(srcs, batchStart,
+              Math.min(srcs.length, batchStart + batchSize));
+          page = dfs.batchedListPaths(batch, HdfsFileStatus.EMPTY_NAME,
+              needLocation);
+        }
+        statistics.incrementReadOps(1);
+        i = 0;
+      }
+      return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PartialListing<T> next() throws IOException {
+      if (!hasNext()) {
+        throw new java.util.NoSuchElementException("No more listings");
+      }
+      final HdfsPartialListing listing = page.getListings()[i++];
+      final int index = batchStart + listing.getParentIdx();
+      if (listing.getException() != null) {
+        return new PartialListing<T>(paths.get(index),
+            listing.getException());
+      }
+      final Path p = absPaths.get(index);
+      final List<T> statuses =
+          new ArrayList<T>(listing.getPartialListing().size());
+      for (HdfsFileStatus fileStat : listing.getPartialListing()) {
+        if (needLocation) {
+          statuses.add((T) ((HdfsLocatedFileStatus) fileStat)
+              .makeQualifiedLocated(getUri(), p));
+        } else {
+          statuses.add((T) fileStat.makeQualified(getUri(), p));
+        }
+      }
+      return new PartialListing<T>(paths.get(index), statuses);
+    }
+  }
+
   /**
    * Create a directory, only when the parent directories exist.
    *
@@ -1090,6 +1198,14 @@ public String toString() {
   public DFSClient getClient() {
     return dfs;
   }        
+
+  /**
+   * Get a view of this file system whose metadata operations return
+   * futures instead of waiting for the NameNode to respond.
+   */
+  public AsyncDistributedFileSystem getAsyncDistributedFileSystem() {
+    return new AsyncDistributedFileSystem(this, statistics);
+  }
   
   /** @deprecated Use {@link org.apache.hadoop.fs.FsStatus} instead */
   @InterfaceAudience.Private
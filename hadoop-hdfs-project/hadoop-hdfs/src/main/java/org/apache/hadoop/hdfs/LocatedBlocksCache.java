@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A cache of the block locations of closed files, shared by the DFSClients
+ * of a {@link ClientContext}.  It lets a client open a file that was opened
+ * a moment ago without asking the NameNode for its block locations again.
+ *
+ * Entries are keyed by NameNode authority and path.  An entry only serves
+ * the user it was fetched for, since the located blocks carry that user's
+ * block access tokens.  Entries expire after a fixed time; the client also
+ * invalidates them when it changes the file or fails to read from one of
+ * its datanodes.  Each lookup returns a private copy of the block list,
+ * since DFSInputStream adds the ranges it fetches later to it.
+ */
+@InterfaceAudience.Private
+public class LocatedBlocksCache {
+  private static final class Key {
+    final String authority;
+    final String src;
+
+    Key(String authority, String src) {
+      this.authority = authority;
+      this.src = src;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return authority.equals(other.authority) && src.equals(other.src);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(authority, src);
+    }
+  }
+
+  private static final class Entry {
+    final String user;
+    final LocatedBlocks blocks;
+
+    Entry(String user, LocatedBlocks blocks) {
+      this.user = user;
+      this.blocks = blocks;
+    }
+  }
+
+  private final Cache<Key, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public LocatedBlocksCache(int capacity, long expiryMs) {
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(capacity)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * @return a copy of the cached located blocks of src for user, or null
+   */
+  public LocatedBlocks get(String authority, String user, String src) {
+    Entry entry = cache.getIfPresent(new Key(authority, src));
+    if (entry == null || !entry.user.equals(user)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return copy(entry.blocks);
+  }
+
+  /**
+   * Cache the located blocks of src fetched by user.  Files which are being
+   * written, or which have a block without locations, are not cached.
+   */
+  public void put(String authority, String user, String src,
+      LocatedBlocks blocks) {
+    if (blocks.isUnderConstruction() || !blocks.isLastBlockComplete()) {
+      return;
+    }
+    for (LocatedBlock block : blocks.getLocatedBlocks()) {
+      if (block.getLocations().length == 0) {
+        return;
+      }
+    }
+    cache.put(new Key(authority, src), new Entry(user, copy(blocks)));
+  }
+
+  /** Remove the entry of src. */
+  public void invalidate(String authority, String src) {
+    cache.invalidate(new Key(authority, src));
+  }
+
+  /** Remove the entries of src and of every path under it. */
+  public void invalidateTree(String authority, String src) {
+    final String prefix = src.endsWith(Path.SEPARATOR) ? src :
+        src + Path.SEPARATOR;
+    for (Iterator<Key> it = cache.asMap().keySet().iterator();
+        it.hasNext(); ) {
+      Key key = it.next();
+      if (key.authority.equals(authority)
+          && (key.src.equals(src) || key.src.startsWith(prefix))) {
+        it.remove();
+      }
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  private static LocatedBlocks copy(LocatedBlocks blocks) {
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(),
+        new ArrayList<LocatedBlock>(blocks.getLocatedBlocks()),
+        blocks.getLastLocatedBlock(), blocks.isLastBlockComplete(),
+        blocks.getFileEncryptionInfo());
+  }
+}
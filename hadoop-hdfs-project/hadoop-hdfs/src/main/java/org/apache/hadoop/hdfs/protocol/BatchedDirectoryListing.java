@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A page of the listing of many paths returned by one call.  The listings
+ * are in the order of the paths; a path may continue on the next page.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class BatchedDirectoryListing {
+  private final HdfsPartialListing[] listings;
+  private final boolean hasMore;
+  private final byte[] startAfter;
+
+  /**
+   * @param listings the partial listings of this page
+   * @param hasMore whether there are more pages
+   * @param startAfter the opaque key to pass to get the next page
+   */
+  public BatchedDirectoryListing(HdfsPartialListing[] listings,
+      boolean hasMore, byte[] startAfter) {
+    if (listings == null) {
+      throw new IllegalArgumentException("listings should not be null");
+    }
+    this.listings = listings;
+    this.hasMore = hasMore;
+    this.startAfter = startAfter;
+  }
+
+  public HdfsPartialListing[] getListings() {
+    return listings;
+  }
+
+  /** @return true if there are more pages to get */
+  public boolean hasMore() {
+    return hasMore;
+  }
+
+  /** @return the key to get the next page with */
+  public byte[] getStartAfter() {
+    return startAfter;
+  }
+}
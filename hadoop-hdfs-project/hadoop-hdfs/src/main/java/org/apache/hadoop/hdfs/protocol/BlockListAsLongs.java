@@ -18,6 +18,8 @@
 package org.apache.hadoop.hdfs.protocol;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -33,6 +35,7 @@
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -112,6 +115,50 @@ public static Builder builder() {
     return new BlockListAsLongs.Builder();
   }
 
+  /**
+   * Read a block list written by {@link #writeTo(OutputStream)}.
+   * @param is - the stream to read from
+   * @return BlockListAsLongs, or null if the stream does not hold a
+   *         complete block list
+   * @throws IOException
+   */
+  public static BlockListAsLongs readFrom(InputStream is) throws IOException {
+    CodedInputStream cis = CodedInputStream.newInstance(is);
+    cis.setSizeLimit(Integer.MAX_VALUE);
+    int numBlocks = -1;
+    ByteString blocksBuf = null;
+    while (!cis.isAtEnd()) {
+      int tag = cis.readTag();
+      switch (WireFormat.getTagFieldNumber(tag)) {
+      case 1:
+        numBlocks = cis.readInt32();
+        break;
+      case 2:
+        blocksBuf = cis.readBytes();
+        break;
+      default:
+        cis.skipField(tag);
+        break;
+      }
+    }
+    if (numBlocks < 0 || blocksBuf == null) {
+      return null;
+    }
+    return decodeBuffer(numBlocks, blocksBuf);
+  }
+
+  /**
+   * Write the number of blocks and the encoded buffer to the stream.
+   * @param os - the stream to write to
+   * @throws IOException
+   */
+  public void writeTo(OutputStream os) throws IOException {
+    CodedOutputStream cos = CodedOutputStream.newInstance(os);
+    cos.writeInt32(1, getNumberOfBlocks());
+    cos.writeBytes(2, getBlocksBuffer());
+    cos.flush();
+  }
+
   /**
    * The number of blocks
    * @return - the number of blocks
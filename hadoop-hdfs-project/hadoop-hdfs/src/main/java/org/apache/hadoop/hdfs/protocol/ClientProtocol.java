@@ -51,6 +51,7 @@
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSelector;
 import org.apache.hadoop.hdfs.server.namenode.NotReplicatedYetException;
 import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
@@ -126,6 +127,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public LocatedBlocks getBlockLocations(String src,
                                          long offset,
                                          long length) 
@@ -624,11 +626,35 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public DirectoryListing getListing(String src,
                                      byte[] startAfter,
                                      boolean needLocation)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
+
+  /**
+   * Get a page of the listings of many paths at once.  The page holds
+   * about as many entries as a call to {@link #getListing}, spread over
+   * as many paths as needed; an error listing a path, e.g. the path is not
+   * found, is returned in place of its listing.
+   *
+   * @param srcs the paths to list, at most
+   *             {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY}
+   * @param startAfter empty to get the first page, else the key returned
+   *                   with the previous page of the same paths
+   * @param needLocation if the FileStatus should contain block locations
+   *
+   * @return a page of the listings starting after startAfter
+   *
+   * @throws org.apache.hadoop.fs.InvalidRequestException too many paths or
+   *         a bad startAfter
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly
+  public BatchedDirectoryListing getBatchedListing(String[] srcs,
+      byte[] startAfter, boolean needLocation) throws IOException;
   
   /**
    * Get listing of all the snapshottable directories
@@ -637,6 +663,7 @@ public DirectoryListing getListing(String src,
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public SnapshottableDirectoryStatus[] getSnapshottableDirListing()
       throws IOException;
 
@@ -731,6 +758,7 @@ public DatanodeStorageReport[] getDatanodeStorageReport(
    * @throws UnresolvedLinkException if the path contains a symlink. 
    */
   @Idempotent
+  @ReadOnly
   public long getPreferredBlockSize(String filename) 
       throws IOException, UnresolvedLinkException;
 
@@ -900,6 +928,7 @@ public CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
   
@@ -914,6 +943,7 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred     
    */
   @Idempotent
+  @ReadOnly
   public boolean isFileClosed(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
   
@@ -930,6 +960,7 @@ public boolean isFileClosed(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileLinkInfo(String src)
       throws AccessControlException, UnresolvedLinkException, IOException;
   
@@ -943,6 +974,7 @@ public HdfsFileStatus getFileLinkInfo(String src)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public ContentSummary getContentSummary(String path)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
@@ -1060,6 +1092,7 @@ public void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public String getLinkTarget(String path) throws AccessControlException,
       FileNotFoundException, IOException; 
   
@@ -1199,6 +1232,7 @@ public void disallowSnapshot(String snapshotRoot)
    * @throws IOException on error
    */
   @Idempotent
+  @ReadOnly
   public SnapshotDiffReport getSnapshotDiffReport(String snapshotRoot,
       String fromSnapshot, String toSnapshot) throws IOException;
 
@@ -1244,6 +1278,7 @@ public void modifyCacheDirective(CacheDirectiveInfo directive,
    * @return A batch of CacheDirectiveEntry objects.
    */
   @Idempotent
+  @ReadOnly
   public BatchedEntries<CacheDirectiveEntry> listCacheDirectives(
       long prevId, CacheDirectiveInfo filter) throws IOException;
 
@@ -1285,6 +1320,7 @@ public BatchedEntries<CacheDirectiveEntry> listCacheDirectives(
    * @return A batch of CachePoolEntry objects.
    */
   @Idempotent
+  @ReadOnly
   public BatchedEntries<CachePoolEntry> listCachePools(String prevPool)
       throws IOException;
 
@@ -1331,6 +1367,7 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   public AclStatus getAclStatus(String src) throws IOException;
   
   /**
@@ -1344,6 +1381,7 @@ public void createEncryptionZone(String src, String keyName)
    * Get the encryption zone for a path.
    */
   @Idempotent
+  @ReadOnly
   public EncryptionZone getEZForPath(String src)
     throws IOException;
 
@@ -1355,6 +1393,7 @@ public EncryptionZone getEZForPath(String src)
    * @return Batch of encryption zones.
    */
   @Idempotent
+  @ReadOnly
   public BatchedEntries<EncryptionZone> listEncryptionZones(
       long prevId) throws IOException;
 
@@ -1388,6 +1427,7 @@ public void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs) 
       throws IOException;
 
@@ -1403,6 +1443,7 @@ public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> listXAttrs(String src)
       throws IOException;
   
@@ -1436,6 +1477,7 @@ public List<XAttr> listXAttrs(String src)
    * @throws IOException see specific implementation
    */
   @Idempotent
+  @ReadOnly
   public void checkAccess(String path, FsAction mode) throws IOException;
 
   /**
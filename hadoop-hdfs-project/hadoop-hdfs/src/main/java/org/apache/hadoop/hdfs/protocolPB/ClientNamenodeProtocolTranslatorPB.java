@@ -24,7 +24,10 @@
 import java.util.EnumSet;
 import java.util.List;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -47,6 +50,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -64,6 +68,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -114,6 +119,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatusRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetLinkTargetRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetLinkTargetResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedListingRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedListingResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetListingRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetListingResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetPreferredBlockSizeRequestProto;
@@ -132,6 +139,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ListCorruptFileBlocksRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MetaSaveRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MkdirsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MkdirsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ModifyCacheDirectiveRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ModifyCachePoolRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RecoverLeaseRequestProto;
@@ -175,7 +183,9 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.Client;
 import org.apache.hadoop.ipc.ProtobufHelper;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
 import org.apache.hadoop.ipc.ProtocolMetaInterface;
 import org.apache.hadoop.ipc.ProtocolTranslator;
 import org.apache.hadoop.ipc.RPC;
@@ -188,6 +198,7 @@
 import org.apache.hadoop.security.token.Token;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
 import com.google.protobuf.ServiceException;
 
 import static org.apache.hadoop.fs.BatchedRemoteIterator.BatchedListEntries;
@@ -232,9 +243,40 @@ public class ClientNamenodeProtocolTranslatorPB implements
   VOID_GET_STORAGE_POLICIES_REQUEST =
       GetStoragePoliciesRequestProto.newBuilder().build();
 
+  private final static ThreadLocal<ListenableFuture<?>> ASYNC_RETURN_VALUE =
+      new ThreadLocal<ListenableFuture<?>>();
+
+  private final static Function<Message, Void> ASYNC_VOID_RETURN =
+      new Function<Message, Void>() {
+        @Override
+        public Void apply(Message response) {
+          return null;
+        }
+      };
+
   public ClientNamenodeProtocolTranslatorPB(ClientNamenodeProtocolPB proxy) {
     rpcProxy = proxy;
   }
+
+  /**
+   * Return the future result of the last call made by the current thread in
+   * {@link Client#setAsynchronousMode asynchronous mode} and forget it, or
+   * null if there is none.  Only getFileInfo, mkdirs, rename2, setPermission
+   * and setOwner support asynchronous mode; their return value is
+   * meaningless in that mode.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ListenableFuture<T> getAsyncReturnValue() {
+    final ListenableFuture<T> value =
+        (ListenableFuture<T>) ASYNC_RETURN_VALUE.get();
+    ASYNC_RETURN_VALUE.set(null);
+    return value;
+  }
+
+  private static <T> void setAsyncReturnValue(Function<Message, T> convert) {
+    ASYNC_RETURN_VALUE.set(Futures.transform(
+        ProtobufRpcEngine.getAsyncReturnMessage(), convert));
+  }
   
   @Override
   public void close() {
@@ -362,6 +404,9 @@ public void setPermission(String src, FsPermission permission)
         .build();
     try {
       rpcProxy.setPermission(null, req);
+      if (Client.isAsynchronousMode()) {
+        setAsyncReturnValue(ASYNC_VOID_RETURN);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -379,6 +424,9 @@ public void setOwner(String src, String username, String groupname)
         req.setGroupname(groupname);
     try {
       rpcProxy.setOwner(null, req.build());
+      if (Client.isAsynchronousMode()) {
+        setAsyncReturnValue(ASYNC_VOID_RETURN);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -511,6 +559,9 @@ public void rename2(String src, String dst, Rename... options)
         build();
     try {
       rpcProxy.rename2(null, req);
+      if (Client.isAsynchronousMode()) {
+        setAsyncReturnValue(ASYNC_VOID_RETURN);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -555,6 +606,16 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
         .setCreateParent(createParent).build();
 
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.mkdirs(null, req);
+        setAsyncReturnValue(new Function<Message, Boolean>() {
+          @Override
+          public Boolean apply(Message response) {
+            return ((MkdirsResponseProto) response).getResult();
+          }
+        });
+        return false;
+      }
       return rpcProxy.mkdirs(null, req).getResult();
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
@@ -581,6 +642,29 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     }
   }
 
+  @Override
+  public BatchedDirectoryListing getBatchedListing(String[] srcs,
+      byte[] startAfter, boolean needLocation) throws IOException {
+    GetBatchedListingRequestProto req = GetBatchedListingRequestProto
+        .newBuilder()
+        .addAllPaths(Arrays.asList(srcs))
+        .setStartAfter(ByteString.copyFrom(startAfter))
+        .setNeedLocation(needLocation).build();
+    try {
+      GetBatchedListingResponseProto result =
+          rpcProxy.getBatchedListing(null, req);
+      HdfsPartialListing[] listings =
+          new HdfsPartialListing[result.getListingsCount()];
+      for (int i = 0; i < listings.length; i++) {
+        listings[i] = PBHelper.convert(result.getListings(i));
+      }
+      return new BatchedDirectoryListing(listings, result.getHasMore(),
+          result.getStartAfter().toByteArray());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public void renewLease(String clientName) throws AccessControlException,
       IOException {
@@ -768,6 +852,17 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
     GetFileInfoRequestProto req = GetFileInfoRequestProto.newBuilder()
         .setSrc(src).build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.getFileInfo(null, req);
+        setAsyncReturnValue(new Function<Message, HdfsFileStatus>() {
+          @Override
+          public HdfsFileStatus apply(Message response) {
+            GetFileInfoResponseProto res = (GetFileInfoResponseProto) response;
+            return res.hasFs() ? PBHelper.convert(res.getFs()) : null;
+          }
+        });
+        return null;
+      }
       GetFileInfoResponseProto res = rpcProxy.getFileInfo(null, req);
       return res.hasFs() ? PBHelper.convert(res.getFs()) : null;
     } catch (ServiceException e) {
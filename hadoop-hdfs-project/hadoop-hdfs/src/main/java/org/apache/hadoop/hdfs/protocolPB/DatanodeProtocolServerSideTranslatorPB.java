@@ -115,7 +115,9 @@ public HeartbeatResponseProto sendHeartbeat(RpcController controller,
           report, request.getCacheCapacity(), request.getCacheUsed(),
           request.getXmitsInProgress(),
           request.getXceiverCount(), request.getFailedVolumes(),
-          volumeFailureSummary);
+          volumeFailureSummary,
+          PBHelper.convertSlowPeerReports(request.getSlowPeersList()),
+          PBHelper.convertSlowDiskReports(request.getSlowDisksList()));
     } catch (IOException e) {
       throw new ServiceException(e);
     }
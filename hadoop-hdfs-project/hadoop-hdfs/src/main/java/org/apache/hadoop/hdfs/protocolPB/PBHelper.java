@@ -29,7 +29,9 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.fs.CacheFlag;
 import org.apache.hadoop.fs.ContentSummary;
@@ -78,6 +80,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
@@ -123,6 +126,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.NNHAStatusHeartbeatProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReceivedDeletedBlockInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.RegisterCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.SlowDiskReportProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.SlowPeerReportProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.VolumeFailureSummaryProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportContextProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
@@ -151,6 +156,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.FsServerDefaultsProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsFileStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsFileStatusProto.FileType;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsPartialListingProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RemoteExceptionProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto.Builder;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlocksProto;
@@ -219,6 +226,8 @@
 import org.apache.hadoop.hdfs.server.protocol.RegisterCommand;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.ShmId;
@@ -226,6 +235,7 @@
 import org.apache.hadoop.hdfs.util.ExactSizeInputStream;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.DataChecksum;
@@ -1568,6 +1578,38 @@ public static DirectoryListingProto convert(DirectoryListing d) {
         build();
   }
 
+  public static HdfsPartialListing convert(HdfsPartialListingProto p) {
+    if (p.hasException()) {
+      RemoteExceptionProto e = p.getException();
+      return new HdfsPartialListing(p.getParentIdx(), new RemoteException(
+          e.getClassName(), e.hasMessage() ? e.getMessage() : null));
+    }
+    List<HdfsFileStatus> listing =
+        new ArrayList<HdfsFileStatus>(p.getPartialListingCount());
+    for (HdfsFileStatusProto fs : p.getPartialListingList()) {
+      listing.add(convert(fs));
+    }
+    return new HdfsPartialListing(p.getParentIdx(), listing);
+  }
+
+  public static HdfsPartialListingProto convert(HdfsPartialListing p) {
+    HdfsPartialListingProto.Builder builder =
+        HdfsPartialListingProto.newBuilder().setParentIdx(p.getParentIdx());
+    if (p.getException() != null) {
+      RemoteExceptionProto.Builder e = RemoteExceptionProto.newBuilder()
+          .setClassName(p.getException().getClassName());
+      if (p.getException().getMessage() != null) {
+        e.setMessage(p.getException().getMessage());
+      }
+      builder.setException(e);
+    } else {
+      for (HdfsFileStatus fs : p.getPartialListing()) {
+        builder.addPartialListing(convert(fs));
+      }
+    }
+    return builder.build();
+  }
+
   public static long[] convert(GetFsStatsResponseProto res) {
     long[] result = new long[7];
     result[ClientProtocol.GET_STATS_CAPACITY_IDX] = res.getCapacity();
@@ -1963,6 +2005,46 @@ public static VolumeFailureSummaryProto convertVolumeFailureSummary(
     return builder.build();
   }
 
+  public static List<SlowPeerReportProto> convertSlowPeerReports(
+      SlowPeerReports slowPeers) {
+    final List<SlowPeerReportProto> protos =
+        new ArrayList<SlowPeerReportProto>(slowPeers.getSlowPeers().size());
+    for (Map.Entry<String, Long> e : slowPeers.getSlowPeers().entrySet()) {
+      protos.add(SlowPeerReportProto.newBuilder().setDataNodeId(e.getKey())
+          .setLatencyMs(e.getValue()).build());
+    }
+    return protos;
+  }
+
+  public static SlowPeerReports convertSlowPeerReports(
+      List<SlowPeerReportProto> protos) {
+    final Map<String, Long> slowPeers = new HashMap<String, Long>();
+    for (SlowPeerReportProto proto : protos) {
+      slowPeers.put(proto.getDataNodeId(), proto.getLatencyMs());
+    }
+    return SlowPeerReports.create(slowPeers);
+  }
+
+  public static List<SlowDiskReportProto> convertSlowDiskReports(
+      SlowDiskReports slowDisks) {
+    final List<SlowDiskReportProto> protos =
+        new ArrayList<SlowDiskReportProto>(slowDisks.getSlowDisks().size());
+    for (Map.Entry<String, Long> e : slowDisks.getSlowDisks().entrySet()) {
+      protos.add(SlowDiskReportProto.newBuilder().setStorageUuid(e.getKey())
+          .setLatencyMs(e.getValue()).build());
+    }
+    return protos;
+  }
+
+  public static SlowDiskReports convertSlowDiskReports(
+      List<SlowDiskReportProto> protos) {
+    final Map<String, Long> slowDisks = new HashMap<String, Long>();
+    for (SlowDiskReportProto proto : protos) {
+      slowDisks.put(proto.getStorageUuid(), proto.getLatencyMs());
+    }
+    return SlowDiskReports.create(slowDisks);
+  }
+
   public static JournalInfo convert(JournalInfoProto info) {
     int lv = info.hasLayoutVersion() ? info.getLayoutVersion() : 0;
     int nsID = info.hasNamespaceID() ? info.getNamespaceID() : 0;
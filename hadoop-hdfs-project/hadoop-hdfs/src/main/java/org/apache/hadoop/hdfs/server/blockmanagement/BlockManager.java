@@ -35,6 +35,7 @@
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -79,6 +80,7 @@
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.Daemon;
@@ -254,6 +256,17 @@ public int getPendingDataNodeMessageCount() {
    * Progress of the Replication queues initialisation.
    */
   private double replicationQueuesInitProgress = 0.0;
+  /**
+   * Number of replicas of a block report to process once acquired the
+   * namesystem lock. The lock is released and acquired again before the
+   * remaining replicas are processed.
+   */
+  private final int blockReportBatchSize;
+  /**
+   * Limits the number of full block reports processed concurrently, or null
+   * if the number is not limited.
+   */
+  private final Semaphore fullBlockReportPermits;
 
   /** for block replicas placement */
   private BlockPlacementPolicy blockplacement;
@@ -340,6 +353,14 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
+    this.blockReportBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_DEFAULT);
+    final int maxConcurrentBlockReports = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_DEFAULT);
+    this.fullBlockReportPermits = maxConcurrentBlockReports > 0 ?
+        new Semaphore(maxConcurrentBlockReports) : null;
     
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
@@ -347,6 +368,8 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     LOG.info("maxReplicationStreams      = " + maxReplicationStreams);
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
+    LOG.info("blockReportBatchSize       = " + blockReportBatchSize);
+    LOG.info("maxConcurrentBlockReports  = " + maxConcurrentBlockReports);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
   }
 
@@ -1767,6 +1790,60 @@ public String toString() {
     }
   }
 
+  /**
+   * Start processing a full block report RPC.  Every call which returns
+   * normally must be followed by a call to {@link #endFullBlockReport()}.
+   *
+   * @throws RetriableException if the maximum number of full block reports
+   *         are being processed already.  The DataNode retries the report.
+   */
+  public void beginFullBlockReport(DatanodeID nodeID)
+      throws RetriableException {
+    if (fullBlockReportPermits != null &&
+        !fullBlockReportPermits.tryAcquire()) {
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.incrBlockReportsRejected();
+      }
+      throw new RetriableException("Rejecting the block report of " + nodeID
+          + ", too many block reports are being processed");
+    }
+  }
+
+  /** Finish processing a full block report RPC. */
+  public void endFullBlockReport() {
+    if (fullBlockReportPermits != null) {
+      fullBlockReportPermits.release();
+    }
+  }
+
+  /**
+   * Measures how long a block report holds the namesystem write lock, which
+   * it may release and acquire again between batches of replicas.
+   */
+  private class BlockReportLock {
+    private long acquiredTime;
+    private long holdTime = 0;
+    private int yields = 0;
+
+    void lock() {
+      namesystem.writeLock();
+      acquiredTime = Time.monotonicNow();
+    }
+
+    void unlock() {
+      holdTime += Time.monotonicNow() - acquiredTime;
+      namesystem.writeUnlock();
+    }
+
+    /** Let the other waiters acquire the lock. */
+    void yield() {
+      unlock();
+      yields++;
+      lock();
+    }
+  }
+
   /**
    * The given storage is reporting all its blocks.
    * Update the (storage-->block list) and (block-->storage list) maps.
@@ -1778,7 +1855,8 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport, BlockReportContext context,
       boolean lastStorageInRpc) throws IOException {
-    namesystem.writeLock();
+    final BlockReportLock lock = new BlockReportLock();
+    lock.lock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
     DatanodeDescriptor node;
@@ -1810,7 +1888,7 @@ public boolean processReport(final DatanodeID nodeID,
       if (storageInfo.getBlockReportCount() == 0) {
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
-        processFirstBlockReport(storageInfo, newReport);
+        processFirstBlockReport(storageInfo, newReport, lock);
       } else {
         invalidatedBlocks = processReport(storageInfo, newReport);
       }
@@ -1841,7 +1919,7 @@ public boolean processReport(final DatanodeID nodeID,
       }
     } finally {
       endTime = Time.monotonicNow();
-      namesystem.writeUnlock();
+      lock.unlock();
     }
 
     if (invalidatedBlocks != null) {
@@ -1855,11 +1933,14 @@ public boolean processReport(final DatanodeID nodeID,
     final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     if (metrics != null) {
       metrics.addBlockReport((int) (endTime - startTime));
+      metrics.addBlockReportLockHold(lock.holdTime);
     }
     blockLog.info("BLOCK* processReport: from storage {} node {}, " +
-        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs", storage
+        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs, " +
+        "lock hold time: {} msecs, lock yields: {}", storage
         .getStorageID(), nodeID, newReport.getNumberOfBlocks(),
-        node.hasStaleStorages(), (endTime - startTime));
+        node.hasStaleStorages(), (endTime - startTime), lock.holdTime,
+        lock.yields);
     return !node.hasStaleStorages();
   }
 
@@ -2052,18 +2133,39 @@ public void markBlockReplicasAsCorrupt(BlockInfoContiguous block,
    * a toRemove list (since there won't be any).  It also silently discards 
    * any invalid blocks, thereby deferring their processing until 
    * the next block report.
+   * <p>
+   * The write lock is released and acquired again after every
+   * {@link DFSConfigKeys#DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY} replicas,
+   * so that a large report does not block all the other operations.  Every
+   * replica is processed independently of the others, so the processing does
+   * not depend on the namespace being unchanged between batches.
+   *
    * @param storageInfo - DatanodeStorageInfo that sent the report
    * @param report - the initial block report, to be processed
-   * @throws IOException 
+   * @param lock - the write lock held by the caller
+   * @throws IOException if the storage was removed while the lock was
+   *         released
    */
   private void processFirstBlockReport(
       final DatanodeStorageInfo storageInfo,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report, BlockReportLock lock) throws IOException {
     if (report == null) return;
     assert (namesystem.hasWriteLock());
     assert (storageInfo.getBlockReportCount() == 0);
 
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    int processed = 0;
     for (BlockReportReplica iblk : report) {
+      if (blockReportBatchSize > 0 && processed > 0 &&
+          processed % blockReportBatchSize == 0) {
+        lock.yield();
+        if (!node.isAlive ||
+            node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+          throw new IOException("Storage " + storageInfo + " of " + node
+              + " was removed while processing its block report");
+        }
+      }
+      processed++;
       ReplicaState reportedState = iblk.getState();
       
       if (shouldPostponeBlocksFromFuture &&
@@ -136,8 +136,7 @@ DatanodeStorageInfo[] chooseTarget(String src,
 
       // Choose favored nodes
       List<DatanodeStorageInfo> results = new ArrayList<DatanodeStorageInfo>();
-      boolean avoidStaleNodes = stats != null
-          && stats.isAvoidingStaleDataNodesForWrite();
+      boolean avoidStaleNodes = avoidStaleOrSlowNodes();
 
       int maxNodesAndReplicas[] = getMaxNodesPerRack(0, numOfReplicas);
       numOfReplicas = maxNodesAndReplicas[0];
@@ -208,8 +207,7 @@ private DatanodeStorageInfo[] chooseTarget(int numOfReplicas,
       addToExcludedNodes(storage.getDatanodeDescriptor(), excludedNodes);
     }
 
-    boolean avoidStaleNodes = (stats != null
-        && stats.isAvoidingStaleDataNodesForWrite());
+    boolean avoidStaleNodes = avoidStaleOrSlowNodes();
     final Node localNode = chooseTarget(numOfReplicas, writer, excludedNodes,
         blocksize, maxNodesPerRack, results, avoidStaleNodes, storagePolicy,
         EnumSet.noneOf(StorageType.class), results.isEmpty());
@@ -224,6 +222,16 @@ private DatanodeStorageInfo[] chooseTarget(int numOfReplicas,
         results.toArray(new DatanodeStorageInfo[results.size()]));
   }
 
+  /**
+   * Whether to first try to choose the targets among the nodes which are
+   * neither stale nor slow.  If there are not enough of them, the targets
+   * are chosen again without avoiding stale and slow nodes.
+   */
+  private boolean avoidStaleOrSlowNodes() {
+    return stats != null && (stats.isAvoidingStaleDataNodesForWrite()
+        || stats.isAvoidingSlowDataNodesForWrite());
+  }
+
   /**
    * Calculate the maximum number of replicas to allocate per rack. It also
    * limits the total number of replicas to the total number of nodes in the
@@ -290,7 +298,7 @@ private EnumMap<StorageType, Integer> getRequiredStorageTypes(
    * @param blocksize size of the data to be written
    * @param maxNodesPerRack max nodes allowed per rack
    * @param results the target nodes already chosen
-   * @param avoidStaleNodes avoid stale nodes in replica choosing
+   * @param avoidStaleNodes avoid stale and slow nodes in replica choosing
    * @return local node of writer (not chosen node)
    */
   private Node chooseTarget(int numOfReplicas,
@@ -383,7 +391,8 @@ private Node chooseTarget(int numOfReplicas,
       }
 
       if (avoidStaleNodes) {
-        // Retry chooseTarget again, this time not avoiding stale nodes.
+        // Retry chooseTarget again, this time not avoiding stale or slow
+        // nodes.
 
         // excludedNodes contains the initial excludedNodes and nodes that were
         // not chosen because they were stale, decommissioned, etc.
@@ -737,7 +746,8 @@ private static void logNodeIsNotChosen(DatanodeStorageInfo storage, String reaso
    * @param considerLoad whether or not to consider load of the target node
    * @param results A list containing currently chosen nodes. Used to check if 
    *                too many nodes has been chosen in the target rack.
-   * @param avoidStaleNodes Whether or not to avoid choosing stale nodes
+   * @param avoidStaleNodes Whether or not to avoid choosing stale and slow
+   *                        nodes, each only if the cluster is avoiding them
    * @return Return true if <i>node</i> has enough space, 
    *         does not have too much load, 
    *         and the rack does not have too many nodes.
@@ -771,10 +781,21 @@ private boolean isGoodTarget(DatanodeStorageInfo storage,
     }
 
     if (avoidStaleNodes) {
-      if (node.isStale(this.staleInterval)) {
+      if (node.isStale(this.staleInterval) && stats != null
+          && stats.isAvoidingStaleDataNodesForWrite()) {
         logNodeIsNotChosen(storage, "the node is stale ");
         return false;
       }
+      if (node.isSlow() && stats != null
+          && stats.isAvoidingSlowDataNodesForWrite()) {
+        logNodeIsNotChosen(storage, "the node is slow ");
+        return false;
+      }
+      if (storage.isSlow() && stats != null
+          && stats.isAvoidingSlowDataNodesForWrite()) {
+        logNodeIsNotChosen(storage, "the storage is slow ");
+        return false;
+      }
     }
     
     final long requiredSize = blockSize * HdfsConstants.MIN_BLOCKS_FOR_WRITE;
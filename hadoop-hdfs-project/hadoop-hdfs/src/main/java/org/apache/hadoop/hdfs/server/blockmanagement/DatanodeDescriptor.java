@@ -247,6 +247,12 @@ public CachedBlocksList getPendingUncached() {
    */
   private boolean disallowed = false;
 
+  /**
+   * When set to true, the node is reported slow by other datanodes, see
+   * {@link SlowNodeTracker}.
+   */
+  private volatile boolean slow = false;
+
   // The number of replication work pending before targets are determined
   private int PendingReplicationWithoutTargets = 0;
 
@@ -798,6 +804,15 @@ public boolean isDisallowed() {
     return disallowed;
   }
 
+  void setSlow(boolean flag) {
+    slow = flag;
+  }
+
+  /** Is the datanode reported slow compared to the other datanodes? */
+  public boolean isSlow() {
+    return slow;
+  }
+
   /**
    * @return number of failed volumes in the datanode.
    */
@@ -132,6 +132,15 @@ public class DatanodeManager {
    */
   private final float ratioUseStaleDataNodesForWrite;
 
+  /** Whether or not to move slow DataNodes behind the others for reading */
+  private final boolean avoidSlowDataNodesForRead;
+
+  /** Whether or not to avoid using slow DataNodes for writing */
+  private final boolean avoidSlowDataNodesForWrite;
+
+  /** The slow peers and volumes reported by the DataNodes */
+  private final SlowNodeTracker slowNodeTracker = new SlowNodeTracker();
+
   /** The number of stale DataNodes */
   private volatile int numStaleNodes;
 
@@ -252,6 +261,12 @@ public class DatanodeManager {
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY,
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_DEFAULT);
     this.staleInterval = getStaleIntervalFromConf(conf, heartbeatExpireInterval);
+    this.avoidSlowDataNodesForRead = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_READ_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_READ_DEFAULT);
+    this.avoidSlowDataNodesForWrite = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_DEFAULT);
     this.ratioUseStaleDataNodesForWrite = conf.getFloat(
         DFSConfigKeys.DFS_NAMENODE_USE_STALE_DATANODE_FOR_WRITE_RATIO_KEY,
         DFSConfigKeys.DFS_NAMENODE_USE_STALE_DATANODE_FOR_WRITE_RATIO_DEFAULT);
@@ -392,11 +407,38 @@ public void sortLocatedBlocks(final String targethost,
       }
       int activeLen = lastActiveIndex + 1;      
       networktopology.sortByDistance(client, b.getLocations(), activeLen);
+      if (avoidSlowDataNodesForRead) {
+        moveSlowNodesBehind(di, activeLen);
+      }
       // must update cache since we modified locations array
       b.updateCachedStorageInfo();
     }
   }
   
+  /**
+   * Move the slow datanodes among the first activeLen ones behind the
+   * others, keeping the order by distance within both groups.
+   */
+  private void moveSlowNodesBehind(DatanodeInfo[] di, int activeLen) {
+    List<DatanodeInfo> slowNodes = null;
+    int j = 0;
+    for (int i = 0; i < activeLen; i++) {
+      if (slowNodeTracker.isSlowNode(di[i].getXferAddr())) {
+        if (slowNodes == null) {
+          slowNodes = new ArrayList<DatanodeInfo>(activeLen);
+        }
+        slowNodes.add(di[i]);
+      } else {
+        di[j++] = di[i];
+      }
+    }
+    if (slowNodes != null) {
+      for (DatanodeInfo node : slowNodes) {
+        di[j++] = node;
+      }
+    }
+  }
+
   CyclicIteration<String, DatanodeDescriptor> getDatanodeCyclicIteration(
       final String firstkey) {
     return new CyclicIteration<String, DatanodeDescriptor>(
@@ -536,6 +578,11 @@ private void removeDatanode(DatanodeDescriptor nodeInfo) {
     blockManager.removeBlocksAssociatedTo(nodeInfo);
     networktopology.remove(nodeInfo);
     decrementVersionCount(nodeInfo.getSoftwareVersion());
+    synchronized (datanodeMap) {
+      if (slowNodeTracker.removeNode(nodeInfo.getXferAddr())) {
+        updateSlowNodes();
+      }
+    }
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("remove datanode " + nodeInfo);
@@ -593,6 +640,7 @@ void addDatanode(final DatanodeDescriptor node) {
     // from datanodeMap before adding node to host2DatanodeMap.
     synchronized(datanodeMap) {
       host2DatanodeMap.remove(datanodeMap.put(node.getDatanodeUuid(), node));
+      node.setSlow(slowNodeTracker.isSlowNode(node.getXferAddr()));
     }
 
     networktopology.add(node); // may throw InvalidTopologyException
@@ -1140,6 +1188,64 @@ void setNumStaleStorages(int numStaleStorages) {
     this.numStaleStorages = numStaleStorages;
   }
 
+  /* Slow DataNodes and volumes, as reported by the DataNodes */
+
+  /**
+   * Whether the slow DataNodes and slow volumes should be avoided as targets
+   * on the write path. They only are if enabled and some DataNode or volume
+   * has been flagged slow.
+   *
+   * @return whether slow datanodes should be avoided on the write path
+   */
+  public boolean shouldAvoidSlowDataNodesForWrite() {
+    return avoidSlowDataNodesForWrite
+        && (!slowNodeTracker.getSlowNodes().isEmpty()
+            || slowNodeTracker.hasSlowDisks());
+  }
+
+  /**
+   * @return a JSON map of the reported DataNodes to whether they are slow,
+   *         to the DataNodes reporting them and to their slow volumes
+   */
+  public String getSlowNodesReport() {
+    return slowNodeTracker.getJson();
+  }
+
+  /**
+   * Replace the slow peer and slow volume reports of a DataNode, flag its
+   * slow volumes, and flag the slow DataNodes if they have changed.
+   *
+   * @param node the DataNode which sent the reports with its heartbeat
+   * @param slowPeers the downstream peers the DataNode finds slow
+   * @param slowDisks the volumes of the DataNode it finds slow
+   */
+  @VisibleForTesting
+  void updateSlowNodeReports(DatanodeDescriptor node,
+      SlowPeerReports slowPeers, SlowDiskReports slowDisks) {
+    for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+      storage.setSlow(slowDisks != null
+          && slowDisks.getSlowDisks().containsKey(storage.getStorageID()));
+    }
+    synchronized (datanodeMap) {
+      if (slowNodeTracker.updateReports(node.getXferAddr(), slowPeers,
+          slowDisks)) {
+        LOG.info("Slow datanodes: " + slowNodeTracker.getSlowNodes());
+        updateSlowNodes();
+      }
+    }
+  }
+
+  /**
+   * Set the slow flag of every DataNode to whether the tracker currently
+   * finds it slow. Must be called with the datanodeMap lock held.
+   */
+  private void updateSlowNodes() {
+    assert Thread.holdsLock(datanodeMap);
+    for (DatanodeDescriptor node : datanodeMap.values()) {
+      node.setSlow(slowNodeTracker.isSlowNode(node.getXferAddr()));
+    }
+  }
+
   /** Fetch live and dead datanodes. */
   public void fetchDatanodes(final List<DatanodeDescriptor> live, 
       final List<DatanodeDescriptor> dead, final boolean removeDecommissionNode) {
@@ -1343,7 +1449,8 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, final String blockPoolId,
       long cacheCapacity, long cacheUsed, int xceiverCount, 
       int maxTransfers, int failedVolumes,
-      VolumeFailureSummary volumeFailureSummary) throws IOException {
+      VolumeFailureSummary volumeFailureSummary, SlowPeerReports slowPeers,
+      SlowDiskReports slowDisks) throws IOException {
     synchronized (heartbeatManager) {
       synchronized (datanodeMap) {
         DatanodeDescriptor nodeinfo = null;
@@ -1367,6 +1474,7 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
                                          cacheCapacity, cacheUsed,
                                          xceiverCount, failedVolumes,
                                          volumeFailureSummary);
+        updateSlowNodeReports(nodeinfo, slowPeers, slowDisks);
 
         // If we are in safemode, do not send back any recovery / replication
         // requests. Don't even drain the existing queue of work.
@@ -1596,6 +1704,11 @@ public boolean isAvoidingStaleDataNodesForWrite() {
         return shouldAvoidStaleDataNodesForWrite();
       }
 
+      @Override
+      public boolean isAvoidingSlowDataNodesForWrite() {
+        return shouldAvoidSlowDataNodesForWrite();
+      }
+
       @Override
       public int getNumDatanodesInService() {
         return heartbeatManager.getNumDatanodesInService();
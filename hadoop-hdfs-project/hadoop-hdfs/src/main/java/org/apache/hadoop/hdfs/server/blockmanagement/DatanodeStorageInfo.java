@@ -137,6 +137,12 @@ public void remove() {
    */
   private boolean blockContentsStale = true;
 
+  /**
+   * Whether the datanode reports this storage as slow compared to its other
+   * storages, see {@link SlowNodeTracker}.
+   */
+  private volatile boolean slow = false;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this.dn = dn;
     this.storageID = s.getStorageID();
@@ -198,6 +204,15 @@ void setState(State state) {
     this.state = state;
   }
 
+  void setSlow(boolean flag) {
+    slow = flag;
+  }
+
+  /** Is the storage reported slow compared to the others of its datanode? */
+  boolean isSlow() {
+    return slow;
+  }
+
   boolean areBlocksOnFailedStorage() {
     return getState() == State.FAILED && numBlocks != 0;
   }
@@ -43,6 +43,16 @@ public interface FSClusterStats {
    */
   public boolean isAvoidingStaleDataNodesForWrite();
 
+  /**
+   * Indicate whether or not the cluster is now avoiding
+   * to use slow DataNodes and slow volumes for writing.
+   *
+   * @return True if the cluster is configured to avoid slow DataNodes
+   *         for writing targets and some DataNodes or volumes are reported
+   *         slow, and false otherwise.
+   */
+  public boolean isAvoidingSlowDataNodesForWrite();
+
   /**
    * Indicates number of datanodes that are in service.
    * @return Number of datanodes that are both alive and not decommissioned.
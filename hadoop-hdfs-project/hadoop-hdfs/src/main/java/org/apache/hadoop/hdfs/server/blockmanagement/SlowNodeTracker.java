@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
+import org.mortbay.util.ajax.JSON;
+
+/**
+ * Tracks the slow peers and slow volumes which the datanodes report with
+ * their heartbeats.
+ *
+ * Every report of a datanode replaces its previous one.  A datanode is slow
+ * while at least {@link #MIN_REPORTING_NODES} other datanodes report it as a
+ * slow downstream peer, so that one datanode with a bad link or a bad clock
+ * cannot get a peer avoided.  Slow volumes do not make their datanode slow,
+ * only the volumes themselves are tracked.  Datanodes are identified by
+ * their transfer address, which is how the datanodes know their peers, and
+ * volumes by their storage ID.
+ */
+@InterfaceAudience.Private
+class SlowNodeTracker {
+  /** The number of datanodes which must report a peer for it to be slow. */
+  static final int MIN_REPORTING_NODES = 2;
+
+  /** The slow peers and their latency, keyed by the reporting datanode. */
+  private final Map<String, Map<String, Long>> slowPeers =
+      new HashMap<String, Map<String, Long>>();
+  /** The slow volumes by storage ID and their latency, keyed by datanode. */
+  private final Map<String, Map<String, Long>> slowDisks =
+      new HashMap<String, Map<String, Long>>();
+  /** The slow datanodes, recomputed whenever a report changes. */
+  private volatile Set<String> slowNodes = Collections.emptySet();
+
+  /**
+   * Replace the reports of a datanode.
+   *
+   * @return whether the set of slow datanodes has changed
+   */
+  synchronized boolean updateReports(String node, SlowPeerReports peers,
+      SlowDiskReports disks) {
+    update(slowDisks, node, disks == null ? null : disks.getSlowDisks());
+    return update(slowPeers, node,
+        peers == null ? null : peers.getSlowPeers()) && refresh();
+  }
+
+  /**
+   * Forget the reports of a datanode which is gone.
+   *
+   * @return whether the set of slow datanodes has changed
+   */
+  synchronized boolean removeNode(String node) {
+    return updateReports(node, null, null);
+  }
+
+  boolean isSlowNode(String node) {
+    return slowNodes.contains(node);
+  }
+
+  /** @return whether any datanode reports slow volumes. */
+  synchronized boolean hasSlowDisks() {
+    return !slowDisks.isEmpty();
+  }
+
+  Set<String> getSlowNodes() {
+    return slowNodes;
+  }
+
+  /**
+   * @return a JSON map from each reported datanode to whether it is slow, to
+   *         the datanodes reporting it with the latency they see, and to its
+   *         slow volumes
+   */
+  synchronized String getJson() {
+    final Map<String, Map<String, Object>> info =
+        new TreeMap<String, Map<String, Object>>();
+    for (Map.Entry<String, Map<String, Long>> e : slowPeers.entrySet()) {
+      for (Map.Entry<String, Long> peer : e.getValue().entrySet()) {
+        getReportedBy(getInfo(info, peer.getKey()))
+            .put(e.getKey(), peer.getValue());
+      }
+    }
+    for (Map.Entry<String, Map<String, Long>> e : slowDisks.entrySet()) {
+      getInfo(info, e.getKey()).put("slowDisks", e.getValue());
+    }
+    for (Map.Entry<String, Map<String, Object>> e : info.entrySet()) {
+      e.getValue().put("slow", slowNodes.contains(e.getKey()));
+    }
+    return JSON.toString(info);
+  }
+
+  private static Map<String, Object> getInfo(
+      Map<String, Map<String, Object>> info, String node) {
+    Map<String, Object> nodeInfo = info.get(node);
+    if (nodeInfo == null) {
+      nodeInfo = new TreeMap<String, Object>();
+      info.put(node, nodeInfo);
+    }
+    return nodeInfo;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Long> getReportedBy(Map<String, Object> info) {
+    Map<String, Long> reportedBy = (Map<String, Long>) info.get("reportedBy");
+    if (reportedBy == null) {
+      reportedBy = new TreeMap<String, Long>();
+      info.put("reportedBy", reportedBy);
+    }
+    return reportedBy;
+  }
+
+  private static boolean update(Map<String, Map<String, Long>> reports,
+      String node, Map<String, Long> report) {
+    if (report == null || report.isEmpty()) {
+      return reports.remove(node) != null;
+    }
+    final Map<String, Long> previous = reports.put(node, report);
+    return previous == null || !previous.keySet().equals(report.keySet());
+  }
+
+  /** @return whether the set of slow datanodes has changed. */
+  private boolean refresh() {
+    final Map<String, Integer> numReports = new HashMap<String, Integer>();
+    for (Map<String, Long> peers : slowPeers.values()) {
+      for (String peer : peers.keySet()) {
+        final Integer n = numReports.get(peer);
+        numReports.put(peer, n == null ? 1 : n + 1);
+      }
+    }
+    final Set<String> nodes = new HashSet<String>();
+    for (Map.Entry<String, Integer> e : numReports.entrySet()) {
+      if (e.getValue() >= MIN_REPORTING_NODES) {
+        nodes.add(e.getKey());
+      }
+    }
+    if (nodes.equals(slowNodes)) {
+      return false;
+    }
+    slowNodes = Collections.unmodifiableSet(nodes);
+    return true;
+  }
+}
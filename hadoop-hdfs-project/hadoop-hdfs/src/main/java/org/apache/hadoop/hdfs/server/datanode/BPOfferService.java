@@ -290,6 +290,11 @@ void join() {
     for (BPServiceActor actor : bpServices) {
       actor.join();
     }
+    // The last actor removes itself from bpServices before it shuts down
+    // the block pool under the write lock.  Wait for the shutdown, since
+    // it saves the replicas of the block pool.
+    readLock();
+    readUnlock();
   }
 
   DataNode getDataNode() {
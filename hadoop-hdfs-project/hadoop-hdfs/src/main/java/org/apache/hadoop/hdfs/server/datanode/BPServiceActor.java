@@ -58,6 +58,7 @@
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.VersionInfo;
 import org.apache.hadoop.util.VersionUtil;
@@ -483,6 +484,15 @@ List<DatanodeCommand> blockReport() throws IOException {
         }
       }
       success = true;
+    } catch (RemoteException re) {
+      if (!RetriableException.class.getName().equals(re.getClassName())) {
+        throw re;
+      }
+      // The NameNode is busy with the reports of other DataNodes. The report
+      // stays due, and is sent again after the next heartbeat.
+      LOG.info("The NameNode deferred block report 0x" +
+          Long.toHexString(reportId) + ": " + re.getMessage());
+      return null;
     } finally {
       // Log the block report processing stats from Datanode perspective
       long brSendCost = monotonicNow() - brSendStartTime;
@@ -558,7 +568,9 @@ HeartbeatResponse sendHeartBeat() throws IOException {
         dn.getXmitsInProgress(),
         dn.getXceiverCount(),
         numFailedVolumes,
-        volumeFailureSummary);
+        volumeFailureSummary,
+        dn.getSlowPeerReports(),
+        dn.getSlowDiskReports());
   }
   
   //This must be called only by BPOfferService
@@ -348,6 +348,11 @@ protected void setFieldsFromProperties(Properties props, StorageDirectory sd)
    */
   private void doTransition(DataNode datanode, StorageDirectory sd,
       NamespaceInfo nsInfo, StartupOption startOpt) throws IOException {
+    if (startOpt == StartupOption.ROLLBACK) {
+      // the replicas are about to be restored from the previous directory
+      // or the trash
+      deleteReplicaCache(sd);
+    }
     if (startOpt == StartupOption.ROLLBACK && sd.getPreviousDir().exists()) {
       Preconditions.checkState(!getTrashRootDir(sd).exists(),
           sd.getPreviousDir() + " and " + getTrashRootDir(sd) + " should not " +
@@ -381,6 +386,8 @@ private void doTransition(DataNode datanode, StorageDirectory sd,
         && this.cTime == nsInfo.getCTime()) {
       return; // regular startup
     }
+    // the replica cache must not be kept in the previous directory
+    deleteReplicaCache(sd);
     if (this.layoutVersion > HdfsConstants.DATANODE_LAYOUT_VERSION) {
       int restored = restoreBlockFilesFromTrash(getTrashRootDir(sd));
       LOG.info("Restored " + restored + " block files from trash " +
@@ -494,6 +501,20 @@ private void cleanupDetachDir(File detachDir) throws IOException {
     }
   }
 
+  /**
+   * Delete the finalized replicas saved on the last shutdown, so that the
+   * replicas are read from the disk on the next startup.
+   */
+  private static void deleteReplicaCache(StorageDirectory sd)
+      throws IOException {
+    final File replicaFile =
+        new File(sd.getCurrentDir(), DataStorage.REPLICA_CACHE_FILE);
+    if (replicaFile.exists() && !replicaFile.delete()) {
+      throw new IOException("Failed to delete the replica cache "
+          + replicaFile);
+    }
+  }
+
   /**
    * Restore all files from the trash directory to their corresponding
    * locations under current/
@@ -94,6 +94,8 @@ class BlockReceiver implements Closeable {
   protected final String inAddr;
   protected final String myAddr;
   private String mirrorAddr;
+  /** transfer address of the mirror, which keys its latency samples */
+  private String mirrorXferAddr;
   private DataOutputStream mirrorOut;
   private Daemon responder = null;
   private DataTransferThrottler throttler;
@@ -117,6 +119,8 @@ class BlockReceiver implements Closeable {
   private final ExtendedBlock block; 
   /** the replica to write */
   private final ReplicaInPipelineInterface replicaInfo;
+  /** storage ID of the volume of the replica, for the latency samples */
+  private final String volumeStorageId;
   /** pipeline stage */
   private final BlockConstructionStage stage;
   private final boolean isTransfer;
@@ -229,6 +233,9 @@ class BlockReceiver implements Closeable {
         }
       }
       replicaInfo = replicaHandler.getReplica();
+      this.volumeStorageId = replicaInfo instanceof ReplicaInfo
+          && ((ReplicaInfo) replicaInfo).getVolume() != null
+          ? ((ReplicaInfo) replicaInfo).getVolume().getStorageID() : null;
       this.dropCacheBehindWrites = (cachingStrategy.getDropBehind() == null) ?
         datanode.getDnConf().dropCacheBehindWrites :
           cachingStrategy.getDropBehind();
@@ -380,6 +387,12 @@ synchronized boolean packetSentInTime() {
     return true;
   }
 
+  private void addVolumeLatency(long latencyMs) {
+    if (volumeStorageId != null) {
+      datanode.addVolumeLatency(volumeStorageId, latencyMs);
+    }
+  }
+
   /**
    * Flush block data and metadata files to disk.
    * @throws IOException
@@ -416,6 +429,7 @@ void flushOrSync(boolean isSync) throws IOException {
       }
     }
     long duration = Time.monotonicNow() - begin;
+    addVolumeLatency(duration);
     if (duration > datanodeSlowLogThresholdMs) {
       LOG.warn("Slow flushOrSync took " + duration + "ms (threshold="
           + datanodeSlowLogThresholdMs + "ms), isSync:" + isSync + ", flushTotalNanos="
@@ -558,6 +572,11 @@ private int receivePacket() throws IOException {
         long now = Time.monotonicNow();
         setLastSentTime(now);
         long duration = now - begin;
+        // Only the cost of this hop: the acks also include the time the
+        // mirror and the nodes after it take to write the packet.
+        if (mirrorXferAddr != null) {
+          datanode.addPeerLatency(mirrorXferAddr, duration);
+        }
         if (duration > datanodeSlowLogThresholdMs) {
           LOG.warn("Slow BlockReceiver write packet to mirror took " + duration
               + "ms (threshold=" + datanodeSlowLogThresholdMs + "ms)");
@@ -690,6 +709,7 @@ private int receivePacket() throws IOException {
           long begin = Time.monotonicNow();
           out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
           long duration = Time.monotonicNow() - begin;
+          addVolumeLatency(duration);
           if (duration > datanodeSlowLogThresholdMs) {
             LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
                 + "ms (threshold=" + datanodeSlowLogThresholdMs + "ms)");
@@ -880,6 +900,8 @@ void receiveBlock(
       boolean responderClosed = false;
       mirrorOut = mirrOut;
       mirrorAddr = mirrAddr;
+      mirrorXferAddr = downstreams != null && downstreams.length > 0
+          ? downstreams[0].getXferAddr() : null;
       throttler = throttlerArg;
 
       this.replyOut = replyOut;
@@ -666,23 +666,11 @@ private void readChecksum(byte[] buf, final int checksumOffset,
   public void verifyChecksum(final byte[] buf, final int dataOffset,
       final int datalen, final int numChunks, final int checksumOffset)
       throws ChecksumException {
-    int dOff = dataOffset;
-    int cOff = checksumOffset;
-    int dLeft = datalen;
-
-    for (int i = 0; i < numChunks; i++) {
-      checksum.reset();
-      int dLen = Math.min(dLeft, chunkSize);
-      checksum.update(buf, dOff, dLen);
-      if (!checksum.compare(buf, cOff)) {
-        long failedPos = offset + datalen - dLeft;
-        throw new ChecksumException("Checksum failed at " + failedPos,
-            failedPos);
-      }
-      dLeft -= dLen;
-      dOff += dLen;
-      cOff += checksumSize;
-    }
+    // Verify all the chunks of the packet in one bulk call, which uses the
+    // native CRC implementation when it is available.
+    checksum.verifyChunkedSums(ByteBuffer.wrap(buf, dataOffset, datalen),
+        ByteBuffer.wrap(buf, checksumOffset, numChunks * checksumSize),
+        block.toString(), offset);
   }
   
   /**
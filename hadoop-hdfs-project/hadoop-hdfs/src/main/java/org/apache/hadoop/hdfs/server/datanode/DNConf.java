@@ -89,6 +89,7 @@ public class DNConf {
   final long cacheReportInterval;
   final long dfsclientSlowIoWarningThresholdMs;
   final long datanodeSlowIoWarningThresholdMs;
+  final boolean slowNodeDetectionEnabled;
   final int writePacketSize;
   
   final String minimumNameNodeVersion;
@@ -154,6 +155,9 @@ public DNConf(Configuration conf) {
     this.datanodeSlowIoWarningThresholdMs = conf.getLong(
         DFSConfigKeys.DFS_DATANODE_SLOW_IO_WARNING_THRESHOLD_KEY,
         DFSConfigKeys.DFS_DATANODE_SLOW_IO_WARNING_THRESHOLD_DEFAULT);
+    this.slowNodeDetectionEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_SLOW_NODE_DETECTION_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_SLOW_NODE_DETECTION_ENABLED_DEFAULT);
 
     long initBRDelay = conf.getLong(
         DFS_BLOCKREPORT_INITIAL_DELAY_KEY,
@@ -160,6 +160,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.metrics.LatencyOutlierTracker;
 import org.apache.hadoop.hdfs.server.datanode.web.DatanodeHttpServer;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
@@ -167,6 +168,8 @@
 import org.apache.hadoop.hdfs.server.protocol.InterDatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.http.HttpConfig;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.ReadaheadPool;
@@ -303,6 +306,13 @@ public static InetSocketAddress createSocketAddr(String target) {
   private int infoSecurePort;
 
   DataNodeMetrics metrics;
+  /**
+   * Time taken to send a packet to each downstream peer, null if not
+   * tracked.
+   */
+  private LatencyOutlierTracker peerLatencies;
+  /** Write latency of the volumes, null if not tracked. */
+  private LatencyOutlierTracker volumeLatencies;
   private InetSocketAddress streamingAddr;
   
   // See the note below in incrDatanodeNetworkErrors re: concurrency.
@@ -1120,6 +1130,10 @@ void startDataNode(Configuration conf,
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
     metrics.getJvmMetrics().setPauseMonitor(pauseMonitor);
+    if (dnConf.slowNodeDetectionEnabled) {
+      peerLatencies = LatencyOutlierTracker.createForPeers(conf);
+      volumeLatencies = LatencyOutlierTracker.createForVolumes(conf);
+    }
     
     blockPoolManager = new BlockPoolManager(this);
     blockPoolManager.refreshNamenodes(conf);
@@ -2948,6 +2962,60 @@ public String getVolumeInfo() {
     return JSON.toString(data.getVolumeInfoMap());
   }
   
+  /** Add a sample of the time taken to send a packet to a downstream peer. */
+  void addPeerLatency(String peer, long latencyMs) {
+    if (peerLatencies != null) {
+      peerLatencies.add(peer, latencyMs);
+    }
+  }
+
+  /** Add a write latency sample of a volume, given by its storage ID. */
+  void addVolumeLatency(String volume, long latencyMs) {
+    if (volumeLatencies != null) {
+      volumeLatencies.add(volume, latencyMs);
+    }
+  }
+
+  /** @return the downstream peers which are slow compared to the others. */
+  SlowPeerReports getSlowPeerReports() {
+    if (peerLatencies == null) {
+      return SlowPeerReports.EMPTY_REPORT;
+    }
+    final Map<String, Long> outliers = peerLatencies.getOutliers();
+    metrics.setSlowPeers(outliers.size());
+    return SlowPeerReports.create(outliers);
+  }
+
+  /** @return the volumes which are slow compared to the others. */
+  SlowDiskReports getSlowDiskReports() {
+    if (volumeLatencies == null) {
+      return SlowDiskReports.EMPTY_REPORT;
+    }
+    final Map<String, Long> outliers = volumeLatencies.getOutliers();
+    metrics.setSlowVolumes(outliers.size());
+    return SlowDiskReports.create(outliers);
+  }
+
+  @Override // DataNodeMXBean
+  public String getSlowPeers() {
+    return JSON.toString(getSlowPeerReports().getSlowPeers());
+  }
+
+  @Override // DataNodeMXBean
+  public String getSlowDisks() {
+    return JSON.toString(getSlowDiskReports().getSlowDisks());
+  }
+
+  @VisibleForTesting
+  LatencyOutlierTracker getPeerLatencies() {
+    return peerLatencies;
+  }
+
+  @VisibleForTesting
+  LatencyOutlierTracker getVolumeLatencies() {
+    return volumeLatencies;
+  }
+
   @Override // DataNodeMXBean
   public synchronized String getClusterId() {
     return clusterId;
@@ -20,6 +20,7 @@
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 
 import java.io.IOException;
 
@@ -51,4 +52,9 @@ public boolean dropHeartbeatPacket() {
   }
 
   public void noRegistration() throws IOException { }
+
+  /**
+   * Called before the files of a replica are created or moved on a volume.
+   */
+  public void delayReplicaFileIO(FsVolumeSpi volume) throws IOException { }
 }
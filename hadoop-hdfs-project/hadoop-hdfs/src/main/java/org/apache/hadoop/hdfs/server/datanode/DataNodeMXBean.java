@@ -65,6 +65,22 @@ public interface DataNodeMXBean {
    * @return the volume info
    */
   public String getVolumeInfo();
+
+  /**
+   * Gets the downstream peers which are slow compared to the other peers,
+   * with the latency of sending them a packet in milliseconds.
+   *
+   * @return the slow peers, as a JSON string
+   */
+  public String getSlowPeers();
+
+  /**
+   * Gets the storage IDs of the volumes which are slow compared to the other
+   * volumes, with their write latency in milliseconds.
+   *
+   * @return the slow volumes, as a JSON string
+   */
+  public String getSlowDisks();
   
   /**
    * Gets the cluster id.
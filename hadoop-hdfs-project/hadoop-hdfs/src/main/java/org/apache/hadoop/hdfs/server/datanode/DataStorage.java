@@ -89,6 +89,8 @@ public class DataStorage extends Storage {
   public final static String STORAGE_DIR_FINALIZED = "finalized";
   public final static String STORAGE_DIR_LAZY_PERSIST = "lazypersist";
   public final static String STORAGE_DIR_TMP = "tmp";
+  /** The finalized replicas of a block pool saved on shutdown. */
+  public final static String REPLICA_CACHE_FILE = "replicas";
 
   /**
    * Set of bpids for which 'trash' is currently enabled.
@@ -43,6 +43,8 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
@@ -65,6 +67,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ClientReadStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReadBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReadOpChecksumInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReleaseShortCircuitAccessResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ShortCircuitShmResponseProto;
@@ -82,9 +85,11 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.MD5Hash;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.StopWatch;
 
@@ -118,6 +123,21 @@ class DataXceiver extends Receiver implements Runnable {
    * on the socket.
    */
   private String previousOpClientName;
+
+  /** Upper bound of the size of an OP_READ_BLOCK request. */
+  private static final int MAX_OP_READ_BLOCK_SIZE = 64 * 1024;
+  /** Upper bound of the size of a request buffered by a pool thread. */
+  private static final int MAX_POOL_REQUEST_SIZE = 64 * 1024;
+
+  /** Whether the peer was added to the DataXceiverServer. */
+  private boolean registered = false;
+  /** Whether the SASL handshake is done and the input stream is set. */
+  private boolean initialized = false;
+  /** Whether the SASL handshake left the socket streams unwrapped. */
+  private boolean unwrapped = false;
+  private int opsProcessed = 0;
+  /** The op read by a pool thread and handed off to a thread of its own. */
+  private Op pendingOp = null;
   
   public static DataXceiver create(Peer peer, DataNode dn,
       DataXceiverServer dataXceiverServer) throws IOException {
@@ -182,76 +202,129 @@ public void sendOOB() throws IOException, InterruptedException {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
+    serve(false);
+  }
+
+  /**
+   * Serve the connection on a thread of the {@link DataXceiverPool}.  An
+   * operation which is not short is handed off to a thread of its own.
+   */
+  void runOnPool() {
+    serve(true);
+  }
+
+  private void serve(boolean onPool) {
     Op op = null;
+    // whether the connection was handed off to another thread or to the
+    // pool, which then takes care of closing it
+    boolean handedOff = false;
 
     try {
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-          HdfsConstants.SMALL_BUFFER_SIZE);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
+      if (!registered) {
+        dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+        registered = true;
+      } else {
+        dataXceiverServer.setPeerThread(peer, Thread.currentThread());
+      }
+      if (!initialized) {
+        peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+        if (onPool) {
+          // the client is expected to be mid-handshake already
+          peer.setReadTimeout(
+              dataXceiverServer.getXceiverPool().getRequestTimeout());
         }
-        return;
+        InputStream input = socketIn;
+        try {
+          IOStreamPair saslStreams = datanode.saslServer.receive(peer,
+            socketOut, socketIn, datanode.getXferAddress().getPort(),
+            datanode.getDatanodeId());
+          input = new BufferedInputStream(saslStreams.in,
+            HdfsConstants.SMALL_BUFFER_SIZE);
+          socketOut = saslStreams.out;
+          // wrapped streams may buffer data, so the pool cannot tell whether
+          // the connection is readable by watching the socket
+          unwrapped = saslStreams.in == socketIn;
+        } catch (InvalidMagicNumberException imne) {
+          if (imne.isHandshake4Encryption()) {
+            LOG.info("Failed to read expected encryption handshake from " +
+                "client at " + peer.getRemoteAddressString() + ". Perhaps " +
+                "the client is running an older version of Hadoop which " +
+                "does not support encryption");
+          } else {
+            LOG.info("Failed to read expected SASL data transfer protection " +
+                "handshake from client at " + peer.getRemoteAddressString() +
+                ". Perhaps the client is running an older version of Hadoop " +
+                "which does not support SASL data transfer protection");
+          }
+          return;
+        }
+
+        super.initialize(new DataInputStream(input));
+        initialized = true;
       }
       
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
-        updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+        if (pendingOp != null) {
+          // the op was read by a pool thread
+          op = pendingOp;
+          pendingOp = null;
+        } else {
+          updateCurrentThreadName(
+              "Waiting for operation #" + (opsProcessed + 1));
+
+          try {
+            if (opsProcessed != 0) {
+              assert dnConf.socketKeepaliveTimeout > 0;
+              peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
+            } else {
+              peer.setReadTimeout(dnConf.socketTimeout);
+            }
+            if (onPool) {
+              bufferRequest();
+            }
+            op = readOp();
+          } catch (InterruptedIOException ignored) {
+            // Time out while we wait for client rpc
+            break;
+          } catch (IOException err) {
+            // Since we optimistically expect the next op, it's quite normal to get EOF here.
+            if (opsProcessed > 0 &&
+                (err instanceof EOFException || err instanceof ClosedChannelException)) {
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Cached " + peer + " closing after " + opsProcessed + " ops");
+              }
+            } else {
+              incrDatanodeNetworkErrors();
+              throw err;
+            }
+            break;
+          }
 
-        try {
+          // restore normal timeout
           if (opsProcessed != 0) {
-            assert dnConf.socketKeepaliveTimeout > 0;
-            peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
-          } else {
             peer.setReadTimeout(dnConf.socketTimeout);
           }
-          op = readOp();
-        } catch (InterruptedIOException ignored) {
-          // Time out while we wait for client rpc
-          break;
-        } catch (IOException err) {
-          // Since we optimistically expect the next op, it's quite normal to get EOF here.
-          if (opsProcessed > 0 &&
-              (err instanceof EOFException || err instanceof ClosedChannelException)) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Cached " + peer + " closing after " + opsProcessed + " ops");
-            }
-          } else {
-            incrDatanodeNetworkErrors();
-            throw err;
-          }
-          break;
-        }
 
-        // restore normal timeout
-        if (opsProcessed != 0) {
-          peer.setReadTimeout(dnConf.socketTimeout);
+          if (onPool && !isShortOp(op)) {
+            pendingOp = op;
+            dataXceiverServer.setPeerThread(peer, null);
+            new Daemon(datanode.threadGroup, this).start();
+            handedOff = true;
+            return;
+          }
         }
 
         opStartTime = monotonicNow();
         processOp(op);
         ++opsProcessed;
+        if (peer != null && !peer.isClosed()
+            && dnConf.socketKeepaliveTimeout > 0 && watchForNextOp()) {
+          handedOff = true;
+          return;
+        }
       } while ((peer != null) &&
           (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
     } catch (Throwable t) {
@@ -280,15 +353,165 @@ public void run() {
         LOG.error(s, t);
       }
     } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      if (!handedOff) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(datanode.getDisplayName()
+              + ":Number of active connections is: "
+              + datanode.getXceiverCount());
+        }
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the channel of the connection if the {@link DataXceiverPool}
+   *         can watch it, or null.
+   */
+  private SelectableChannel getSelectableChannel() {
+    final ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream) {
+      final ReadableByteChannel c = ((SocketInputStream) channel).getChannel();
+      if (c instanceof SelectableChannel) {
+        return (SelectableChannel) c;
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+    }
+    return null;
+  }
+
+  /**
+   * Let the pool watch the connection until the client sends its first
+   * operation.
+   * @return false if the connection needs a thread of its own.
+   */
+  boolean watchForFirstOp() throws IOException {
+    final DataXceiverPool pool = dataXceiverServer.getXceiverPool();
+    final SelectableChannel channel = getSelectableChannel();
+    if (pool == null || channel == null) {
+      return false;
+    }
+    dataXceiverServer.addPeer(peer, null, this);
+    registered = true;
+    pool.watch(this, channel, dnConf.socketTimeout);
+    return true;
+  }
+
+  /**
+   * Let the pool watch the connection until the client sends its next
+   * operation, unless the operation may already be buffered.
+   * @return true if the pool watches the connection.
+   */
+  private boolean watchForNextOp() throws IOException {
+    final DataXceiverPool pool = dataXceiverServer.getXceiverPool();
+    if (pool == null || !unwrapped || in.available() > 0) {
+      return false;
+    }
+    final SelectableChannel channel = getSelectableChannel();
+    if (channel == null) {
+      return false;
+    }
+    dataXceiverServer.setPeerThread(peer, null);
+    pool.watch(this, channel, dnConf.socketKeepaliveTimeout);
+    return true;
+  }
+
+  /** Close the connection while the pool watches it. */
+  void closeIdle() {
+    dataXceiverServer.closePeer(peer);
+    IOUtils.closeStream(in);
+  }
+
+  /**
+   * @return whether the op is short enough to be processed on a pool
+   *         thread.
+   */
+  private boolean isShortOp(Op op) throws IOException {
+    switch (op) {
+    case READ_BLOCK:
+      return peekReadLength() <=
+          dataXceiverServer.getXceiverPool().getMaxReadLength();
+    case BLOCK_CHECKSUM:
+    case REQUEST_SHORT_CIRCUIT_FDS:
+    case RELEASE_SHORT_CIRCUIT_FDS:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Wait until the whole request of the next operation is buffered, so that
+   * a pool thread only ever blocks on a client which sends part of a request
+   * for the request timeout of the pool, in total.  Runs when the pool saw
+   * the connection become readable, so the request is normally there.
+   */
+  private void bufferRequest() throws IOException {
+    final long deadline = monotonicNow()
+        + dataXceiverServer.getXceiverPool().getRequestTimeout();
+    in.mark(MAX_POOL_REQUEST_SIZE);
+    try {
+      // the version and the op, then the length-prefixed request
+      for (int i = 0; i < 3; i++) {
+        readByte(deadline);
+      }
+      int len = 0;
+      for (int shift = 0; ; shift += 7) {
+        final int b = readByte(deadline);
+        len |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        } else if (shift >= 28) {
+          throw new IOException("Malformed request length from " + peer);
+        }
       }
+      if (len > MAX_POOL_REQUEST_SIZE - 8) {
+        throw new IOException("Request of " + len + " bytes from " + peer
+            + " is too large");
+      }
+      final byte[] buf = new byte[Math.min(len, 4096)];
+      for (int n = len; n > 0; ) {
+        setRemainingReadTimeout(deadline);
+        final int r = in.read(buf, 0, Math.min(n, buf.length));
+        if (r < 0) {
+          throw new EOFException("Connection closed by " + peer);
+        }
+        n -= r;
+      }
+    } finally {
+      in.reset();
+      peer.setReadTimeout(dnConf.socketTimeout);
+    }
+  }
+
+  private int readByte(long deadline) throws IOException {
+    setRemainingReadTimeout(deadline);
+    final int b = in.read();
+    if (b < 0) {
+      throw new EOFException("Connection closed by " + peer);
+    }
+    return b;
+  }
+
+  private void setRemainingReadTimeout(long deadline) throws IOException {
+    final long remaining = deadline - monotonicNow();
+    if (remaining <= 0) {
+      throw new SocketTimeoutException("Timed out waiting for the request of"
+          + " an operation from " + peer);
+    }
+    peer.setReadTimeout((int) remaining);
+  }
+
+  /** @return the length of the read requested by the next OP_READ_BLOCK. */
+  private long peekReadLength() throws IOException {
+    in.mark(MAX_OP_READ_BLOCK_SIZE);
+    try {
+      return OpReadBlockProto.parseFrom(PBHelper.vintPrefixed(in)).getLen();
+    } finally {
+      in.reset();
     }
   }
 
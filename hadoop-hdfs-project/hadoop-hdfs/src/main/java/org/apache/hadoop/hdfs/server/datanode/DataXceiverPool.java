@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Serves the short operations of the TCP connections to a DataNode from a
+ * bounded pool of threads.
+ * <p>
+ * A connection which waits for its next operation is watched by a selector
+ * and does not hold any thread.  Once it becomes readable, its
+ * {@link DataXceiver} is run on a pool thread, which reads the operation.
+ * Short operations are processed on the pool thread.  Any other operation
+ * is handed off to a thread of its own, the same as without the pool.
+ * After the operation, the connection is watched again until the client
+ * sends another operation or the keepalive timeout expires.
+ */
+class DataXceiverPool implements Runnable {
+  public static final Log LOG = DataNode.LOG;
+
+  /** A connection to watch until it becomes readable or times out. */
+  private static class Watch {
+    final DataXceiver xceiver;
+    final SelectableChannel channel;
+    final long deadline;
+
+    Watch(DataXceiver xceiver, SelectableChannel channel, long deadline) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final long maxReadLength;
+  private final int requestTimeoutMs;
+  private final Selector selector;
+  private final Daemon selectorThread;
+  /** The connections to register with the selector. */
+  private final Queue<Watch> pending = new ConcurrentLinkedQueue<Watch>();
+  private volatile boolean running = true;
+
+  DataXceiverPool(final ThreadGroup threadGroup, int poolSize,
+      long maxReadLength, int requestTimeoutMs) throws IOException {
+    this.maxReadLength = maxReadLength;
+    this.requestTimeoutMs = requestTimeoutMs;
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            final Thread t = new Daemon(threadGroup, r);
+            t.setName("DataXceiverPool-" + count.incrementAndGet());
+            return t;
+          }
+        });
+    this.selector = Selector.open();
+    this.selectorThread = new Daemon(threadGroup, this);
+    this.selectorThread.setName("DataXceiverPool selector");
+    this.selectorThread.start();
+  }
+
+  /** @return the maximal length of a read processed on a pool thread. */
+  long getMaxReadLength() {
+    return maxReadLength;
+  }
+
+  /**
+   * @return the time in milliseconds a pool thread waits for the whole
+   *         request of an operation.
+   */
+  int getRequestTimeout() {
+    return requestTimeoutMs;
+  }
+
+  /** Run the xceiver on a pool thread. */
+  void execute(final DataXceiver xceiver) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          final Thread t = Thread.currentThread();
+          final String name = t.getName();
+          try {
+            xceiver.runOnPool();
+          } finally {
+            t.setName(name);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Closing a connection since the pool is shut down");
+      xceiver.closeIdle();
+    }
+  }
+
+  /**
+   * Watch the channel of the xceiver and run the xceiver on a pool thread
+   * once the channel becomes readable.  If it does not become readable
+   * within the timeout, close the connection.
+   */
+  void watch(DataXceiver xceiver, SelectableChannel channel, long timeoutMs) {
+    if (!running) {
+      xceiver.closeIdle();
+      return;
+    }
+    pending.add(new Watch(xceiver, channel, Time.monotonicNow() + timeoutMs));
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        registerPending();
+        selector.select(getSelectTimeout());
+        final List<DataXceiver> ready = new ArrayList<DataXceiver>();
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          key.cancel();
+          ready.add(((Watch) key.attachment()).xceiver);
+        }
+        final long now = Time.monotonicNow();
+        for (SelectionKey key : selector.keys()) {
+          final Watch w = (Watch) key.attachment();
+          if (key.isValid() && w.deadline <= now) {
+            key.cancel();
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Closing idle connection " + w.channel);
+            }
+            w.xceiver.closeIdle();
+          }
+        }
+        if (!ready.isEmpty()) {
+          // deregister the cancelled keys before the channels are used by
+          // the pool threads
+          selector.selectNow();
+          for (DataXceiver xceiver : ready) {
+            execute(xceiver);
+          }
+        }
+      }
+    } catch (Throwable t) {
+      if (running) {
+        LOG.error("DataXceiverPool selector exiting due to: ", t);
+      }
+    } finally {
+      running = false;
+      for (SelectionKey key : selector.keys()) {
+        if (key.isValid()) {
+          ((Watch) key.attachment()).xceiver.closeIdle();
+        }
+      }
+      for (Watch w; (w = pending.poll()) != null; ) {
+        w.xceiver.closeIdle();
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the selector", e);
+      }
+    }
+  }
+
+  private void registerPending() {
+    for (Watch w; (w = pending.poll()) != null; ) {
+      try {
+        w.channel.register(selector, SelectionKey.OP_READ, w);
+      } catch (ClosedChannelException e) {
+        w.xceiver.closeIdle();
+      } catch (CancelledKeyException e) {
+        // the key of a previous watch is not deregistered yet
+        pending.add(w);
+        return;
+      }
+    }
+  }
+
+  /** @return the time until the earliest deadline, at least 1ms. */
+  private long getSelectTimeout() {
+    long earliest = Long.MAX_VALUE;
+    for (SelectionKey key : selector.keys()) {
+      earliest = Math.min(earliest, ((Watch) key.attachment()).deadline);
+    }
+    if (earliest == Long.MAX_VALUE) {
+      return 0; // no timeout
+    }
+    return Math.max(1, earliest - Time.monotonicNow());
+  }
+
+  /** @return the number of connections waiting for their next operation. */
+  @VisibleForTesting
+  int getNumWatched() {
+    return selector.keys().size() + pending.size();
+  }
+
+  /** @return the number of threads of the pool. */
+  @VisibleForTesting
+  int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+    executor.shutdownNow();
+    try {
+      selectorThread.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -104,7 +104,15 @@ synchronized void release() {
    * For older clients we just use the server-side default block size.
    */
   final long estimateBlockSize;
-  
+
+  /**
+   * The pool which serves the short operations of the connections, or null
+   * if every connection gets a thread of its own.
+   */
+  private final int xceiverPoolSize;
+  private final long xceiverPoolMaxReadLength;
+  private final int xceiverPoolRequestTimeout;
+  private DataXceiverPool xceiverPool = null;
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
       DataNode datanode) {
@@ -125,6 +133,30 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    this.xceiverPoolSize = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_SIZE_DEFAULT);
+    this.xceiverPoolMaxReadLength = conf.getLongBytes(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_MAX_READ_LENGTH_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_MAX_READ_LENGTH_DEFAULT);
+    this.xceiverPoolRequestTimeout = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_REQUEST_TIMEOUT_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_REQUEST_TIMEOUT_DEFAULT);
+  }
+
+  /**
+   * @return the pool which serves the short operations of the connections,
+   *         or null if every connection gets a thread of its own.
+   */
+  synchronized DataXceiverPool getXceiverPool() throws IOException {
+    if (xceiverPool == null && xceiverPoolSize > 0 && !closed) {
+      xceiverPool = new DataXceiverPool(datanode.threadGroup, xceiverPoolSize,
+          xceiverPoolMaxReadLength, xceiverPoolRequestTimeout);
+      LOG.info("Serving short operations with a pool of " + xceiverPoolSize
+          + " threads");
+    }
+    return xceiverPool;
   }
 
   @Override
@@ -142,9 +174,10 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        final DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (!xceiver.watchForFirstOp()) {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -190,8 +223,9 @@ public void run() {
       // to send an OOB message to the client, but blocked on network for
       // long time, we need to force its termination.
       LOG.info("Shutting down DataXceiverServer before restart");
-      // Allow roughly up to 2 seconds.
-      for (int i = 0; getNumPeers() > 0 && i < 10; i++) {
+      // Allow roughly up to 2 seconds. Connections watched by the pool have
+      // no thread to wait for, closeAllPeers() closes them.
+      for (int i = 0; getNumActivePeers() > 0 && i < 10; i++) {
         try {
           Thread.sleep(200);
         } catch (InterruptedException e) {
@@ -201,6 +235,13 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    final DataXceiverPool pool;
+    synchronized (this) {
+      pool = xceiverPool;
+    }
+    if (pool != null) {
+      pool.shutdown();
+    }
   }
 
   void kill() {
@@ -224,6 +265,16 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     peersXceiver.put(peer, xceiver);
   }
 
+  /**
+   * Set the thread serving the peer, or null while the peer waits for its
+   * next operation in the {@link DataXceiverPool}.
+   */
+  synchronized void setPeerThread(Peer peer, Thread t) {
+    if (peers.containsKey(peer)) {
+      peers.put(peer, t);
+    }
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -254,7 +305,9 @@ synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
     for (Thread t : peers.values()) {
       // interrupt each and every DataXceiver thread.
-      t.interrupt();
+      if (t != null) {
+        t.interrupt();
+      }
     }
   }
 
@@ -273,6 +326,18 @@ synchronized int getNumPeers() {
     return peers.size();
   }
 
+  // Return the number of peers served by a thread, excluding the ones
+  // watched by the pool while they wait for their next operation.
+  synchronized int getNumActivePeers() {
+    int n = 0;
+    for (Thread t : peers.values()) {
+      if (t != null) {
+        n++;
+      }
+    }
+    return n;
+  }
+
   // Return the number of peers and DataXceivers.
   @VisibleForTesting
   synchronized int getNumPeersXceiver() {
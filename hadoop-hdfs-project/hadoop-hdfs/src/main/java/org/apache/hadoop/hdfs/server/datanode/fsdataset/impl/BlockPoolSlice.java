@@ -29,7 +29,10 @@
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
@@ -39,10 +42,14 @@
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
+import org.apache.hadoop.hdfs.server.datanode.DirectoryScanner;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
@@ -79,6 +86,7 @@ class BlockPoolSlice {
   private volatile boolean dfsUsedSaved = false;
   private static final int SHUTDOWN_HOOK_PRIORITY = 30;
   private final boolean deleteDuplicateReplicas;
+  private final long replicaCacheExpiry;
   
   // TODO:FEDERATION scalability issue - a thread per DU is needed
   private final DU dfsUsage;
@@ -108,6 +116,10 @@ class BlockPoolSlice {
     this.deleteDuplicateReplicas = conf.getBoolean(
         DFSConfigKeys.DFS_DATANODE_DUPLICATE_REPLICA_DELETION,
         DFSConfigKeys.DFS_DATANODE_DUPLICATE_REPLICA_DELETION_DEFAULT);
+    this.replicaCacheExpiry = conf.getTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_DEFAULT,
+        TimeUnit.MILLISECONDS);
 
     // Files that were being written when the datanode was last shutdown
     // are now moved back to the data directory. It is possible that
@@ -313,14 +325,21 @@ void getVolumeMap(ReplicaMap volumeMap,
       throws IOException {
     // Recover lazy persist replicas, they will be added to the volumeMap
     // when we scan the finalized directory.
+    int numRecovered = 0;
     if (lazypersistDir.exists()) {
-      int numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
+      numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
       FsDatasetImpl.LOG.info(
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
 
-    // add finalized replicas
-    addToReplicasMap(volumeMap, finalizedDir, lazyWriteReplicaMap, true);
+    // add finalized replicas, from the cache saved on the last shutdown
+    // if possible since scanning the finalized directory is slow.  The cache
+    // does not have the recovered lazy persist replicas.
+    final boolean cached = readReplicasFromCache(volumeMap,
+        lazyWriteReplicaMap, numRecovered == 0);
+    if (!cached) {
+      addToReplicasMap(volumeMap, finalizedDir, lazyWriteReplicaMap, true);
+    }
     // add rbw replicas
     addToReplicasMap(volumeMap, rbwDir, lazyWriteReplicaMap, false);
   }
@@ -484,23 +503,128 @@ void addToReplicasMap(ReplicaMap volumeMap, File dir,
         }
       }
 
-      ReplicaInfo oldReplica = volumeMap.get(bpid, newReplica.getBlockId());
-      if (oldReplica == null) {
-        volumeMap.add(bpid, newReplica);
-      } else {
-        // We have multiple replicas of the same block so decide which one
-        // to keep.
-        newReplica = resolveDuplicateReplicas(newReplica, oldReplica, volumeMap);
+      addReplicaToReplicasMap(volumeMap, newReplica, lazyWriteReplicaMap);
+    }
+  }
+
+  private void addReplicaToReplicasMap(ReplicaMap volumeMap,
+      ReplicaInfo newReplica, final RamDiskReplicaTracker lazyWriteReplicaMap)
+      throws IOException {
+    final long blockId = newReplica.getBlockId();
+    ReplicaInfo oldReplica = volumeMap.get(bpid, blockId);
+    if (oldReplica == null) {
+      volumeMap.add(bpid, newReplica);
+    } else {
+      // We have multiple replicas of the same block so decide which one
+      // to keep.
+      newReplica = resolveDuplicateReplicas(newReplica, oldReplica, volumeMap);
+    }
+
+    // If we are retaining a replica on transient storage make sure
+    // it is in the lazyWriteReplicaMap so it can be persisted
+    // eventually.
+    if (newReplica.getVolume().isTransientStorage()) {
+      lazyWriteReplicaMap.addReplica(bpid, blockId,
+                                     (FsVolumeImpl) newReplica.getVolume());
+    } else {
+      lazyWriteReplicaMap.discardReplica(bpid, blockId, false);
+    }
+  }
+
+  /**
+   * Add the finalized replicas saved on the last clean shutdown to the
+   * volume map.  The cache file is deleted in any case, so that it is never
+   * read after the replicas have changed.  Differences with the disk, if
+   * any, are reconciled by the {@link DirectoryScanner}.
+   * @param useCache false if only the cache file should be deleted
+   * @return true if the replicas were read from the cache
+   */
+  private boolean readReplicasFromCache(ReplicaMap volumeMap,
+      final RamDiskReplicaTracker lazyWriteReplicaMap, boolean useCache) {
+    final File replicaFile =
+        new File(currentDir, DataStorage.REPLICA_CACHE_FILE);
+    if (!replicaFile.exists()) {
+      return false;
+    }
+    try {
+      if (!useCache || replicaCacheExpiry <= 0) {
+        return false;
+      }
+      final long age = Time.now() - replicaFile.lastModified();
+      if (age > replicaCacheExpiry) {
+        FsDatasetImpl.LOG.info("Not using the replica cache " + replicaFile
+            + " since it was saved " + age + "ms ago");
+        return false;
       }
+      final BlockListAsLongs blocks;
+      try (InputStream in = new BufferedInputStream(
+          new FileInputStream(replicaFile),
+          HdfsConstants.IO_FILE_BUFFER_SIZE)) {
+        blocks = BlockListAsLongs.readFrom(in);
+      }
+      if (blocks == null) {
+        FsDatasetImpl.LOG.warn("Incomplete replica cache " + replicaFile);
+        return false;
+      }
+      // decode all the replicas before adding any, so that a corrupt file
+      // leaves the volume map unchanged
+      final List<ReplicaInfo> replicas =
+          new ArrayList<ReplicaInfo>(blocks.getNumberOfBlocks());
+      for (BlockReportReplica r : blocks) {
+        if (r.getState() != ReplicaState.FINALIZED) {
+          throw new IOException("Unexpected replica " + r + " in the cache");
+        }
+        replicas.add(new FinalizedReplica(r.getBlockId(), r.getNumBytes(),
+            r.getGenerationStamp(), volume,
+            DatanodeUtil.idToBlockDir(finalizedDir, r.getBlockId())));
+      }
+      for (ReplicaInfo replica : replicas) {
+        addReplicaToReplicasMap(volumeMap, replica, lazyWriteReplicaMap);
+      }
+      FsDatasetImpl.LOG.info("Read " + replicas.size()
+          + " finalized replicas from the replica cache " + replicaFile);
+      return true;
+    } catch (Exception e) {
+      FsDatasetImpl.LOG.warn("Failed to read the replica cache "
+          + replicaFile + ", scanning " + finalizedDir + " instead", e);
+      return false;
+    } finally {
+      if (!replicaFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete the replica cache "
+            + replicaFile);
+      }
+    }
+  }
 
-      // If we are retaining a replica on transient storage make sure
-      // it is in the lazyWriteReplicaMap so it can be persisted
-      // eventually.
-      if (newReplica.getVolume().isTransientStorage()) {
-        lazyWriteReplicaMap.addReplica(bpid, blockId,
-                                       (FsVolumeImpl) newReplica.getVolume());
-      } else {
-        lazyWriteReplicaMap.discardReplica(bpid, blockId, false);
+  /**
+   * Save the finalized replicas of the block pool slice, so that they are
+   * not scanned from disk on the next startup.
+   */
+  private void saveReplicas(BlockListAsLongs finalized) {
+    final File replicaFile =
+        new File(currentDir, DataStorage.REPLICA_CACHE_FILE);
+    final File tmpFile =
+        new File(currentDir, DataStorage.REPLICA_CACHE_FILE + ".tmp");
+    if (replicaFile.exists() && !replicaFile.delete()) {
+      FsDatasetImpl.LOG.warn("Failed to delete the old replica cache "
+          + replicaFile);
+      return;
+    }
+    try {
+      try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+        finalized.writeTo(out);
+        out.getChannel().force(true);
+      }
+      // the cache file is complete once it is renamed
+      NativeIO.renameTo(tmpFile, replicaFile);
+      FsDatasetImpl.LOG.info("Saved " + finalized.getNumberOfBlocks()
+          + " finalized replicas to " + replicaFile);
+    } catch (IOException e) {
+      // the cache is not critical, the next startup scans the directory
+      FsDatasetImpl.LOG.warn("Failed to save the replica cache "
+          + replicaFile, e);
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + tmpFile);
       }
     }
   }
@@ -674,7 +798,14 @@ public String toString() {
     return currentDir.getAbsolutePath();
   }
   
-  void shutdown() {
+  /**
+   * @param finalized the finalized replicas of the slice to save for the
+   *                  next startup, or null
+   */
+  void shutdown(BlockListAsLongs finalized) {
+    if (finalized != null && replicaCacheExpiry > 0) {
+      saveReplicas(finalized);
+    }
     saveDfsUsed();
     dfsUsedSaved = true;
     dfsUsage.shutdown();
@@ -27,6 +27,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
@@ -73,6 +74,7 @@
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.BlockScanner;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeFaultInjector;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
@@ -245,6 +247,17 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
 
   private static final int MAX_BLOCK_EVICTIONS_PER_ITERATION = 3;
 
+  /**
+   * The ids of the blocks whose files are being created, moved or copied by
+   * {@link #createRbw}, {@link #finalizeBlock} or
+   * {@link #moveBlockAcrossStorage} without holding the dataset lock, so
+   * that a slow volume does not stall the operations on the other volumes.
+   * The other operations which change a replica wait until its
+   * block is removed from the set, see {@link #waitForReplicaIO(long)}.
+   * The block pool is not part of the key: a block id which is used by two
+   * block pools at the same time only causes an unnecessary wait.
+   */
+  private final Set<Long> blocksInIO = new HashSet<Long>();
 
   // Used for synchronizing access to usage stats
   private final Object statsLock = new Object();
@@ -874,26 +887,32 @@ static File[] copyBlockFiles(File srcMeta, File srcFile, File dstMeta,
   @Override
   public ReplicaInfo moveBlockAcrossStorage(ExtendedBlock block,
       StorageType targetStorageType) throws IOException {
-    ReplicaInfo replicaInfo = getReplicaInfo(block);
-    if (replicaInfo.getState() != ReplicaState.FINALIZED) {
-      throw new ReplicaNotFoundException(
-          ReplicaNotFoundException.UNFINALIZED_REPLICA + block);
-    }
-    if (replicaInfo.getNumBytes() != block.getNumBytes()) {
-      throw new IOException("Corrupted replica " + replicaInfo
-          + " with a length of " + replicaInfo.getNumBytes()
-          + " expected length is " + block.getNumBytes());
-    }
-    if (replicaInfo.getVolume().getStorageType() == targetStorageType) {
-      throw new ReplicaAlreadyExistsException("Replica " + replicaInfo
-          + " already exists on storage " + targetStorageType);
-    }
+    final ReplicaInfo replicaInfo;
+    synchronized (this) {
+      waitForReplicaIO(block.getBlockId());
+      replicaInfo = getReplicaInfo(block);
+      if (replicaInfo.getState() != ReplicaState.FINALIZED) {
+        throw new ReplicaNotFoundException(
+            ReplicaNotFoundException.UNFINALIZED_REPLICA + block);
+      }
+      if (replicaInfo.getNumBytes() != block.getNumBytes()) {
+        throw new IOException("Corrupted replica " + replicaInfo
+            + " with a length of " + replicaInfo.getNumBytes()
+            + " expected length is " + block.getNumBytes());
+      }
+      if (replicaInfo.getVolume().getStorageType() == targetStorageType) {
+        throw new ReplicaAlreadyExistsException("Replica " + replicaInfo
+            + " already exists on storage " + targetStorageType);
+      }
 
-    if (replicaInfo.isOnTransientStorage()) {
-      // Block movement from RAM_DISK will be done by LazyPersist mechanism
-      throw new IOException("Replica " + replicaInfo
-          + " cannot be moved from storageType : "
-          + replicaInfo.getVolume().getStorageType());
+      if (replicaInfo.isOnTransientStorage()) {
+        // Block movement from RAM_DISK will be done by LazyPersist mechanism
+        throw new IOException("Replica " + replicaInfo
+            + " cannot be moved from storageType : "
+            + replicaInfo.getVolume().getStorageType());
+      }
+      // keep the other operations off the replica while it is copied
+      beginReplicaIO(block.getBlockId());
     }
 
     try (FsVolumeReference volumeRef = volumes.getNextVolume(
@@ -911,11 +930,22 @@ public ReplicaInfo moveBlockAcrossStorage(ExtendedBlock block,
           replicaInfo.getBlockId(), replicaInfo.getGenerationStamp(),
           targetVolume, blockFiles[0].getParentFile(), 0);
       newReplicaInfo.setNumBytes(blockFiles[1].length());
-      // Finalize the copied files
-      newReplicaInfo = finalizeReplica(block.getBlockPoolId(), newReplicaInfo);
+      synchronized (this) {
+        if (volumeMap.get(block.getBlockPoolId(), block.getBlockId())
+            != replicaInfo) {
+          // the replica was removed with its volume or block pool
+          throw new ReplicaNotFoundException("Replica " + replicaInfo
+              + " was removed while it was being moved");
+        }
+        // Finalize the copied files
+        newReplicaInfo = finalizeReplica(block.getBlockPoolId(),
+            newReplicaInfo);
+      }
 
       removeOldReplica(replicaInfo, newReplicaInfo, oldBlockFile, oldMetaFile,
           oldBlockFile.length(), oldMetaFile.length(), block.getBlockPoolId());
+    } finally {
+      endReplicaIO(block.getBlockId());
     }
 
     // Replace the old block if any to reschedule the scanning.
@@ -1036,6 +1066,7 @@ static private void truncateBlock(File blockFile, File metaFile,
   @Override  // FsDatasetSpi
   public synchronized ReplicaHandler append(ExtendedBlock b,
       long newGS, long expectedBlockLen) throws IOException {
+    waitForReplicaIO(b.getBlockId());
     // If the block was successfully finalized because all packets
     // were successfully processed at the Datanode but the ack for
     // some of the packets were not received by the client. The client 
@@ -1193,6 +1224,7 @@ private ReplicaInfo recoverCheck(ExtendedBlock b, long newGS,
   @Override  // FsDatasetSpi
   public synchronized ReplicaHandler recoverAppend(
       ExtendedBlock b, long newGS, long expectedBlockLen) throws IOException {
+    waitForReplicaIO(b.getBlockId());
     LOG.info("Recover failed append to " + b);
 
     ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
@@ -1218,6 +1250,7 @@ public synchronized ReplicaHandler recoverAppend(
   @Override // FsDatasetSpi
   public synchronized String recoverClose(ExtendedBlock b, long newGS,
       long expectedBlockLen) throws IOException {
+    waitForReplicaIO(b.getBlockId());
     LOG.info("Recover failed close " + b);
     // check replica's state
     ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
@@ -1259,58 +1292,97 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo,
     }
   }
 
+  /**
+   * Wait until no file of the block is being created or moved without the
+   * dataset lock.  The dataset lock is released while waiting, so this must
+   * be called before the state of the replica is looked at.
+   */
+  private void waitForReplicaIO(long blockId) throws IOException {
+    while (blocksInIO.contains(blockId)) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for"
+            + " the files of block " + blockId);
+      }
+    }
+  }
+
+  private synchronized void beginReplicaIO(long blockId) {
+    blocksInIO.add(blockId);
+  }
+
+  private synchronized void endReplicaIO(long blockId) {
+    blocksInIO.remove(blockId);
+    notifyAll();
+  }
+
   @Override // FsDatasetSpi
-  public synchronized ReplicaHandler createRbw(
+  public ReplicaHandler createRbw(
       StorageType storageType, ExtendedBlock b, boolean allowLazyPersist)
       throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
-        b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-      " already exists in state " + replicaInfo.getState() +
-      " and thus cannot be created.");
-    }
-    // create a new block
-    FsVolumeReference ref;
-    while (true) {
-      try {
-        if (allowLazyPersist) {
-          // First try to place the block on a transient volume.
-          ref = volumes.getNextTransientVolume(b.getNumBytes());
-          datanode.getMetrics().incrRamDiskBlocksWrite();
-        } else {
-          ref = volumes.getNextVolume(storageType, b.getNumBytes());
-        }
-      } catch (DiskOutOfSpaceException de) {
-        if (allowLazyPersist) {
-          datanode.getMetrics().incrRamDiskBlocksWriteFallback();
-          allowLazyPersist = false;
-          continue;
-        }
-        throw de;
+    synchronized (this) {
+      waitForReplicaIO(b.getBlockId());
+      ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
+          b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+        " already exists in state " + replicaInfo.getState() +
+        " and thus cannot be created.");
       }
-      break;
+      beginReplicaIO(b.getBlockId());
     }
-    FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
-    // create an rbw file to hold block in the designated volume
-    File f;
     try {
-      f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-    } catch (IOException e) {
-      IOUtils.cleanup(null, ref);
-      throw e;
-    }
+      // create a new block
+      FsVolumeReference ref;
+      while (true) {
+        try {
+          if (allowLazyPersist) {
+            // First try to place the block on a transient volume.
+            ref = volumes.getNextTransientVolume(b.getNumBytes());
+            datanode.getMetrics().incrRamDiskBlocksWrite();
+          } else {
+            ref = volumes.getNextVolume(storageType, b.getNumBytes());
+          }
+        } catch (DiskOutOfSpaceException de) {
+          if (allowLazyPersist) {
+            datanode.getMetrics().incrRamDiskBlocksWriteFallback();
+            allowLazyPersist = false;
+            continue;
+          }
+          throw de;
+        }
+        break;
+      }
+      FsVolumeImpl v = (FsVolumeImpl) ref.getVolume();
+      // create an rbw file to hold block in the designated volume
+      File f;
+      try {
+        DataNodeFaultInjector.get().delayReplicaFileIO(v);
+        f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+      } catch (IOException e) {
+        IOUtils.cleanup(null, ref);
+        throw e;
+      }
 
-    ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(b.getBlockId(), 
-        b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-    return new ReplicaHandler(newReplicaInfo, ref);
+      ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(
+          b.getBlockId(), b.getGenerationStamp(), v, f.getParentFile(),
+          b.getNumBytes());
+      synchronized (this) {
+        volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+      }
+      return new ReplicaHandler(newReplicaInfo, ref);
+    } finally {
+      endReplicaIO(b.getBlockId());
+    }
   }
 
   @Override // FsDatasetSpi
   public synchronized ReplicaHandler recoverRbw(
       ExtendedBlock b, long newGS, long minBytesRcvd, long maxBytesRcvd)
       throws IOException {
+    waitForReplicaIO(b.getBlockId());
     LOG.info("Recover RBW replica " + b);
 
     ReplicaInfo replicaInfo = getReplicaInfo(b.getBlockPoolId(), b.getBlockId());
@@ -1372,6 +1444,7 @@ public synchronized ReplicaHandler recoverRbw(
   @Override // FsDatasetSpi
   public synchronized ReplicaInPipeline convertTemporaryToRbw(
       final ExtendedBlock b) throws IOException {
+    waitForReplicaIO(b.getBlockId());
     final long blockId = b.getBlockId();
     final long expectedGs = b.getGenerationStamp();
     final long visible = b.getNumBytes();
@@ -1438,6 +1511,7 @@ public ReplicaHandler createTemporary(
     ReplicaInfo lastFoundReplicaInfo = null;
     do {
       synchronized (this) {
+        waitForReplicaIO(b.getBlockId());
         ReplicaInfo currentReplicaInfo =
             volumeMap.get(b.getBlockPoolId(), b.getBlockId());
         if (currentReplicaInfo == lastFoundReplicaInfo) {
@@ -1516,48 +1590,88 @@ public void adjustCrcChannelPosition(ExtendedBlock b, ReplicaOutputStreams strea
    * Complete the block write!
    */
   @Override // FsDatasetSpi
-  public synchronized void finalizeBlock(ExtendedBlock b) throws IOException {
+  public void finalizeBlock(ExtendedBlock b) throws IOException {
     if (Thread.interrupted()) {
       // Don't allow data modifications from interrupted threads
       throw new IOException("Cannot finalize block from Interrupted Thread");
     }
-    ReplicaInfo replicaInfo = getReplicaInfo(b);
-    if (replicaInfo.getState() == ReplicaState.FINALIZED) {
-      // this is legal, when recovery happens on a file that has
-      // been opened for append but never modified
-      return;
+    final String bpid = b.getBlockPoolId();
+    final ReplicaInfo replicaInfo;
+    synchronized (this) {
+      waitForReplicaIO(b.getBlockId());
+      replicaInfo = getReplicaInfo(b);
+      if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+        // this is legal, when recovery happens on a file that has
+        // been opened for append but never modified
+        return;
+      }
+      if (replicaInfo.getState() == ReplicaState.RUR) {
+        finalizeReplica(bpid, replicaInfo);
+        return;
+      }
+      beginReplicaIO(b.getBlockId());
+    }
+    try {
+      // move the files without holding the dataset lock
+      final FinalizedReplica newReplicaInfo =
+          moveToFinalizedDir(bpid, replicaInfo);
+      synchronized (this) {
+        if (volumeMap.get(bpid, b.getBlockId()) != replicaInfo) {
+          // the replica was removed with its volume or block pool
+          throw new ReplicaNotFoundException("Replica " + replicaInfo
+              + " was removed while it was being finalized");
+        }
+        addFinalizedReplica(bpid, newReplicaInfo);
+      }
+    } finally {
+      endReplicaIO(b.getBlockId());
     }
-    finalizeReplica(b.getBlockPoolId(), replicaInfo);
   }
   
   private synchronized FinalizedReplica finalizeReplica(String bpid,
       ReplicaInfo replicaInfo) throws IOException {
-    FinalizedReplica newReplicaInfo = null;
     if (replicaInfo.getState() == ReplicaState.RUR &&
        ((ReplicaUnderRecovery)replicaInfo).getOriginalReplica().getState() == 
          ReplicaState.FINALIZED) {
-      newReplicaInfo = (FinalizedReplica)
+      FinalizedReplica newReplicaInfo = (FinalizedReplica)
              ((ReplicaUnderRecovery)replicaInfo).getOriginalReplica();
-    } else {
-      FsVolumeImpl v = (FsVolumeImpl)replicaInfo.getVolume();
-      File f = replicaInfo.getBlockFile();
-      if (v == null) {
-        throw new IOException("No volume for temporary file " + f + 
-            " for block " + replicaInfo);
-      }
+      volumeMap.add(bpid, newReplicaInfo);
+      return newReplicaInfo;
+    }
+    FinalizedReplica newReplicaInfo = moveToFinalizedDir(bpid, replicaInfo);
+    addFinalizedReplica(bpid, newReplicaInfo);
+    return newReplicaInfo;
+  }
 
-      File dest = v.addFinalizedBlock(
-          bpid, replicaInfo, f, replicaInfo.getBytesReserved());
-      newReplicaInfo = new FinalizedReplica(replicaInfo, v, dest.getParentFile());
+  /**
+   * Move the files of a replica to the finalized directory of its volume.
+   * The dataset lock is not needed as long as no other operation can change
+   * the replica, see {@link #finalizeBlock(ExtendedBlock)}.
+   */
+  private FinalizedReplica moveToFinalizedDir(String bpid,
+      ReplicaInfo replicaInfo) throws IOException {
+    FsVolumeImpl v = (FsVolumeImpl)replicaInfo.getVolume();
+    File f = replicaInfo.getBlockFile();
+    if (v == null) {
+      throw new IOException("No volume for temporary file " + f + 
+          " for block " + replicaInfo);
+    }
 
-      if (v.isTransientStorage()) {
-        ramDiskReplicaTracker.addReplica(bpid, replicaInfo.getBlockId(), v);
-        datanode.getMetrics().addRamDiskBytesWrite(replicaInfo.getNumBytes());
-      }
+    DataNodeFaultInjector.get().delayReplicaFileIO(v);
+    File dest = v.addFinalizedBlock(
+        bpid, replicaInfo, f, replicaInfo.getBytesReserved());
+    return new FinalizedReplica(replicaInfo, v, dest.getParentFile());
+  }
+
+  /** Add a replica whose files were moved to the finalized directory. */
+  private void addFinalizedReplica(String bpid,
+      FinalizedReplica newReplicaInfo) {
+    FsVolumeImpl v = (FsVolumeImpl)newReplicaInfo.getVolume();
+    if (v.isTransientStorage()) {
+      ramDiskReplicaTracker.addReplica(bpid, newReplicaInfo.getBlockId(), v);
+      datanode.getMetrics().addRamDiskBytesWrite(newReplicaInfo.getNumBytes());
     }
     volumeMap.add(bpid, newReplicaInfo);
-
-    return newReplicaInfo;
   }
 
   /**
@@ -1565,6 +1679,7 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
    */
   @Override // FsDatasetSpi
   public synchronized void unfinalizeBlock(ExtendedBlock b) throws IOException {
+    waitForReplicaIO(b.getBlockId());
     ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), 
         b.getLocalBlock());
     if (replicaInfo != null && replicaInfo.getState() == ReplicaState.TEMPORARY) {
@@ -1809,6 +1924,7 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
       final File f;
       final FsVolumeImpl v;
       synchronized (this) {
+        waitForReplicaIO(invalidBlks[i].getBlockId());
         final ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
         if (info == null) {
           // It is okay if the block is not found -- it may be deleted earlier.
@@ -2108,6 +2224,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
     Block corruptBlock = null;
     ReplicaInfo memBlockInfo;
     synchronized (this) {
+      waitForReplicaIO(blockId);
       memBlockInfo = volumeMap.get(bpid, blockId);
       if (memBlockInfo != null && memBlockInfo.getState() != ReplicaState.FINALIZED) {
         // Block is not finalized - ignore the difference
@@ -2266,6 +2383,7 @@ public synchronized String getReplicaString(String bpid, long blockId) {
   @Override // FsDatasetSpi
   public synchronized ReplicaRecoveryInfo initReplicaRecovery(
       RecoveringBlock rBlock) throws IOException {
+    waitForReplicaIO(rBlock.getBlock().getBlockId());
     return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(), volumeMap,
         rBlock.getBlock().getLocalBlock(), rBlock.getNewGenerationStamp(),
         datanode.getDnConf().getXceiverStopTimeout());
@@ -2342,6 +2460,7 @@ public synchronized String updateReplicaUnderRecovery(
                                     final long recoveryId,
                                     final long newBlockId,
                                     final long newlength) throws IOException {
+    waitForReplicaIO(oldBlock.getBlockId());
     //get replica
     final String bpid = oldBlock.getBlockPoolId();
     final ReplicaInfo replica = volumeMap.get(bpid, oldBlock.getBlockId());
@@ -2497,8 +2616,41 @@ public void addBlockPool(String bpid, Configuration conf)
   @Override
   public synchronized void shutdownBlockPool(String bpid) {
     LOG.info("Removing block pool " + bpid);
+    final Map<String, BlockListAsLongs> finalized =
+        getFinalizedReplicasToSave(bpid);
     volumeMap.cleanUpBlockPool(bpid);
-    volumes.removeBlockPool(bpid);
+    volumes.removeBlockPool(bpid, finalized);
+  }
+
+  /**
+   * @return the finalized replicas of the block pool by storage ID, to be
+   *         saved for the next startup, or null if a replica may be being
+   *         finalized.
+   */
+  private Map<String, BlockListAsLongs> getFinalizedReplicasToSave(
+      String bpid) {
+    final Collection<ReplicaInfo> replicas = volumeMap.replicas(bpid);
+    if (replicas == null || !blocksInIO.isEmpty()) {
+      return null;
+    }
+    final Map<String, BlockListAsLongs.Builder> builders =
+        new HashMap<String, BlockListAsLongs.Builder>();
+    for (FsVolumeImpl v : getVolumes()) {
+      builders.put(v.getStorageID(), BlockListAsLongs.builder());
+    }
+    for (ReplicaInfo b : replicas) {
+      final BlockListAsLongs.Builder builder =
+          builders.get(b.getVolume().getStorageID());
+      if (b.getState() == ReplicaState.FINALIZED && builder != null) {
+        builder.add(b);
+      }
+    }
+    final Map<String, BlockListAsLongs> finalized =
+        new HashMap<String, BlockListAsLongs>();
+    for (Map.Entry<String, BlockListAsLongs.Builder> e : builders.entrySet()) {
+      finalized.put(e.getKey(), e.getValue().build());
+    }
+    return finalized;
   }
   
   /**
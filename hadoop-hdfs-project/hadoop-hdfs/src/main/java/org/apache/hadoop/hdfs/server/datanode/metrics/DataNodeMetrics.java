@@ -29,6 +29,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
@@ -100,6 +101,11 @@ public class DataNodeMetrics {
   @Metric("Count of network errors on the datanode")
   MutableCounterLong datanodeNetworkErrors;
 
+  @Metric("Number of downstream peers found slow in the last report")
+  MutableGaugeInt slowPeers;
+  @Metric("Number of volumes found slow in the last report")
+  MutableGaugeInt slowVolumes;
+
   @Metric MutableRate readBlockOp;
   @Metric MutableRate writeBlockOp;
   @Metric MutableRate blockChecksumOp;
@@ -336,6 +342,14 @@ public void incrDatanodeNetworkErrors() {
     datanodeNetworkErrors.incr();
   }
 
+  public void setSlowPeers(int count) {
+    slowPeers.set(count);
+  }
+
+  public void setSlowVolumes(int count) {
+    slowVolumes.set(count);
+  }
+
   /** Increment for getBlockLocalPathInfo calls */
   public void incrBlocksGetLocalPathInfo() {
     blocksGetLocalPathInfo.incr();
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.util.RollingLatencyHistogram;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks the recent latencies of the downstream peers or of the volumes of
+ * a DataNode, and finds those which are outliers compared to the others.
+ *
+ * The latency of a peer or a volume is a percentile of its samples in a
+ * rolling window.  It is an outlier when it is above the low threshold,
+ * three times the median latency, and the median plus three scaled median
+ * absolute deviations.  Only the peers or volumes with enough samples are
+ * compared, and there are no outliers when fewer than
+ * {@link #MIN_COMPARED} of them can be compared.
+ */
+@InterfaceAudience.Private
+public class LatencyOutlierTracker {
+  /** The minimum number of peers or volumes to find outliers among. */
+  static final int MIN_COMPARED = 3;
+
+  /** Scales the median absolute deviation to a standard deviation. */
+  private static final double MAD_SCALE = 1.4826;
+
+  private final long windowMs;
+  private final double percentile;
+  private final long minSamples;
+  private final long lowThresholdMs;
+  private final int minCompared;
+  private final ConcurrentMap<String, RollingLatencyHistogram> latencies =
+      new ConcurrentHashMap<String, RollingLatencyHistogram>();
+
+  public LatencyOutlierTracker(long windowMs, double percentile,
+      long minSamples, long lowThresholdMs) {
+    this(windowMs, percentile, minSamples, lowThresholdMs, MIN_COMPARED);
+  }
+
+  @VisibleForTesting
+  LatencyOutlierTracker(long windowMs, double percentile, long minSamples,
+      long lowThresholdMs, int minCompared) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100,
+        "percentile = %s is not in (0, 100]", percentile);
+    this.windowMs = windowMs;
+    this.percentile = percentile;
+    this.minSamples = minSamples;
+    this.lowThresholdMs = lowThresholdMs;
+    this.minCompared = minCompared;
+  }
+
+  /**
+   * @return a tracker of the time taken to write and flush a packet to each
+   *         downstream peer.
+   */
+  public static LatencyOutlierTracker createForPeers(Configuration conf) {
+    return create(conf, conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SLOW_PEER_LOW_THRESHOLD_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_SLOW_PEER_LOW_THRESHOLD_MS_DEFAULT));
+  }
+
+  /** @return a tracker of the write latency of volumes. */
+  public static LatencyOutlierTracker createForVolumes(Configuration conf) {
+    return create(conf, conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SLOW_DISK_LOW_THRESHOLD_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_SLOW_DISK_LOW_THRESHOLD_MS_DEFAULT));
+  }
+
+  private static LatencyOutlierTracker create(Configuration conf,
+      long lowThresholdMs) {
+    return new LatencyOutlierTracker(
+        conf.getLong(DFSConfigKeys.DFS_DATANODE_SLOW_NODE_WINDOW_MS_KEY,
+            DFSConfigKeys.DFS_DATANODE_SLOW_NODE_WINDOW_MS_DEFAULT),
+        conf.getDouble(DFSConfigKeys.DFS_DATANODE_SLOW_NODE_PERCENTILE_KEY,
+            DFSConfigKeys.DFS_DATANODE_SLOW_NODE_PERCENTILE_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_DATANODE_SLOW_NODE_MIN_SAMPLES_KEY,
+            DFSConfigKeys.DFS_DATANODE_SLOW_NODE_MIN_SAMPLES_DEFAULT),
+        lowThresholdMs);
+  }
+
+  /** Add a latency sample of a peer or a volume. */
+  public void add(String key, long latencyMs) {
+    RollingLatencyHistogram histogram = latencies.get(key);
+    if (histogram == null) {
+      histogram = new RollingLatencyHistogram(windowMs);
+      final RollingLatencyHistogram existing =
+          latencies.putIfAbsent(key, histogram);
+      if (existing != null) {
+        histogram = existing;
+      }
+    }
+    histogram.add(latencyMs);
+  }
+
+  /**
+   * @return the latency percentile of each peer or volume with enough
+   *         recent samples
+   */
+  public Map<String, Long> getLatencies() {
+    final Map<String, Long> result = new HashMap<String, Long>();
+    for (Iterator<Map.Entry<String, RollingLatencyHistogram>> it =
+        latencies.entrySet().iterator(); it.hasNext();) {
+      final Map.Entry<String, RollingLatencyHistogram> e = it.next();
+      final long count = e.getValue().getCount();
+      if (count == 0) {
+        // nothing recent, e.g. a peer which is gone
+        it.remove();
+      } else if (count >= minSamples) {
+        result.put(e.getKey(), e.getValue().getPercentile(percentile));
+      }
+    }
+    return result;
+  }
+
+  /** @return the latency of each outlier among the peers or volumes. */
+  public Map<String, Long> getOutliers() {
+    final Map<String, Long> current = getLatencies();
+    if (current.size() < Math.max(1, minCompared)) {
+      return Collections.emptyMap();
+    }
+    final List<Long> values = new ArrayList<Long>(current.values());
+    final double median = median(values);
+    final List<Long> deviations = new ArrayList<Long>(values.size());
+    for (long value : values) {
+      deviations.add(Math.round(Math.abs(value - median)));
+    }
+    final double upperLimit = Math.max(lowThresholdMs, Math.max(
+        3 * median, median + 3 * MAD_SCALE * median(deviations)));
+    final Map<String, Long> outliers = new HashMap<String, Long>();
+    for (Map.Entry<String, Long> e : current.entrySet()) {
+      if (e.getValue() > upperLimit) {
+        outliers.put(e.getKey(), e.getValue());
+      }
+    }
+    return outliers;
+  }
+
+  private static double median(List<Long> values) {
+    Collections.sort(values);
+    final int n = values.size();
+    return n % 2 == 1 ? values.get(n / 2)
+        : (values.get(n / 2 - 1) + values.get(n / 2)) / 2.0;
+  }
+}
@@ -24,26 +24,38 @@
 import org.apache.hadoop.fs.DirectoryListingStartAfterNotFoundException;
 import org.apache.hadoop.fs.FileEncryptionInfo;
 import org.apache.hadoop.fs.InvalidPathException;
+import org.apache.hadoop.fs.InvalidRequestException;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.FsPermissionExtension;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedListingKeyProto;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectorySnapshottableFeature;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.ipc.RemoteException;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 class FSDirStatAndListingOp {
   static DirectoryListing getListingInt(FSDirectory fsd, final String srcArg,
@@ -82,6 +94,100 @@ static DirectoryListing getListingInt(FSDirectory fsd, final String srcArg,
     return getListing(fsd, iip, src, startAfter, needLocation, isSuperUser);
   }
 
+  /**
+   * Get a page of the listings of many paths.  The page ends once about
+   * lsLimit entries are listed; the listing of a path which does not fit
+   * continues on the next page.  An error listing a path is returned in
+   * place of its listing.
+   *
+   * @param fsd FSDirectory
+   * @param srcs the paths to list
+   * @param startAfter empty for the first page, else the key returned with
+   *                   the previous page
+   * @param needLocation if block locations are returned
+   * @return a page of the listings starting after startAfter
+   */
+  static BatchedDirectoryListing getBatchedListing(FSDirectory fsd,
+      String[] srcs, byte[] startAfter, boolean needLocation)
+      throws IOException {
+    if (srcs.length > fsd.getBatchedListingLimit()) {
+      throw new InvalidRequestException("Too many paths to list: "
+          + srcs.length + " > " + fsd.getBatchedListingLimit());
+    }
+    final byte[] checksum = getPathsChecksum(srcs);
+    int srcsIndex = 0;
+    byte[] indexStartAfter = HdfsFileStatus.EMPTY_NAME;
+    if (startAfter.length > 0) {
+      final BatchedListingKeyProto key;
+      try {
+        key = BatchedListingKeyProto.parseFrom(startAfter);
+      } catch (InvalidProtocolBufferException e) {
+        throw new InvalidRequestException("Invalid startAfter: " + e);
+      }
+      // the key must come from a listing of the same paths
+      if (!Arrays.equals(checksum, key.getChecksum().toByteArray())
+          || key.getPathIndex() >= srcs.length) {
+        throw new InvalidRequestException(
+            "startAfter does not belong to the listing of these paths");
+      }
+      srcsIndex = key.getPathIndex();
+      indexStartAfter = key.getStartAfter().toByteArray();
+    }
+
+    final List<HdfsPartialListing> listings =
+        new ArrayList<HdfsPartialListing>();
+    int numEntries = 0;
+    fsd.readLock();
+    try {
+      while (srcsIndex < srcs.length && numEntries < fsd.getLsLimit()) {
+        final String src = srcs[srcsIndex];
+        DirectoryListing dl = null;
+        try {
+          dl = getListingInt(fsd, src, indexStartAfter, needLocation);
+          if (dl == null) {
+            throw new FileNotFoundException("Path " + src
+                + " does not exist");
+          }
+          listings.add(new HdfsPartialListing(srcsIndex,
+              Arrays.asList(dl.getPartialListing())));
+          numEntries += dl.getPartialListing().length;
+        } catch (IOException e) {
+          listings.add(new HdfsPartialListing(srcsIndex,
+              new RemoteException(e.getClass().getName(), e.getMessage())));
+        }
+        if (dl != null && dl.hasMore()) {
+          // continue the listing of this path on the next page
+          indexStartAfter = dl.getLastName();
+          break;
+        }
+        srcsIndex++;
+        indexStartAfter = HdfsFileStatus.EMPTY_NAME;
+      }
+    } finally {
+      fsd.readUnlock();
+    }
+
+    final boolean hasMore = srcsIndex < srcs.length;
+    final byte[] nextStartAfter = !hasMore ? HdfsFileStatus.EMPTY_NAME :
+        BatchedListingKeyProto.newBuilder()
+            .setChecksum(ByteString.copyFrom(checksum))
+            .setPathIndex(srcsIndex)
+            .setStartAfter(ByteString.copyFrom(indexStartAfter))
+            .build().toByteArray();
+    return new BatchedDirectoryListing(
+        listings.toArray(new HdfsPartialListing[listings.size()]),
+        hasMore, nextStartAfter);
+  }
+
+  private static byte[] getPathsChecksum(String[] srcs) {
+    final MessageDigest digester = MD5Hash.getDigester();
+    for (String src : srcs) {
+      digester.update(src.getBytes(Charsets.UTF_8));
+      digester.update((byte) 0);
+    }
+    return digester.digest();
+  }
+
   /**
    * Get the file info for a specific file.
    *
@@ -135,6 +135,7 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int maxComponentLength;
   private final int maxDirItems;
   private final int lsLimit;  // max list limit
+  private final int batchedListingLimit; // max paths per batched listing
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
   private final INodeMap inodeMap; // Synchronized by dirLock
@@ -262,6 +263,12 @@ public int getWriteHoldCount() {
         DFSConfigKeys.DFS_LIST_LIMIT, DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT);
     this.lsLimit = configuredLimit>0 ?
         configuredLimit : DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT;
+    int configuredBatchedLimit = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_DEFAULT);
+    this.batchedListingLimit = configuredBatchedLimit > 0 ?
+        configuredBatchedLimit :
+        DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_DEFAULT;
     this.contentCountLimit = conf.getInt(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_LIMIT_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_LIMIT_DEFAULT);
@@ -345,6 +352,10 @@ int getLsLimit() {
     return lsLimit;
   }
 
+  int getBatchedListingLimit() {
+    return batchedListingLimit;
+  }
+
   int getContentCountLimit() {
     return contentCountLimit;
   }
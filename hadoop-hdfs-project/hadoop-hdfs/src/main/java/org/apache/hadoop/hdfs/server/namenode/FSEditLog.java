@@ -155,8 +155,9 @@ private enum State {
   // a monotonically increasing counter that represents transactionIds.
   private long txid = 0;
 
-  // stores the last synced transactionId.
-  private long synctxid = 0;
+  // stores the last synced transactionId. Volatile so that it can be read
+  // without the monitor, see getSyncTxId().
+  private volatile long synctxid = 0;
 
   // the first txid of the log that's currently open for writing.
   // If this value is N, we are currently writing to edits_inprogress_N
@@ -218,6 +219,22 @@ protected synchronized TransactionId initialValue() {
     }
   };
 
+  /**
+   * Create the edit log used by the NameNode, which may sync edits from a
+   * dedicated thread depending on
+   * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING}.
+   */
+  static FSEditLog newInstance(Configuration conf, NNStorage storage,
+      List<URI> editsDirs) {
+    boolean asyncEditLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
+    LOG.info("Edit logging is async:" + asyncEditLogging);
+    return asyncEditLogging
+        ? new FSEditLogAsync(conf, storage, editsDirs)
+        : new FSEditLog(conf, storage, editsDirs);
+  }
+
   /**
    * Constructor for FSEditLog. Underlying journals are constructed, but 
    * no streams are opened until open() is called.
@@ -577,11 +594,24 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
+    // Fetch the transactionId of this thread. 
+    logSync(getMyTransactionId());
+  }
+
+  /**
+   * @return the most recent transaction ID written by the calling thread.
+   */
+  static long getMyTransactionId() {
+    return myTransactionId.get().txid;
+  }
+
+  /**
+   * Sync all modifications up to and including the given transaction ID.
+   * See {@link #logSync()} for the concurrency design.
+   */
+  void logSync(long mytxid) {
     long syncStart = 0;
 
-    // Fetch the transactionId of this thread. 
-    long mytxid = myTransactionId.get().txid;
-    
     boolean sync = false;
     try {
       EditLogOutputStream logStream = null;
@@ -1344,7 +1374,7 @@ synchronized void waitForSyncToFinish() {
   /**
    * Return the txid of the last synced transaction.
    */
-  public synchronized long getSyncTxId() {
+  public long getSyncTxId() {
     return synctxid;
   }
 
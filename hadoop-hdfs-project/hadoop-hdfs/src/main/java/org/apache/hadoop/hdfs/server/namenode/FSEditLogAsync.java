@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An {@link FSEditLog} which syncs edits from a dedicated thread.
+ * <p>
+ * Edits are still serialized into the double buffer by the thread which
+ * logs them, but {@link #logSync()} no longer makes the calling thread flush
+ * the buffer to the journals.  The calling thread instead enqueues a
+ * {@link SyncRequest} for its most recent transaction and waits until the
+ * sync thread has made it durable.  Every flush covers all transactions
+ * requested so far, so requests which arrive while a flush is in progress
+ * are batched into the next one.
+ * <p>
+ * Threads which hold the edit log monitor cannot wait for the sync thread,
+ * since it needs the monitor to swap the buffers.  Those threads, and any
+ * thread which syncs while the sync thread is not running, fall back to
+ * syncing inline as {@link FSEditLog} does.
+ */
+class FSEditLogAsync extends FSEditLog implements Runnable {
+
+  /** Enqueued by {@link #stopSyncThread()} to make the sync thread exit. */
+  private static final SyncRequest STOP =
+      new SyncRequest(HdfsConstants.INVALID_TXID);
+
+  private final BlockingQueue<SyncRequest> syncRequests =
+      new LinkedBlockingQueue<SyncRequest>();
+
+  private volatile Thread syncThread;
+
+  FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
+    super(conf, storage, editsDirs);
+  }
+
+  @Override
+  synchronized void openForWrite() throws IOException {
+    super.openForWrite();
+    startSyncThread();
+  }
+
+  @Override
+  void close() {
+    // stop outside of the monitor, the sync thread may need it to finish
+    stopSyncThread();
+    super.close();
+  }
+
+  private synchronized void startSyncThread() {
+    if (isSyncThreadAlive()) {
+      return;
+    }
+    syncThread = new Thread(this, getClass().getSimpleName());
+    syncThread.setDaemon(true);
+    syncThread.start();
+  }
+
+  private void stopSyncThread() {
+    final Thread thread = syncThread;
+    if (thread == null) {
+      return;
+    }
+    syncRequests.add(STOP);
+    try {
+      thread.join();
+    } catch (InterruptedException ie) {
+      LOG.warn("Interrupted while waiting for " + thread.getName() +
+          " to exit");
+      Thread.currentThread().interrupt();
+    }
+    syncThread = null;
+  }
+
+  @VisibleForTesting
+  boolean isSyncThreadAlive() {
+    final Thread thread = syncThread;
+    return thread != null && thread.isAlive();
+  }
+
+  @Override
+  public void logSync() {
+    final long mytxid = getMyTransactionId();
+    if (Thread.holdsLock(this) || !isSyncThreadAlive()) {
+      super.logSync(mytxid);
+      return;
+    }
+    if (mytxid <= getSyncTxId()) {
+      return;
+    }
+    final SyncRequest request = new SyncRequest(mytxid);
+    syncRequests.add(request);
+    if (!request.waitForSync(this)) {
+      // the sync thread exited before serving the request
+      super.logSync(mytxid);
+    }
+  }
+
+  @Override
+  public void run() {
+    final List<SyncRequest> batch = new ArrayList<SyncRequest>();
+    boolean stopped = false;
+    while (!stopped) {
+      try {
+        batch.add(syncRequests.take());
+      } catch (InterruptedException ie) {
+        LOG.warn(Thread.currentThread().getName() + " was interrupted, "
+            + "continuing to serve sync requests");
+        continue;
+      }
+      syncRequests.drainTo(batch);
+
+      long txid = HdfsConstants.INVALID_TXID;
+      for (SyncRequest request : batch) {
+        if (request == STOP) {
+          stopped = true;
+        } else {
+          txid = Math.max(txid, request.txid);
+        }
+      }
+
+      // Normally a failed sync terminates the NameNode, but tests which
+      // disable ExitUtil need to see the exception in the waiting thread.
+      RuntimeException syncException = null;
+      if (txid != HdfsConstants.INVALID_TXID) {
+        try {
+          logSync(txid);
+        } catch (RuntimeException e) {
+          syncException = e;
+        }
+      }
+      for (SyncRequest request : batch) {
+        request.done(syncException);
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * A request to sync all transactions up to {@link #txid}.
+   */
+  private static class SyncRequest {
+    private final long txid;
+    private boolean done = false;
+    private RuntimeException exception;
+
+    SyncRequest(long txid) {
+      this.txid = txid;
+    }
+
+    synchronized void done(RuntimeException e) {
+      exception = e;
+      done = true;
+      notifyAll();
+    }
+
+    /**
+     * Wait until the sync thread has served this request.
+     * @return false if the sync thread exited without serving it.
+     */
+    synchronized boolean waitForSync(FSEditLogAsync editLog) {
+      while (!done) {
+        try {
+          wait(1000);
+        } catch (InterruptedException ie) {
+          // like FSEditLog#logSync, keep waiting for the edits to be durable
+        }
+        if (!done && !editLog.isSyncThreadAlive()) {
+          return false;
+        }
+      }
+      if (exception != null) {
+        throw exception;
+      }
+      return true;
+    }
+  }
+}
@@ -25,6 +25,10 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,8 +61,13 @@
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.QuotaByStorageTypeEntryProto;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.QuotaByStorageTypeFeatureProto;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Phase;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress.Counter;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.Time;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -217,10 +226,22 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /** Number of inodes to load before adding them to the inode map. */
+    private static final int INODE_BATCH_SIZE = 1000;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
 
+    /**
+     * Guard the structures shared between threads loading sub-sections in
+     * parallel: the inode map (and the encryption zones registered with it),
+     * the name cache and the blocks map.
+     */
+    private final Object inodeMapLock = new Object();
+    private final Object cacheNameLock = new Object();
+    private final Object blocksMapLock = new Object();
+
     Loader(FSNamesystem fsn, final FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
       this.dir = fsn.dir;
@@ -228,8 +249,42 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
     }
 
     void loadINodeDirectorySection(InputStream in) throws IOException {
+      loadINodeDirectories(in);
+    }
+
+    /**
+     * Load the directory section from its sub-sections in parallel. Each
+     * directory has a single entry in the section, so every thread updates
+     * a disjoint set of parent directories.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService executor,
+        List<FileSummary.Section> sections) throws IOException {
+      LOG.info("Loading the INode directory section in parallel with " +
+          sections.size() + " sub-sections");
+      long start = Time.monotonicNow();
+      List<Future<Long>> futures = new ArrayList<Future<Long>>();
+      for (final FileSummary.Section section : sections) {
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            InputStream in = parent.getInputStreamForSection(section);
+            try {
+              return loadINodeDirectories(in);
+            } finally {
+              in.close();
+            }
+          }
+        }));
+      }
+      long loaded = waitForSubSections(futures);
+      LOG.info("Loaded " + loaded + " INode directory entries in " +
+          (Time.monotonicNow() - start) + " ms");
+    }
+
+    private long loadINodeDirectories(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      long loaded = 0;
       while (true) {
         INodeDirectorySection.DirEntry e = INodeDirectorySection.DirEntry
             .parseDelimitedFrom(in);
@@ -246,13 +301,17 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
           INodeReference ref = refList.get(refId);
           addToParent(p, ref);
         }
+        // all the children of p are in this entry, drop the list's slack
+        p.trimChildren();
+        loaded++;
       }
+      return loaded;
     }
 
-    void loadINodeSection(InputStream in) throws IOException {
-      INodeSection s = INodeSection.parseDelimitedFrom(in);
-      fsn.dir.resetLastInodeId(s.getLastInodeId());
-      LOG.info("Loading " + s.getNumInodes() + " INodes.");
+    void loadINodeSection(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
+      INodeSection s = loadINodeSectionHeader(in, prog, currentStep);
+      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
       for (int i = 0; i < s.getNumInodes(); ++i) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
         if (p.getId() == INodeId.ROOT_INODE_ID) {
@@ -261,7 +320,119 @@ void loadINodeSection(InputStream in) throws IOException {
           INode n = loadINode(p);
           dir.addToInodeMap(n);
         }
+        counter.increment();
+      }
+    }
+
+    /**
+     * Load the inode section from its sub-sections in parallel. The section
+     * header is read from the stream over the whole section, the inodes are
+     * read from the sub-sections by the given executor.
+     */
+    void loadINodeSectionInParallel(ExecutorService executor, InputStream in,
+        List<FileSummary.Section> sections, StartupProgress prog,
+        Step currentStep) throws IOException {
+      INodeSection s = loadINodeSectionHeader(in, prog, currentStep);
+      LOG.info("Loading the INode section in parallel with " +
+          sections.size() + " sub-sections");
+      long start = Time.monotonicNow();
+      final Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE,
+          currentStep);
+      List<Future<Long>> futures = new ArrayList<Future<Long>>();
+      for (final FileSummary.Section section : sections) {
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            InputStream sectionIn = parent.getInputStreamForSection(section);
+            try {
+              return loadINodesInSubSection(sectionIn, counter);
+            } finally {
+              sectionIn.close();
+            }
+          }
+        }));
+      }
+      long loaded = waitForSubSections(futures);
+      if (loaded != s.getNumInodes()) {
+        throw new IOException("Expected to load " + s.getNumInodes() +
+            " INodes from the image but loaded " + loaded);
+      }
+      LOG.info("Loaded " + loaded + " INodes in " +
+          (Time.monotonicNow() - start) + " ms");
+    }
+
+    private INodeSection loadINodeSectionHeader(InputStream in,
+        StartupProgress prog, Step currentStep) throws IOException {
+      INodeSection s = INodeSection.parseDelimitedFrom(in);
+      fsn.dir.resetLastInodeId(s.getLastInodeId());
+      LOG.info("Loading " + s.getNumInodes() + " INodes.");
+      prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, s.getNumInodes());
+      return s;
+    }
+
+    /**
+     * Load all inodes from a sub-section, which ends where the stream ends.
+     * @return the number of inodes loaded.
+     */
+    private long loadINodesInSubSection(InputStream in, Counter counter)
+        throws IOException {
+      long loaded = 0;
+      List<INode> batch = new ArrayList<INode>(INODE_BATCH_SIZE);
+      while (true) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          synchronized (inodeMapLock) {
+            loadRootINode(p);
+          }
+        } else {
+          batch.add(loadINode(p));
+          if (batch.size() >= INODE_BATCH_SIZE) {
+            addToInodeMap(batch);
+          }
+        }
+        loaded++;
+        counter.increment();
+      }
+      addToInodeMap(batch);
+      return loaded;
+    }
+
+    private void addToInodeMap(List<INode> inodes) {
+      synchronized (inodeMapLock) {
+        for (INode n : inodes) {
+          dir.addToInodeMap(n);
+        }
+      }
+      inodes.clear();
+    }
+
+    private static long waitForSubSections(List<Future<Long>> futures)
+        throws IOException {
+      long loaded = 0;
+      try {
+        for (Future<Long> f : futures) {
+          loaded += f.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading the image", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException("Failed to load the image", cause);
+      } finally {
+        for (Future<Long> f : futures) {
+          f.cancel(true);
+        }
       }
+      return loaded;
     }
 
     /**
@@ -293,10 +464,14 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
-      dir.cacheName(child);
+      synchronized (cacheNameLock) {
+        dir.cacheName(child);
+      }
 
       if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        synchronized (blocksMapLock) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -523,7 +698,9 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           .getINodeMap().getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      parent.beginSubSections();
       int i = 0;
+      int entries = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
         if (!n.isDirectory()) {
@@ -545,6 +722,10 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           }
           INodeDirectorySection.DirEntry e = b.build();
           e.writeDelimitedTo(out);
+          if (++entries % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+          }
         }
 
         ++i;
@@ -552,6 +733,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -563,6 +746,8 @@ void serializeINodeSection(OutputStream out) throws IOException {
           .setLastInodeId(fsn.dir.getLastInodeId()).setNumInodes(inodesMap.size());
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
+      // the header is only part of the whole section, not of a sub-section
+      parent.beginSubSections();
 
       int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
@@ -570,10 +755,16 @@ void serializeINodeSection(OutputStream out) throws IOException {
         INodeWithAdditionalFields n = iter.next();
         save(out, n);
         ++i;
+        if (i % parent.getInodesPerSubSection() == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+        }
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
@@ -34,14 +34,19 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
@@ -66,6 +71,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -147,6 +153,8 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file being loaded */
+    private File imageFile;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -170,12 +178,73 @@ public LoaderContext getLoaderContext() {
       return ctx;
     }
 
+    /**
+     * Open a new, independent stream over an (uncompressed) section of the
+     * image being loaded.  Used to load sub-sections in parallel.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section)
+        throws IOException {
+      FileInputStream fin = new FileInputStream(imageFile);
+      try {
+        fin.getChannel().position(section.getOffset());
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+      return new BufferedInputStream(new LimitInputStream(fin,
+          section.getLength()));
+    }
+
+    /**
+     * @return an executor to load sub-sections with if parallel loading is
+     *         enabled and possible for the given image, otherwise null.
+     */
+    private ExecutorService createLoaderExecutor(FileSummary summary,
+        Map<SectionName, List<FileSummary.Section>> subSections) {
+      if (!conf.getBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)
+          || subSections.isEmpty()) {
+        return null;
+      }
+      if (summary.hasCodec()) {
+        LOG.warn("Parallel image loading is not supported for compressed " +
+            "images, loading serially");
+        return null;
+      }
+      int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      if (threads < 1) {
+        LOG.warn(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY + " is set to " +
+            threads + ", loading serially");
+        return null;
+      }
+      LOG.info("Loading the image in parallel with " + threads + " threads");
+      return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("FSImageLoader-%d").build());
+    }
+
+    /**
+     * @return the sub-sections of the given section which should be loaded
+     *         in parallel, or null to load the section serially.
+     */
+    private List<FileSummary.Section> getSubSectionsToLoad(
+        ExecutorService executor,
+        Map<SectionName, List<FileSummary.Section>> subSections,
+        SectionName subSectionName) {
+      if (executor == null) {
+        return null;
+      }
+      List<FileSummary.Section> list = subSections.get(subSectionName);
+      return list != null && list.size() > 1 ? list : null;
+    }
+
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
+        imageFile = file;
         loadInternal(raFile, fin);
         long end = Time.monotonicNow();
         LOG.info("Loaded FSImage in " + (end - start) / 1000 + " seconds.");
@@ -207,6 +276,24 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
 
       ArrayList<FileSummary.Section> sections = Lists.newArrayList(summary
           .getSectionsList());
+      // Sub-sections only index parts of their parent section, which is
+      // always present as well. Set them aside for parallel loading.
+      Map<SectionName, List<FileSummary.Section>> subSections =
+          Maps.newEnumMap(SectionName.class);
+      for (Iterator<FileSummary.Section> it = sections.iterator();
+           it.hasNext();) {
+        FileSummary.Section s = it.next();
+        SectionName name = SectionName.fromString(s.getName());
+        if (name != null && name.isSubSection()) {
+          List<FileSummary.Section> list = subSections.get(name);
+          if (list == null) {
+            list = Lists.newArrayList();
+            subSections.put(name, list);
+          }
+          list.add(s);
+          it.remove();
+        }
+      }
       Collections.sort(sections, new Comparator<FileSummary.Section>() {
         @Override
         public int compare(FileSummary.Section s1, FileSummary.Section s2) {
@@ -230,62 +317,92 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
        */
       Step currentStep = null;
 
-      for (FileSummary.Section s : sections) {
-        channel.position(s.getOffset());
-        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
-            s.getLength()));
-
-        in = FSImageUtil.wrapInputStreamForCompression(conf,
-            summary.getCodec(), in);
-
-        String n = s.getName();
-
-        switch (SectionName.fromString(n)) {
-        case NS_INFO:
-          loadNameSystemSection(in);
-          break;
-        case STRING_TABLE:
-          loadStringTableSection(in);
-          break;
-        case INODE: {
-          currentStep = new Step(StepType.INODES);
-          prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in);
-        }
-          break;
-        case INODE_REFERENCE:
-          snapshotLoader.loadINodeReferenceSection(in);
-          break;
-        case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
-          break;
-        case FILES_UNDERCONSTRUCTION:
-          inodeLoader.loadFilesUnderConstructionSection(in);
-          break;
-        case SNAPSHOT:
-          snapshotLoader.loadSnapshotSection(in);
-          break;
-        case SNAPSHOT_DIFF:
-          snapshotLoader.loadSnapshotDiffSection(in);
-          break;
-        case SECRET_MANAGER: {
-          prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
-          Step step = new Step(StepType.DELEGATION_TOKENS);
-          prog.beginStep(Phase.LOADING_FSIMAGE, step);
-          loadSecretManagerSection(in);
-          prog.endStep(Phase.LOADING_FSIMAGE, step);
-        }
-          break;
-        case CACHE_MANAGER: {
-          Step step = new Step(StepType.CACHE_POOLS);
-          prog.beginStep(Phase.LOADING_FSIMAGE, step);
-          loadCacheManagerSection(in);
-          prog.endStep(Phase.LOADING_FSIMAGE, step);
+      final ExecutorService executor =
+          createLoaderExecutor(summary, subSections);
+      try {
+        for (FileSummary.Section s : sections) {
+          channel.position(s.getOffset());
+          InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+              s.getLength()));
+
+          in = FSImageUtil.wrapInputStreamForCompression(conf,
+              summary.getCodec(), in);
+
+          String n = s.getName();
+          SectionName sectionName = SectionName.fromString(n);
+          if (sectionName == null) {
+            // Sections are only ever added alongside ones older loaders can
+            // still read, so skip what this release does not know about.
+            LOG.warn("Unrecognized section " + n);
+            continue;
+          }
+
+          switch (sectionName) {
+          case NS_INFO:
+            loadNameSystemSection(in);
+            break;
+          case STRING_TABLE:
+            loadStringTableSection(in);
+            break;
+          case INODE: {
+            currentStep = new Step(StepType.INODES);
+            prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
+            List<FileSummary.Section> inodeSubSections = getSubSectionsToLoad(
+                executor, subSections, SectionName.INODE_SUB);
+            if (inodeSubSections != null) {
+              inodeLoader.loadINodeSectionInParallel(executor, in,
+                  inodeSubSections, prog, currentStep);
+            } else {
+              inodeLoader.loadINodeSection(in, prog, currentStep);
+            }
+          }
+            break;
+          case INODE_REFERENCE:
+            snapshotLoader.loadINodeReferenceSection(in);
+            break;
+          case INODE_DIR: {
+            List<FileSummary.Section> dirSubSections = getSubSectionsToLoad(
+                executor, subSections, SectionName.INODE_DIR_SUB);
+            if (dirSubSections != null) {
+              inodeLoader.loadINodeDirectorySectionInParallel(executor,
+                  dirSubSections);
+            } else {
+              inodeLoader.loadINodeDirectorySection(in);
+            }
+          }
+            break;
+          case FILES_UNDERCONSTRUCTION:
+            inodeLoader.loadFilesUnderConstructionSection(in);
+            break;
+          case SNAPSHOT:
+            snapshotLoader.loadSnapshotSection(in);
+            break;
+          case SNAPSHOT_DIFF:
+            snapshotLoader.loadSnapshotDiffSection(in);
+            break;
+          case SECRET_MANAGER: {
+            prog.endStep(Phase.LOADING_FSIMAGE, currentStep);
+            Step step = new Step(StepType.DELEGATION_TOKENS);
+            prog.beginStep(Phase.LOADING_FSIMAGE, step);
+            loadSecretManagerSection(in);
+            prog.endStep(Phase.LOADING_FSIMAGE, step);
+          }
+            break;
+          case CACHE_MANAGER: {
+            Step step = new Step(StepType.CACHE_POOLS);
+            prog.beginStep(Phase.LOADING_FSIMAGE, step);
+            loadCacheManagerSection(in);
+            prog.endStep(Phase.LOADING_FSIMAGE, step);
+          }
+            break;
+          default:
+            LOG.warn("Unrecognized section " + n);
+            break;
+          }
         }
-          break;
-        default:
-          LOG.warn("Unrecognized section " + n);
-          break;
+      } finally {
+        if (executor != null) {
+          executor.shutdown();
         }
       }
     }
@@ -354,8 +471,13 @@ public static final class Saver {
 
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
+    private final Configuration conf;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
+    private long subSectionOffset = currentOffset;
     private MD5Hash savedDigest;
+    /** Whether to index sections with sub-sections for parallel loading */
+    private boolean writeSubSections = false;
+    private int inodesPerSubSection = Integer.MAX_VALUE;
 
     private FileChannel fileChannel;
     // OutputStream for the section data
@@ -363,9 +485,10 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
-    Saver(SaveNamespaceContext context) {
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.conf = conf;
     }
 
     public MD5Hash getSavedDigest() {
@@ -394,6 +517,49 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * @return the number of inodes (or directory entries) to write to each
+     *         sub-section.
+     */
+    int getInodesPerSubSection() {
+      return inodesPerSubSection;
+    }
+
+    /**
+     * Start the first sub-section of the current section at the current
+     * position, e.g. after a section header which is not part of any
+     * sub-section.
+     */
+    void beginSubSections() throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      subSectionOffset = fileChannel.position();
+    }
+
+    /**
+     * Record everything written since the previous sub-section as a new
+     * sub-section of the current section.  Sub-sections are only written
+     * for uncompressed images, so that each one can be read on its own.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      assert name.isSubSection() : name;
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length == 0) {
+        return;
+      }
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -413,6 +579,32 @@ void save(File file, FSImageCompression compression) throws IOException {
       }
     }
 
+    private void configureSubSections() {
+      if (conf == null || !conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)) {
+        return;
+      }
+      if (codec != null) {
+        LOG.warn("Parallel image loading is not supported for compressed " +
+            "images, the image will not contain sub-sections");
+        return;
+      }
+      int targetSections = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT);
+      long threshold = conf.getLong(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
+      long numInodes = context.getSourceNamesystem().dir.getINodeMap().size();
+      if (targetSections < 2 || numInodes < threshold) {
+        return;
+      }
+      writeSubSections = true;
+      inodesPerSubSection =
+          (int) Math.max(1, (numInodes + targetSections - 1) / targetSections);
+    }
+
     private static void saveFileSummary(OutputStream out, FileSummary summary)
         throws IOException {
       summary.writeDelimitedTo(out);
@@ -462,6 +654,7 @@ private void saveInternal(FileOutputStream fout,
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
+      configureSubSections();
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
@@ -584,7 +777,12 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    // Sub-sections index parts of the INODE and INODE_DIR sections so that
+    // they can be loaded in parallel. Loaders which do not use them can
+    // simply load the parent section.
+    INODE_SUB("INODE_SUB"),
+    INODE_DIR_SUB("INODE_DIR_SUB");
 
     private static final SectionName[] values = SectionName.values();
 
@@ -601,6 +799,10 @@ public static SectionName fromString(String name) {
     private SectionName(String name) {
       this.name = name;
     }
+
+    public boolean isSubSection() {
+      return this == INODE_SUB || this == INODE_DIR_SUB;
+    }
   }
 
   private static int getOndiskTrunkSize(com.google.protobuf.GeneratedMessage s) {
@@ -175,6 +175,7 @@
 import org.apache.hadoop.hdfs.UnknownCryptoProtocolVersionException;
 import org.apache.hadoop.hdfs.XAttrHelper;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -191,6 +192,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
@@ -255,12 +257,15 @@
 import org.apache.hadoop.hdfs.server.protocol.NamenodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.ipc.Server;
@@ -724,7 +729,7 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    fsLock = new FSNamesystemLock(conf, fair);
     cond = fsLock.writeLock().newCondition();
     cpLock = new ReentrantLock();
 
@@ -1474,23 +1479,23 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
 
   @Override
   public void readLock() {
-    this.fsLock.readLock().lock();
+    this.fsLock.acquireReadLock();
   }
   @Override
   public void readUnlock() {
-    this.fsLock.readLock().unlock();
+    this.fsLock.releaseReadLock();
   }
   @Override
   public void writeLock() {
-    this.fsLock.writeLock().lock();
+    this.fsLock.acquireWriteLock();
   }
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
-    this.fsLock.writeLock().lockInterruptibly();
+    this.fsLock.acquireWriteLockInterruptibly();
   }
   @Override
   public void writeUnlock() {
-    this.fsLock.writeLock().unlock();
+    this.fsLock.releaseWriteLock();
   }
   @Override
   public boolean hasWriteLock() {
@@ -1697,6 +1702,24 @@ private GetBlockLocationsResult(
     }
   }
 
+  /**
+   * The standby learns about the replicas of new blocks from the DataNodes
+   * only, which may lag behind the edits it has applied.  Send the client to
+   * the active NameNode rather than returning blocks without locations.
+   */
+  private static void checkBlockLocationsOnStandby(String src,
+      LocatedBlocks blocks) throws StandbyException {
+    if (blocks == null) {
+      return;
+    }
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      if (b.getLocations().length == 0) {
+        throw new StandbyException("The standby does not know any location"
+            + " of block " + b.getBlock() + " of " + src + " yet");
+      }
+    }
+  }
+
   /**
    * Get block locations within the specified range.
    * @see ClientProtocol#getBlockLocations(String, long, long)
@@ -1710,6 +1733,9 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
     try {
       checkOperation(OperationCategory.READ);
       res = getBlockLocations(pc, srcArg, offset, length, true, true);
+      if (isInStandbyState() && haContext.allowConsistentReads()) {
+        checkBlockLocationsOnStandby(srcArg, res.blocks);
+      }
     } catch (AccessControlException e) {
       logAuditEvent(false, "open", srcArg);
       throw e;
@@ -1719,7 +1745,8 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
 
     logAuditEvent(true, "open", srcArg);
 
-    if (res.updateAccessTime()) {
+    // the standby cannot log the access time
+    if (res.updateAccessTime() && !isInStandbyState()) {
       byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(
           srcArg);
       String src = srcArg;
@@ -4494,6 +4521,35 @@ DirectoryListing getListing(String src, byte[] startAfter,
     return dl;
   }
 
+  /**
+   * Get a page of the listings of many paths, under one read lock.
+   *
+   * @see ClientProtocol#getBatchedListing(String[], byte[], boolean)
+   */
+  BatchedDirectoryListing getBatchedListing(String[] srcs, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    checkOperation(OperationCategory.READ);
+    BatchedDirectoryListing bdl;
+    readLock();
+    try {
+      checkOperation(NameNode.OperationCategory.READ);
+      bdl = FSDirStatAndListingOp.getBatchedListing(dir, srcs, startAfter,
+          needLocation);
+    } finally {
+      readUnlock();
+    }
+    for (HdfsPartialListing listing : bdl.getListings()) {
+      final RemoteException e = listing.getException();
+      if (e == null) {
+        logAuditEvent(true, "listStatus", srcs[listing.getParentIdx()]);
+      } else if (AccessControlException.class.getName().equals(
+          e.getClassName())) {
+        logAuditEvent(false, "listStatus", srcs[listing.getParentIdx()]);
+      }
+    }
+    return bdl;
+  }
+
   /////////////////////////////////////////////////////////
   //
   // These methods are called by datanodes
@@ -4556,7 +4612,8 @@ String getRegistrationID() {
   HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int xmitsInProgress, int failedVolumes,
-      VolumeFailureSummary volumeFailureSummary) throws IOException {
+      VolumeFailureSummary volumeFailureSummary, SlowPeerReports slowPeers,
+      SlowDiskReports slowDisks) throws IOException {
     readLock();
     try {
       //get datanode commands
@@ -4564,7 +4621,8 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
           - xmitsInProgress;
       DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
           nodeReg, reports, blockPoolId, cacheCapacity, cacheUsed,
-          xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary);
+          xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary,
+          slowPeers, slowDisks);
       
       //create ha status
       final NNHAStatusHeartbeat haState = new NNHAStatusHeartbeat(
@@ -4833,6 +4891,24 @@ public long getTransactionsSinceLastLogRoll() {
     }
   }
   
+  @Metric({"NumLongReadLockHolds",
+      "Number of read lock holds longer than the reporting threshold"})
+  public long getNumLongReadLockHolds() {
+    return fsLock.getNumLongReadLockHolds();
+  }
+
+  @Metric({"NumLongWriteLockHolds",
+      "Number of write lock holds longer than the reporting threshold"})
+  public long getNumLongWriteLockHolds() {
+    return fsLock.getNumLongWriteLockHolds();
+  }
+
+  @Metric({"LongestWriteLockHeldInterval",
+      "Longest time in milliseconds the write lock was held"})
+  public long getLongestWriteLockHeldInterval() {
+    return fsLock.getLongestWriteLockHeldInterval();
+  }
+
   @Metric({"LastWrittenTransactionId", "Transaction ID written to the edit log"})
   public long getLastWrittenTransactionId() {
     return getEditLog().getLastWrittenTxId();
@@ -7081,6 +7157,11 @@ public String getNameDirStatuses() {
     return JSON.toString(statusMap);
   }
 
+  @Override // NameNodeMXBean
+  public String getSlowNodes() {
+    return getBlockManager().getDatanodeManager().getSlowNodesReport();
+  }
+
   @Override // NameNodeMXBean
   public String getNodeUsage() {
     float median = 0;
@@ -19,25 +19,124 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Timer;
+
 import com.google.common.annotations.VisibleForTesting;
 
 /**
  * Mimics a ReentrantReadWriteLock so more sophisticated locking capabilities
  * are possible.
+ *
+ * The lock/unlock methods on this class (as opposed to the {@link Lock}
+ * objects returned by {@link #readLock()} and {@link #writeLock()}) also
+ * track how long the outermost hold of the lock lasted.  Holds longer than
+ * the configured reporting thresholds are logged together with the stack
+ * of the releasing thread, which is the first thing to look at when one
+ * operation is starving the others. After a long hold has been logged, the
+ * long holds of the same kind are only counted until the suppression
+ * interval has passed. Each outermost hold is also charged to
+ * the RPC call holding the lock, if any, for cost-based call scheduling.
  */
 class FSNamesystemLock implements ReadWriteLock {
+  private static final long LOCK_REPORTING_THRESHOLD_DISABLED = Long.MAX_VALUE;
+
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
-  
+
+  private final Timer timer;
+
+  /**
+   * Minimum time, in milliseconds, that a lock must be held for the hold to
+   * be reported.
+   */
+  private final long writeLockReportingThreshold;
+  private final long readLockReportingThreshold;
+
+  /**
+   * Minimum time, in milliseconds, between two logged long holds of the
+   * same kind.
+   */
+  private final long lockSuppressWarningInterval;
+
+  /** Monotonic time of the last logged long hold, or Long.MIN_VALUE. */
+  private final AtomicLong timeStampOfLastReadLockReport =
+      new AtomicLong(Long.MIN_VALUE);
+  private final AtomicLong timeStampOfLastWriteLockReport =
+      new AtomicLong(Long.MIN_VALUE);
+
+  /** Number of long holds not logged since the last logged one. */
+  private final AtomicInteger numReadLockReportsSuppressed =
+      new AtomicInteger();
+  private final AtomicInteger numWriteLockReportsSuppressed =
+      new AtomicInteger();
+
+  /** Monotonic time, in nanoseconds, of the last write lock acquisition. */
+  private long writeLockHeldTimeStamp;
+
+  /**
+   * Monotonic time, in nanoseconds, at which each thread acquired its
+   * outermost read lock.
+   */
+  private final ThreadLocal<Long> readLockHeldTimeStamp =
+      new ThreadLocal<Long>() {
+        @Override
+        protected Long initialValue() {
+          return Long.MAX_VALUE;
+        }
+      };
+
+  /** Number of lock holds which exceeded the reporting thresholds. */
+  private final AtomicLong numLongReadLockHolds = new AtomicLong();
+  private final AtomicLong numLongWriteLockHolds = new AtomicLong();
+
+  /** Longest write lock hold time observed so far, in milliseconds. */
+  private volatile long longestWriteLockHeldInterval = 0;
+
   FSNamesystemLock(boolean fair) {
+    this(fair, LOCK_REPORTING_THRESHOLD_DISABLED,
+        LOCK_REPORTING_THRESHOLD_DISABLED, 0, new Timer());
+  }
+
+  FSNamesystemLock(Configuration conf, boolean fair) {
+    this(fair,
+        conf.getLong(DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY,
+            DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT),
+        conf.getLong(DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY,
+            DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT),
+        conf.getTimeDuration(DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY,
+            DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT, TimeUnit.MILLISECONDS),
+        new Timer());
+  }
+
+  @VisibleForTesting
+  FSNamesystemLock(boolean fair, long writeLockReportingThreshold,
+      long readLockReportingThreshold, long lockSuppressWarningInterval,
+      Timer timer) {
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    this.writeLockReportingThreshold = writeLockReportingThreshold;
+    this.readLockReportingThreshold = readLockReportingThreshold;
+    this.lockSuppressWarningInterval = lockSuppressWarningInterval;
+    this.timer = timer;
   }
-  
+
   @Override
   public Lock readLock() {
     return coarseLock.readLock();
@@ -48,6 +147,92 @@ public Lock writeLock() {
     return coarseLock.writeLock();
   }
 
+  public void acquireReadLock() {
+    coarseLock.readLock().lock();
+    if (coarseLock.getReadHoldCount() == 1) {
+      readLockHeldTimeStamp.set(timer.monotonicNowNanos());
+    }
+  }
+
+  public void releaseReadLock() {
+    final boolean needReport = coarseLock.getReadHoldCount() == 1;
+    final long readLockIntervalNanos =
+        timer.monotonicNowNanos() - readLockHeldTimeStamp.get();
+    final long readLockInterval =
+        TimeUnit.NANOSECONDS.toMillis(readLockIntervalNanos);
+    if (needReport) {
+      readLockHeldTimeStamp.remove();
+    }
+    coarseLock.readLock().unlock();
+
+    if (needReport) {
+      Server.addLockHoldTime(false, readLockIntervalNanos);
+    }
+
+    if (needReport && readLockInterval >= readLockReportingThreshold) {
+      numLongReadLockHolds.incrementAndGet();
+      logLongHold("read", readLockInterval, timeStampOfLastReadLockReport,
+          numReadLockReportsSuppressed);
+    }
+  }
+
+  public void acquireWriteLock() {
+    coarseLock.writeLock().lock();
+    if (coarseLock.getWriteHoldCount() == 1) {
+      writeLockHeldTimeStamp = timer.monotonicNowNanos();
+    }
+  }
+
+  public void acquireWriteLockInterruptibly() throws InterruptedException {
+    coarseLock.writeLock().lockInterruptibly();
+    if (coarseLock.getWriteHoldCount() == 1) {
+      writeLockHeldTimeStamp = timer.monotonicNowNanos();
+    }
+  }
+
+  public void releaseWriteLock() {
+    final boolean needReport = coarseLock.getWriteHoldCount() == 1 &&
+        coarseLock.isWriteLockedByCurrentThread();
+    final long writeLockIntervalNanos =
+        timer.monotonicNowNanos() - writeLockHeldTimeStamp;
+    final long writeLockInterval =
+        TimeUnit.NANOSECONDS.toMillis(writeLockIntervalNanos);
+    if (needReport && writeLockInterval > longestWriteLockHeldInterval) {
+      longestWriteLockHeldInterval = writeLockInterval;
+    }
+
+    coarseLock.writeLock().unlock();
+
+    if (needReport) {
+      Server.addLockHoldTime(true, writeLockIntervalNanos);
+    }
+    if (needReport && writeLockInterval >= writeLockReportingThreshold) {
+      numLongWriteLockHolds.incrementAndGet();
+      logLongHold("write", writeLockInterval, timeStampOfLastWriteLockReport,
+          numWriteLockReportsSuppressed);
+    }
+  }
+
+  /**
+   * Log a long lock hold with the stack of the current thread, unless a
+   * hold of the same kind was logged less than the suppression interval ago.
+   */
+  private void logLongHold(String lockType, long interval,
+      AtomicLong timeStampOfLastReport, AtomicInteger numSuppressed) {
+    final long now = timer.monotonicNow();
+    final long last = timeStampOfLastReport.get();
+    if ((last != Long.MIN_VALUE && now - last < lockSuppressWarningInterval)
+        || !timeStampOfLastReport.compareAndSet(last, now)) {
+      numSuppressed.incrementAndGet();
+      return;
+    }
+    final int suppressed = numSuppressed.getAndSet(0);
+    FSNamesystem.LOG.info("FSNamesystem " + lockType + " lock held for " +
+        interval + " ms via\n" +
+        StringUtils.getStackTrace(Thread.currentThread()) +
+        "\tNumber of suppressed " + lockType + "-lock reports: " + suppressed);
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
@@ -59,4 +244,28 @@ public int getWriteHoldCount() {
   public boolean isWriteLockedByCurrentThread() {
     return coarseLock.isWriteLockedByCurrentThread();
   }
+
+  /**
+   * @return the number of read lock holds which exceeded the reporting
+   *         threshold.
+   */
+  public long getNumLongReadLockHolds() {
+    return numLongReadLockHolds.get();
+  }
+
+  /**
+   * @return the number of write lock holds which exceeded the reporting
+   *         threshold.
+   */
+  public long getNumLongWriteLockHolds() {
+    return numLongWriteLockHolds.get();
+  }
+
+  /**
+   * @return the longest time, in milliseconds, that the write lock has been
+   *         held by a single outermost acquisition.
+   */
+  public long getLongestWriteLockHeldInterval() {
+    return longestWriteLockHeldInterval;
+  }
 }
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * The server side {@link AlignmentContext} of the NameNode.  The state id is
+ * the id of the last transaction which is durable on an active NameNode or
+ * which has been applied to the namespace of a standby NameNode.  Every
+ * response of the client RPC server carries it, and the standby only serves
+ * reads to clients which have not seen a newer state, see
+ * {@link org.apache.hadoop.hdfs.server.namenode.ha.StandbyState}.
+ */
+@InterfaceAudience.Private
+class GlobalStateIdContext implements AlignmentContext {
+  private final FSNamesystem namesystem;
+
+  GlobalStateIdContext(FSNamesystem namesystem) {
+    this.namesystem = namesystem;
+  }
+
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    header.setStateId(getLastSeenStateId());
+  }
+
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    // the NameNode does not make aligned calls
+  }
+
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    // the NameNode does not make aligned calls
+  }
+
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    return header.getStateId();
+  }
+
+  /**
+   * Called for every response, so neither value is read under a lock.
+   */
+  @Override
+  public long getLastSeenStateId() {
+    final FSImage image = namesystem.getFSImage();
+    return Math.max(image.getLastAppliedTxId(),
+        image.getEditLog().getSyncTxId());
+  }
+}
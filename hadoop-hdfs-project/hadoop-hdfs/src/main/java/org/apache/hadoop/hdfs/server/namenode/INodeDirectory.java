@@ -38,6 +38,7 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature.DirectoryDiffList;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.util.ChunkedList;
 import org.apache.hadoop.hdfs.util.Diff.ListType;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
@@ -67,6 +68,14 @@ public static INodeDirectory valueOf(INode inode, Object path
   }
 
   protected static final int DEFAULT_FILES_PER_DIRECTORY = 5;
+  /**
+   * The children of a directory with more children than this are kept in a
+   * {@link ChunkedList}, so that adding or removing a child does not move
+   * all the following children.
+   */
+  static final int LARGE_DIRECTORY_THRESHOLD = 16 * 1024;
+  /** The maximum chunk size of the children of a large directory. */
+  static final int LARGE_DIRECTORY_CHUNK_SIZE = 4 * 1024;
   final static byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
   private List<INode> children = null;
@@ -202,6 +211,9 @@ DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
   }
 
   int searchChildren(byte[] name) {
+    if (children instanceof ChunkedList) {
+      return ((ChunkedList<INode>) children).binarySearch(name);
+    }
     return children == null? -1: Collections.binarySearch(children, name);
   }
   
@@ -508,6 +520,10 @@ public boolean removeChild(final INode child) {
 
     final INode removed = children.remove(i);
     Preconditions.checkState(removed == child);
+    if (children instanceof ChunkedList
+        && children.size() < LARGE_DIRECTORY_THRESHOLD / 2) {
+      children = new ArrayList<INode>(children);
+    }
     return true;
   }
 
@@ -563,12 +579,29 @@ private void addChild(final INode node, final int insertionPoint) {
     }
     node.setParent(this);
     children.add(-insertionPoint - 1, node);
+    if (children.size() > LARGE_DIRECTORY_THRESHOLD
+        && !(children instanceof ChunkedList)) {
+      children = new ChunkedList<INode>(LARGE_DIRECTORY_CHUNK_SIZE, children);
+    }
 
     if (node.getGroupName() == null) {
       node.setGroup(getGroupName());
     }
   }
 
+  /**
+   * Trim the capacity of the children list to the number of children, e.g.
+   * once a directory has been fully loaded from the fsimage.  The list grows
+   * by half its capacity, so otherwise up to a third of its slots are unused.
+   */
+  void trimChildren() {
+    if (children instanceof ArrayList) {
+      ((ArrayList<INode>) children).trimToSize();
+    } else if (children instanceof ChunkedList) {
+      ((ChunkedList<INode>) children).trimToSize();
+    }
+  }
+
   @Override
   public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, QuotaCounts counts, boolean useCache,
@@ -311,6 +311,7 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  protected final boolean allowConsistentStandbyReads;
   private AtomicBoolean started = new AtomicBoolean(false); 
 
   
@@ -805,6 +806,9 @@ protected NameNode(Configuration conf, NamenodeRole role)
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
+    this.allowConsistentStandbyReads = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_KEY,
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_DEFAULT);
     this.haContext = createHAContext();
     try {
       initializeGenericKeys(conf, nsId, namenodeId);
@@ -1779,6 +1783,16 @@ public boolean allowStaleReads() {
       return allowStaleStandbyReads;
     }
 
+    @Override
+    public boolean allowConsistentReads() {
+      return allowConsistentStandbyReads;
+    }
+
+    @Override
+    public long getLastAppliedTxId() {
+      return namesystem.getFSImage().getLastAppliedTxId();
+    }
+
   }
   
   public boolean isStandbyState() {
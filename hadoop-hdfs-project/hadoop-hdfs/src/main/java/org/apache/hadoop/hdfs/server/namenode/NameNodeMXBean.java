@@ -218,6 +218,17 @@ public interface NameNodeMXBean {
    */
   public String getNodeUsage();
 
+  /**
+   * Get the DataNodes which other DataNodes report as slow peers, or which
+   * report slow volumes.  A DataNode is only slow when enough other
+   * DataNodes report it.
+   *
+   * @return the reported DataNodes with whether they are slow, the reporting
+   *         DataNodes and the latency they see, and the slow volumes, as a
+   *         JSON string.
+   */
+  public String getSlowNodes();
+
   /**
    * Get status information about the journals of the NN.
    *
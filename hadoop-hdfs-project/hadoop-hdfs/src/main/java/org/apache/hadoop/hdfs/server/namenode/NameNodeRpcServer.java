@@ -73,6 +73,7 @@
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
@@ -93,6 +94,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
@@ -135,6 +137,8 @@
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.NodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
@@ -348,6 +352,9 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setPort(rpcAddr.getPort()).setNumHandlers(handlerCount)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager()).build();
+    // Let clients know the state of the namespace, so that they can read
+    // consistently from a standby NameNode.
+    clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -1004,6 +1011,23 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return files;
   }
 
+  @Override // ClientProtocol
+  public BatchedDirectoryListing getBatchedListing(String[] srcs,
+      byte[] startAfter, boolean needLocation) throws IOException {
+    checkNNStartup();
+    BatchedDirectoryListing listing = namesystem.getBatchedListing(
+        srcs, startAfter, needLocation);
+    metrics.incrBatchedGetListingOps();
+    int numFiles = 0;
+    for (HdfsPartialListing partial : listing.getListings()) {
+      if (partial.getPartialListing() != null) {
+        numFiles += partial.getPartialListing().size();
+      }
+    }
+    metrics.incrFilesInGetListingOps(numFiles);
+    return listing;
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus getFileInfo(String src)  throws IOException {
     checkNNStartup();
@@ -1290,13 +1314,14 @@ public DatanodeRegistration registerDatanode(DatanodeRegistration nodeReg)
   public HeartbeatResponse sendHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] report, long dnCacheCapacity, long dnCacheUsed,
       int xmitsInProgress, int xceiverCount,
-      int failedVolumes, VolumeFailureSummary volumeFailureSummary)
+      int failedVolumes, VolumeFailureSummary volumeFailureSummary,
+      SlowPeerReports slowPeers, SlowDiskReports slowDisks)
       throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
     return namesystem.handleHeartbeat(nodeReg, report,
         dnCacheCapacity, dnCacheUsed, xceiverCount, xmitsInProgress,
-        failedVolumes, volumeFailureSummary);
+        failedVolumes, volumeFailureSummary, slowPeers, slowDisks);
   }
 
   @Override // DatanodeProtocol
@@ -1311,16 +1336,21 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
     }
     final BlockManager bm = namesystem.getBlockManager(); 
     boolean noStaleStorages = false;
-    for (int r = 0; r < reports.length; r++) {
-      final BlockListAsLongs blocks = reports[r].getBlocks();
-      //
-      // BlockManager.processReport accumulates information of prior calls
-      // for the same node and storage, so the value returned by the last
-      // call of this loop is the final updated value for noStaleStorage.
-      //
-      noStaleStorages = bm.processReport(nodeReg, reports[r].getStorage(),
-          blocks, context, (r == reports.length - 1));
-      metrics.incrStorageBlockReportOps();
+    bm.beginFullBlockReport(nodeReg);
+    try {
+      for (int r = 0; r < reports.length; r++) {
+        final BlockListAsLongs blocks = reports[r].getBlocks();
+        //
+        // BlockManager.processReport accumulates information of prior calls
+        // for the same node and storage, so the value returned by the last
+        // call of this loop is the final updated value for noStaleStorage.
+        //
+        noStaleStorages = bm.processReport(nodeReg, reports[r].getStorage(),
+            blocks, context, (r == reports.length - 1));
+        metrics.incrStorageBlockReportOps();
+      }
+    } finally {
+      bm.endFullBlockReport();
     }
 
     if (nn.getFSImage().isUpgradeFinalized() &&
@@ -52,11 +52,11 @@
   private static final Log LOG =
       LogFactory.getLog(ConfiguredFailoverProxyProvider.class);
   
-  private final Configuration conf;
+  protected final Configuration conf;
   private final List<AddressRpcProxyPair<T>> proxies =
       new ArrayList<AddressRpcProxyPair<T>>();
-  private final UserGroupInformation ugi;
-  private final Class<T> xface;
+  protected final UserGroupInformation ugi;
+  protected final Class<T> xface;
   
   private int currentProxyIndex = 0;
 
@@ -118,11 +118,18 @@ public Class<T> getInterface() {
    */
   @Override
   public synchronized ProxyInfo<T> getProxy() {
-    AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
+    return getProxy(currentProxyIndex);
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object to the NameNode at the given index
+   * of the configured addresses.
+   */
+  protected synchronized ProxyInfo<T> getProxy(int index) {
+    AddressRpcProxyPair<T> current = proxies.get(index);
     if (current.namenode == null) {
       try {
-        current.namenode = NameNodeProxies.createNonHAProxy(conf,
-            current.address, xface, ugi, false, fallbackToSimpleAuth).getProxy();
+        current.namenode = createProxy(current.address);
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
@@ -131,6 +138,28 @@ public synchronized ProxyInfo<T> getProxy() {
     return new ProxyInfo<T>(current.namenode, current.address.toString());
   }
 
+  /**
+   * Create an RPC proxy object to the NameNode at the given address.
+   */
+  protected T createProxy(InetSocketAddress address) throws IOException {
+    return NameNodeProxies.createNonHAProxy(conf, address, xface, ugi, false,
+        fallbackToSimpleAuth).getProxy();
+  }
+
+  /**
+   * @return the index of the NameNode the current proxy connects to.
+   */
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
+  }
+
+  /**
+   * @return the number of configured NameNode addresses.
+   */
+  protected int getNumProxies() {
+    return proxies.size();
+  }
+
   @Override
   public synchronized void performFailover(T currentProxy) {
     currentProxyIndex = (currentProxyIndex + 1) % proxies.size();
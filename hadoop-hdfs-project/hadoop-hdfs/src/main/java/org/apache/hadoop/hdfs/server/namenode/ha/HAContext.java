@@ -83,4 +83,15 @@ public interface HAContext {
    * while the namespace is not up to date)
    */
   boolean allowStaleReads();
+
+  /**
+   * @return true if the node should allow reads from clients which have not
+   * seen a newer transaction than the last one applied to the namespace
+   */
+  boolean allowConsistentReads();
+
+  /**
+   * @return the id of the last transaction applied to the namespace
+   */
+  long getLastAppliedTxId();
 }
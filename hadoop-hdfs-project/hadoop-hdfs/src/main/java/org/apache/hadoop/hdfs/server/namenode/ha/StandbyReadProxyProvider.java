@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A {@link ConfiguredFailoverProxyProvider} which sends {@link ReadOnly}
+ * calls to the standby NameNodes first, so that standby NameNodes which
+ * enable {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_HA_STANDBY_CONSISTENT_READS_KEY}
+ * serve them instead of the active NameNode.  All other calls go to the
+ * active NameNode, and fail over as with {@link ConfiguredFailoverProxyProvider}.
+ * <p>
+ * The proxies to all the NameNodes share a {@link ClientGSIContext}, so every
+ * request carries the id of the last transaction the client has seen.  A
+ * standby which has not applied that transaction yet rejects the read with
+ * a {@link StandbyException}, and the read is sent to the active NameNode
+ * instead.  The client therefore always reads its own writes.  A standby
+ * which cannot be reached is skipped for
+ * {@link #UNREACHABLE_STANDBY_SKIP_MS}.
+ * <p>
+ * A new client has not seen any transaction, and a standby would serve it
+ * whatever it has applied, even writes of other clients which the client
+ * knows about some other way.  So until a response has carried a state id
+ * the reads go to the active NameNode as well.  This tree has no call to
+ * sync with the active without reading, so the first read does it.
+ * <p>
+ * To use it, set <code>dfs.client.failover.proxy.provider.</code> followed
+ * by the nameservice id to the name of this class.
+ */
+public class StandbyReadProxyProvider<T> extends
+    ConfiguredFailoverProxyProvider<T> {
+
+  private static final Log LOG =
+      LogFactory.getLog(StandbyReadProxyProvider.class);
+
+  /** How long reads skip a standby NameNode which could not be reached. */
+  static final long UNREACHABLE_STANDBY_SKIP_MS = 60 * 1000;
+
+  private final ClientGSIContext alignmentContext = new ClientGSIContext();
+
+  /** By proxy index, when the NameNode could not be reached, or 0. */
+  private final long[] unreachableSince;
+
+  /** The proxy returned by {@link #getProxy()}, and the index it is for. */
+  private ProxyInfo<T> currentProxy;
+  private int currentProxyIndex = -1;
+
+  /**
+   * @param conf configuration with the NameNode addresses of the nameservice
+   * @param uri logical URI of the nameservice
+   * @param xface NameNode protocol the proxies implement
+   */
+  public StandbyReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    super(conf, uri, xface);
+    unreachableSince = new long[getNumProxies()];
+  }
+
+  @Override
+  protected T createProxy(InetSocketAddress address) throws IOException {
+    return NameNodeProxies.createNonHAProxy(conf, address, xface, ugi, false,
+        fallbackToSimpleAuth, alignmentContext).getProxy();
+  }
+
+  /**
+   * @return a proxy which sends reads to the standby NameNodes and all other
+   *         calls to the current, presumably active, NameNode.  It is the
+   *         same proxy until the next failover.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized ProxyInfo<T> getProxy() {
+    final int index = getCurrentProxyIndex();
+    if (currentProxy == null || currentProxyIndex != index) {
+      final ProxyInfo<T> current = super.getProxy();
+      final T proxy = (T) Proxy.newProxyInstance(xface.getClassLoader(),
+          current.proxy.getClass().getInterfaces(),
+          new StandbyReadInvocationHandler(current.proxy, index));
+      currentProxy = new ProxyInfo<T>(proxy, current.proxyInfo);
+      currentProxyIndex = index;
+    }
+    return currentProxy;
+  }
+
+  @VisibleForTesting
+  ClientGSIContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  private synchronized boolean isReachable(int index) {
+    return unreachableSince[index] == 0 ||
+        Time.monotonicNow() - unreachableSince[index]
+            >= UNREACHABLE_STANDBY_SKIP_MS;
+  }
+
+  private synchronized void setReachable(int index, boolean reachable) {
+    unreachableSince[index] = reachable ? 0 : Time.monotonicNow();
+  }
+
+  /**
+   * @return true if a read which failed on a standby NameNode with the given
+   *         exception should be sent to the active NameNode.
+   */
+  private boolean shouldFallBack(int index, Throwable t) {
+    if (t instanceof RemoteException) {
+      // the standby does not serve reads, or has not caught up yet
+      return ((RemoteException) t).unwrapRemoteException(
+          StandbyException.class) instanceof StandbyException;
+    }
+    if (t instanceof IOException) {
+      LOG.info("Skipping the NameNode at " + getProxy(index).proxyInfo
+          + " for reads for " + UNREACHABLE_STANDBY_SKIP_MS + " ms: " + t);
+      setReachable(index, false);
+      return true;
+    }
+    return false;
+  }
+
+  private class StandbyReadInvocationHandler implements InvocationHandler {
+    private final T active;
+    private final int activeIndex;
+
+    StandbyReadInvocationHandler(T active, int activeIndex) {
+      this.active = active;
+      this.activeIndex = activeIndex;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      // without a state id a standby cannot tell whether it is stale
+      if (method.isAnnotationPresent(ReadOnly.class)
+          && alignmentContext.getLastSeenStateId() > 0) {
+        for (int i = 0; i < getNumProxies(); i++) {
+          if (i == activeIndex || !isReachable(i)) {
+            continue;
+          }
+          try {
+            final Object result = method.invoke(getProxy(i).proxy, args);
+            setReachable(i, true);
+            return result;
+          } catch (InvocationTargetException e) {
+            if (!shouldFallBack(i, e.getCause())) {
+              throw e.getCause();
+            }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Sending " + method.getName() + " to the active"
+                  + " NameNode, the NameNode at " + getProxy(i).proxyInfo
+                  + " failed: " + e.getCause());
+            }
+          }
+        }
+      }
+      try {
+        return method.invoke(active, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
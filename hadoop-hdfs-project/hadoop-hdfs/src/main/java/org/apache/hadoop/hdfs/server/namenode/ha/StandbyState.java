@@ -24,6 +24,8 @@
 import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNode.OperationCategory;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
 
 /**
@@ -82,6 +84,19 @@ public void checkOperation(HAContext context, OperationCategory op)
         (op == OperationCategory.READ && context.allowStaleReads())) {
       return;
     }
+    // Only clients which send the last transaction id they have seen, e.g.
+    // through StandbyReadProxyProvider, can read consistently.
+    final long clientTxId = Server.getClientStateId();
+    if (op == OperationCategory.READ && context.allowConsistentReads() &&
+        clientTxId != RpcConstants.INVALID_STATE_ID) {
+      final long appliedTxId = context.getLastAppliedTxId();
+      if (clientTxId <= appliedTxId) {
+        return;
+      }
+      throw new StandbyException("Transaction " + clientTxId + " seen by the"
+          + " client has not been applied yet in state " + context.getState()
+          + ", the last applied transaction is " + appliedTxId);
+    }
     String msg = "Operation category " + op + " is not supported in state "
         + context.getState();
     throw new StandbyException(msg);
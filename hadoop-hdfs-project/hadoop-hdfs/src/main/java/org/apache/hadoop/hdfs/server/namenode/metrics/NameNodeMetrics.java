@@ -58,6 +58,8 @@ public class NameNodeMetrics {
   @Metric MutableCounterLong createSymlinkOps;
   @Metric MutableCounterLong getLinkTargetOps;
   @Metric MutableCounterLong filesInGetListingOps;
+  @Metric("Number of getBatchedListing operations")
+  MutableCounterLong batchedGetListingOps;
   @Metric("Number of allowSnapshot operations")
   MutableCounterLong allowSnapshotOps;
   @Metric("Number of disallowSnapshot operations")
@@ -89,6 +91,7 @@ public long totalFileOps(){
       filesTruncated.value() +
       deleteFileOps.value() +
       getListingOps.value() +
+      batchedGetListingOps.value() +
       fileInfoOps.value() +
       getLinkTargetOps.value() +
       createSnapshotOps.value() +
@@ -109,6 +112,11 @@ public long totalFileOps(){
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
+  @Metric("Time a storage block report holds the namesystem write lock")
+  MutableRate blockReportLockHold;
+  @Metric("Number of block reports rejected because too many block reports" +
+      " were being processed")
+  MutableCounterLong blockReportsRejected;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
 
@@ -219,6 +227,10 @@ public void incrFilesInGetListingOps(int delta) {
     filesInGetListingOps.incr(delta);
   }
 
+  public void incrBatchedGetListingOps() {
+    batchedGetListingOps.incr();
+  }
+
   public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
@@ -293,6 +305,14 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportLockHold(long latency) {
+    blockReportLockHold.add(latency);
+  }
+
+  public void incrBlockReportsRejected() {
+    blockReportsRejected.incr();
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
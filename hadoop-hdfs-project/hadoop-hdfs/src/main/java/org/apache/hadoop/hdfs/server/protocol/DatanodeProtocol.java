@@ -102,6 +102,8 @@ public DatanodeRegistration registerDatanode(DatanodeRegistration registration
    * @param xceiverCount number of active transceiver threads
    * @param failedVolumes number of failed volumes
    * @param volumeFailureSummary info about volume failures
+   * @param slowPeers downstream peers which the datanode finds slow
+   * @param slowDisks volumes which the datanode finds slow
    * @throws IOException on error
    */
   @Idempotent
@@ -112,7 +114,9 @@ public HeartbeatResponse sendHeartbeat(DatanodeRegistration registration,
                                        int xmitsInProgress,
                                        int xceiverCount,
                                        int failedVolumes,
-                                       VolumeFailureSummary volumeFailureSummary)
+                                       VolumeFailureSummary volumeFailureSummary,
+                                       SlowPeerReports slowPeers,
+                                       SlowDiskReports slowDisks)
       throws IOException;
 
   /**
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Summarizes the downstream peers which a DataNode finds slow compared to
+ * its other peers: sending them the packets of a write pipeline takes much
+ * longer.
+ */
+@InterfaceAudience.Private
+public final class SlowPeerReports {
+  public static final SlowPeerReports EMPTY_REPORT =
+      new SlowPeerReports(Collections.<String, Long>emptyMap());
+
+  /** The latency in milliseconds, keyed by the transfer address of the peer. */
+  private final Map<String, Long> latencies;
+
+  private SlowPeerReports(Map<String, Long> latencies) {
+    this.latencies = latencies;
+  }
+
+  public static SlowPeerReports create(Map<String, Long> latencies) {
+    Preconditions.checkNotNull(latencies);
+    if (latencies.isEmpty()) {
+      return EMPTY_REPORT;
+    }
+    return new SlowPeerReports(ImmutableMap.copyOf(latencies));
+  }
+
+  /**
+   * @return the latency in milliseconds of the slow downstream peers, keyed by the
+   *         transfer address of the peer
+   */
+  public Map<String, Long> getSlowPeers() {
+    return latencies;
+  }
+
+  public boolean haveSlowPeers() {
+    return !latencies.isEmpty();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof SlowPeerReports
+        && latencies.equals(((SlowPeerReports) o).latencies));
+  }
+
+  @Override
+  public int hashCode() {
+    return latencies.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return latencies.toString();
+  }
+}
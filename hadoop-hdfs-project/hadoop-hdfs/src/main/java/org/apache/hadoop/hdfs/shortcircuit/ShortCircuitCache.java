@@ -30,6 +30,7 @@
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -311,6 +312,12 @@ public interface ShortCircuitReplicaCreator {
    */
   private final long maxEvictableMmapedLifespanMs;
 
+  /**
+   * Maximum total size of the existing mmaps.  Mmaped evictable elements
+   * are demoted when it is exceeded.
+   */
+  private final long maxMmappedBytes;
+
   /**
    * The minimum number of milliseconds we'll wait after an unsuccessful
    * mmap attempt before trying again.
@@ -333,6 +340,16 @@ public interface ShortCircuitReplicaCreator {
    */
   private int outstandingMmapCount = 0;
 
+  /**
+   * Total size of the existing mmaps associated with this cache.
+   */
+  private long mmappedBytes = 0;
+
+  /**
+   * Number of bytes which were read from mmaps by block readers.
+   */
+  private final AtomicLong mmapReadBytes = new AtomicLong();
+
   /**
    * Manages short-circuit shared memory segments for the client.
    */
@@ -356,12 +373,24 @@ public static ShortCircuitCache fromConf(Configuration conf) {
         conf.getLong(DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS,
             DFSConfigKeys.DFS_CLIENT_SHORT_CIRCUIT_REPLICA_STALE_THRESHOLD_MS_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS,
-            DFSConfigKeys.DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS_DEFAULT));
+            DFSConfigKeys.DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS_DEFAULT),
+        conf.getLong(DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_MAX_BYTES,
+            DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_MAX_BYTES_DEFAULT));
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs,
+        DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_MAX_BYTES_DEFAULT);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs,
+      long maxMmappedBytes) {
     Preconditions.checkArgument(maxTotalSize >= 0);
     this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
@@ -370,6 +399,8 @@ public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs
     this.maxEvictableMmapedSize = maxEvictableMmapedSize;
     Preconditions.checkArgument(maxEvictableMmapedLifespanMs >= 0);
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
+    Preconditions.checkArgument(maxMmappedBytes >= 0);
+    this.maxMmappedBytes = maxMmappedBytes;
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
     DfsClientShmManager shmManager = null;
@@ -388,6 +419,32 @@ public long getStaleThresholdMs() {
     return staleThresholdMs;
   }
 
+  /**
+   * @return the total size of the existing mmaps.
+   */
+  public long getMmappedBytes() {
+    lock.lock();
+    try {
+      return mmappedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of bytes which were read from mmaps by block readers.
+   */
+  public long getMmapReadBytes() {
+    return mmapReadBytes.get();
+  }
+
+  /**
+   * Count bytes which a block reader read from an mmap.
+   */
+  void addMmapReadBytes(long bytes) {
+    mmapReadBytes.addAndGet(bytes);
+  }
+
   /**
    * Increment the reference count of a replica, and remove it from any free
    * list it may be in.
@@ -495,7 +552,9 @@ void unref(ShortCircuitReplica replica) {
   }
 
   /**
-   * Demote old evictable mmaps into the regular eviction map.
+   * Demote old evictable mmaps into the regular eviction map.  The least
+   * recently used ones are also demoted while there are too many of them
+   * or while the existing mmaps are too large.
    *
    * You must hold the cache lock while calling this function.
    *
@@ -515,7 +574,8 @@ private int demoteOldEvictableMmaped(long now) {
       long evictionTimeMs = 
           TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
       if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
-        if (evictableMmapped.size() < maxEvictableMmapedSize) {
+        if ((evictableMmapped.size() < maxEvictableMmapedSize) &&
+            (mmappedBytes <= maxMmappedBytes)) {
           break;
         }
         needMoreSpace = true;
@@ -564,11 +624,14 @@ private void trimEvictionMaps() {
   }
 
   /**
-   * Munmap a replica, updating outstandingMmapCount.
+   * Munmap a replica, updating outstandingMmapCount and mmappedBytes.
+   *
+   * You must hold the cache lock while calling this function.
    *
    * @param replica  The replica to munmap.
    */
-  private void munmap(ShortCircuitReplica replica) {
+  void munmap(ShortCircuitReplica replica) {
+    mmappedBytes -= ((MappedByteBuffer)replica.mmapData).capacity();
     replica.munmap();
     outstandingMmapCount--;
   }
@@ -876,9 +939,12 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
         return null;
       } else {
         outstandingMmapCount++;
+        mmappedBytes += map.capacity();
         replica.mmapData = map;
         ref(replica);
         newCond.signalAll();
+        // Make room for the new mmap if the existing ones are too large.
+        demoteOldEvictableMmaped(Time.monotonicNow());
         return new ClientMmap(replica, map, anchored);
       }
     } finally {
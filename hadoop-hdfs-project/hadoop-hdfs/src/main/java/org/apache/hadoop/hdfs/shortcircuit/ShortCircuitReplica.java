@@ -248,7 +248,7 @@ void close() {
     Preconditions.checkState(purged,
         "tried to close unpurged replica %s", this);
     if (hasMmap()) {
-      munmap();
+      cache.munmap(this);
       if (LOG.isTraceEnabled()) {
         suffix += "  munmapped.";
       }
@@ -285,6 +285,13 @@ public ClientMmap getOrCreateClientMmap(boolean anchor) {
     return cache.getOrCreateClientMmap(this, anchor);
   }
 
+  /**
+   * Count bytes which a block reader read from the mmap of this replica.
+   */
+  public void addMmapReadBytes(long bytes) {
+    cache.addMmapReadBytes(bytes);
+  }
+
   MappedByteBuffer loadMmapInternal() {
     try {
       FileChannel channel = dataStream.getChannel();
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A list which stores its elements in a sequence of bounded chunks, so that
+ * inserting or removing an element in the middle of a large list only moves
+ * the elements of one chunk instead of all the following elements.
+ * <p>
+ * A chunk is split in two once it holds more than the maximum chunk size,
+ * and merged with a neighbour once it holds less than a quarter of it.
+ * Positional access finds the chunk by a binary search over the offsets of
+ * the chunks, and an insertion or removal updates the offsets of the
+ * following chunks.  With n elements and chunks of size c, this makes both
+ * O(c + n/c) rather than O(n).
+ * <p>
+ * {@link #binarySearch(Object)} searches a sorted list in O(log n).
+ *
+ * @param <E> The type of the list elements.
+ */
+@InterfaceAudience.Private
+public class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+  private final int maxChunkSize;
+  private final List<ArrayList<E>> chunks = new ArrayList<ArrayList<E>>();
+  /** offsets[i] is the index of the first element of chunks.get(i). */
+  private int[] offsets = new int[4];
+  private int size = 0;
+
+  public ChunkedList(int maxChunkSize) {
+    Preconditions.checkArgument(maxChunkSize >= 4,
+        "maxChunkSize = %s < 4", maxChunkSize);
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /** Create a list with the elements of the given collection. */
+  public ChunkedList(int maxChunkSize, Collection<? extends E> elements) {
+    this(maxChunkSize);
+    // fill the chunks to half, so that the first insertions do not split
+    final int fill = maxChunkSize / 2;
+    ArrayList<E> chunk = null;
+    for (E e : elements) {
+      if (chunk == null || chunk.size() == fill) {
+        chunk = new ArrayList<E>(maxChunkSize);
+        chunks.add(chunk);
+      }
+      chunk.add(e);
+    }
+    size = elements.size();
+    updateOffsets(0);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** @return the number of chunks. */
+  public int getNumChunks() {
+    return chunks.size();
+  }
+
+  /** @return the index of the chunk holding the element at the index. */
+  private int chunkOf(int index) {
+    final int i = Arrays.binarySearch(offsets, 0, chunks.size(), index);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  private void checkIndex(int index, int upper) {
+    if (index < 0 || index >= upper) {
+      throw new IndexOutOfBoundsException("index = " + index
+          + ", size = " + size);
+    }
+  }
+
+  @Override
+  public E get(int index) {
+    checkIndex(index, size);
+    final int c = chunkOf(index);
+    return chunks.get(c).get(index - offsets[c]);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    checkIndex(index, size);
+    final int c = chunkOf(index);
+    return chunks.get(c).set(index - offsets[c], element);
+  }
+
+  @Override
+  public void add(int index, E element) {
+    checkIndex(index, size + 1);
+    final int c;
+    if (chunks.isEmpty()) {
+      chunks.add(new ArrayList<E>(maxChunkSize));
+      c = 0;
+    } else {
+      // append to the last chunk rather than starting a new one
+      c = index == size ? chunks.size() - 1 : chunkOf(index);
+    }
+    final ArrayList<E> chunk = chunks.get(c);
+    chunk.add(index - offsets[c], element);
+    size++;
+    modCount++;
+    if (chunk.size() > maxChunkSize) {
+      final List<E> tail = chunk.subList(chunk.size() / 2, chunk.size());
+      final ArrayList<E> next = new ArrayList<E>(maxChunkSize);
+      next.addAll(tail);
+      tail.clear();
+      chunks.add(c + 1, next);
+      updateOffsets(c + 1);
+    } else {
+      for (int i = c + 1; i < chunks.size(); i++) {
+        offsets[i]++;
+      }
+    }
+  }
+
+  @Override
+  public E remove(int index) {
+    checkIndex(index, size);
+    final int c = chunkOf(index);
+    final ArrayList<E> chunk = chunks.get(c);
+    final E removed = chunk.remove(index - offsets[c]);
+    size--;
+    modCount++;
+    if (chunk.size() < maxChunkSize / 4 && chunks.size() > 1) {
+      // merge with the smaller neighbour
+      final int l = c == chunks.size() - 1 || (c > 0 &&
+          chunks.get(c - 1).size() < chunks.get(c + 1).size()) ? c - 1 : c;
+      final ArrayList<E> left = chunks.get(l);
+      final ArrayList<E> right = chunks.get(l + 1);
+      if (left.size() + right.size() <= maxChunkSize) {
+        left.addAll(right);
+        chunks.remove(l + 1);
+        updateOffsets(l + 1);
+        return removed;
+      }
+    }
+    if (chunk.isEmpty()) {
+      chunks.remove(c);
+      updateOffsets(c);
+    } else {
+      for (int i = c + 1; i < chunks.size(); i++) {
+        offsets[i]--;
+      }
+    }
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    chunks.clear();
+    size = 0;
+    modCount++;
+  }
+
+  /** Recompute the offsets of the chunks from the given chunk on. */
+  private void updateOffsets(int from) {
+    if (offsets.length < chunks.size()) {
+      offsets = Arrays.copyOf(offsets,
+          Math.max(chunks.size(), offsets.length * 2));
+    }
+    int offset = from == 0 ? 0
+        : offsets[from - 1] + chunks.get(from - 1).size();
+    for (int i = from; i < chunks.size(); i++) {
+      offsets[i] = offset;
+      offset += chunks.get(i).size();
+    }
+  }
+
+  /** Trim the capacity of every chunk to its size. */
+  public void trimToSize() {
+    for (ArrayList<E> chunk : chunks) {
+      chunk.trimToSize();
+    }
+  }
+
+  /**
+   * The same as {@link Collections#binarySearch(List, Object)} for a list
+   * sorted in the natural order of its elements, in O(log n).
+   */
+  @SuppressWarnings("unchecked")
+  public <K> int binarySearch(K key) {
+    // find the last chunk whose first element is not greater than the key
+    int lower = 0;
+    for (int upper = chunks.size() - 1; lower <= upper; ) {
+      final int mid = (upper + lower) >>> 1;
+      final int d = ((Comparable<? super K>) chunks.get(mid).get(0))
+          .compareTo(key);
+      if (d == 0) {
+        return offsets[mid];
+      } else if (d > 0) {
+        upper = mid - 1;
+      } else {
+        lower = mid + 1;
+      }
+    }
+    if (lower == 0) {
+      return -1;
+    }
+    final int c = lower - 1;
+    final int i = Collections.binarySearch(
+        (List<? extends Comparable<? super K>>) chunks.get(c), key);
+    return i >= 0 ? offsets[c] + i : i - offsets[c];
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int chunk = 0;
+      private int next = 0;
+      private int expectedModCount = modCount;
+
+      @Override
+      public boolean hasNext() {
+        return chunk < chunks.size() - 1
+            || (chunk < chunks.size() && next < chunks.get(chunk).size());
+      }
+
+      @Override
+      public E next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        if (next == chunks.get(chunk).size()) {
+          chunk++;
+          next = 0;
+        }
+        return chunks.get(chunk).get(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
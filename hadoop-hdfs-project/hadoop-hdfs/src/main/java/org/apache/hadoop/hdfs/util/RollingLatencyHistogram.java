@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A histogram of latencies in milliseconds over a rolling time window.
+ *
+ * The buckets grow geometrically, four per doubling, so a percentile is
+ * reported as the upper bound of its bucket, within 25% of the actual
+ * value.  Samples are counted in the current window and the previous
+ * one; when the current window is older than the window length it becomes
+ * the previous window, so a percentile always covers between one and two
+ * window lengths of samples.
+ */
+@InterfaceAudience.Private
+public class RollingLatencyHistogram {
+  /** Bucket i counts the latencies up to BOUNDS[i] milliseconds. */
+  private static final long[] BOUNDS;
+
+  static {
+    final List<Long> bounds = new ArrayList<Long>();
+    for (long base = 1; base < (1L << 17); base <<= 1) {
+      for (int i = 0; i < 4; i++) {
+        final long bound = base + base * i / 4;
+        if (bounds.isEmpty() || bound > bounds.get(bounds.size() - 1)) {
+          bounds.add(bound);
+        }
+      }
+    }
+    bounds.add(Long.MAX_VALUE);
+    BOUNDS = new long[bounds.size()];
+    for (int i = 0; i < BOUNDS.length; i++) {
+      BOUNDS[i] = bounds.get(i);
+    }
+  }
+
+  private final long windowMs;
+  private long[] current = new long[BOUNDS.length];
+  private long[] previous = new long[BOUNDS.length];
+  private long currentCount;
+  private long previousCount;
+  private long currentStart;
+
+  public RollingLatencyHistogram(long windowMs) {
+    Preconditions.checkArgument(windowMs > 0, "windowMs = %s <= 0", windowMs);
+    this.windowMs = windowMs;
+    this.currentStart = Time.monotonicNow();
+  }
+
+  /** Add a latency sample. */
+  public void add(long latencyMs) {
+    add(latencyMs, Time.monotonicNow());
+  }
+
+  @VisibleForTesting
+  synchronized void add(long latencyMs, long now) {
+    roll(now);
+    int i = Arrays.binarySearch(BOUNDS, Math.max(0, latencyMs));
+    if (i < 0) {
+      i = -i - 1;
+    }
+    current[i]++;
+    currentCount++;
+  }
+
+  /** @return the number of samples in the current and previous windows. */
+  public long getCount() {
+    return getCount(Time.monotonicNow());
+  }
+
+  @VisibleForTesting
+  synchronized long getCount(long now) {
+    roll(now);
+    return currentCount + previousCount;
+  }
+
+  /**
+   * @param percentile a percentile in (0, 100]
+   * @return the upper bound of the bucket holding the given percentile of
+   *         the samples, Long.MAX_VALUE if it is beyond the largest bucket,
+   *         or -1 if there are no samples.
+   */
+  public long getPercentile(double percentile) {
+    return getPercentile(percentile, Time.monotonicNow());
+  }
+
+  @VisibleForTesting
+  synchronized long getPercentile(double percentile, long now) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100,
+        "percentile = %s is not in (0, 100]", percentile);
+    roll(now);
+    final long total = currentCount + previousCount;
+    if (total == 0) {
+      return -1;
+    }
+    final long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      seen += current[i] + previous[i];
+      if (seen >= rank) {
+        return BOUNDS[i];
+      }
+    }
+    return BOUNDS[BOUNDS.length - 1];
+  }
+
+  private void roll(long now) {
+    final long age = now - currentStart;
+    if (age < windowMs) {
+      return;
+    }
+    final long[] reuse = previous;
+    if (age < 2 * windowMs) {
+      previous = current;
+      previousCount = currentCount;
+    } else {
+      // nothing was recorded for a whole window, forget everything
+      Arrays.fill(current, 0);
+      previous = current;
+      previousCount = 0;
+    }
+    Arrays.fill(reuse, 0);
+    current = reuse;
+    currentCount = 0;
+    currentStart = now;
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Compares the client write path with heap packet buffers and with pooled
+ * direct packet buffers.
+ *
+ * Synopsis: DFSOutputStreamBenchmark [-numFiles numFiles]
+ *     [-fileSize fileSizeInMB] [-writeSize bytesPerWrite]
+ *     [-replication replicationFactor]
+ *
+ * The benchmark starts a MiniDFSCluster and writes the same files once per
+ * mode, each file in a single block.  It reports the write throughput and
+ * the bytes allocated per GB written by the client threads: the writer, the
+ * DataStreamer and the ResponseProcessor.  The allocations are read from
+ * the per-thread counters of the JVM, so the datanodes running in the same
+ * process are not counted.
+ */
+public class DFSOutputStreamBenchmark extends Configured implements Tool {
+  private static final Log LOG =
+      LogFactory.getLog(DFSOutputStreamBenchmark.class);
+
+  static final String BASE_PATH = "/outputStreamBenchmark";
+  static final long MB = 1024L * 1024;
+  static final long GB = 1024L * MB;
+
+  static final String USAGE = "Usage: DFSOutputStreamBenchmark"
+      + " [-numFiles numFiles] [-fileSize fileSizeInMB]"
+      + " [-writeSize bytesPerWrite] [-replication replicationFactor]";
+
+  /** The cost of writing with one kind of packet buffer. */
+  static class Result {
+    final boolean direct;
+    final long bytesWritten;
+    final long elapsedNanos;
+    /** Bytes allocated by the client threads, or -1 if not supported. */
+    final long allocatedBytes;
+
+    Result(boolean direct, long bytesWritten, long elapsedNanos,
+        long allocatedBytes) {
+      this.direct = direct;
+      this.bytesWritten = bytesWritten;
+      this.elapsedNanos = elapsedNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    double getMBPerSec() {
+      return elapsedNanos == 0 ? 0 :
+          (double) bytesWritten / MB / (elapsedNanos / 1e9);
+    }
+
+    long getAllocatedBytesPerGB() {
+      return allocatedBytes < 0 || bytesWritten == 0 ? -1 :
+          (long) ((double) allocatedBytes * GB / bytesWritten);
+    }
+
+    @Override
+    public String toString() {
+      return (direct ? "Direct" : "Heap") + " packet buffers: "
+          + bytesWritten + " bytes in " + elapsedNanos / 1000000 + " ms, "
+          + String.format("%.2f", getMBPerSec()) + " MB/s, "
+          + getAllocatedBytesPerGB() + " bytes allocated per GB";
+    }
+  }
+
+  /**
+   * Write numFiles files of fileSize bytes to the cluster at uri, in
+   * writeSize byte writes, with heap or direct packet buffers.
+   */
+  static Result run(Configuration conf, URI uri, boolean direct,
+      int numFiles, long fileSize, int writeSize, short replication)
+      throws Exception {
+    final Configuration clientConf = new Configuration(conf);
+    clientConf.setBoolean(
+        DFSConfigKeys.DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_KEY, direct);
+    clientConf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT,
+        "DFSOutputStreamBenchmark-" + (direct ? "direct" : "heap"));
+    // whole MBs of at least one, so that each file fits in a single block
+    final long blockSize = Math.max(1, (fileSize + MB - 1) / MB) * MB;
+    final byte[] data = new byte[writeSize];
+    new Random(0xB0FL).nextBytes(data);
+    final Path dir = new Path(BASE_PATH, direct ? "direct" : "heap");
+
+    final FileSystem fs = FileSystem.newInstance(uri, clientConf);
+    try {
+      fs.delete(dir, true);
+      long elapsed = 0;
+      long allocated = 0;
+      for (int i = 0; i < numFiles; i++) {
+        final Path path = new Path(dir, "file" + i);
+        final long start = System.nanoTime();
+        final long writerStart = getAllocatedBytes(Thread.currentThread());
+        final FSDataOutputStream out = fs.create(path, true, writeSize,
+            replication, blockSize);
+        for (long written = 0; written < fileSize; written += writeSize) {
+          out.write(data, 0, (int) Math.min(writeSize, fileSize - written));
+        }
+        // wait for every packet to be acknowledged while the streamer and
+        // responder threads are still alive to be measured
+        out.hflush();
+        allocated += sumAllocatedBytes(writerStart);
+        out.close();
+        elapsed += System.nanoTime() - start;
+      }
+      return new Result(direct, numFiles * fileSize, elapsed,
+          allocated < 0 ? -1 : allocated);
+    } finally {
+      fs.close();
+    }
+  }
+
+  /**
+   * @return the bytes allocated by the current thread since writerStart
+   * plus by the live DataStreamer and ResponseProcessor threads, or a
+   * negative value if allocation counting is not supported.
+   */
+  private static long sumAllocatedBytes(long writerStart) {
+    if (writerStart < 0) {
+      return -1;
+    }
+    long sum = getAllocatedBytes(Thread.currentThread()) - writerStart;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().startsWith("DataStreamer for file")
+          || t.getName().startsWith("ResponseProcessor for block")) {
+        sum += Math.max(0, getAllocatedBytes(t));
+      }
+    }
+    return sum;
+  }
+
+  private static long getAllocatedBytes(Thread t) {
+    java.lang.management.ThreadMXBean bean =
+        ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean sunBean =
+        (com.sun.management.ThreadMXBean) bean;
+    if (!sunBean.isThreadAllocatedMemorySupported()
+        || !sunBean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return sunBean.getThreadAllocatedBytes(t.getId());
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    int numFiles = 4;
+    long fileSize = 256 * MB;
+    int writeSize = 64 * 1024;
+    short replication = 1;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      if (args[i].equals("-numFiles")) {
+        numFiles = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-fileSize")) {
+        fileSize = Long.parseLong(args[++i]) * MB;
+      } else if (args[i].equals("-writeSize")) {
+        writeSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-replication")) {
+        replication = Short.parseShort(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    if (numFiles < 1 || fileSize < 1 || writeSize < 1 || replication < 1) {
+      System.err.println(USAGE);
+      return -1;
+    }
+
+    final Configuration conf = new HdfsConfiguration(getConf());
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(replication).build();
+    try {
+      cluster.waitActive();
+      // warm up both paths before measuring
+      run(conf, cluster.getURI(), false, 1, Math.min(fileSize, 8 * MB),
+          writeSize, replication);
+      run(conf, cluster.getURI(), true, 1, Math.min(fileSize, 8 * MB),
+          writeSize, replication);
+      final Result heap = run(conf, cluster.getURI(), false, numFiles,
+          fileSize, writeSize, replication);
+      final Result direct = run(conf, cluster.getURI(), true, numFiles,
+          fileSize, writeSize, replication);
+      LOG.info("--- DFSOutputStream write path ---\n" + heap + "\n" + direct);
+    } finally {
+      cluster.shutdown();
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new DFSOutputStreamBenchmark(), args));
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the asynchronous metadata operations of
+ * {@link AsyncDistributedFileSystem}.
+ */
+public class TestAsyncDFS {
+  private static final int NUM_OPS = 100;
+  private static final int MAX_ASYNC_CALLS = 10;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private AsyncDistributedFileSystem adfs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    // fewer outstanding calls than operations, so that callers must wait
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        MAX_ASYNC_CALLS);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    adfs = fs.getAsyncDistributedFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testMkdirsAndGetFileStatus() throws Exception {
+    final Path parent = new Path("/testMkdirs");
+    final FsPermission permission = new FsPermission((short) 0755);
+    List<Future<Boolean>> mkdirs = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < NUM_OPS; i++) {
+      mkdirs.add(adfs.mkdirs(new Path(parent, "dir" + i), permission));
+    }
+    for (Future<Boolean> f : mkdirs) {
+      assertTrue(f.get());
+    }
+
+    List<Future<FileStatus>> statuses = new ArrayList<Future<FileStatus>>();
+    for (int i = 0; i < NUM_OPS; i++) {
+      statuses.add(adfs.getFileStatus(new Path(parent, "dir" + i)));
+    }
+    for (int i = 0; i < NUM_OPS; i++) {
+      FileStatus status = statuses.get(i).get();
+      assertTrue(status.isDirectory());
+      assertEquals(fs.makeQualified(new Path(parent, "dir" + i)),
+          status.getPath());
+      assertEquals(permission, status.getPermission());
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testSetPermissionAndOwner() throws Exception {
+    final Path parent = new Path("/testSetPermission");
+    for (int i = 0; i < NUM_OPS; i++) {
+      DFSTestUtil.createFile(fs, new Path(parent, "file" + i), 0, (short) 1,
+          0L);
+    }
+    List<Future<Void>> results = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_OPS; i++) {
+      Path p = new Path(parent, "file" + i);
+      results.add(adfs.setPermission(p, new FsPermission((short) (i % 0777))));
+      results.add(adfs.setOwner(p, "user" + i, "group" + i));
+    }
+    for (Future<Void> f : results) {
+      f.get();
+    }
+    for (int i = 0; i < NUM_OPS; i++) {
+      FileStatus status = fs.getFileStatus(new Path(parent, "file" + i));
+      assertEquals(new FsPermission((short) (i % 0777)),
+          status.getPermission());
+      assertEquals("user" + i, status.getOwner());
+      assertEquals("group" + i, status.getGroup());
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testRename() throws Exception {
+    final Path src = new Path("/testRenameSrc");
+    final Path dst = new Path("/testRenameDst");
+    for (int i = 0; i < NUM_OPS; i++) {
+      DFSTestUtil.createFile(fs, new Path(src, "file" + i), 0, (short) 1, 0L);
+    }
+    fs.mkdirs(dst);
+    List<Future<Void>> renames = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_OPS; i++) {
+      renames.add(adfs.rename(new Path(src, "file" + i),
+          new Path(dst, "file" + i), Rename.NONE));
+    }
+    for (Future<Void> f : renames) {
+      f.get();
+    }
+    for (int i = 0; i < NUM_OPS; i++) {
+      assertFalse(fs.exists(new Path(src, "file" + i)));
+      assertTrue(fs.exists(new Path(dst, "file" + i)));
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testFailures() throws Exception {
+    final Path missing = new Path("/testFailures/missing");
+    Future<Void> rename = adfs.rename(missing, new Path("/testFailures/dst"),
+        Rename.NONE);
+    Future<FileStatus> status = adfs.getFileStatus(missing);
+    try {
+      rename.get();
+      fail("rename of a missing file should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+    try {
+      status.get();
+      fail("getFileStatus of a missing file should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+    // the failures do not leave the client in asynchronous mode
+    assertFalse(fs.exists(missing));
+  }
+
+  /**
+   * A NameNode proxy which cannot make asynchronous calls completes the
+   * operations before they return.
+   */
+  @Test(timeout=60000)
+  public void testSynchronousNameNodeProxy() throws Exception {
+    final DFSClient client = fs.dfs;
+    fs.dfs = new DFSClient(null, cluster.getNameNodeRpc(), fs.getConf(),
+        null);
+    try {
+      final Path dir = new Path("/testSynchronous/dir");
+      final Future<Boolean> mkdirs = adfs.mkdirs(dir,
+          new FsPermission((short) 0755));
+      assertTrue(mkdirs.isDone());
+      assertTrue(mkdirs.get());
+
+      final Future<FileStatus> status = adfs.getFileStatus(dir);
+      assertTrue(status.isDone());
+      assertTrue(status.get().isDirectory());
+
+      final Path dst = new Path("/testSynchronous/dst");
+      final Future<Void> rename = adfs.rename(dir, dst, Rename.NONE);
+      assertTrue(rename.isDone());
+      assertTrue(fs.exists(dst));
+    } finally {
+      fs.dfs = client;
+    }
+  }
+}
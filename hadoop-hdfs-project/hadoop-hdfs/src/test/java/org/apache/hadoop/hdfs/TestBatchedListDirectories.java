@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.InvalidRequestException;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.PartialListing;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test listing many directories with getBatchedListing.
+ */
+public class TestBatchedListDirectories {
+  private static final int LS_LIMIT = 5;
+  private static final int BATCHED_LISTING_LIMIT = 4;
+  private static final int NUM_DIRS = 10;
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem fs;
+  private static List<Path> dirs = new ArrayList<Path>();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, LS_LIMIT);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BATCHED_LISTING_LIMIT_KEY,
+        BATCHED_LISTING_LIMIT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    // directories with 0 to 2 * LS_LIMIT - 1 files, so that listings span
+    // pages and pages span directories
+    for (int i = 0; i < NUM_DIRS; i++) {
+      Path dir = new Path("/dir" + i);
+      fs.mkdirs(dir);
+      for (int j = 0; j < i; j++) {
+        DFSTestUtil.createFile(fs, new Path(dir, "file" + j), 1, (short) 1,
+            0L);
+      }
+      dirs.add(dir);
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static <T extends FileStatus> List<T> getListing(
+      RemoteIterator<PartialListing<T>> it, Path listedPath)
+      throws Exception {
+    List<T> listing = new ArrayList<T>();
+    while (it.hasNext()) {
+      PartialListing<T> partial = it.next();
+      assertEquals(listedPath, partial.getListedPath());
+      listing.addAll(partial.get());
+    }
+    return listing;
+  }
+
+  @Test(timeout=60000)
+  public void testListStatus() throws Exception {
+    RemoteIterator<PartialListing<FileStatus>> it =
+        fs.batchedListStatusIterator(dirs);
+    int dirIndex = 0;
+    List<FileStatus> listing = new ArrayList<FileStatus>();
+    while (it.hasNext()) {
+      PartialListing<FileStatus> partial = it.next();
+      // the partial listings of a path are consecutive
+      while (!dirs.get(dirIndex).equals(partial.getListedPath())) {
+        assertArrayEquals(fs.listStatus(dirs.get(dirIndex)),
+            listing.toArray(new FileStatus[listing.size()]));
+        listing.clear();
+        dirIndex++;
+      }
+      listing.addAll(partial.get());
+    }
+    assertEquals(NUM_DIRS - 1, dirIndex);
+    assertArrayEquals(fs.listStatus(dirs.get(dirIndex)),
+        listing.toArray(new FileStatus[listing.size()]));
+  }
+
+  @Test(timeout=60000)
+  public void testListLocatedStatus() throws Exception {
+    Path dir = dirs.get(NUM_DIRS - 1);
+    List<LocatedFileStatus> listing = getListing(
+        fs.batchedListLocatedStatusIterator(Arrays.asList(dir)), dir);
+    assertEquals(NUM_DIRS - 1, listing.size());
+    RemoteIterator<LocatedFileStatus> expected = fs.listLocatedStatus(dir);
+    for (LocatedFileStatus status : listing) {
+      assertEquals(expected.next(), status);
+      assertEquals(1, status.getBlockLocations().length);
+    }
+    assertFalse(expected.hasNext());
+  }
+
+  @Test(timeout=60000)
+  public void testListFileAndRelativePath() throws Exception {
+    Path file = new Path(dirs.get(1), "file0");
+    List<FileStatus> listing = getListing(
+        fs.batchedListStatusIterator(Arrays.asList(file)), file);
+    assertEquals(1, listing.size());
+    assertEquals(fs.getFileStatus(file), listing.get(0));
+
+    Path relative = new Path("../dir2");
+    fs.setWorkingDirectory(new Path("/dir1"));
+    try {
+      listing = getListing(
+          fs.batchedListStatusIterator(Arrays.asList(relative)), relative);
+      assertArrayEquals(fs.listStatus(dirs.get(2)),
+          listing.toArray(new FileStatus[listing.size()]));
+    } finally {
+      fs.setWorkingDirectory(fs.getHomeDirectory());
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testPathErrors() throws Exception {
+    Path missing = new Path("/missing");
+    List<Path> paths = Arrays.asList(dirs.get(3), missing, dirs.get(4));
+    RemoteIterator<PartialListing<FileStatus>> it =
+        fs.batchedListStatusIterator(paths);
+    List<Path> listed = new ArrayList<Path>();
+    while (it.hasNext()) {
+      PartialListing<FileStatus> partial = it.next();
+      listed.add(partial.getListedPath());
+      if (partial.getListedPath().equals(missing)) {
+        try {
+          partial.get();
+          fail("listing a missing path should fail");
+        } catch (FileNotFoundException e) {
+          assertTrue(e.getMessage().contains(missing.toString()));
+        }
+      } else {
+        assertEquals(partial.getListedPath().getName().equals("dir3") ? 3 : 4,
+            partial.get().size());
+      }
+    }
+    assertEquals(paths, listed);
+  }
+
+  @Test(timeout=60000)
+  public void testInvalidRequests() throws Exception {
+    DFSClient client = fs.getClient();
+    String[] srcs = new String[BATCHED_LISTING_LIMIT + 1];
+    for (int i = 0; i < srcs.length; i++) {
+      srcs[i] = dirs.get(i).toString();
+    }
+    try {
+      client.batchedListPaths(srcs, HdfsFileStatus.EMPTY_NAME, false);
+      fail("listing too many paths should fail");
+    } catch (InvalidRequestException e) {
+      // expected
+    }
+
+    // a key of a listing of other paths
+    String[] first = Arrays.copyOf(srcs, 2);
+    BatchedDirectoryListing page =
+        client.batchedListPaths(new String[] {dirs.get(9).toString()},
+            HdfsFileStatus.EMPTY_NAME, false);
+    assertTrue(page.hasMore());
+    try {
+      client.batchedListPaths(first, page.getStartAfter(), false);
+      fail("a key of other paths should be rejected");
+    } catch (InvalidRequestException e) {
+      // expected
+    }
+    try {
+      client.batchedListPaths(first, new byte[] {1, 2, 3}, false);
+      fail("a corrupt key should be rejected");
+    } catch (InvalidRequestException e) {
+      // expected
+    }
+  }
+}
@@ -19,9 +19,11 @@
 
 import static org.hamcrest.CoreMatchers.equalTo;
 
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -34,6 +36,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitReplica;
@@ -42,6 +45,7 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.net.unix.TemporarySocketDirectory;
+import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.Time;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -700,6 +704,181 @@ public void testBlockReaderLocalReadZeroBytesNoChecksumNoReadahead()
   }
   
 
+  private static class TestBlockReaderLocalMmapReads
+      extends BlockReaderLocalTest {
+    @Override
+    public void setConfiguration(HdfsConfiguration conf) {
+      conf.setBoolean(DFSConfigKeys.DFS_CLIENT_MMAP_READ_ENABLED, true);
+    }
+
+    @Override
+    public void doTest(BlockReaderLocal reader, byte original[])
+        throws IOException {
+      ByteBuffer buf = ByteBuffer.wrap(new byte[TEST_LENGTH]);
+      byte arr[] = new byte[TEST_LENGTH];
+      // Without an anchor, only the reads skipping checksums use the mmap.
+      readFully(reader, buf, 0, 10);
+      assertArrayRegionsEqual(original, 0, buf.array(), 0, 10);
+      Assert.assertEquals(!reader.getVerifyChecksum(),
+          reader.isReadingFromMmap());
+      reader.forceAnchorable();
+      readFully(reader, buf, 10, 100);
+      assertArrayRegionsEqual(original, 10, buf.array(), 10, 100);
+      Assert.assertTrue(reader.isReadingFromMmap());
+      reader.readFully(arr, 110, 700);
+      assertArrayRegionsEqual(original, 110, arr, 110, 700);
+      reader.forceUnanchorable();
+      reader.skip(1); // skip from offset 810 to offset 811
+      readFully(reader, buf, 811, 5);
+      assertArrayRegionsEqual(original, 811, buf.array(), 811, 5);
+      reader.forceAnchorable();
+      reader.skip(TEST_LENGTH - 10 - 816);
+      reader.readFully(arr, TEST_LENGTH - 10, 10);
+      assertArrayRegionsEqual(original, TEST_LENGTH - 10, arr,
+          TEST_LENGTH - 10, 10);
+      Assert.assertEquals(-1, reader.read(arr, 0, 1));
+      Assert.assertEquals(-1, reader.read(ByteBuffer.allocate(1)));
+    }
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapReads() throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(),
+        true, DFSConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapReadsNoChecksum() throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(),
+        false, DFSConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapReadsNoReadahead() throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(), true, 0);
+  }
+
+  /**
+   * Test the mmap reads of a replica without checksums, which does not need
+   * a shared memory segment.
+   */
+  @Test(timeout=60000)
+  public void testMmapReadsOfReplicaWithoutChecksum() throws IOException {
+    final int length = BlockReaderLocalTest.TEST_LENGTH;
+    final byte original[] = DFSTestUtil.calculateFileContentsFromSeed(
+        4567L, length);
+    TemporarySocketDirectory dir = new TemporarySocketDirectory();
+    File dataFile = new File(dir.getDir(), "data");
+    File metaFile = new File(dir.getDir(), "meta");
+    FileOutputStream dataOut = new FileOutputStream(dataFile);
+    dataOut.write(original);
+    dataOut.close();
+    DataOutputStream metaOut =
+        new DataOutputStream(new FileOutputStream(metaFile));
+    BlockMetadataHeader.writeHeader(metaOut, new BlockMetadataHeader(
+        (short)1, DataChecksum.newDataChecksum(DataChecksum.Type.NULL, 4)));
+    metaOut.close();
+
+    ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000000, 0);
+    ExtendedBlock block = new ExtendedBlock("test_bp1", 123);
+    ShortCircuitReplica replica = new ShortCircuitReplica(
+        ExtendedBlockId.fromExtendedBlock(block),
+        new FileInputStream(dataFile), new FileInputStream(metaFile),
+        cache, Time.monotonicNow(), null);
+    BlockReaderLocal reader = new BlockReaderLocal.Builder(
+            new DFSClient.Conf(new HdfsConfiguration())).
+        setFilename(dataFile.getName()).
+        setBlock(block).
+        setShortCircuitReplica(replica).
+        setMmapReadEnabled(true).
+        build();
+    try {
+      ByteBuffer buf = ByteBuffer.allocateDirect(length);
+      byte arr[] = new byte[length];
+      reader.readFully(arr, 0, 1000);
+      Assert.assertTrue(reader.isReadingFromMmap());
+      reader.skip(24);
+      buf.limit(2000);
+      Assert.assertEquals(2000, reader.read(buf));
+      buf.flip();
+      buf.get(arr, 1024, 2000);
+      reader.readFully(arr, 3024, length - 3024);
+      assertArrayRegionsEqual(original, 0, arr, 0, 1000);
+      assertArrayRegionsEqual(original, 1024, arr, 1024, length - 1024);
+      Assert.assertEquals(-1, reader.read(arr, 0, 1));
+      Assert.assertEquals(length - 24, cache.getMmapReadBytes());
+      Assert.assertEquals(length, cache.getMmappedBytes());
+    } finally {
+      reader.close();
+      // The replica stays mapped in the cache until it is evicted.
+      Assert.assertEquals(length, cache.getMmappedBytes());
+      cache.close();
+      Assert.assertEquals(0, cache.getMmappedBytes());
+      dir.close();
+    }
+  }
+
+  /**
+   * Test that the short-circuit reads of a DFSInputStream are served from
+   * an mmap, and that the mmap is released once it is no longer used when
+   * the mmaps are limited to 0 bytes.
+   */
+  @Test(timeout=60000)
+  public void testMmapReadsThroughInputStream() throws Exception {
+    Assume.assumeTrue(DomainSocket.getLoadingFailureReason() == null);
+    HdfsConfiguration conf = new HdfsConfiguration();
+    TemporarySocketDirectory sockDir = new TemporarySocketDirectory();
+    conf.set(DFSConfigKeys.DFS_DOMAIN_SOCKET_PATH_KEY,
+        new File(sockDir.getDir(), "testMmapReadsThroughInputStream.%d.sock").
+          getAbsolutePath());
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, true);
+    conf.setBoolean(DFSConfigKeys.
+        DFS_CLIENT_READ_SHORTCIRCUIT_SKIP_CHECKSUM_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_MMAP_READ_ENABLED, true);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_MAX_BYTES, 0);
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT,
+        "testMmapReadsThroughInputStream");
+    DFSInputStream.tcpReadsDisabledForTesting = true;
+    MiniDFSCluster cluster = null;
+    final Path TEST_PATH = new Path("/a");
+    final long RANDOM_SEED = 4567L;
+    FSDataInputStream fsIn = null;
+    byte buf[] = new byte[BlockReaderLocalTest.TEST_LENGTH];
+    FileSystem fs = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, TEST_PATH,
+          BlockReaderLocalTest.TEST_LENGTH, (short)1, RANDOM_SEED);
+      DFSTestUtil.waitReplication(fs, TEST_PATH, (short)1);
+      ShortCircuitCache cache =
+          ClientContext.getFromConf(conf).getShortCircuitCache();
+      fsIn = fs.open(TEST_PATH);
+      IOUtils.readFully(fsIn, buf, 0, BlockReaderLocalTest.TEST_LENGTH);
+      assertArrayRegionsEqual(DFSTestUtil.calculateFileContentsFromSeed(
+          RANDOM_SEED, BlockReaderLocalTest.TEST_LENGTH), 0, buf, 0,
+          BlockReaderLocalTest.TEST_LENGTH);
+      Assert.assertEquals(BlockReaderLocalTest.TEST_LENGTH,
+          ((HdfsDataInputStream)fsIn).getReadStatistics().
+              getTotalShortCircuitBytesRead());
+      Assert.assertEquals(BlockReaderLocalTest.TEST_LENGTH,
+          cache.getMmapReadBytes());
+      Assert.assertEquals(BlockReaderLocalTest.TEST_LENGTH,
+          cache.getMmappedBytes());
+      fsIn.close();
+      fsIn = null;
+      Assert.assertEquals(0, cache.getMmappedBytes());
+    } finally {
+      DFSInputStream.tcpReadsDisabledForTesting = false;
+      if (fsIn != null) fsIn.close();
+      if (fs != null) fs.close();
+      if (cluster != null) cluster.shutdown();
+      sockDir.close();
+    }
+  }
+
   @Test(timeout=60000)
   public void TestStatisticsForShortCircuitLocalRead() throws Exception {
     testStatistics(true);
@@ -20,10 +20,12 @@
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -97,6 +99,33 @@ public void testComputePacketChunkSize()
     Assert.assertTrue((Integer) field.get(dos) + 257 < packetSize);
   }
 
+  /**
+   * Packets built in pooled direct buffers must reach the datanodes intact,
+   * including partial packets sent by hflush.
+   */
+  @Test
+  public void testDirectBufferPoolWrite() throws IOException {
+    Configuration conf = new Configuration(cluster.getConfiguration(0));
+    conf.setBoolean(
+        DFSConfigKeys.DFS_CLIENT_WRITE_DIRECT_BUFFER_POOL_ENABLED_KEY, true);
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT, "testDirectBufferPoolWrite");
+    FileSystem fs = FileSystem.newInstance(cluster.getURI(), conf);
+    try {
+      byte[] data = new byte[3 * 1024 * 1024 + 1234];
+      new Random(0xB0FL).nextBytes(data);
+      Path path = new Path("/testDirectBufferPoolWrite");
+      FSDataOutputStream os = fs.create(path);
+      os.write(data, 0, 100000);
+      os.hflush();
+      os.write(data, 100000, data.length - 100000);
+      os.close();
+      byte[] read = DFSTestUtil.readFileBuffer(fs, path);
+      Assert.assertArrayEquals(data, read);
+    } finally {
+      fs.close();
+    }
+  }
+
   @AfterClass
   public static void tearDown() {
     cluster.shutdown();
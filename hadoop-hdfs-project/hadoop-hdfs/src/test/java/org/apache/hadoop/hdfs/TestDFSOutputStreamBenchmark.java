@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+
+public class TestDFSOutputStreamBenchmark {
+
+  /** Both modes write every file completely. */
+  @Test(timeout = 120000)
+  public void testWritePaths() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (boolean direct : new boolean[] {false, true}) {
+        DFSOutputStreamBenchmark.Result result = DFSOutputStreamBenchmark.run(
+            conf, cluster.getURI(), direct, 3, 1000000, 4096, (short) 1);
+        assertEquals(direct, result.direct);
+        assertEquals(3000000, result.bytesWritten);
+        assertTrue(result.elapsedNanos > 0);
+        FileStatus[] files = fs.listStatus(new Path(
+            DFSOutputStreamBenchmark.BASE_PATH, direct ? "direct" : "heap"));
+        assertEquals(3, files.length);
+        for (FileStatus file : files) {
+          assertEquals(1000000, file.getLen());
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /** The tool runs end to end and rejects bad arguments. */
+  @Test(timeout = 120000)
+  public void testToolRunner() throws Exception {
+    assertEquals(0, ToolRunner.run(new HdfsConfiguration(),
+        new DFSOutputStreamBenchmark(),
+        new String[] {"-numFiles", "1", "-fileSize", "2"}));
+    assertEquals(-1, ToolRunner.run(new HdfsConfiguration(),
+        new DFSOutputStreamBenchmark(), new String[] {"-fileSize"}));
+  }
+}
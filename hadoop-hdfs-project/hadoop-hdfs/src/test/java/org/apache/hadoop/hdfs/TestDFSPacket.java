@@ -17,9 +17,16 @@
  */
 package org.apache.hadoop.hdfs;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Random;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
+import org.apache.hadoop.hdfs.util.ByteArrayManager;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -55,6 +62,52 @@ public void testPacket() throws Exception {
 
   }
 
+  @Test
+  public void testDirectPacket() throws Exception {
+    Random r = new Random(12345L);
+    byte[] data =  new byte[chunkSize];
+    r.nextBytes(data);
+    byte[] checksum = new byte[checksumSize];
+    r.nextBytes(checksum);
+    ByteBufferPool pool = new ElasticByteBufferPool();
+    int headerLen = PacketHeader.PKT_MAX_HEADER_LEN;
+
+    // written through a channel
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ByteBuffer buf = pool.getBuffer(true, data.length * 2);
+    DFSPacket p = new DFSPacket(buf, pool, maxChunksPerPacket, 0, 0,
+        checksumSize, false);
+    Assert.assertTrue(p.isDirect());
+    p.setSyncBlock(true);
+    p.writeData(data, 0, data.length);
+    p.writeChecksum(checksum, 0, checksum.length);
+    p.writeTo(new DataOutputStream(bos), Channels.newChannel(bos));
+    byte[] readBuf = bos.toByteArray();
+    Assert.assertEquals(headerLen + checksum.length + data.length,
+        readBuf.length);
+    assertArrayRegionsEqual(readBuf, headerLen, checksum, 0, checksum.length);
+    assertArrayRegionsEqual(readBuf, headerLen + checksum.length, data, 0,
+        data.length);
+
+    // the buffer goes back to the pool, and is reused by the next packet
+    p.releaseBuffer(ByteArrayManager.newInstance(null));
+    ByteBuffer reused = pool.getBuffer(true, data.length * 2);
+    Assert.assertSame(buf, reused);
+
+    // written through the stream when there is no channel
+    DataOutputBuffer os = new DataOutputBuffer(data.length * 2);
+    p = new DFSPacket(reused, pool, maxChunksPerPacket, 0, 0, checksumSize,
+        false);
+    p.setSyncBlock(true);
+    p.writeData(data, 0, data.length);
+    p.writeChecksum(checksum, 0, checksum.length);
+    p.writeTo(os, null);
+    readBuf = os.getData();
+    assertArrayRegionsEqual(readBuf, headerLen, checksum, 0, checksum.length);
+    assertArrayRegionsEqual(readBuf, headerLen + checksum.length, data, 0,
+        data.length);
+  }
+
   public static void assertArrayRegionsEqual(byte []buf1, int off1, byte []buf2,
                                              int off2, int len) {
     for (int i = 0; i < len; i++) {
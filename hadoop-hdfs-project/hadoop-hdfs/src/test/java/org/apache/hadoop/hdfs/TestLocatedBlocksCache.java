@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocatedBlocksCache {
+  private static final String NN_METRICS = "NameNodeActivity";
+  private static int contextId = 0;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private LocatedBlocksCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_LOCATED_BLOCKS_CACHE_SIZE_KEY, 16);
+    // every test gets a cache of its own
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT,
+        "TestLocatedBlocksCache" + (contextId++));
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    cache = fs.getClient().getClientContext().getLocatedBlocksCache();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static long getBlockLocationsOps() {
+    return getLongCounter("GetBlockLocations", getMetrics(NN_METRICS));
+  }
+
+  /** Opening a file again is served without a NameNode RPC. */
+  @Test(timeout = 60000)
+  public void testReopenServedFromCache() throws Exception {
+    Path path = new Path("/file");
+    DFSTestUtil.createFile(fs, path, 4096, (short) 1, 0xBEEFL);
+    byte[] expected = DFSTestUtil.readFileBuffer(fs, path);
+    long ops = getBlockLocationsOps();
+    long hits = cache.getHitCount();
+    for (int i = 0; i < 5; i++) {
+      assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, path));
+    }
+    assertEquals(ops, getBlockLocationsOps());
+    assertEquals(hits + 5, cache.getHitCount());
+  }
+
+  /** The client drops the entries of the files it changes. */
+  @Test(timeout = 60000)
+  public void testInvalidatedOnChange() throws Exception {
+    Path path = new Path("/dir/file");
+    DFSTestUtil.createFile(fs, path, 4096, (short) 1, 1L);
+    DFSTestUtil.readFileBuffer(fs, path);
+    assertEquals(1, cache.size());
+
+    DFSTestUtil.createFile(fs, path, 1024, (short) 1, 2L);
+    assertEquals(0, cache.size());
+    assertEquals(1024, DFSTestUtil.readFileBuffer(fs, path).length);
+    assertEquals(1, cache.size());
+
+    fs.rename(new Path("/dir"), new Path("/dir2"));
+    assertEquals(0, cache.size());
+    DFSTestUtil.readFileBuffer(fs, new Path("/dir2/file"));
+    fs.delete(new Path("/dir2"), true);
+    assertEquals(0, cache.size());
+  }
+
+  /** A datanode failure drops the entry of the file being read. */
+  @Test(timeout = 60000)
+  public void testInvalidatedOnDeadNode() throws Exception {
+    Path path = new Path("/file");
+    DFSTestUtil.createFile(fs, path, 4096, (short) 1, 0xBEEFL);
+    HdfsDataInputStream in = (HdfsDataInputStream) fs.open(path);
+    try {
+      assertEquals(1, cache.size());
+      DFSInputStream dfsIn = (DFSInputStream) in.getWrappedStream();
+      dfsIn.addToDeadNodes(in.getAllBlocks().get(0).getLocations()[0]);
+      assertEquals(0, cache.size());
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Files being written are never cached. */
+  @Test(timeout = 60000)
+  public void testUnderConstructionNotCached() throws Exception {
+    Path path = new Path("/file");
+    FSDataOutputStream out = fs.create(path);
+    try {
+      out.write(new byte[1024]);
+      out.hflush();
+      assertEquals(1024, DFSTestUtil.readFileBuffer(fs, path).length);
+      assertEquals(0, cache.size());
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -29,6 +29,7 @@
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
@@ -37,6 +38,8 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
 import org.apache.hadoop.hdfs.server.datanode.SimulatedFSDataset;
 import org.apache.hadoop.io.IOUtils;
@@ -433,6 +436,88 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
 
+  /**
+   * With adaptive hedged reads, a read which is slow compared to the recent
+   * latencies of its datanode is hedged long before the fixed threshold.
+   */
+  @Test(timeout = 120000)
+  public void testAdaptiveHedgedRead() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE, 5);
+    // never reached: only the adaptive threshold can start a hedged read
+    conf.setLong(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS,
+        600000);
+    conf.setBoolean(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_ENABLED,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_ADAPTIVE_MIN_SAMPLES,
+        1);
+
+    final AtomicBoolean slowNext = new AtomicBoolean(false);
+    // not a mock: mockito runs the answers of one stub one at a time
+    DFSClientFaultInjector oldInjector = DFSClientFaultInjector.instance;
+    DFSClientFaultInjector.instance = new DFSClientFaultInjector() {
+      @Override
+      public void startFetchFromDatanode() {
+        try {
+          Thread.sleep(slowNext.compareAndSet(true, false) ? 3000 : 10);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2)
+        .format(true).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSHedgedReadMetrics metrics = fileSys.getClient().getHedgedReadMetrics();
+    metrics.hedgedReadOps.set(0);
+    metrics.hedgedReadOpsWin.set(0);
+    metrics.hedgedReadOpsInCurThread.set(0);
+    try {
+      Path file = new Path("/adaptiveHedgedRead.dat");
+      DFSTestUtil.createFile(fileSys, file, blockSize, (short) 2, seed);
+      DFSTestUtil.waitReplication(fileSys, file, (short) 2);
+      byte[] buf = new byte[1024];
+      FSDataInputStream in = fileSys.open(file);
+      try {
+        for (int i = 0; i < 40; i++) {
+          in.readFully(0, buf);
+        }
+        long winsBefore = metrics.getHedgedReadWins();
+        // the first read is slow, the hedged read to the other node is not
+        slowNext.set(true);
+        long start = System.currentTimeMillis();
+        in.readFully(0, buf);
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(winsBefore + 1, metrics.getHedgedReadWins());
+      } finally {
+        in.close();
+      }
+
+      long nodeReads = 0;
+      long nodeHedgedReads = 0;
+      long nodeWins = 0;
+      for (DatanodeInfo dn : fileSys.getClient().datanodeReport(
+          HdfsConstants.DatanodeReportType.LIVE)) {
+        DFSHedgedReadMetrics.NodeMetrics nodeMetrics =
+            metrics.getNodeMetrics(dn.getXferAddr());
+        if (nodeMetrics != null) {
+          nodeReads += nodeMetrics.getReadOps();
+          nodeHedgedReads += nodeMetrics.getHedgedReadOps();
+          nodeWins += nodeMetrics.getHedgedReadWins();
+          assertTrue(nodeMetrics.getLatencyPercentile(95) > 0);
+        }
+      }
+      assertTrue(nodeReads >= 41);
+      assertTrue(nodeHedgedReads >= 1);
+      assertEquals(metrics.getHedgedReadWins(), nodeWins);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+      DFSClientFaultInjector.instance = oldInjector;
+    }
+  }
+
   private void dfsPreadTest(Configuration conf, boolean disableTransferTo, boolean verifyChecksum)
       throws IOException {
     conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
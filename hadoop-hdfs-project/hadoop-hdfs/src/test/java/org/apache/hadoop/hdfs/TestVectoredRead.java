@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the vectored positional reads of {@link DFSInputStream}.
+ */
+public class TestVectoredRead {
+  private static final long SEED = 0xDEADBEEFL;
+  private static final int BLOCK_SIZE = 4096;
+  private static final int FILE_LEN = 12 * BLOCK_SIZE;
+  private static final Path FILE = new Path("/vectored");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private byte[] expected;
+
+  @Before
+  public void setup() throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MERGE_GAP_KEY, 1024);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_VECTORED_READ_MAX_MERGED_SIZE_KEY,
+        2 * BLOCK_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    DFSTestUtil.createFile(fs, FILE, FILE_LEN, (short) 3, SEED);
+    expected = DFSTestUtil.calculateFileContentsFromSeed(SEED, FILE_LEN);
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static List<FileRange> createRanges(boolean direct, int... args) {
+    final List<FileRange> ranges = new ArrayList<FileRange>();
+    for (int i = 0; i < args.length; i += 2) {
+      ranges.add(new FileRange(args[i], direct
+          ? ByteBuffer.allocateDirect(args[i + 1])
+          : ByteBuffer.allocate(args[i + 1])));
+    }
+    return ranges;
+  }
+
+  private void checkRanges(List<FileRange> ranges,
+      List<Future<ByteBuffer>> results) throws Exception {
+    assertEquals(ranges.size(), results.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      final FileRange range = ranges.get(i);
+      final ByteBuffer buf = results.get(i).get();
+      assertSame(range.getBuffer(), buf);
+      final byte[] actual = new byte[buf.remaining()];
+      buf.duplicate().get(actual);
+      final int offset = (int) range.getOffset();
+      assertArrayEquals("range " + range,
+          Arrays.copyOfRange(expected, offset, offset + actual.length),
+          actual);
+    }
+  }
+
+  /**
+   * Nearby ranges are combined, and the combined ranges of several blocks
+   * are read in parallel.
+   */
+  @Test(timeout = 60000)
+  public void testReadVectored() throws Exception {
+    final FSDataInputStream in = fs.open(FILE);
+    try {
+      assertTrue(in.getWrappedStream() instanceof DFSInputStream);
+      for (boolean direct : new boolean[] {false, true}) {
+        final List<FileRange> ranges = createRanges(direct,
+            // combined with a gap and an overlap
+            100, 200, 500, 1000, 1400, 200,
+            // across a block boundary
+            BLOCK_SIZE - 10, 20,
+            // longer than the maximal combined range
+            3 * BLOCK_SIZE, 3 * BLOCK_SIZE,
+            // out of order
+            10 * BLOCK_SIZE, 100, 0, 10, FILE_LEN - 1, 1);
+        checkRanges(ranges, in.readVectored(ranges));
+      }
+      assertEquals(0, in.getPos());
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * The combined ranges of a block are read from different replicas.
+   */
+  @Test(timeout = 60000)
+  public void testReadsSpreadAcrossReplicas() throws Exception {
+    final FSDataInputStream in = fs.open(FILE);
+    try {
+      // three ranges of the first block, too far apart to be combined
+      final List<FileRange> ranges = createRanges(false,
+          0, 100, 2000, 100, 3500, 100);
+      checkRanges(ranges, in.readVectored(ranges));
+    } finally {
+      in.close();
+    }
+    for (DataNode dn : cluster.getDataNodes()) {
+      assertTrue(dn + " served none of the reads",
+          getLongCounter("BytesRead", getMetrics(dn.getMetrics().name())) > 0);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testManyRandomRanges() throws Exception {
+    final Random random = new Random(SEED);
+    final FSDataInputStream in = fs.open(FILE);
+    try {
+      final List<FileRange> ranges = new ArrayList<FileRange>();
+      for (int i = 0; i < 200; i++) {
+        final int length = 1 + random.nextInt(2000);
+        ranges.add(new FileRange(random.nextInt(FILE_LEN - length),
+            ByteBuffer.allocate(length)));
+      }
+      checkRanges(ranges, in.readVectored(ranges));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadPastEndOfFile() throws Exception {
+    final FSDataInputStream in = fs.open(FILE);
+    try {
+      // the first range is combined with the second one
+      final List<FileRange> ranges = createRanges(false,
+          FILE_LEN - 100, 50, FILE_LEN - 40, 100, FILE_LEN + 10000, 10);
+      final List<Future<ByteBuffer>> results = in.readVectored(ranges);
+      checkRanges(ranges.subList(0, 1), results.subList(0, 1));
+      for (Future<ByteBuffer> result : results.subList(1, 3)) {
+        try {
+          result.get();
+          fail("Read past the end of the file");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof EOFException);
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadAfterClose() throws Exception {
+    final FSDataInputStream in = fs.open(FILE);
+    in.close();
+    try {
+      in.readVectored(createRanges(false, 0, 10));
+      fail("Read from a closed stream");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Stream closed"));
+    }
+  }
+}
@@ -22,11 +22,14 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -119,6 +122,27 @@ public void testMix() {
         blocks.getBlockListAsLongs());
   }
 
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Map<Long, Replica> expectedReplicas = new HashMap<>();
+    for (Replica replica : new Replica[] {
+        new FinalizedReplica(b1, null, null),
+        new FinalizedReplica(b2, null, null),
+        new ReplicaBeingWritten(b3, null, null, null)}) {
+      expectedReplicas.put(replica.getBlockId(), replica);
+    }
+    BlockListAsLongs blocks =
+        BlockListAsLongs.encode(expectedReplicas.values());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    blocks.writeTo(out);
+    checkReplicas(expectedReplicas, BlockListAsLongs.readFrom(
+        new ByteArrayInputStream(out.toByteArray())));
+
+    // an empty stream has no block list
+    assertNull(BlockListAsLongs.readFrom(
+        new ByteArrayInputStream(new byte[0])));
+  }
+
   @Test
   public void testFuzz() throws InterruptedException {
     Replica[] replicas = new Replica[100000];
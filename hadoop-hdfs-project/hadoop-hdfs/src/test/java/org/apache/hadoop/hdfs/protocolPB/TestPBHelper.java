@@ -24,7 +24,10 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.AclEntryScope;
@@ -79,6 +82,8 @@
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
@@ -638,4 +643,25 @@ public void testAclStatusProto() {
         .build();
     Assert.assertEquals(s, PBHelper.convert(PBHelper.convert(s)));
   }
+
+  @Test
+  public void testSlowPeerAndDiskReports() {
+    Map<String, Long> peers = new HashMap<String, Long>();
+    peers.put("127.0.0.1:9866", 100L);
+    peers.put("127.0.0.2:9866", 200L);
+    SlowPeerReports slowPeers = SlowPeerReports.create(peers);
+    assertEquals(slowPeers, PBHelper.convertSlowPeerReports(
+        PBHelper.convertSlowPeerReports(slowPeers)));
+
+    SlowDiskReports slowDisks = SlowDiskReports.create(
+        Collections.singletonMap("DS-1", 500L));
+    assertEquals(slowDisks, PBHelper.convertSlowDiskReports(
+        PBHelper.convertSlowDiskReports(slowDisks)));
+
+    assertTrue(PBHelper.convertSlowPeerReports(
+        SlowPeerReports.EMPTY_REPORT).isEmpty());
+    assertEquals(SlowDiskReports.EMPTY_REPORT,
+        PBHelper.convertSlowDiskReports(
+            PBHelper.convertSlowDiskReports(SlowDiskReports.EMPTY_REPORT)));
+  }
 }
@@ -17,14 +17,18 @@
  */
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
@@ -42,10 +46,12 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.BlockReportOptions;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor.BlockTargetPair;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaBeingWritten;
@@ -56,14 +62,18 @@
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.net.NetworkTopology;
 import org.junit.Assert;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
@@ -734,6 +744,132 @@ public void testSafeModeIBRBeforeFirstFullBR() throws Exception {
         (ds) >= 0);
   }
 
+  /**
+   * Test that the first block report of a storage releases the namesystem
+   * lock between batches, and stops when the node dies meanwhile.
+   */
+  @Test
+  public void testFirstBlockReportYieldsLock() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY, 2);
+    fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.doReturn(true).when(fsn).hasWriteLock();
+    bm = new BlockManager(fsn, conf);
+
+    final DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.isAlive = true;
+    DatanodeRegistration nodeReg =
+        new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
+    for (long blkId = 1; blkId <= 5; blkId++) {
+      builder.add(new FinalizedReplica(addBlockToBM(blkId), null, null));
+    }
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        builder.build(), null, false);
+    // 5 replicas in batches of 2
+    verify(fsn, times(3)).writeLock();
+    verify(fsn, times(3)).writeUnlock();
+    assertEquals(1, ds.getBlockReportCount());
+    assertEquals(5, ds.numBlocks());
+
+    // the node dies while the lock is released
+    final DatanodeDescriptor node2 = nodes.get(1);
+    ds = node2.getStorageInfos()[0];
+    node2.isAlive = true;
+    bm.getDatanodeManager().registerDatanode(
+        new DatanodeRegistration(node2, null, null, ""));
+    bm.getDatanodeManager().addDatanode(node2);
+    builder = BlockListAsLongs.builder();
+    for (long blkId = 6; blkId <= 10; blkId++) {
+      builder.add(new FinalizedReplica(addBlockToBM(blkId), null, null));
+    }
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        node2.isAlive = false;
+        return null;
+      }
+    }).when(fsn).writeUnlock();
+    try {
+      bm.processReport(node2, new DatanodeStorage(ds.getStorageID()),
+          builder.build(), null, false);
+      fail("Expected the block report to fail");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("was removed", e);
+    }
+    assertEquals(0, ds.getBlockReportCount());
+    assertEquals(2, ds.numBlocks());
+  }
+
+  @Test
+  public void testMaxConcurrentFullBlockReports() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_KEY, 1);
+    bm = new BlockManager(fsn, conf);
+
+    bm.beginFullBlockReport(nodes.get(0));
+    try {
+      bm.beginFullBlockReport(nodes.get(1));
+      fail("Expected the second block report to be rejected");
+    } catch (RetriableException e) {
+      // expected
+    }
+    bm.endFullBlockReport();
+    bm.beginFullBlockReport(nodes.get(1));
+    bm.endFullBlockReport();
+  }
+
+  /**
+   * Test that a DataNode sends a rejected block report again.
+   */
+  @Test(timeout = 60000)
+  public void testRejectedBlockReportIsRetried() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_CONCURRENT_KEY, 1);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      final BlockManager blockManager =
+          cluster.getNamesystem().getBlockManager();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final DatanodeStorageInfo storage = NameNodeAdapter.getDatanode(
+          cluster.getNamesystem(), dn.getDatanodeId()).getStorageInfos()[0];
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return storage.getBlockReportCount() == 1;
+        }
+      }, 100, 10000);
+
+      // keep the only permit while the DataNode sends its report
+      blockManager.beginFullBlockReport(dn.getDatanodeId());
+      dn.triggerBlockReport(
+          new BlockReportOptions.Factory().setIncremental(false).build());
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return getLongCounter("BlockReportsRejected",
+              getMetrics("NameNodeActivity")) > 0;
+        }
+      }, 100, 10000);
+      assertEquals(1, storage.getBlockReportCount());
+
+      blockManager.endFullBlockReport();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return storage.getBlockReportCount() == 2;
+        }
+      }, 100, 10000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private BlockInfoContiguous addBlockToBM(long blkId) {
     Block block = new Block(blkId);
     BlockInfoContiguous blockInfo =
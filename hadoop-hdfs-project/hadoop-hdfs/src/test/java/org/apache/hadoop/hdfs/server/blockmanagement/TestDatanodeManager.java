@@ -46,6 +46,8 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.net.DNSToSwitchMapping;
 import org.junit.Assert;
 import org.junit.Test;
@@ -318,6 +320,76 @@ public void testSortLocatedBlocks() throws IOException {
         is(DatanodeInfo.AdminStates.DECOMMISSIONED));
   }
 
+  /**
+   * Test that the datanodes reported as slow are sorted behind the others,
+   * even when they are local to the reader.
+   */
+  @Test
+  public void testSortLocatedBlocksWithSlowNodes() throws IOException {
+    FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.when(fsn.hasWriteLock()).thenReturn(true);
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_READ_KEY, true);
+    DatanodeManager dm = new DatanodeManager(Mockito.mock(BlockManager.class),
+        fsn, conf);
+
+    DatanodeInfo[] locs = new DatanodeInfo[3];
+    String[] storageIDs = new String[3];
+    for (int i = 0; i < 3; i++) {
+      String uuid = "UUID-" + i;
+      String ip = "IP-" + i;
+      DatanodeRegistration dr = Mockito.mock(DatanodeRegistration.class);
+      Mockito.when(dr.getDatanodeUuid()).thenReturn(uuid);
+      Mockito.when(dr.getIpAddr()).thenReturn(ip);
+      Mockito.when(dr.getXferAddr()).thenReturn(ip + ":9000");
+      Mockito.when(dr.getXferPort()).thenReturn(9000);
+      Mockito.when(dr.getSoftwareVersion()).thenReturn("version1");
+      dm.registerDatanode(dr);
+      locs[i] = dm.getDatanode(uuid);
+      storageIDs[i] = "storageID-" + i;
+    }
+
+    // IP-1 and IP-2 see IP-0 as a slow peer, one report is not enough
+    Map<String, Long> slowPeers = new HashMap<String, Long>();
+    slowPeers.put(locs[0].getXferAddr(), 100L);
+    dm.updateSlowNodeReports(dm.getDatanode("UUID-1"),
+        SlowPeerReports.create(slowPeers), null);
+    assertFalse(((DatanodeDescriptor) locs[0]).isSlow());
+    dm.updateSlowNodeReports(dm.getDatanode("UUID-2"),
+        SlowPeerReports.create(slowPeers), null);
+    assertTrue(((DatanodeDescriptor) locs[0]).isSlow());
+    assertFalse(((DatanodeDescriptor) locs[1]).isSlow());
+    assertTrue(dm.getSlowNodesReport().contains(locs[0].getXferAddr()));
+
+    ExtendedBlock b = new ExtendedBlock("somePoolID", 1234);
+    LocatedBlock block = new LocatedBlock(b, locs, storageIDs,
+        new StorageType[] {StorageType.DISK, StorageType.DISK,
+            StorageType.DISK});
+    List<LocatedBlock> blocks = new ArrayList<>();
+    blocks.add(block);
+
+    // The slow node is the local one, but is still sorted last
+    dm.sortLocatedBlocks(locs[0].getIpAddr(), blocks);
+    DatanodeInfo[] sortedLocs = block.getLocations();
+    assertThat(sortedLocs.length, is(3));
+    assertThat(sortedLocs[2].getIpAddr(), is(locs[0].getIpAddr()));
+    for (int i = 0; i < sortedLocs.length; i++) {
+      assertThat(((DatanodeInfoWithStorage) sortedLocs[i]).getStorageID(),
+          is(block.getStorageIDs()[i]));
+    }
+
+    // Once IP-1 stops reporting it, IP-0 is local and first again
+    dm.updateSlowNodeReports(dm.getDatanode("UUID-1"),
+        SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT);
+    assertFalse(((DatanodeDescriptor) locs[0]).isSlow());
+    dm.updateSlowNodeReports(dm.getDatanode("UUID-2"),
+        SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT);
+    assertFalse(dm.shouldAvoidSlowDataNodesForWrite());
+    dm.sortLocatedBlocks(locs[0].getIpAddr(), blocks);
+    assertThat(block.getLocations()[0].getIpAddr(), is(locs[0].getIpAddr()));
+  }
+
   /**
    * Test whether removing a host from the includes list without adding it to
    * the excludes list will exclude it from data node reports.
@@ -29,6 +29,7 @@
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -58,6 +59,8 @@
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.net.NetworkTopology;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.test.PathUtils;
@@ -144,6 +147,8 @@ public static void setupCluster() throws Exception {
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY, true);
     conf.setBoolean(
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_KEY, true);
     DFSTestUtil.formatNameNode(conf);
     namenode = new NameNode(conf);
 
@@ -639,6 +644,110 @@ public void testChooseTargetWithStaleNodes() throws Exception {
       .getDatanodeManager().getHeartbeatManager().heartbeatCheck();
   }
 
+  /**
+   * In this testcase, dataNodes[1] and dataNodes[2] report dataNodes[0] as a
+   * slow peer.  The writer dataNodes[0] should be avoided unless there are
+   * not enough other datanodes.
+   */
+  @Test
+  public void testChooseTargetWithSlowNodes() throws Exception {
+    DatanodeManager dm =
+        namenode.getNamesystem().getBlockManager().getDatanodeManager();
+    for (int i = 1; i <= 2; i++) {
+      dm.updateSlowNodeReports(dataNodes[i], SlowPeerReports.create(
+          Collections.singletonMap(dataNodes[0].getXferAddr(), 100L)), null);
+    }
+    // the datanodes are not registered, so flag the slow one directly
+    dataNodes[0].setSlow(true);
+    try {
+      assertTrue(dm.shouldAvoidSlowDataNodesForWrite());
+      DatanodeStorageInfo[] targets = chooseTarget(1);
+      assertEquals(1, targets.length);
+      assertEquals(storages[1], targets[0]);
+
+      targets = chooseTarget(3);
+      assertEquals(3, targets.length);
+      assertFalse(containsWithinRange(dataNodes[0], targets, 0, 2));
+
+      targets = chooseTarget(NUM_OF_DATANODES);
+      assertEquals(NUM_OF_DATANODES, targets.length);
+      assertTrue(containsWithinRange(dataNodes[0], targets, 0,
+          NUM_OF_DATANODES - 1));
+    } finally {
+      for (int i = 1; i <= 2; i++) {
+        dm.updateSlowNodeReports(dataNodes[i], SlowPeerReports.EMPTY_REPORT,
+            SlowDiskReports.EMPTY_REPORT);
+      }
+      dataNodes[0].setSlow(false);
+    }
+    assertFalse(dm.shouldAvoidSlowDataNodesForWrite());
+  }
+
+  /**
+   * In this testcase, the writer dataNodes[0] reports its only volume as
+   * slow.  The volume should be avoided like a slow node, while the node
+   * itself is not slow.
+   */
+  @Test
+  public void testChooseTargetWithSlowStorage() throws Exception {
+    DatanodeManager dm =
+        namenode.getNamesystem().getBlockManager().getDatanodeManager();
+    dm.updateSlowNodeReports(dataNodes[0], null, SlowDiskReports.create(
+        Collections.singletonMap(storages[0].getStorageID(), 500L)));
+    try {
+      assertFalse(dataNodes[0].isSlow());
+      assertTrue(storages[0].isSlow());
+      assertTrue(dm.shouldAvoidSlowDataNodesForWrite());
+      DatanodeStorageInfo[] targets = chooseTarget(1);
+      assertEquals(1, targets.length);
+      assertEquals(storages[1], targets[0]);
+    } finally {
+      dm.updateSlowNodeReports(dataNodes[0], SlowPeerReports.EMPTY_REPORT,
+          SlowDiskReports.EMPTY_REPORT);
+    }
+    assertFalse(storages[0].isSlow());
+    assertFalse(dm.shouldAvoidSlowDataNodesForWrite());
+  }
+
+  /**
+   * In this testcase, more than half of the datanodes are stale, so they are
+   * no longer avoided, while dataNodes[5] is slow.  Avoiding the slow node
+   * must not make the placement avoid the stale nodes again.
+   */
+  @Test
+  public void testChooseTargetWithSlowAndTooManyStaleNodes() throws Exception {
+    DatanodeManager dm =
+        namenode.getNamesystem().getBlockManager().getDatanodeManager();
+    for (int i = 0; i < 4; i++) {
+      DFSTestUtil.resetLastUpdatesWithOffset(dataNodes[i],
+          -(staleInterval + 1));
+    }
+    dm.getHeartbeatManager().heartbeatCheck();
+    for (int i = 1; i <= 2; i++) {
+      dm.updateSlowNodeReports(dataNodes[i], SlowPeerReports.create(
+          Collections.singletonMap(dataNodes[5].getXferAddr(), 100L)), null);
+    }
+    // the datanodes are not registered, so flag the slow one directly
+    dataNodes[5].setSlow(true);
+    try {
+      assertFalse(dm.shouldAvoidStaleDataNodesForWrite());
+      assertTrue(dm.shouldAvoidSlowDataNodesForWrite());
+      DatanodeStorageInfo[] targets = chooseTarget(5);
+      assertEquals(5, targets.length);
+      assertFalse(containsWithinRange(dataNodes[5], targets, 0, 4));
+    } finally {
+      for (int i = 1; i <= 2; i++) {
+        dm.updateSlowNodeReports(dataNodes[i], SlowPeerReports.EMPTY_REPORT,
+            SlowDiskReports.EMPTY_REPORT);
+      }
+      dataNodes[5].setSlow(false);
+      for (int i = 0; i < 4; i++) {
+        DFSTestUtil.resetLastUpdatesWithOffset(dataNodes[i], 0);
+      }
+      dm.getHeartbeatManager().heartbeatCheck();
+    }
+  }
+
   /**
    * In this testcase, we set 3 nodes (dataNodes[0] ~ dataNodes[2]) as stale,
    * and when the number of replicas is less or equal to 3, all the healthy
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
+import org.junit.Test;
+import org.mortbay.util.ajax.JSON;
+
+/**
+ * Test the aggregation of the slow peer and slow volume reports.
+ */
+public class TestSlowNodeTracker {
+  private static SlowPeerReports peers(String node, long latencyMs) {
+    return SlowPeerReports.create(
+        Collections.singletonMap(node, latencyMs));
+  }
+
+  private static SlowDiskReports disks(String volume, long latencyMs) {
+    return SlowDiskReports.create(
+        Collections.singletonMap(volume, latencyMs));
+  }
+
+  @Test
+  public void testUpdateReports() {
+    final SlowNodeTracker tracker = new SlowNodeTracker();
+    assertTrue(tracker.getSlowNodes().isEmpty());
+
+    // a single report does not make a node slow
+    assertFalse(tracker.updateReports("dn1", peers("dn2", 100), null));
+    assertFalse(tracker.isSlowNode("dn2"));
+
+    // a second datanode reporting the same peer does
+    assertTrue(tracker.updateReports("dn3", peers("dn2", 120), null));
+    assertTrue(tracker.isSlowNode("dn2"));
+    assertFalse(tracker.isSlowNode("dn1"));
+    // a new latency in a later report does not change the slow nodes
+    assertFalse(tracker.updateReports("dn1", peers("dn2", 150), null));
+
+    // a node with a slow disk is not slow, only its disk is
+    assertFalse(tracker.updateReports("dn4", null, disks("DS-1", 500)));
+    assertEquals(1, tracker.getSlowNodes().size());
+    assertFalse(tracker.isSlowNode("dn4"));
+    assertTrue(tracker.hasSlowDisks());
+
+    // reports replace the previous ones
+    assertTrue(tracker.updateReports("dn1", SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.EMPTY_REPORT));
+    assertFalse(tracker.isSlowNode("dn2"));
+    assertFalse(tracker.updateReports("dn4", SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.EMPTY_REPORT));
+    assertFalse(tracker.hasSlowDisks());
+  }
+
+  @Test
+  public void testRemoveNode() {
+    final SlowNodeTracker tracker = new SlowNodeTracker();
+    tracker.updateReports("dn1", peers("dn2", 100), disks("DS-1", 500));
+    tracker.updateReports("dn3", peers("dn2", 100), null);
+    assertEquals(Collections.singleton("dn2"), tracker.getSlowNodes());
+
+    assertTrue(tracker.removeNode("dn1"));
+    assertTrue(tracker.getSlowNodes().isEmpty());
+    assertFalse(tracker.hasSlowDisks());
+    assertFalse(tracker.removeNode("dn1"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetJson() {
+    final SlowNodeTracker tracker = new SlowNodeTracker();
+    tracker.updateReports("dn1", peers("dn2", 100), null);
+    tracker.updateReports("dn3", peers("dn2", 120), disks("DS-1", 500));
+    tracker.updateReports("dn4", peers("dn5", 130), null);
+
+    final Map<String, Object> info =
+        (Map<String, Object>) JSON.parse(tracker.getJson());
+    assertEquals(3, info.size());
+    final Map<String, Object> dn2 = (Map<String, Object>) info.get("dn2");
+    assertEquals(Boolean.TRUE, dn2.get("slow"));
+    final Map<String, Object> reportedBy =
+        (Map<String, Object>) dn2.get("reportedBy");
+    assertEquals(100L, reportedBy.get("dn1"));
+    assertEquals(120L, reportedBy.get("dn3"));
+    final Map<String, Object> dn3 = (Map<String, Object>) info.get("dn3");
+    assertEquals(Boolean.FALSE, dn3.get("slow"));
+    assertEquals(500L,
+        ((Map<String, Object>) dn3.get("slowDisks")).get("DS-1"));
+    final Map<String, Object> dn5 = (Map<String, Object>) info.get("dn5");
+    assertEquals(Boolean.FALSE, dn5.get("slow"));
+  }
+}
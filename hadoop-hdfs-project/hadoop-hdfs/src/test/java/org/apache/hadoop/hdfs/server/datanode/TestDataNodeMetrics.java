@@ -22,6 +22,7 @@
 import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -203,6 +204,45 @@ public void testRoundTripAckMetric() throws Exception {
     }
   }
 
+  /**
+   * Test that the time taken to send packets to the downstream peers and the
+   * write latency of the volumes are tracked for the slow node detection.
+   */
+  @Test(timeout=60000)
+  public void testSlowNodeLatencies() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_SLOW_NODE_DETECTION_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SLOW_NODE_MIN_SAMPLES_KEY, 1);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, new Path("/testSlowNodeLatencies.txt"),
+          10000, (short) 2, 0L);
+
+      int heads = 0;
+      for (DataNode dn : cluster.getDataNodes()) {
+        assertTrue(dn.getVolumeLatencies().getLatencies().size() > 0);
+        Map<String, Long> peers = dn.getPeerLatencies().getLatencies();
+        if (!peers.isEmpty()) {
+          heads++;
+          assertEquals(1, peers.size());
+          assertFalse(peers.containsKey(dn.getDatanodeId().getXferAddr()));
+        }
+      }
+      assertEquals("Expected one head of the write pipeline", 1, heads);
+      // two datanodes are too few to find outliers
+      for (DataNode dn : cluster.getDataNodes()) {
+        assertTrue(dn.getSlowPeerReports().getSlowPeers().isEmpty());
+        assertEquals("{}", dn.getSlowPeers());
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test(timeout=60000)
   public void testTimeoutMetric() throws Exception {
     final Configuration conf = new HdfsConfiguration();
@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test serving the short operations of the DataNode from a pool of threads.
+ */
+public class TestDataXceiverPool {
+  static final Log LOG = LogFactory.getLog(TestDataXceiverPool.class);
+
+  private static final int POOL_SIZE = 4;
+  private static final int MAX_TRANSFER_THREADS = 16;
+  private static final int KEEPALIVE_TIMEOUT = 1000;
+  private static final int MAX_READ_LENGTH = 64 * 1024;
+  private static final int REQUEST_TIMEOUT = 1000;
+  private static final int FILE_LEN = 1024 * 1024;
+  private static final long SEED = 0xBEEF;
+  private static final Path TEST_FILE = new Path("/test");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private DataNode dn;
+
+  @Before
+  public void setup() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_SIZE_KEY, POOL_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_MAX_READ_LENGTH_KEY,
+        MAX_READ_LENGTH);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY,
+        MAX_TRANSFER_THREADS);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_REQUEST_TIMEOUT_KEY,
+        REQUEST_TIMEOUT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short)1, SEED);
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Many more concurrent readers than the transfer thread limit are served
+   * by the threads of the pool.
+   */
+  @Test(timeout=120000)
+  public void testManyConcurrentShortReads() throws Exception {
+    final byte[] expected =
+        DFSTestUtil.calculateFileContentsFromSeed(SEED, FILE_LEN);
+    final int numReaders = MAX_TRANSFER_THREADS * 4;
+    final int readsPerReader = 20;
+    final int readLength = 4096;
+    final AtomicInteger errors = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicInteger maxXceiverCount = new AtomicInteger();
+    final AtomicInteger maxPeers = new AtomicInteger();
+
+    final Thread sampler = new Thread() {
+      @Override
+      public void run() {
+        while (!done.get()) {
+          maxXceiverCount.set(
+              Math.max(maxXceiverCount.get(), dn.getXceiverCount()));
+          maxPeers.set(
+              Math.max(maxPeers.get(), dn.getXferServer().getNumPeers()));
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+    sampler.start();
+
+    final Thread[] readers = new Thread[numReaders];
+    for (int i = 0; i < numReaders; i++) {
+      final long seed = i;
+      readers[i] = new Thread() {
+        @Override
+        public void run() {
+          final Random random = new Random(seed);
+          final byte[] buf = new byte[readLength];
+          try {
+            final FSDataInputStream in = fs.open(TEST_FILE);
+            try {
+              for (int j = 0; j < readsPerReader; j++) {
+                final int offset = random.nextInt(FILE_LEN - readLength);
+                in.readFully(offset, buf);
+                assertArrayEquals(Arrays.copyOfRange(expected,
+                    offset, offset + readLength), buf);
+              }
+            } finally {
+              in.close();
+            }
+          } catch (Throwable t) {
+            LOG.error("Reader failed", t);
+            errors.incrementAndGet();
+          }
+        }
+      };
+      readers[i].start();
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    done.set(true);
+    sampler.join();
+
+    LOG.info("Max xceiver count " + maxXceiverCount + ", max peers "
+        + maxPeers);
+    assertEquals(0, errors.get());
+    assertNotNull(dn.getXferServer().getXceiverPool());
+    assertTrue(dn.getXferServer().getXceiverPool().getPoolSize()
+        <= POOL_SIZE);
+    assertTrue("max peers " + maxPeers, maxPeers.get() > POOL_SIZE + 2);
+    // the acceptor, the selector and the pool threads
+    assertTrue("xceiver count " + maxXceiverCount,
+        maxXceiverCount.get() <= POOL_SIZE + 2);
+  }
+
+  /**
+   * Long reads and writes get a thread of their own, and checksums are
+   * served by the pool.
+   */
+  @Test(timeout=60000)
+  public void testLongOperations() throws Exception {
+    final byte[] expected =
+        DFSTestUtil.calculateFileContentsFromSeed(SEED, FILE_LEN);
+    // the read of the whole block is longer than MAX_READ_LENGTH
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, TEST_FILE));
+
+    final Path other = new Path("/other");
+    DFSTestUtil.createFile(fs, other, FILE_LEN, (short)1, SEED);
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, other));
+
+    final FileChecksum checksum = fs.getFileChecksum(TEST_FILE);
+    assertNotNull(checksum);
+    assertEquals(checksum, fs.getFileChecksum(other));
+  }
+
+  /**
+   * A connection waiting for its next operation is watched by the pool
+   * until the keepalive timeout.
+   */
+  @Test(timeout=60000)
+  public void testIdleConnectionTimeout() throws Exception {
+    final byte[] buf = new byte[4096];
+    final FSDataInputStream in = fs.open(TEST_FILE);
+    try {
+      in.readFully(0, buf);
+    } finally {
+      in.close();
+    }
+    final DataXceiverPool pool = dn.getXferServer().getXceiverPool();
+    // the datanode watches the connection once the client status is read
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return pool.getNumWatched() == 1;
+      }
+    }, 10, KEEPALIVE_TIMEOUT / 2);
+    assertEquals(1, dn.getXferServer().getNumPeers());
+
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return pool.getNumWatched() == 0
+            && dn.getXferServer().getNumPeers() == 0;
+      }
+    }, 100, 10 * KEEPALIVE_TIMEOUT);
+  }
+
+  /**
+   * A client which sends only part of a request holds a pool thread for at
+   * most the request timeout, and its connection is then closed.
+   */
+  @Test(timeout=60000)
+  public void testPartialRequest() throws Exception {
+    final Socket socket = new Socket();
+    try {
+      socket.connect(dn.getXferAddress());
+      final OutputStream out = socket.getOutputStream();
+      // the data transfer version, without the op or the request
+      out.write(new byte[] { 0, 28 });
+      out.flush();
+
+      final long start = System.currentTimeMillis();
+      final InputStream in = socket.getInputStream();
+      assertEquals(-1, in.read());
+      final long elapsed = System.currentTimeMillis() - start;
+      assertTrue("closed after " + elapsed + "ms",
+          elapsed < 5 * REQUEST_TIMEOUT);
+    } finally {
+      socket.close();
+    }
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return dn.getXferServer().getNumPeers() == 0;
+      }
+    }, 10, REQUEST_TIMEOUT);
+  }
+}
@@ -22,9 +22,12 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -34,6 +37,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
@@ -43,6 +47,7 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -182,6 +187,73 @@ private void testRbwReplicas(MiniDFSCluster cluster, boolean isCorrupt)
     }
   }
 
+  // test finalized replicas are read from the replica cache saved on a clean
+  // shutdown, and scanned from disk when the cache cannot be read
+  @Test public void testReplicaCache() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024L);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 512);
+    conf.setTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_TIME_KEY, 5,
+        TimeUnit.MINUTES);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    LogCapturer logs = LogCapturer.captureLogs(FsDatasetImpl.LOG);
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/test");
+      final int numBlocks = 10;
+      DFSTestUtil.createFile(fs, file, numBlocks * 1024L, (short)1, 0L);
+      final byte[] expected =
+          DFSTestUtil.calculateFileContentsFromSeed(0L, numBlocks * 1024);
+      final String bpid = cluster.getNamesystem().getBlockPoolId();
+
+      // a clean shutdown saves the finalized replicas of every volume
+      DataNodeProperties dnProps = cluster.stopDataNode(0);
+      final List<File> cacheFiles = new ArrayList<File>();
+      for (int i = 0; i < 2; i++) {
+        final File bpCurrentDir = MiniDFSCluster.getFinalizedDir(
+            cluster.getInstanceStorageDir(0, i), bpid).getParentFile();
+        final File cacheFile = new File(bpCurrentDir, "replicas");
+        Assert.assertTrue(cacheFile.exists());
+        cacheFiles.add(cacheFile);
+      }
+
+      cluster.restartDataNode(dnProps);
+      cluster.waitActive();
+      DataNode dn = cluster.getDataNodes().get(0);
+      Assert.assertEquals(numBlocks, dataset(dn).volumeMap.size(bpid));
+      Assert.assertTrue(logs.getOutput().contains("from the replica cache"));
+      // the cache is only read once
+      for (File cacheFile : cacheFiles) {
+        Assert.assertFalse(cacheFile.exists());
+      }
+      Assert.assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+
+      // a corrupt cache falls back to scanning the volumes
+      dnProps = cluster.stopDataNode(0);
+      for (File cacheFile : cacheFiles) {
+        Assert.assertTrue(cacheFile.exists());
+        FileOutputStream out = new FileOutputStream(cacheFile);
+        try {
+          out.write(new byte[] {10, (byte)0xff});
+        } finally {
+          out.close();
+        }
+      }
+      cluster.restartDataNode(dnProps);
+      cluster.waitActive();
+      dn = cluster.getDataNodes().get(0);
+      Assert.assertEquals(numBlocks, dataset(dn).volumeMap.size(bpid));
+      Assert.assertTrue(
+          logs.getOutput().contains("Failed to read the replica cache"));
+      Assert.assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+    } finally {
+      logs.stopCapturing();
+      cluster.shutdown();
+    }
+  }
+
   private static FsDatasetImpl dataset(DataNode dn) {
     return (FsDatasetImpl)DataNodeTestUtils.getFSDataset(dn);
   }
@@ -17,13 +17,18 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileSystemTestHelper;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -34,6 +39,7 @@
 import org.apache.hadoop.hdfs.server.datanode.BlockScanner;
 import org.apache.hadoop.hdfs.server.datanode.DNConf;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeFaultInjector;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
@@ -42,12 +48,14 @@
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.MultipleIOException;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Matchers;
@@ -57,12 +65,17 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
 import static org.junit.Assert.assertEquals;
@@ -86,6 +99,7 @@
 import static org.mockito.Mockito.when;
 
 public class TestFsDatasetImpl {
+  private static final Log LOG = LogFactory.getLog(TestFsDatasetImpl.class);
   private static final String BASE_DIR =
       new FileSystemTestHelper().getTestRootDir();
   private static final int NUM_INIT_VOLUMES = 2;
@@ -437,4 +451,91 @@ public void testDuplicateReplicaResolution() throws IOException {
     assertSame(replica,
         BlockPoolSlice.selectReplicaToDelete(replicaOtherNewer, replica));
   }
+
+  /**
+   * Writes to the other volumes of a datanode go on while a slow volume
+   * stalls the creation and the finalization of its replicas.
+   */
+  @Test(timeout = 120000)
+  public void testSlowVolumeDoesNotStallOtherVolumes() throws Exception {
+    final int numWriters = 8;
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(
+        new HdfsConfiguration()).numDataNodes(1).storagesPerDatanode(4)
+        .build();
+    final DataNodeFaultInjector oldInjector = DataNodeFaultInjector.get();
+    final CountDownLatch slowVolumeUsed = new CountDownLatch(1);
+    final CountDownLatch releaseSlowVolume = new CountDownLatch(1);
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final FsVolumeSpi slowVolume = DataNodeTestUtils.getFSDataset(
+          cluster.getDataNodes().get(0)).getVolumes().get(0);
+      DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+        @Override
+        public void delayReplicaFileIO(FsVolumeSpi volume)
+            throws IOException {
+          if (volume == slowVolume) {
+            slowVolumeUsed.countDown();
+            try {
+              releaseSlowVolume.await();
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException();
+            }
+          }
+        }
+      });
+
+      final AtomicInteger numFiles = new AtomicInteger();
+      final AtomicBoolean stop = new AtomicBoolean(false);
+      final List<IOException> errors =
+          Collections.synchronizedList(new ArrayList<IOException>());
+      final List<Thread> writers = new ArrayList<Thread>();
+      for (int t = 0; t < numWriters; t++) {
+        final int id = t;
+        writers.add(new Thread("writer-" + t) {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; !stop.get(); i++) {
+                DFSTestUtil.createFile(fs, new Path("/w" + id + "/f" + i),
+                    1024, (short) 1, id);
+                numFiles.incrementAndGet();
+              }
+            } catch (IOException e) {
+              errors.add(e);
+            }
+          }
+        });
+      }
+      for (Thread t : writers) {
+        t.start();
+      }
+
+      // every writer goes on until it also picks the slow volume
+      assertTrue(slowVolumeUsed.await(60, TimeUnit.SECONDS));
+      final long start = Time.monotonicNow();
+      final int before = numFiles.get();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return numFiles.get() >= before + numWriters;
+        }
+      }, 10, 30000);
+      final long elapsed = Math.max(1, Time.monotonicNow() - start);
+      LOG.info("Wrote " + (numFiles.get() - before) + " files in " + elapsed
+          + " ms with a stalled volume, "
+          + (numFiles.get() - before) * 1000L / elapsed + " files/s");
+
+      stop.set(true);
+      releaseSlowVolume.countDown();
+      for (Thread t : writers) {
+        t.join();
+      }
+      assertTrue("Failed writes: " + errors, errors.isEmpty());
+    } finally {
+      releaseSlowVolume.countDown();
+      DataNodeFaultInjector.set(oldInjector);
+      cluster.shutdown();
+    }
+  }
 }
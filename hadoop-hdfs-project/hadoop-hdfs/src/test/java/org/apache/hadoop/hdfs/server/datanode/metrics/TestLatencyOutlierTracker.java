@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test the detection of the slow peers or volumes among the others.  The
+ * latencies are histogram bucket bounds so the percentiles are exact.
+ */
+public class TestLatencyOutlierTracker {
+  private static final long WINDOW_MS = 60 * 1000;
+
+  private static void addSamples(LatencyOutlierTracker tracker, String key,
+      long latencyMs, int count) {
+    for (int i = 0; i < count; i++) {
+      tracker.add(key, latencyMs);
+    }
+  }
+
+  @Test
+  public void testOutlier() {
+    final LatencyOutlierTracker tracker =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 10, 5);
+    addSamples(tracker, "n1", 10, 10);
+    addSamples(tracker, "n2", 12, 10);
+    addSamples(tracker, "n3", 14, 10);
+    addSamples(tracker, "n4", 224, 10);
+
+    assertEquals(4, tracker.getLatencies().size());
+    final Map<String, Long> outliers = tracker.getOutliers();
+    assertEquals(1, outliers.size());
+    assertEquals(224L, (long) outliers.get("n4"));
+  }
+
+  @Test
+  public void testNoOutlierWhenAllAreSimilar() {
+    final LatencyOutlierTracker tracker =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 10, 5);
+    addSamples(tracker, "n1", 10, 10);
+    addSamples(tracker, "n2", 20, 10);
+    addSamples(tracker, "n3", 16, 10);
+    addSamples(tracker, "n4", 28, 10);
+    assertTrue(tracker.getOutliers().isEmpty());
+  }
+
+  @Test
+  public void testMinSamples() {
+    final LatencyOutlierTracker tracker =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 10, 5);
+    addSamples(tracker, "n1", 10, 10);
+    addSamples(tracker, "n2", 10, 10);
+    addSamples(tracker, "n3", 10, 10);
+    // too few samples to be compared
+    addSamples(tracker, "n4", 224, 9);
+    assertEquals(3, tracker.getLatencies().size());
+    assertTrue(tracker.getOutliers().isEmpty());
+
+    tracker.add("n4", 224);
+    assertEquals(224L, (long) tracker.getOutliers().get("n4"));
+  }
+
+  @Test
+  public void testMinCompared() {
+    final LatencyOutlierTracker tracker =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 1, 5);
+    addSamples(tracker, "n1", 10, 1);
+    addSamples(tracker, "n2", 224, 1);
+    // two peers cannot tell which one is slow
+    assertTrue(tracker.getOutliers().isEmpty());
+    addSamples(tracker, "n3", 10, 1);
+    assertEquals(224L, (long) tracker.getOutliers().get("n2"));
+
+    final LatencyOutlierTracker four =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 1, 5, 4);
+    addSamples(four, "n1", 10, 1);
+    addSamples(four, "n2", 224, 1);
+    addSamples(four, "n3", 10, 1);
+    assertTrue(four.getOutliers().isEmpty());
+  }
+
+  @Test
+  public void testLowThreshold() {
+    final LatencyOutlierTracker tracker =
+        new LatencyOutlierTracker(WINDOW_MS, 95, 1, 50);
+    addSamples(tracker, "n1", 1, 1);
+    addSamples(tracker, "n2", 1, 1);
+    addSamples(tracker, "n3", 1, 1);
+    // far above the others, but still fast enough
+    addSamples(tracker, "n4", 40, 1);
+    assertTrue(tracker.getOutliers().isEmpty());
+
+    addSamples(tracker, "n4", 112, 1);
+    assertEquals(112L, (long) tracker.getOutliers().get("n4"));
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Measures the NameNode heap consumed by the namespace and the blocks map.
+ *
+ * Synopsis: NNHeapFootprintBenchmark [-numFiles numFiles]
+ *     [-filesPerDir filesPerDirectory] [-blocksPerFile numBlocksPerFile]
+ *     [-replication replicationFactor]
+ *
+ * The benchmark formats a NameNode in a temporary directory, loads it in
+ * process and injects a synthetic namespace directly into the
+ * {@link FSDirectory} and the {@link BlockManager}, the way the fsimage
+ * loader does.  Heap usage is sampled after a full GC before the namespace
+ * is created, after the files and directories are added and after their
+ * blocks are added, which gives the average cost of an inode and of a block.
+ * Run it with a fixed heap size (-Xms equal to -Xmx) for stable results.
+ *
+ * The NameNode has no compact or off-heap representation of inodes and
+ * blocks, so this measures the regular {@link INodeFile},
+ * {@link INodeDirectory} and {@link BlockInfoContiguous} objects.  The
+ * results are the baseline that such a representation would be judged
+ * against.
+ */
+public class NNHeapFootprintBenchmark extends Configured implements Tool {
+  private static final Log LOG =
+      LogFactory.getLog(NNHeapFootprintBenchmark.class);
+
+  static final String BASE_PATH = "heapFootprint";
+  static final long BLOCK_SIZE = 128L * 1024 * 1024;
+
+  static final String USAGE = "Usage: NNHeapFootprintBenchmark"
+      + " [-numFiles numFiles] [-filesPerDir filesPerDirectory]"
+      + " [-blocksPerFile numBlocksPerFile] [-replication replicationFactor]";
+
+  /** The heap used by a synthetic namespace. */
+  static class Result {
+    final int numFiles;
+    final int numDirs;
+    final long numBlocks;
+    final long inodeBytes;
+    final long blockBytes;
+
+    Result(int numFiles, int numDirs, long numBlocks, long inodeBytes,
+        long blockBytes) {
+      this.numFiles = numFiles;
+      this.numDirs = numDirs;
+      this.numBlocks = numBlocks;
+      this.inodeBytes = inodeBytes;
+      this.blockBytes = blockBytes;
+    }
+
+    @Override
+    public String toString() {
+      final int numINodes = numFiles + numDirs;
+      return "Files: " + numFiles + ", directories: " + numDirs
+          + ", blocks: " + numBlocks + "\n"
+          + "Heap used by inodes: " + inodeBytes + " bytes, "
+          + (numINodes == 0 ? 0 : inodeBytes / numINodes) + " bytes/inode\n"
+          + "Heap used by blocks: " + blockBytes + " bytes, "
+          + (numBlocks == 0 ? 0 : blockBytes / numBlocks) + " bytes/block";
+    }
+  }
+
+  /**
+   * Add numFiles files with blocksPerFile blocks each to the namespace of
+   * fsn, filesPerDir files per directory, and measure the heap they use.
+   */
+  static Result run(FSNamesystem fsn, int numFiles, int filesPerDir,
+      int blocksPerFile, short replication) {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final BlockManager bm = fsn.getBlockManager();
+    final PermissionStatus perm = new PermissionStatus("joeDoe", "people",
+        new FsPermission((short) 0755));
+    final int numDirs = (numFiles + filesPerDir - 1) / filesPerDir;
+    final INodeFile[] files = new INodeFile[numFiles];
+
+    fsn.writeLock();
+    try {
+      final long beforeINodes = getUsedHeap();
+      final INodeDirectory base = new INodeDirectory(fsd.allocateNewInodeId(),
+          DFSUtil.string2Bytes(BASE_PATH), perm, 0L);
+      addChild(fsd, fsd.getRoot(), base);
+      INodeDirectory dir = null;
+      for (int i = 0; i < numFiles; i++) {
+        if (i % filesPerDir == 0) {
+          if (dir != null) {
+            dir.trimChildren();
+          }
+          dir = new INodeDirectory(fsd.allocateNewInodeId(),
+              DFSUtil.string2Bytes("dir" + (i / filesPerDir)), perm, 0L);
+          addChild(fsd, base, dir);
+        }
+        files[i] = new INodeFile(fsd.allocateNewInodeId(),
+            DFSUtil.string2Bytes("file" + i), perm, 0L, 0L,
+            new BlockInfoContiguous[blocksPerFile], replication, BLOCK_SIZE);
+        addChild(fsd, dir, files[i]);
+      }
+      if (dir != null) {
+        dir.trimChildren();
+      }
+      base.trimChildren();
+      final long afterINodes = getUsedHeap();
+
+      long blockId = 1;
+      for (INodeFile file : files) {
+        final BlockInfoContiguous[] blocks = file.getBlocks();
+        for (int j = 0; j < blocks.length; j++) {
+          blocks[j] = bm.addBlockCollection(new BlockInfoContiguous(
+              new Block(blockId++, BLOCK_SIZE, 1001L), replication), file);
+        }
+      }
+      final long afterBlocks = getUsedHeap();
+      return new Result(numFiles, numDirs + 1, blockId - 1,
+          afterINodes - beforeINodes, afterBlocks - afterINodes);
+    } finally {
+      fsn.writeUnlock();
+    }
+  }
+
+  private static void addChild(FSDirectory fsd, INodeDirectory parent,
+      INode child) {
+    if (!parent.addChild(child)) {
+      throw new IllegalStateException("Duplicate child " + child
+          + " of " + parent);
+    }
+    fsd.addToInodeMap(child);
+  }
+
+  /** @return the used heap after a full garbage collection. */
+  static long getUsedHeap() {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long used = Long.MAX_VALUE;
+    // a single System.gc() may leave garbage behind, take the lowest reading
+    for (int i = 0; i < 3; i++) {
+      memory.gc();
+      used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+    }
+    return used;
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    int numFiles = 100000;
+    int filesPerDir = 32;
+    int blocksPerFile = 1;
+    short replication = 3;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        System.err.println(USAGE);
+        return -1;
+      }
+      if (args[i].equals("-numFiles")) {
+        numFiles = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-filesPerDir")) {
+        filesPerDir = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-blocksPerFile")) {
+        blocksPerFile = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-replication")) {
+        replication = Short.parseShort(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        return -1;
+      }
+    }
+    if (numFiles < 0 || filesPerDir < 1 || blocksPerFile < 0
+        || replication < 1) {
+      System.err.println(USAGE);
+      return -1;
+    }
+
+    final File nameDir = new File(System.getProperty("java.io.tmpdir"),
+        "NNHeapFootprintBenchmark");
+    final Configuration conf = new HdfsConfiguration(getConf());
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
+    FSNamesystem fsn = null;
+    try {
+      DFSTestUtil.formatNameNode(conf);
+      fsn = FSNamesystem.loadFromDisk(conf);
+      final Result result = run(fsn, numFiles, filesPerDir, blocksPerFile,
+          replication);
+      LOG.info("--- NameNode heap footprint ---\n" + result);
+    } finally {
+      if (fsn != null) {
+        fsn.close();
+      }
+      FileUtil.fullyDelete(nameDir);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new HdfsConfiguration(),
+        new NNHeapFootprintBenchmark(), args));
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for syncing the edit log from a dedicated thread.
+ */
+public class TestFSEditLogAsync {
+  private static final int NUM_THREADS = 8;
+  private static final int DIRS_PER_THREAD = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFS_NAMENODE_EDITS_ASYNC_LOGGING, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Edits from many concurrent clients, interleaved with log rolls, must all
+   * be durable once the clients' calls return.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentEditsAreDurable() throws Exception {
+    final FSEditLog editLog = cluster.getNamesystem().getEditLog();
+    assertTrue(editLog instanceof FSEditLogAsync);
+    assertTrue(((FSEditLogAsync) editLog).isSyncThreadAlive());
+
+    final FileSystem fs = cluster.getFileSystem();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS + 1);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < NUM_THREADS; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < DIRS_PER_THREAD; j++) {
+              assertTrue(fs.mkdirs(new Path("/async/" + thread + "/" + j)));
+            }
+            return null;
+          }
+        }));
+      }
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int i = 0; i < 5; i++) {
+            cluster.getNameNodeRpc().rollEditLog();
+          }
+          return null;
+        }
+      }));
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+
+    cluster.restartNameNode();
+    FileSystem restarted = cluster.getFileSystem();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      for (int j = 0; j < DIRS_PER_THREAD; j++) {
+        assertTrue(restarted.exists(new Path("/async/" + i + "/" + j)));
+      }
+    }
+  }
+
+  /**
+   * The sync thread is stopped when the edit log is closed.
+   */
+  @Test(timeout = 60000)
+  public void testSyncThreadStopsOnClose() throws Exception {
+    FSNamesystem fsn = cluster.getNamesystem();
+    FSEditLogAsync editLog = (FSEditLogAsync) fsn.getEditLog();
+    assertTrue(editLog.isSyncThreadAlive());
+
+    fsn.writeLock();
+    try {
+      editLog.close();
+    } finally {
+      fsn.writeUnlock();
+    }
+    assertFalse(editLog.isSyncThreadAlive());
+  }
+}
@@ -17,11 +17,19 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.fs.permission.AclEntryScope.ACCESS;
+import static org.apache.hadoop.fs.permission.AclEntryType.GROUP;
+import static org.apache.hadoop.fs.permission.AclEntryType.USER;
+import static org.apache.hadoop.fs.permission.FsAction.READ;
+import static org.apache.hadoop.fs.permission.FsAction.READ_EXECUTE;
+import static org.apache.hadoop.hdfs.server.namenode.AclTestHelpers.aclEntry;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 
 import org.junit.Assert;
@@ -31,8 +39,10 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
@@ -42,10 +52,13 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
+import com.google.common.collect.Lists;
 import org.junit.Test;
 
 public class TestFSImage {
@@ -67,6 +80,123 @@ public void testCompression() throws IOException {
     testPersistHelper(conf);
   }
 
+  @Test
+  public void testParallelPersist() throws IOException {
+    testPersistHelper(getParallelConf());
+  }
+
+  private static Configuration getParallelConf() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    return conf;
+  }
+
+  /**
+   * Ensure that an image with sub-sections is loaded correctly both in
+   * parallel and, when parallel loading is disabled, serially. Every
+   * directory and some files carry the same ACL, so the loader threads
+   * share the interned ACL features.
+   */
+  @Test(timeout=120000)
+  public void testParallelLoadWithSubSections() throws IOException {
+    Configuration conf = getParallelConf();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      // 40 directories with 2 files each, so that the directory section is
+      // also large enough to be split into sub-sections
+      for (int i = 0; i < 40; i++) {
+        for (int j = 0; j < 2; j++) {
+          DFSTestUtil.createFile(fs, new Path("/dir" + i + "/file" + j),
+              10, (short) 1, 0L);
+        }
+        fs.modifyAclEntries(new Path("/dir" + i),
+            Lists.newArrayList(aclEntry(ACCESS, USER, "foo", READ_EXECUTE)));
+        fs.modifyAclEntries(new Path("/dir" + i + "/file0"),
+            Lists.newArrayList(aclEntry(ACCESS, USER, "foo", READ)));
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File currentDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0).get(
+          0);
+      File fsimage = FSImageTestUtil.findNewestImageFile(currentDir
+          .getAbsolutePath());
+      int inodeSubSections = 0;
+      int dirSubSections = 0;
+      RandomAccessFile raFile = new RandomAccessFile(fsimage, "r");
+      try {
+        FileSummary summary = FSImageUtil.loadSummary(raFile);
+        for (FileSummary.Section section : summary.getSectionsList()) {
+          SectionName name = SectionName.fromString(section.getName());
+          if (name == SectionName.INODE_SUB) {
+            inodeSubSections++;
+          } else if (name == SectionName.INODE_DIR_SUB) {
+            dirSubSections++;
+          }
+        }
+      } finally {
+        raFile.close();
+      }
+      assertEquals(4, inodeSubSections);
+      assertTrue(dirSubSections > 1);
+
+      // The interned ACL features are static, so forget those of the
+      // running NameNode before each restart to count only the loaded ones.
+      AclStorage.getUniqueAclFeatures().clear();
+      cluster.restartNameNode();
+      cluster.waitActive();
+      checkParallelLoadFiles(cluster);
+
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, false);
+      AclStorage.getUniqueAclFeatures().clear();
+      cluster.restartNameNode();
+      cluster.waitActive();
+      checkParallelLoadFiles(cluster);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  private static void checkParallelLoadFiles(MiniDFSCluster cluster)
+      throws IOException {
+    DistributedFileSystem fs = cluster.getFileSystem();
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 2; j++) {
+        Path file = new Path("/dir" + i + "/file" + j);
+        assertEquals(10, fs.getFileStatus(file).getLen());
+        assertEquals(1, fs.getFileBlockLocations(file, 0, 10).length);
+      }
+      assertArrayEquals(new AclEntry[] {
+          aclEntry(ACCESS, USER, "foo", READ_EXECUTE),
+          aclEntry(ACCESS, GROUP, READ_EXECUTE) },
+          fs.getAclStatus(new Path("/dir" + i)).getEntries()
+              .toArray(new AclEntry[0]));
+      assertArrayEquals(new AclEntry[] {
+          aclEntry(ACCESS, USER, "foo", READ),
+          aclEntry(ACCESS, GROUP, READ) },
+          fs.getAclStatus(new Path("/dir" + i + "/file0")).getEntries()
+              .toArray(new AclEntry[0]));
+    }
+    // All directories share one interned ACL feature and all file0s another
+    FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+    assertEquals(2,
+        AclStorage.getUniqueAclFeatures().getUniqueElementsSize());
+    assertEquals(40, fsd.getINode("/dir0").getAclFeature().getRefCount());
+    assertEquals(40,
+        fsd.getINode("/dir0/file0").getAclFeature().getRefCount());
+  }
+
   private void testPersistHelper(Configuration conf) throws IOException {
     MiniDFSCluster cluster = null;
     try {
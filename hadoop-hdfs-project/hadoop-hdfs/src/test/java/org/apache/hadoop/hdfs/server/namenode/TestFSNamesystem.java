@@ -36,6 +36,8 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.apache.hadoop.util.Timer;
 import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -196,6 +198,120 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  /**
+   * Test that lock holds longer than the reporting thresholds are logged
+   * and counted, while shorter and nested holds are not.
+   */
+  @Test
+  public void testFSNamesystemLockReporting() {
+    final long[] now = new long[] { 0 };
+    Timer timer = new Timer() {
+      @Override
+      public long monotonicNow() {
+        return now[0];
+      }
+
+      @Override
+      public long monotonicNowNanos() {
+        return now[0] * 1000000;
+      }
+    };
+    FSNamesystemLock rwLock = new FSNamesystemLock(true, 100, 200, 0, timer);
+    LogCapturer logs = LogCapturer.captureLogs(FSNamesystem.LOG);
+
+    // short write lock hold is not reported
+    rwLock.acquireWriteLock();
+    now[0] += 50;
+    rwLock.releaseWriteLock();
+    assertEquals(0, rwLock.getNumLongWriteLockHolds());
+    assertEquals(50, rwLock.getLongestWriteLockHeldInterval());
+
+    // only the outermost hold of a reentrant write lock is reported
+    rwLock.acquireWriteLock();
+    now[0] += 60;
+    rwLock.acquireWriteLock();
+    now[0] += 60;
+    rwLock.releaseWriteLock();
+    assertEquals(0, rwLock.getNumLongWriteLockHolds());
+    rwLock.releaseWriteLock();
+    assertEquals(1, rwLock.getNumLongWriteLockHolds());
+    assertEquals(120, rwLock.getLongestWriteLockHeldInterval());
+    assertTrue(logs.getOutput().contains(
+        "FSNamesystem write lock held for 120 ms"));
+
+    // read lock holds use their own threshold
+    rwLock.acquireReadLock();
+    now[0] += 150;
+    rwLock.releaseReadLock();
+    assertEquals(0, rwLock.getNumLongReadLockHolds());
+
+    rwLock.acquireReadLock();
+    now[0] += 250;
+    rwLock.releaseReadLock();
+    assertEquals(1, rwLock.getNumLongReadLockHolds());
+    assertTrue(logs.getOutput().contains(
+        "FSNamesystem read lock held for 250 ms"));
+    assertEquals(0, rwLock.getReadHoldCount());
+    assertEquals(0, rwLock.getWriteHoldCount());
+    logs.stopCapturing();
+  }
+
+  /**
+   * Test that long lock holds are only logged once per suppression interval
+   * and lock kind, while all of them are counted.
+   */
+  @Test
+  public void testFSNamesystemLockReportSuppression() {
+    final long[] now = new long[] { 0 };
+    Timer timer = new Timer() {
+      @Override
+      public long monotonicNow() {
+        return now[0];
+      }
+
+      @Override
+      public long monotonicNowNanos() {
+        return now[0] * 1000000;
+      }
+    };
+    FSNamesystemLock rwLock =
+        new FSNamesystemLock(true, 100, 100, 10000, timer);
+    LogCapturer logs = LogCapturer.captureLogs(FSNamesystem.LOG);
+
+    rwLock.acquireWriteLock();
+    now[0] += 110;
+    rwLock.releaseWriteLock();
+    assertTrue(logs.getOutput().contains(
+        "FSNamesystem write lock held for 110 ms"));
+
+    // within the interval: counted, not logged
+    rwLock.acquireWriteLock();
+    now[0] += 120;
+    rwLock.releaseWriteLock();
+    assertEquals(2, rwLock.getNumLongWriteLockHolds());
+    assertFalse(logs.getOutput().contains(
+        "FSNamesystem write lock held for 120 ms"));
+
+    // read lock holds are suppressed independently
+    rwLock.acquireReadLock();
+    now[0] += 130;
+    rwLock.releaseReadLock();
+    assertTrue(logs.getOutput().contains(
+        "FSNamesystem read lock held for 130 ms"));
+
+    // after the interval, the next hold is logged with the suppressed count
+    now[0] += 10000;
+    rwLock.acquireWriteLock();
+    now[0] += 140;
+    rwLock.releaseWriteLock();
+    assertEquals(3, rwLock.getNumLongWriteLockHolds());
+    assertTrue(logs.getOutput().contains(
+        "FSNamesystem write lock held for 140 ms"));
+    assertTrue(logs.getOutput().contains(
+        "Number of suppressed write-lock reports: 1"));
+    logs.stopCapturing();
+  }
+
   @Test
   public void testReset() throws Exception {
     Configuration conf = new Configuration();
@@ -26,7 +26,9 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -61,6 +63,8 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.hdfs.util.ChunkedList;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Test;
@@ -209,6 +213,51 @@ public void testGetFullPathName() {
     assertEquals(Path.SEPARATOR, root.getFullPathName());
   }
   
+  /**
+   * Test that a directory keeps its children sorted when they are moved to
+   * and from a {@link ChunkedList}.
+   */
+  @Test
+  public void testLargeDirectoryChildren() {
+    final INodeDirectory dir = new INodeDirectory(INodeId.GRANDFATHER_INODE_ID,
+        DFSUtil.string2Bytes("d"), perm, 0L);
+    final int n = INodeDirectory.LARGE_DIRECTORY_THRESHOLD + 100;
+    final List<INodeFile> files = new ArrayList<INodeFile>(n);
+    for (int i = 0; i < n; i++) {
+      INodeFile f = createINodeFile((byte) 0);
+      f.setLocalName(DFSUtil.string2Bytes("f" + i));
+      files.add(f);
+    }
+    Collections.shuffle(files, new Random(Time.now()));
+    for (INodeFile f : files) {
+      assertTrue(dir.addChild(f));
+    }
+    assertFalse(dir.addChild(files.get(0)));
+    assertChildrenSorted(dir, n);
+    for (INodeFile f : files) {
+      assertTrue(dir.searchChildren(f.getLocalNameBytes()) >= 0);
+    }
+
+    // remove until the children are moved back to an array
+    for (int i = 0; i < n - INodeDirectory.LARGE_DIRECTORY_THRESHOLD / 4; i++) {
+      assertTrue(dir.removeChild(files.get(i)));
+      assertFalse(dir.removeChild(files.get(i)));
+    }
+    assertChildrenSorted(dir, INodeDirectory.LARGE_DIRECTORY_THRESHOLD / 4);
+    assertEquals(-1, dir.searchChildren(DFSUtil.string2Bytes("")));
+  }
+
+  private static void assertChildrenSorted(INodeDirectory dir, int n) {
+    final ReadOnlyList<INode> children =
+        dir.getChildrenList(Snapshot.CURRENT_STATE_ID);
+    assertEquals(n, children.size());
+    for (int i = 1; i < n; i++) {
+      assertTrue(children.get(i - 1).compareTo(
+          children.get(i).getLocalNameBytes()) < 0);
+      assertEquals(i, dir.searchChildren(children.get(i).getLocalNameBytes()));
+    }
+  }
+
   /**
    * FSDirectory#unprotectedSetQuota creates a new INodeDirectoryWithQuota to
    * replace the original INodeDirectory. Before HDFS-4243, the parent field of
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestNNHeapFootprintBenchmark {
+
+  @After
+  public void cleanUp() {
+    FileUtil.fullyDeleteContents(new File(MiniDFSCluster.getBaseDirectory()));
+  }
+
+  /**
+   * The synthetic namespace is complete and consistent with the blocks map.
+   */
+  @Test(timeout = 120000)
+  public void testHeapFootprint() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
+    DFSTestUtil.formatNameNode(conf);
+    FSNamesystem fsn = FSNamesystem.loadFromDisk(conf);
+    try {
+      NNHeapFootprintBenchmark.Result result =
+          NNHeapFootprintBenchmark.run(fsn, 1000, 30, 2, (short) 3);
+      assertEquals(1000, result.numFiles);
+      assertEquals(35, result.numDirs);
+      assertEquals(2000, result.numBlocks);
+      assertEquals(2000, fsn.getBlocksTotal());
+      // the root directory is not included in the result
+      assertEquals(result.numFiles + result.numDirs + 1,
+          fsn.getFSDirectory().getInodeMapSize());
+
+      INodeDirectory base = fsn.getFSDirectory().getINode(
+          "/" + NNHeapFootprintBenchmark.BASE_PATH).asDirectory();
+      assertEquals(34, base.getChildrenList(
+          Snapshot.CURRENT_STATE_ID).size());
+      INodeFile file = fsn.getFSDirectory().getINode(
+          "/" + NNHeapFootprintBenchmark.BASE_PATH + "/dir33/file999")
+          .asFile();
+      assertEquals(2, file.getBlocks().length);
+      assertTrue(file == fsn.getBlockManager().getBlockCollection(
+          file.getBlocks()[1]));
+    } finally {
+      fsn.close();
+    }
+  }
+
+  /** The tool runs end to end and rejects bad arguments. */
+  @Test(timeout = 120000)
+  public void testToolRunner() throws Exception {
+    assertEquals(0, ToolRunner.run(new HdfsConfiguration(),
+        new NNHeapFootprintBenchmark(), new String[] {"-numFiles", "100"}));
+    assertEquals(-1, ToolRunner.run(new HdfsConfiguration(),
+        new NNHeapFootprintBenchmark(), new String[] {"-numFiles"}));
+  }
+}
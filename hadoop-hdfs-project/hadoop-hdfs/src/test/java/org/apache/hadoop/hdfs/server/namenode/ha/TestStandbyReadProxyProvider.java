@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ClientNamenodeProtocol;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for reading from a standby NameNode through
+ * {@link StandbyReadProxyProvider}.
+ */
+public class TestStandbyReadProxyProvider {
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private NameNode active;
+  private NameNode standby;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(1).build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+    active = cluster.getNameNode(0);
+    standby = cluster.getNameNode(1);
+
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, conf, logicalName);
+    conf.set(DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX + "." + logicalName,
+        StandbyReadProxyProvider.class.getName());
+    fs = FileSystem.get(new URI("hdfs://" + logicalName), conf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static long getFileInfoOps(NameNode nn) {
+    RpcDetailedMetrics metrics =
+        NameNodeAdapter.getRpcServer(nn).getRpcDetailedMetrics();
+    // the metrics are only registered by the first call otherwise
+    metrics.init(ClientNamenodeProtocol.BlockingInterface.class);
+    return getLongCounter("GetFileInfoNumOps", getMetrics(metrics.name()));
+  }
+
+  /**
+   * Reads go to the standby once it has caught up with the client.
+   */
+  @Test(timeout = 120000)
+  public void testReadsServedByStandby() throws Exception {
+    final Path file = new Path("/file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    HATestUtil.waitForStandbyToCatchUp(active, standby);
+
+    final long activeOps = getFileInfoOps(active);
+    final long standbyOps = getFileInfoOps(standby);
+    assertEquals(1024, fs.getFileStatus(file).getLen());
+    assertEquals(activeOps, getFileInfoOps(active));
+    assertEquals(standbyOps + 1, getFileInfoOps(standby));
+
+    // application errors of the standby are not retried on the active
+    try {
+      fs.getFileStatus(new Path("/nonexistent"));
+      fail("Expected FileNotFoundException");
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+    assertEquals(activeOps, getFileInfoOps(active));
+
+    // reading the data works whichever NameNode serves the block locations
+    assertEquals(DFSTestUtil.readFile(fs, file).length(), 1024);
+  }
+
+  /**
+   * Reads go to the active while the standby has not applied the writes of
+   * the client yet.
+   */
+  @Test(timeout = 120000)
+  public void testReadYourWrites() throws Exception {
+    final long activeOps = getFileInfoOps(active);
+    final long standbyOps = getFileInfoOps(standby);
+    for (int i = 0; i < 10; i++) {
+      final Path dir = new Path("/dir" + i);
+      assertTrue(fs.mkdirs(dir));
+      // the standby only applies finalized edit log segments
+      assertTrue(fs.getFileStatus(dir).isDirectory());
+    }
+    assertEquals("The standby served a stale read",
+        standbyOps, getFileInfoOps(standby));
+    assertEquals(activeOps + 10, getFileInfoOps(active));
+    assertTrue(standby.getNamesystem().getFSImage().getLastAppliedTxId()
+        < active.getNamesystem().getFSImage().getLastAppliedOrWrittenTxId());
+  }
+
+  /**
+   * A new client has not seen any state id yet, so its first read goes to
+   * the active rather than to a standby which may be missing the writes of
+   * other clients.
+   */
+  @Test(timeout = 120000)
+  public void testFirstReadServedByActive() throws Exception {
+    final Path dir = new Path("/written-by-other-client");
+    assertTrue(cluster.getFileSystem(0).mkdirs(dir));
+
+    final long activeOps = getFileInfoOps(active);
+    final long standbyOps = getFileInfoOps(standby);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertEquals(activeOps + 1, getFileInfoOps(active));
+    assertEquals(standbyOps, getFileInfoOps(standby));
+  }
+
+  /**
+   * Clients which do not send the last transaction id they have seen cannot
+   * read from the standby.
+   */
+  @Test(timeout = 120000)
+  public void testStandbyRejectsClientsWithoutState() throws Exception {
+    ClientProtocol client = NameNodeProxies.createNonHAProxy(conf,
+        standby.getNameNodeAddress(), ClientProtocol.class,
+        UserGroupInformation.getCurrentUser(), false).getProxy();
+    try {
+      client.getFileInfo("/");
+      fail("Expected StandbyException");
+    } catch (RemoteException e) {
+      assertTrue(e.unwrapRemoteException() instanceof StandbyException);
+    }
+  }
+
+  /**
+   * The provider hands out the same proxy until it fails over.
+   */
+  @Test(timeout = 120000)
+  public void testProxyCachedUntilFailover() throws Exception {
+    final StandbyReadProxyProvider<ClientProtocol> provider =
+        new StandbyReadProxyProvider<ClientProtocol>(conf,
+            fs.getUri(), ClientProtocol.class);
+    try {
+      final ClientProtocol proxy = provider.getProxy().proxy;
+      assertSame(proxy, provider.getProxy().proxy);
+      provider.performFailover(proxy);
+      final ClientProtocol failedOver = provider.getProxy().proxy;
+      assertNotSame(proxy, failedOver);
+      assertSame(failedOver, provider.getProxy().proxy);
+    } finally {
+      provider.close();
+    }
+  }
+}
@@ -241,6 +241,80 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
   }
   
   
+  /**
+   * Test that the least recently used mmaps are unmapped once the mmaps
+   * exceed their maximum total size, but never the ones in use.
+   */
+  @Test(timeout=60000)
+  public void testMmapEvictionBySize() throws Exception {
+    // The data file of each pair is one byte long.
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000000, 0, 2);
+    final TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[] {
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+    };
+    final ShortCircuitReplica replicas[] = new ShortCircuitReplica[3];
+    final ClientMmap mmaps[] = new ClientMmap[3];
+    for (int i = 0; i < pairs.length; i++) {
+      replicas[i] = cache.fetchOrCreate(new ExtendedBlockId(i, "test_bp1"),
+          new SimpleReplicaCreator(i, cache, pairs[i])).getReplica();
+      mmaps[i] = replicas[i].getOrCreateClientMmap(false);
+      Assert.assertNotNull(mmaps[i]);
+    }
+    // All of the mmaps are in use.
+    Assert.assertEquals(3, cache.getMmappedBytes());
+    for (int i = 0; i < pairs.length; i++) {
+      mmaps[i].close();
+      replicas[i].unref();
+    }
+    // The least recently used one was unmapped.
+    Assert.assertEquals(2, cache.getMmappedBytes());
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          Map<Long, ShortCircuitReplica> evictable,
+          Map<Long, ShortCircuitReplica> evictableMmapped) {
+        Assert.assertEquals(2, numOutstandingMmaps);
+        Assert.assertEquals(1, evictable.size());
+        Assert.assertEquals(2, evictableMmapped.size());
+        Assert.assertFalse(replicas.get(
+            new ExtendedBlockId(0, "test_bp1")).hasMmap());
+      }
+    });
+
+    // Mapping the first one again unmaps the second one.
+    ShortCircuitReplica replica = cache.fetchOrCreate(
+        new ExtendedBlockId(0, "test_bp1"),
+        new SimpleReplicaCreator(0, cache, pairs[0])).getReplica();
+    ClientMmap mmap = replica.getOrCreateClientMmap(false);
+    Assert.assertNotNull(mmap);
+    Assert.assertEquals(2, cache.getMmappedBytes());
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          Map<Long, ShortCircuitReplica> evictable,
+          Map<Long, ShortCircuitReplica> evictableMmapped) {
+        Assert.assertFalse(replicas.get(
+            new ExtendedBlockId(1, "test_bp1")).hasMmap());
+        Assert.assertTrue(replicas.get(
+            new ExtendedBlockId(2, "test_bp1")).hasMmap());
+      }
+    });
+    mmap.close();
+    replica.unref();
+    cache.close();
+    Assert.assertEquals(0, cache.getMmappedBytes());
+    for (TestFileDescriptorPair pair : pairs) {
+      pair.close();
+    }
+  }
+
   @Test(timeout=60000)
   public void testEviction() throws Exception {
     final ShortCircuitCache cache =
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+
+public class TestChunkedList {
+  private static final Log LOG = LogFactory.getLog(TestChunkedList.class);
+
+  private static void assertSameElements(List<Integer> expected,
+      ChunkedList<Integer> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), actual.get(i));
+    }
+    final Iterator<Integer> it = actual.iterator();
+    for (Integer e : expected) {
+      assertTrue(it.hasNext());
+      assertEquals(e, it.next());
+    }
+    assertTrue(!it.hasNext());
+  }
+
+  /**
+   * Insert and remove random elements of a sorted list, and compare with an
+   * {@link ArrayList}.
+   */
+  @Test
+  public void testRandomOperations() {
+    final long seed = Time.now();
+    LOG.info("seed = " + seed);
+    final Random random = new Random(seed);
+    final List<Integer> expected = new ArrayList<Integer>();
+    final ChunkedList<Integer> actual = new ChunkedList<Integer>(8);
+
+    for (int round = 0; round < 4; round++) {
+      // grow
+      for (int i = 0; i < 500; i++) {
+        final Integer e = random.nextInt(1000);
+        final int expectedIndex = Collections.binarySearch(expected, e);
+        assertEquals(expectedIndex, actual.binarySearch(e));
+        if (expectedIndex < 0) {
+          expected.add(-expectedIndex - 1, e);
+          actual.add(-expectedIndex - 1, e);
+        }
+      }
+      assertSameElements(expected, actual);
+      assertTrue(actual.getNumChunks() > expected.size() / 8);
+
+      // shrink
+      while (expected.size() > 50 * round) {
+        final int i = random.nextInt(expected.size());
+        assertEquals(expected.remove(i), actual.remove(i));
+      }
+      assertSameElements(expected, actual);
+      for (int e = -1; e <= 1000; e++) {
+        assertEquals(Collections.binarySearch(expected, e),
+            actual.binarySearch(e));
+      }
+    }
+    // merging keeps the chunks at least a quarter full
+    assertTrue(actual.getNumChunks() <= expected.size() / 2 + 1);
+  }
+
+  @Test
+  public void testCopyAndSet() {
+    final List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i * 2);
+    }
+    final ChunkedList<Integer> actual =
+        new ChunkedList<Integer>(16, expected);
+    assertSameElements(expected, actual);
+    assertEquals(13, actual.getNumChunks());
+
+    assertEquals(Integer.valueOf(20), actual.set(10, 21));
+    expected.set(10, 21);
+    actual.add(100, 1000);
+    expected.add(100, 1000);
+    actual.add(0, -1);
+    expected.add(0, -1);
+    actual.trimToSize();
+    assertSameElements(expected, actual);
+
+    actual.clear();
+    assertEquals(0, actual.size());
+    assertEquals(-1, actual.binarySearch(0));
+    assertTrue(!actual.iterator().hasNext());
+  }
+}
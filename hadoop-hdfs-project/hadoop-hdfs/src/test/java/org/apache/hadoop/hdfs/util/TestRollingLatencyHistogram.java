@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+
+public class TestRollingLatencyHistogram {
+
+  @Test
+  public void testPercentiles() {
+    RollingLatencyHistogram h = new RollingLatencyHistogram(1000);
+    final long t = Time.monotonicNow();
+    assertEquals(-1, h.getPercentile(95, t));
+    for (int i = 1; i <= 100; i++) {
+      h.add(i, t);
+    }
+    assertEquals(100, h.getCount(t));
+    // a percentile is the upper bound of its bucket, at most 25% above it
+    long p50 = h.getPercentile(50, t);
+    assertTrue(p50 >= 50 && p50 <= 63);
+    long p95 = h.getPercentile(95, t);
+    assertTrue(p95 >= 95 && p95 <= 119);
+    assertEquals(1, h.getPercentile(1, t));
+    assertTrue(h.getPercentile(100, t) >= 100);
+
+    h.add(Long.MAX_VALUE / 2, t);
+    assertEquals(Long.MAX_VALUE, h.getPercentile(100, t));
+  }
+
+  @Test
+  public void testRolling() {
+    RollingLatencyHistogram h = new RollingLatencyHistogram(1000);
+    final long t = Time.monotonicNow();
+    for (int i = 0; i < 10; i++) {
+      h.add(1000, t);
+    }
+    // the samples move to the previous window and still count
+    h.add(1, t + 1500);
+    assertEquals(11, h.getCount(t + 1500));
+    assertTrue(h.getPercentile(50, t + 1500) >= 1000);
+    // then they are dropped
+    assertEquals(1, h.getCount(t + 2600));
+    assertEquals(1, h.getPercentile(50, t + 2600));
+    // nothing recorded for two windows forgets everything
+    assertEquals(0, h.getCount(t + 5000));
+    assertEquals(-1, h.getPercentile(95, t + 5000));
+  }
+}
@@ -20,10 +20,13 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -308,6 +311,69 @@ public void testChooseRandomExcludedRack() {
     }
   }
 
+  /**
+   * The queries answered without the lock see the changes of the tree.
+   */
+  @Test
+  public void testQueriesFollowChanges() {
+    final DatanodeDescriptor node = dataNodes[3];
+    final List<Node> excluded = new ArrayList<Node>();
+    excluded.add(dataNodes[0]);
+    excluded.add(dataNodes[5]);
+    assertEquals(4, cluster.getDistance(dataNodes[0], node));
+    assertEquals(4, cluster.countNumOfAvailableNodes("/d1", excluded));
+    assertEquals(14, cluster.countNumOfAvailableNodes("~/d1", excluded));
+    assertEquals(3, cluster.countNumOfAvailableNodes("/d1/r2", excluded));
+
+    cluster.remove(node);
+    try {
+      assertFalse(cluster.contains(node));
+      assertEquals(dataNodes.length - 1, cluster.getNumOfLeaves());
+      assertEquals(Integer.MAX_VALUE,
+          cluster.getDistance(dataNodes[0], node));
+      assertFalse(cluster.isOnSameRack(dataNodes[2], node));
+      assertEquals(3, cluster.countNumOfAvailableNodes("/d1", excluded));
+      assertEquals(2, cluster.countNumOfAvailableNodes("/d1/r2", excluded));
+      for (int i = 0; i < 100; i++) {
+        assertTrue(node != cluster.chooseRandom("/d1/r2"));
+      }
+    } finally {
+      cluster.add(node);
+    }
+    assertTrue(cluster.contains(node));
+    assertTrue(cluster.isOnSameRack(dataNodes[2], node));
+    assertEquals(4, cluster.getDistance(dataNodes[0], node));
+  }
+
+  /**
+   * Distances and random choices in topologies with more racks than the
+   * distance table covers.
+   */
+  @Test
+  public void testManyRacks() {
+    final NetworkTopology topology = new NetworkTopology();
+    final int numRacks = NetworkTopology.MAX_PARENTS_FOR_DISTANCE_TABLE + 10;
+    final Node[] nodes = new Node[2 * numRacks];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = new NodeBase("h" + i,
+          "/d" + (i % 2) + "/r" + (i / 2 % numRacks));
+      topology.add(nodes[i]);
+    }
+    assertEquals(2 * numRacks, topology.getNumOfRacks());
+    assertEquals(0, topology.getDistance(nodes[0], nodes[0]));
+    // node i is in /d{i % 2}/r{i / 2}
+    assertEquals(4, topology.getDistance(nodes[0], nodes[2]));
+    assertEquals(6, topology.getDistance(nodes[0], nodes[1]));
+    assertEquals(4, topology.getDistance(nodes[1], nodes[nodes.length - 1]));
+
+    for (int i = 0; i < 100; i++) {
+      final Node chosen = topology.chooseRandom("~/d0");
+      assertEquals("/d1", chosen.getNetworkLocation().substring(0, 3));
+    }
+    assertTrue(nodes[6] == topology.chooseRandom("/d0/r3/h6"));
+    assertNull(topology.chooseRandom("/d2"));
+  }
+
   @Test(timeout=180000)
   public void testInvalidNetworkTopologiesNotCachedInHdfs() throws Exception {
     // start a cluster
@@ -19,8 +19,12 @@
 package org.apache.hadoop.mapred;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -32,15 +36,18 @@
 
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BatchListingOperations;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.PartialListing;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -60,6 +67,7 @@ public class LocatedFileStatusFetcher {
   private final Configuration conf;
   private final boolean recursive;
   private final boolean newApi;
+  private final int numThreads;
   
   private final ExecutorService rawExec;
   private final ListeningExecutorService exec;
@@ -90,7 +98,7 @@ public class LocatedFileStatusFetcher {
   public LocatedFileStatusFetcher(Configuration conf, Path[] dirs,
       boolean recursive, PathFilter inputFilter, boolean newApi) throws InterruptedException,
       IOException {
-    int numThreads = conf.getInt(FileInputFormat.LIST_STATUS_NUM_THREADS,
+    numThreads = conf.getInt(FileInputFormat.LIST_STATUS_NUM_THREADS,
         FileInputFormat.DEFAULT_LIST_STATUS_NUM_THREADS);
     rawExec = Executors.newFixedThreadPool(
         numThreads,
@@ -185,6 +193,60 @@ private void registerError(Throwable t) {
     }
   }
 
+  /**
+   * Submit the listing of the given statuses of a file system.  The
+   * directories of a file system supporting {@link BatchListingOperations}
+   * are shared out among the threads, each listing its share in batches;
+   * otherwise each status is processed on its own.
+   */
+  private void submitInputDirs(FileSystem fs, List<FileStatus> statuses) {
+    final List<List<FileStatus>> groups;
+    if (fs instanceof BatchListingOperations && statuses.size() > 1) {
+      groups = Lists.partition(statuses,
+          (statuses.size() + numThreads - 1) / numThreads);
+    } else {
+      groups = Lists.partition(statuses, 1);
+    }
+    for (List<FileStatus> group : groups) {
+      runningTasks.incrementAndGet();
+      ListenableFuture<ProcessInputDirCallable.Result> future = exec
+          .submit(new ProcessInputDirCallable(fs, group, recursive,
+              inputFilter));
+      Futures.addCallback(future, processInputDirCallback);
+    }
+  }
+
+  /**
+   * List the given directories of a file system with
+   * {@link BatchListingOperations} if the file system supports it.
+   *
+   * @return the listing of each directory by its path as given, or null if
+   *         the file system does not support batched listing
+   * @throws IOException if listing any of the directories fails
+   */
+  public static Map<Path, List<LocatedFileStatus>> batchedListLocatedStatus(
+      FileSystem fs, List<Path> dirs) throws IOException {
+    if (!(fs instanceof BatchListingOperations)) {
+      return null;
+    }
+    Map<Path, List<LocatedFileStatus>> listings =
+        new HashMap<Path, List<LocatedFileStatus>>();
+    RemoteIterator<PartialListing<LocatedFileStatus>> iter =
+        ((BatchListingOperations) fs).batchedListLocatedStatusIterator(
+            new ArrayList<Path>(new LinkedHashSet<Path>(dirs)));
+    while (iter.hasNext()) {
+      PartialListing<LocatedFileStatus> partial = iter.next();
+      List<LocatedFileStatus> listing =
+          listings.get(partial.getListedPath());
+      if (listing == null) {
+        listing = new ArrayList<LocatedFileStatus>();
+        listings.put(partial.getListedPath(), listing);
+      }
+      listing.addAll(partial.get());
+    }
+    return listings;
+  }
+
   private void decrementRunningAndCheckCompletion() {
     lock.lock();
     try {
@@ -197,21 +259,21 @@ private void decrementRunningAndCheckCompletion() {
   }
   
   /**
-   * Retrieves block locations for the given @link {@link FileStatus}, and adds
+   * Retrieves block locations for the given {@link FileStatus}es, and adds
    * additional paths to the process queue if required.
    */
   private static class ProcessInputDirCallable implements
       Callable<ProcessInputDirCallable.Result> {
 
     private final FileSystem fs;
-    private final FileStatus fileStatus;
+    private final List<FileStatus> fileStatuses;
     private final boolean recursive;
     private final PathFilter inputFilter;
 
-    ProcessInputDirCallable(FileSystem fs, FileStatus fileStatus,
+    ProcessInputDirCallable(FileSystem fs, List<FileStatus> fileStatuses,
         boolean recursive, PathFilter inputFilter) {
       this.fs = fs;
-      this.fileStatus = fileStatus;
+      this.fileStatuses = fileStatuses;
       this.recursive = recursive;
       this.inputFilter = inputFilter;
     }
@@ -221,25 +283,41 @@ public Result call() throws Exception {
       Result result = new Result();
       result.fs = fs;
 
-      if (fileStatus.isDirectory()) {
-        RemoteIterator<LocatedFileStatus> iter = fs
-            .listLocatedStatus(fileStatus.getPath());
-        while (iter.hasNext()) {
-          LocatedFileStatus stat = iter.next();
-          if (inputFilter.accept(stat.getPath())) {
-            if (recursive && stat.isDirectory()) {
-              result.dirsNeedingRecursiveCalls.add(stat);
-            } else {
-              result.locatedFileStatuses.add(stat);
-            }
+      List<Path> dirs = new ArrayList<Path>();
+      for (FileStatus fileStatus : fileStatuses) {
+        if (fileStatus.isDirectory()) {
+          dirs.add(fileStatus.getPath());
+        } else {
+          result.locatedFileStatuses.add(fileStatus);
+        }
+      }
+      Map<Path, List<LocatedFileStatus>> listings = dirs.size() > 1 ?
+          batchedListLocatedStatus(fs, dirs) : null;
+      for (Path dir : dirs) {
+        if (listings != null) {
+          for (LocatedFileStatus stat : listings.get(dir)) {
+            addStatus(result, stat);
+          }
+        } else {
+          RemoteIterator<LocatedFileStatus> iter = fs.listLocatedStatus(dir);
+          while (iter.hasNext()) {
+            addStatus(result, iter.next());
           }
         }
-      } else {
-        result.locatedFileStatuses.add(fileStatus);
       }
       return result;
     }
 
+    private void addStatus(Result result, LocatedFileStatus stat) {
+      if (inputFilter.accept(stat.getPath())) {
+        if (recursive && stat.isDirectory()) {
+          result.dirsNeedingRecursiveCalls.add(stat);
+        } else {
+          result.locatedFileStatuses.add(stat);
+        }
+      }
+    }
+
     private static class Result {
       private List<FileStatus> locatedFileStatuses = new LinkedList<FileStatus>();
       private List<FileStatus> dirsNeedingRecursiveCalls = new LinkedList<FileStatus>();
@@ -262,13 +340,7 @@ public void onSuccess(ProcessInputDirCallable.Result result) {
           resultQueue.add(result.locatedFileStatuses);
         }
         if (result.dirsNeedingRecursiveCalls.size() != 0) {
-          for (FileStatus fileStatus : result.dirsNeedingRecursiveCalls) {
-            runningTasks.incrementAndGet();
-            ListenableFuture<ProcessInputDirCallable.Result> future = exec
-                .submit(new ProcessInputDirCallable(result.fs, fileStatus,
-                    recursive, inputFilter));
-            Futures.addCallback(future, processInputDirCallback);
-          }
+          submitInputDirs(result.fs, result.dirsNeedingRecursiveCalls);
         }
         decrementRunningAndCheckCompletion();
       } catch (Throwable t) { // Error within the callback itself.
@@ -348,13 +420,8 @@ public void onSuccess(ProcessInitialInputPathCallable.Result result) {
           registerInvalidInputError(result.errors);
         }
         if (result.matchedFileStatuses != null) {
-          for (FileStatus matched : result.matchedFileStatuses) {
-            runningTasks.incrementAndGet();
-            ListenableFuture<ProcessInputDirCallable.Result> future = exec
-                .submit(new ProcessInputDirCallable(result.fs, matched,
-                    recursive, inputFilter));
-            Futures.addCallback(future, processInputDirCallback);
-          }
+          submitInputDirs(result.fs,
+              Lists.newArrayList(result.matchedFileStatuses));
         }
         decrementRunningAndCheckCompletion();
       } catch (Throwable t) { // Exception within the callback
@@ -20,7 +20,10 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
@@ -288,6 +291,12 @@ private List<FileStatus> singleThreadedListStatus(JobContext job, Path[] dirs,
       PathFilter inputFilter, boolean recursive) throws IOException {
     List<FileStatus> result = new ArrayList<FileStatus>();
     List<IOException> errors = new ArrayList<IOException>();
+    // glob all the input paths first, so that the matched directories of a
+    // file system supporting batched listing are listed in a few calls
+    FileSystem[] fileSystems = new FileSystem[dirs.length];
+    FileStatus[][] allMatches = new FileStatus[dirs.length][];
+    Map<FileSystem, List<Path>> matchedDirs =
+        new LinkedHashMap<FileSystem, List<Path>>();
     for (int i=0; i < dirs.length; ++i) {
       Path p = dirs[i];
       FileSystem fs = p.getFileSystem(job.getConfiguration()); 
@@ -297,24 +306,60 @@ private List<FileStatus> singleThreadedListStatus(JobContext job, Path[] dirs,
       } else if (matches.length == 0) {
         errors.add(new IOException("Input Pattern " + p + " matches 0 files"));
       } else {
+        fileSystems[i] = fs;
+        allMatches[i] = matches;
         for (FileStatus globStat: matches) {
           if (globStat.isDirectory()) {
+            List<Path> fsDirs = matchedDirs.get(fs);
+            if (fsDirs == null) {
+              fsDirs = new ArrayList<Path>();
+              matchedDirs.put(fs, fsDirs);
+            }
+            fsDirs.add(globStat.getPath());
+          }
+        }
+      }
+    }
+    Map<Path, List<LocatedFileStatus>> listings =
+        new HashMap<Path, List<LocatedFileStatus>>();
+    for (Map.Entry<FileSystem, List<Path>> entry : matchedDirs.entrySet()) {
+      if (entry.getValue().size() > 1) {
+        Map<Path, List<LocatedFileStatus>> batched = LocatedFileStatusFetcher
+            .batchedListLocatedStatus(entry.getKey(), entry.getValue());
+        if (batched != null) {
+          listings.putAll(batched);
+        }
+      }
+    }
+
+    for (int i=0; i < dirs.length; ++i) {
+      if (allMatches[i] == null) {
+        continue;
+      }
+      FileSystem fs = fileSystems[i];
+      for (FileStatus globStat: allMatches[i]) {
+        if (globStat.isDirectory()) {
+          List<LocatedFileStatus> listing = listings.get(globStat.getPath());
+          if (listing == null) {
+            listing = new ArrayList<LocatedFileStatus>();
             RemoteIterator<LocatedFileStatus> iter =
                 fs.listLocatedStatus(globStat.getPath());
             while (iter.hasNext()) {
-              LocatedFileStatus stat = iter.next();
-              if (inputFilter.accept(stat.getPath())) {
-                if (recursive && stat.isDirectory()) {
-                  addInputPathRecursively(result, fs, stat.getPath(),
-                      inputFilter);
-                } else {
-                  result.add(stat);
-                }
+              listing.add(iter.next());
+            }
+          }
+          for (LocatedFileStatus stat : listing) {
+            if (inputFilter.accept(stat.getPath())) {
+              if (recursive && stat.isDirectory()) {
+                addInputPathRecursively(result, fs, stat.getPath(),
+                    inputFilter);
+              } else {
+                result.add(stat);
               }
             }
-          } else {
-            result.add(globStat);
           }
+        } else {
+          result.add(globStat);
         }
       }
     }
@@ -19,6 +19,7 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -31,10 +32,12 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BatchListingOperations;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.PartialListing;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RawLocalFileSystem;
@@ -141,6 +144,27 @@ public void testListLocatedStatus() throws Exception {
     FileSystem.closeAll();
   }
   
+  @Test
+  public void testBatchedListLocatedStatus() throws Exception {
+    Configuration conf = getConfiguration();
+    conf.setInt(FileInputFormat.LIST_STATUS_NUM_THREADS, numThreads);
+    conf.setBoolean("fs.test.impl.disable.cache", false);
+    conf.setClass("fs.test.impl", MockBatchFileSystem.class, FileSystem.class);
+    conf.set(FileInputFormat.INPUT_DIR, "test:///a1,test:///a1/a2");
+    MockBatchFileSystem mockFs =
+        (MockBatchFileSystem) new Path("test:///").getFileSystem(conf);
+    Job job = Job.getInstance(conf);
+    FileInputFormat<?, ?> fileInputFormat = new TextInputFormat();
+    List<InputSplit> splits = fileInputFormat.getSplits(job);
+    verifySplits(Lists.newArrayList("test:/a1/a2", "test:/a1/file1",
+        "test:/a1/a2/file2", "test:/a1/a2/file3"), splits);
+    Assert.assertTrue("batched listing not used",
+        mockFs.numBatchedListCalls > 0);
+    Assert.assertEquals("directories listed one at a time",
+        0, mockFs.numListLocatedStatusCalls);
+    FileSystem.closeAll();
+  }
+
   @Test
   public void testSplitLocationInfo() throws Exception {
     Configuration conf = getConfiguration();
@@ -436,4 +460,45 @@ protected RemoteIterator<LocatedFileStatus> listLocatedStatus(Path f,
       return super.listLocatedStatus(f, filter);
     }
   }
+
+  static class MockBatchFileSystem extends MockFileSystem
+      implements BatchListingOperations {
+    int numBatchedListCalls = 0;
+
+    @Override
+    public RemoteIterator<PartialListing<FileStatus>>
+        batchedListStatusIterator(List<Path> paths) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public RemoteIterator<PartialListing<LocatedFileStatus>>
+        batchedListLocatedStatusIterator(List<Path> paths)
+        throws IOException {
+      ++numBatchedListCalls;
+      final List<PartialListing<LocatedFileStatus>> listings =
+          new ArrayList<PartialListing<LocatedFileStatus>>();
+      for (Path p : paths) {
+        List<LocatedFileStatus> statuses = new ArrayList<LocatedFileStatus>();
+        for (FileStatus stat : listStatus(p)) {
+          statuses.add(new LocatedFileStatus(stat,
+              getFileBlockLocations(stat, 0, stat.getLen())));
+        }
+        listings.add(new PartialListing<LocatedFileStatus>(p, statuses));
+      }
+      return new RemoteIterator<PartialListing<LocatedFileStatus>>() {
+        private int idx = 0;
+
+        @Override
+        public boolean hasNext() {
+          return idx < listings.size();
+        }
+
+        @Override
+        public PartialListing<LocatedFileStatus> next() {
+          return listings.get(idx++);
+        }
+      };
+    }
+  }
 }